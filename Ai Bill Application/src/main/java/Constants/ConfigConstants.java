@@ -1,6 +1,7 @@
 package Constants;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Paths;
 import java.util.Properties;
 
 /**
@@ -14,6 +15,43 @@ public final class ConfigConstants {
     public static final String USERS_CSV_PATH; // User CSV path
     public static final String SUMMARY_CSV_PATH; // Example main path (for admin global stats?)
     public static final String USER_DATA_BASE_DIR; // NEW: Base directory for user data files
+    public static final String CATEGORY_RULES_PATH; // Optional: user-editable category alias/keyword rules
+    public static final double CATEGORY_CLASSIFIER_MIN_CONFIDENCE; // Local classifier answers above this, else the AI is asked
+    public static final long CATEGORY_CLASSIFIER_MIN_EXAMPLES; // Categorised rows needed before the local classifier is used
+
+    // Cache settings (optional, with defaults)
+    public static final long CACHE_MAX_WEIGHT_MB; // Heap budget for cached transaction lists across all users
+    public static final boolean CACHE_SNAPSHOT_ENABLED; // On-disk snapshots of parsed lists for fast cold starts
+    public static final String CACHE_SNAPSHOT_DIR; // Where the snapshots live (local disk)
+
+    // Transaction file writes (optional, with defaults)
+    public static final boolean TRANSACTIONS_WRITE_BEHIND; // true: edits are journaled and the CSV is rewritten later
+    public static final long TRANSACTIONS_FLUSH_INTERVAL_MS; // Write-behind: max age of unflushed edits
+    public static final long TRANSACTIONS_FLUSH_MAX_PENDING; // Write-behind: max number of unflushed edits per file
+
+    // User store (optional, with defaults)
+    public static final long USERS_LOG_COMPACT_MIN; // Min. user change-log records before it is folded into users.csv
+    public static final long IMPORT_BATCH_SIZE; // Rows per append when importing a CSV
+
+    // AI endpoint and response cache (optional, with defaults)
+    public static final String AI_BASE_URL; // Ark API base URL (a local stub server for offline testing)
+    public static final String AI_MODEL_ID; // Ark endpoint id of the model
+    public static final long AI_TIMEOUT_SECONDS; // Read timeout of one AI request
+    public static final long AI_MAX_IN_FLIGHT; // Max AI requests sent at the same time
+    public static final long AI_ASYNC_THREADS; // Worker threads running AI tasks started from the UI
+    public static final long AI_REQUESTS_PER_MINUTE; // Max AI requests started per minute
+    public static final long AI_QUEUE_TIMEOUT_MS; // Max wait for a request slot before giving up
+    public static final long AI_MAX_ATTEMPTS; // Attempts per AI request on timeouts, throttling and 5xx errors
+    public static final long AI_BACKOFF_BASE_MS; // Delay before the first retry (doubles per retry, with jitter)
+    public static final long AI_BACKOFF_MAX_MS; // Max delay between retries
+    public static final long AI_BREAKER_FAILURES; // Consecutive failures after which AI requests fail fast
+    public static final long AI_BREAKER_OPEN_SECONDS; // How long they fail fast before one trial request
+    public static final boolean AI_CACHE_ENABLED; // Reuse answers to identical prompts on unchanged data
+    public static final String AI_CACHE_DIR; // Where cached answers live (local disk)
+    public static final long AI_CACHE_TTL_MINUTES; // How long a cached answer may be reused
+    public static final long AI_CACHE_MAX_MB; // Disk budget for cached answers
+    public static final long AI_RECOGNITION_BATCH_TOKENS; // Token budget of one batched category recognition request
+    public static final long AI_PROMPT_BUDGET_TOKENS; // Token budget of analysis prompts built from transaction data
 
 
     // Static initialization block (executed when class is loaded)
@@ -34,6 +72,49 @@ public final class ConfigConstants {
             USERS_CSV_PATH = prop.getProperty("csv.users_path");
             SUMMARY_CSV_PATH = prop.getProperty("csv.summary_path");
             USER_DATA_BASE_DIR = prop.getProperty("user.data.base.dir"); // Load new config
+            CATEGORY_RULES_PATH = prop.getProperty("category.rules_path"); // May be null: built-in rules only
+            CATEGORY_CLASSIFIER_MIN_CONFIDENCE = getDouble(prop, "category.classifier_min_confidence", 0.9);
+            CATEGORY_CLASSIFIER_MIN_EXAMPLES = Math.max(1, getLong(prop, "category.classifier_min_examples", 20));
+            CACHE_MAX_WEIGHT_MB = getLong(prop, "cache.max_weight_mb", 64);
+            CACHE_SNAPSHOT_ENABLED = getBoolean(prop, "cache.snapshot_enabled", true);
+            String snapshotDir = prop.getProperty("cache.snapshot_dir");
+            CACHE_SNAPSHOT_DIR = (snapshotDir == null || snapshotDir.trim().isEmpty())
+                    ? Paths.get(System.getProperty("user.home"), ".aibill", "snapshots").toString()
+                    : snapshotDir.trim();
+            String writeMode = prop.getProperty("transactions.write_mode", "sync").trim();
+            TRANSACTIONS_WRITE_BEHIND = writeMode.equalsIgnoreCase("write_behind");
+            if (!TRANSACTIONS_WRITE_BEHIND && !writeMode.equalsIgnoreCase("sync")) {
+                System.err.println("Unknown 'transactions.write_mode' in config.properties: " + writeMode + ". Using sync.");
+            }
+            TRANSACTIONS_FLUSH_INTERVAL_MS = getLong(prop, "transactions.flush_interval_ms", 2000);
+            TRANSACTIONS_FLUSH_MAX_PENDING = getLong(prop, "transactions.flush_max_pending", 50);
+            USERS_LOG_COMPACT_MIN = getLong(prop, "users.log_compact_min", 100);
+            IMPORT_BATCH_SIZE = Math.max(1, getLong(prop, "import.batch_size", 5000));
+            String aiBaseUrl = prop.getProperty("ai.base_url");
+            AI_BASE_URL = (aiBaseUrl == null || aiBaseUrl.trim().isEmpty())
+                    ? "https://ark.cn-beijing.volces.com/api/v3"
+                    : aiBaseUrl.trim();
+            String aiModelId = prop.getProperty("ai.model_id");
+            AI_MODEL_ID = (aiModelId == null || aiModelId.trim().isEmpty()) ? "ep-20250308174053-7pbkq" : aiModelId.trim();
+            AI_TIMEOUT_SECONDS = Math.max(10, getLong(prop, "ai.timeout_seconds", 300));
+            AI_MAX_IN_FLIGHT = Math.max(1, getLong(prop, "ai.max_in_flight", 2));
+            AI_ASYNC_THREADS = Math.max(1, getLong(prop, "ai.async_threads", 4));
+            AI_REQUESTS_PER_MINUTE = Math.max(1, getLong(prop, "ai.requests_per_minute", 60));
+            AI_QUEUE_TIMEOUT_MS = Math.max(0, getLong(prop, "ai.queue_timeout_ms", 60_000));
+            AI_MAX_ATTEMPTS = Math.max(1, getLong(prop, "ai.max_attempts", 3));
+            AI_BACKOFF_BASE_MS = Math.max(1, getLong(prop, "ai.backoff_base_ms", 1000));
+            AI_BACKOFF_MAX_MS = Math.max(AI_BACKOFF_BASE_MS, getLong(prop, "ai.backoff_max_ms", 15_000));
+            AI_BREAKER_FAILURES = Math.max(1, getLong(prop, "ai.breaker_failures", 5));
+            AI_BREAKER_OPEN_SECONDS = Math.max(1, getLong(prop, "ai.breaker_open_seconds", 30));
+            AI_CACHE_ENABLED = getBoolean(prop, "ai.cache_enabled", true);
+            String aiCacheDir = prop.getProperty("ai.cache_dir");
+            AI_CACHE_DIR = (aiCacheDir == null || aiCacheDir.trim().isEmpty())
+                    ? Paths.get(System.getProperty("user.home"), ".aibill", "ai-cache").toString()
+                    : aiCacheDir.trim();
+            AI_CACHE_TTL_MINUTES = Math.max(1, getLong(prop, "ai.cache_ttl_minutes", 24 * 60));
+            AI_CACHE_MAX_MB = Math.max(1, getLong(prop, "ai.cache_max_mb", 16));
+            AI_RECOGNITION_BATCH_TOKENS = Math.max(500, getLong(prop, "ai.recognition_batch_tokens", 3000));
+            AI_PROMPT_BUDGET_TOKENS = Math.max(500, getLong(prop, "ai.prompt_budget_tokens", 4000));
 
 
             // Basic validation for critical paths
@@ -52,5 +133,68 @@ public final class ConfigConstants {
         System.out.println("Loaded SUMMARY_CSV_PATH: " + SUMMARY_CSV_PATH);
         System.out.println("Loaded USER_DATA_BASE_DIR: " + USER_DATA_BASE_DIR);
         if (CSV_PATH != null) System.out.println("Loaded CSV_PATH: " + CSV_PATH);
+        if (CATEGORY_RULES_PATH != null) System.out.println("Loaded CATEGORY_RULES_PATH: " + CATEGORY_RULES_PATH);
+        System.out.println("Loaded category classifier: min confidence " + CATEGORY_CLASSIFIER_MIN_CONFIDENCE
+                + ", min examples " + CATEGORY_CLASSIFIER_MIN_EXAMPLES);
+        System.out.println("Loaded CACHE_MAX_WEIGHT_MB: " + CACHE_MAX_WEIGHT_MB);
+        System.out.println("Loaded CACHE_SNAPSHOT_DIR: " + (CACHE_SNAPSHOT_ENABLED ? CACHE_SNAPSHOT_DIR : "(disabled)"));
+        System.out.println("Loaded transactions.write_mode: " + (TRANSACTIONS_WRITE_BEHIND
+                ? "write_behind (flush every " + TRANSACTIONS_FLUSH_INTERVAL_MS + " ms or " + TRANSACTIONS_FLUSH_MAX_PENDING + " edits)"
+                : "sync"));
+        System.out.println("Loaded USERS_LOG_COMPACT_MIN: " + USERS_LOG_COMPACT_MIN);
+        System.out.println("Loaded IMPORT_BATCH_SIZE: " + IMPORT_BATCH_SIZE);
+        System.out.println("Loaded AI_BASE_URL: " + AI_BASE_URL + " (model " + AI_MODEL_ID + ", timeout " + AI_TIMEOUT_SECONDS + " s)");
+        System.out.println("Loaded AI limits: " + AI_MAX_IN_FLIGHT + " in flight, " + AI_REQUESTS_PER_MINUTE + "/min, queue "
+                + AI_QUEUE_TIMEOUT_MS + " ms, " + AI_MAX_ATTEMPTS + " attempts (backoff " + AI_BACKOFF_BASE_MS + "-" + AI_BACKOFF_MAX_MS
+                + " ms), breaker " + AI_BREAKER_FAILURES + " failures / " + AI_BREAKER_OPEN_SECONDS + " s, "
+                + AI_ASYNC_THREADS + " async threads");
+        System.out.println("Loaded AI_CACHE_DIR: " + (AI_CACHE_ENABLED
+                ? AI_CACHE_DIR + " (ttl " + AI_CACHE_TTL_MINUTES + " min, max " + AI_CACHE_MAX_MB + " MB)"
+                : "(disabled)"));
+        System.out.println("Loaded AI_RECOGNITION_BATCH_TOKENS: " + AI_RECOGNITION_BATCH_TOKENS);
+        System.out.println("Loaded AI_PROMPT_BUDGET_TOKENS: " + AI_PROMPT_BUDGET_TOKENS);
+    }
+
+    /**
+     * Reads an optional numeric property, falling back to the default if missing or malformed.
+     */
+    private static long getLong(Properties prop, String key, long defaultValue) {
+        String value = prop.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number for '" + key + "' in config.properties: " + value + ". Using default " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads an optional decimal property, falling back to the default if missing or malformed.
+     */
+    private static double getDouble(Properties prop, String key, double defaultValue) {
+        String value = prop.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number for '" + key + "' in config.properties: " + value + ". Using default " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads an optional true/false property, falling back to the default if missing.
+     */
+    private static boolean getBoolean(Properties prop, String key, boolean defaultValue) {
+        String value = prop.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,11 @@
 package Constants;
 
+import Utils.CategoryResolver;
+
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections; // For immutable lists
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public final class StandardCategories {
@@ -60,6 +63,12 @@ public final class StandardCategories {
         ALL_KNOWN_TYPES = Collections.unmodifiableList(allTypesMutable);
     }
 
+    // Hash sets for O(1) membership checks (these run once per row during aggregation)
+    private static final Set<String> EXPENSE_CATEGORY_SET = Set.copyOf(EXPENSE_CATEGORIES);
+    private static final Set<String> INCOME_CATEGORY_SET = Set.copyOf(INCOME_CATEGORIES);
+    private static final Set<String> SPECIAL_TYPE_SET = Set.copyOf(SPECIAL_TYPES);
+    private static final Set<String> ALL_KNOWN_TYPE_SET = Set.copyOf(ALL_KNOWN_TYPES);
+
 
     /**
      * Helper method to check if a transaction type is a standard expense category.
@@ -68,20 +77,15 @@ public final class StandardCategories {
     public static boolean isStandardExpenseCategory(String type) {
         if (type == null) return false;
         String trimmedType = type.trim();
-        // First, check if it's directly in the list
-        if (EXPENSE_CATEGORIES.contains(trimmedType)) {
-            return true;
-        }
-        // Handle common aliases/variations if necessary, e.g., "交通费" -> "交通"
-        // This might require a mapping logic if aliases are common and not handled by AI mapping.
-        return false; // For now, strict check
+        // Strict check: aliases such as "交通费" are mapped by getStandardCategory / CategoryResolver first
+        return EXPENSE_CATEGORY_SET.contains(trimmedType);
     }
 
     /**
      * Helper method to get the standardized category for a given transaction type string.
      * This is where mapping from potentially messy user input or AI output to standard categories happens.
-     * For now, a simple direct match is used. In the future, this could use AI recognition results
-     * or manual mapping rules.
+     * Exact names are a set lookup; everything else goes through {@link CategoryResolver}
+     * (normalized names and the alias table, memoized per raw value).
      * @param rawType The transaction type string from data.
      * @return The matched standard category, or the original rawType if no standard match, or "Unknown" for null/empty.
      */
@@ -90,15 +94,15 @@ public final class StandardCategories {
             return "Unknown"; // Unknown category
         }
         String trimmedType = rawType.trim();
-        // Check if it matches any standard category (case-insensitive might be better)
-        // Let's do a simple case-sensitive check for now against the predefined lists.
-        if (ALL_KNOWN_TYPES.contains(trimmedType)) {
+        if (ALL_KNOWN_TYPE_SET.contains(trimmedType)) {
             return trimmedType; // Direct match
         }
 
-        // Future Improvement: Implement smarter mapping here, potentially using AI suggestions
-        // or a configuration file for mapping common user inputs to standard categories.
-
+        // Case/width variations and aliases (e.g. "餐饮美食" -> "Dining")
+        String resolved = CategoryResolver.getInstance().resolveType(trimmedType);
+        if (resolved != null) {
+            return resolved;
+        }
 
         return trimmedType; // If no standard match, return the original type.
         // We might want a dedicated "Other" if it doesn't fit any *known* type.
@@ -109,7 +113,7 @@ public final class StandardCategories {
      */
     public static boolean isStandardIncomeCategory(String type) {
         if (type == null) return false;
-        return INCOME_CATEGORIES.contains(type.trim());
+        return INCOME_CATEGORY_SET.contains(type.trim());
     }
 
     /**
@@ -117,7 +121,7 @@ public final class StandardCategories {
      */
     public static boolean isSpecialType(String type) {
         if (type == null) return false;
-        return SPECIAL_TYPES.contains(type.trim());
+        return SPECIAL_TYPE_SET.contains(type.trim());
     }
 
 
@@ -0,0 +1,53 @@
+package Controller;
+
+import javax.swing.SwingUtilities;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+
+/**
+ * The background AI task a view is waiting for. Starting a task cancels the one before it, and so does
+ * {@link #cancel()} (e.g. when the user leaves the view or presses Stop), so a view never has two requests
+ * running and a late answer never overwrites a newer one. Use on the EDT only.
+ */
+public class AiTaskSlot {
+
+    private CompletableFuture<?> current; // EDT only
+
+    /**
+     * @param task A running task, e.g. from the services' ...Async methods.
+     * @param onDone Called on the EDT with the result, or with the failure (not wrapped in a CompletionException);
+     *               not called if the task is cancelled or replaced first.
+     * @return The task.
+     */
+    public <T> CompletableFuture<T> start(CompletableFuture<T> task, BiConsumer<? super T, Throwable> onDone) {
+        cancel();
+        current = task;
+        task.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (current != task) {
+                return; // Cancelled or replaced: someone else owns the view now
+            }
+            current = null;
+            onDone.accept(result, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+        }));
+        return task;
+    }
+
+    /**
+     * Cancels the current task (its worker is interrupted).
+     *
+     * @return True if a task was running.
+     */
+    public boolean cancel() {
+        CompletableFuture<?> task = current;
+        current = null;
+        return task != null && task.cancel(true);
+    }
+
+    /**
+     * @return True while a task is running and not cancelled.
+     */
+    public boolean isRunning() {
+        return current != null;
+    }
+}
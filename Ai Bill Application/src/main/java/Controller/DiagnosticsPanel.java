@@ -0,0 +1,140 @@
+package Controller;
+
+import Service.AIservice.AITransactionService;
+import Service.AIservice.AiGateway;
+import Service.AIservice.AiResponseCache;
+import Utils.CacheManager;
+import Utils.LatencyHistogram;
+import Utils.Metrics;
+import Utils.SingleFlight;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.Vector;
+
+/**
+ * Panel showing cache statistics and operation latencies (Admin only).
+ * The same numbers are published over JMX under the "AiBill" domain.
+ */
+public class DiagnosticsPanel extends JPanel {
+
+    private static final int AUTO_REFRESH_MILLIS = 2000;
+
+    private final DefaultTableModel latencyTableModel;
+    private final JTextArea cacheStatsArea;
+    private final Timer autoRefreshTimer;
+
+    /**
+     * Constructor to initialize the Diagnostics panel.
+     */
+    public DiagnosticsPanel() {
+        setLayout(new BorderLayout(10, 10));
+        setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        // --- Control Panel (Top) ---
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        JButton refreshButton = new JButton("Refresh");
+        JButton resetButton = new JButton("Reset Timers");
+        JCheckBox autoRefreshCheckBox = new JCheckBox("Auto refresh");
+        controlPanel.add(refreshButton);
+        controlPanel.add(resetButton);
+        controlPanel.add(autoRefreshCheckBox);
+        add(controlPanel, BorderLayout.NORTH);
+
+        // --- Cache statistics (Left): transaction lists and AI answers ---
+        cacheStatsArea = new JTextArea(26, 30);
+        cacheStatsArea.setEditable(false);
+        cacheStatsArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
+        JScrollPane cacheScrollPane = new JScrollPane(cacheStatsArea);
+        cacheScrollPane.setBorder(BorderFactory.createTitledBorder("Caches"));
+        add(cacheScrollPane, BorderLayout.WEST);
+
+        // --- Operation latencies (Center) ---
+        String[] columnNames = {"Operation", "Count", "Errors", "Mean (ms)", "p50 (ms)", "p90 (ms)", "p99 (ms)", "Max (ms)"};
+        latencyTableModel = new DefaultTableModel(columnNames, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable latencyTable = new JTable(latencyTableModel);
+        latencyTable.setFillsViewportHeight(true);
+        latencyTable.setRowHeight(25);
+        JScrollPane tableScrollPane = new JScrollPane(latencyTable);
+        tableScrollPane.setBorder(BorderFactory.createTitledBorder("Operation Latencies"));
+        add(tableScrollPane, BorderLayout.CENTER);
+
+        // --- Action Listeners ---
+        // All values are in-memory counters, so refreshing on the EDT is cheap
+        autoRefreshTimer = new Timer(AUTO_REFRESH_MILLIS, e -> refreshPanelData());
+        refreshButton.addActionListener(e -> refreshPanelData());
+        resetButton.addActionListener(e -> {
+            Metrics.resetAll();
+            refreshPanelData();
+        });
+        autoRefreshCheckBox.addActionListener(e -> {
+            if (autoRefreshCheckBox.isSelected()) {
+                autoRefreshTimer.start();
+            } else {
+                autoRefreshTimer.stop();
+            }
+        });
+
+        System.out.println("DiagnosticsPanel initialized.");
+        refreshPanelData();
+    }
+
+    /**
+     * Reloads cache statistics and latency histograms into the panel. Must be called on the EDT.
+     */
+    public void refreshPanelData() {
+        CacheStats stats = CacheManager.getCacheStats();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Cached files:     %d%n", CacheManager.getCachedFileCount()));
+        sb.append(String.format("Cached rows:      %d%n", CacheManager.getCachedRowCount()));
+        sb.append(String.format("Weight (est.):    %.1f / %.1f MB%n",
+                CacheManager.getEstimatedWeightBytes() / 1048576.0, CacheManager.getMaximumWeightBytes() / 1048576.0));
+        sb.append(String.format("Requests:         %d%n", stats.requestCount()));
+        sb.append(String.format("Hit rate:         %.1f%%%n", stats.hitRate() * 100));
+        sb.append(String.format("Hits / Misses:    %d / %d%n", stats.hitCount(), stats.missCount()));
+        sb.append(String.format("Loads (failed):   %d (%d)%n", stats.loadCount(), stats.loadFailureCount()));
+        sb.append(String.format("Avg load:         %.2f ms%n", stats.averageLoadPenalty() / 1_000_000.0));
+        sb.append(String.format("Evictions:        %d (~%.1f MB)%n", stats.evictionCount(), stats.evictionWeight() / 1048576.0));
+
+        AiResponseCache aiCache = AITransactionService.getResponseCache();
+        sb.append(String.format("%n-- AI answers --%n"));
+        if (aiCache == null) {
+            sb.append(String.format("(disabled)%n"));
+        } else {
+            sb.append(String.format("Hit rate:         %.1f%%%n", aiCache.getHitRate() * 100));
+            sb.append(String.format("Hits (disk) / Misses: %d (%d) / %d%n", aiCache.getHitCount(), aiCache.getDiskHitCount(), aiCache.getMissCount()));
+            sb.append(String.format("Expired:          %d%n", aiCache.getExpiredCount()));
+            sb.append(String.format("Disk:             %.1f / %.1f MB%n", aiCache.getDiskBytes() / 1048576.0, aiCache.getMaxDiskBytes() / 1048576.0));
+            sb.append(String.format("Evictions:        %d%n", aiCache.getEvictionCount()));
+        }
+        SingleFlight<String, String> inFlight = AITransactionService.getInFlightRequests();
+        sb.append(String.format("Requests sent / joined: %d / %d%n", inFlight.getStartedCount(), inFlight.getJoinedCount()));
+        AiGateway gateway = AITransactionService.getGateway();
+        sb.append(String.format("In flight / queued: %d of %d / %d%n", gateway.getInFlight(), gateway.getMaxInFlight(), gateway.getQueued()));
+        sb.append(String.format("Rate limit:       %.2f/s%n", gateway.getRatePerSecond()));
+        sb.append(String.format("Retries / rejected: %d / %d%n", gateway.getRetryCount(), gateway.getRejectedCount()));
+        sb.append(String.format("Circuit:          %s (opened %d times)%n", gateway.getCircuitState(), gateway.getCircuitOpenCount()));
+        cacheStatsArea.setText(sb.toString());
+
+        latencyTableModel.setRowCount(0);
+        for (LatencyHistogram histogram : Metrics.getHistograms()) {
+            Vector<Object> row = new Vector<>();
+            row.add(histogram.getName());
+            row.add(histogram.getCount());
+            row.add(histogram.getErrorCount());
+            row.add(String.format("%.2f", histogram.getMeanMillis()));
+            row.add(String.format("%.2f", histogram.getP50Millis()));
+            row.add(String.format("%.2f", histogram.getP90Millis()));
+            row.add(String.format("%.2f", histogram.getP99Millis()));
+            row.add(String.format("%.2f", histogram.getMaxMillis()));
+            latencyTableModel.addRow(row);
+        }
+    }
+}
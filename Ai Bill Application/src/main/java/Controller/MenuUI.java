@@ -2,10 +2,16 @@ package Controller;
 
 import Constants.StandardCategories; // Import StandardCategories if needed in UI
 import Service.AIservice.AITransactionService; // Import AI services
+import Service.AIservice.AiExecutor;
+import Service.AIservice.AiStream;
+import Service.AIservice.AiStreamListener;
 import Service.AIservice.CollegeStudentNeeds;
 import Service.Impl.SummaryStatisticService; // Import SummaryStatisticService
+import Service.ExportFormat;
+import Service.ExportProgressListener;
 import Service.TransactionService;
 import Service.User.UserService;
+import model.ImportResult;
 import model.SummaryStatistic; // Import SummaryStatistic
 import model.Transaction;
 import model.User;
@@ -14,23 +20,22 @@ import model.User;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.io.BufferedWriter; // Added for Export
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.io.IOException;
-import java.nio.file.Files; // Added for Export
-import java.nio.file.Paths; // Added for Export
 import java.util.ArrayList; // Added for Export
 import java.util.List;
 import java.util.Vector;
 import java.util.Comparator; // For sorting stats display
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService; // Import ExecutorService
+import java.util.function.Function;
 import java.util.stream.Collectors; // Added for loadCSVDataForCurrentUser
 import java.awt.Dimension;
 
-// Added for Export (Apache Commons CSV)
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
-
 // Added for Batch AI (pre-existing in pre)
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -73,12 +78,20 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
     private JButton aiPersonalSavingTipsButton;
     private JButton runBatchAiButton; // Existing in pre
     private JButton aiSeasonalAnalysisButton; // NEW: Added seasonal analysis button from post
+    private JCheckBox aiForceRefreshCheckBox; // Ask the model again instead of reusing a cached answer
+    private JButton aiStopButton; // Cancels the answer being streamed
+    private CompletableFuture<AiStream> currentAiStart; // EDT only; starts the streamed request on the AI executor
+    private AiStream currentAiStream; // EDT only; the answer being streamed, if any
+    private TextAreaStreamAppender currentAiAppender; // EDT only; shows that answer in aiResultArea
+    private final AiTaskSlot aiTask = new AiTaskSlot(); // The non-streamed AI answer being computed, if any
 
 
     // UI components for Admin Stats panel (existing)
     private JTextArea adminStatsArea;
     private JButton generateStatsButton;
     private JButton refreshDisplayButton;
+    // Weeks shown in the Admin Stats panel; only these rows are read from the summary file
+    private static final int ADMIN_STATS_WINDOW_WEEKS = 26;
 
     // Panel for Visualization (existing in pre)
     private VisualizationPanel visualizationPanel; // Add instance field
@@ -86,6 +99,9 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
     // New panel for User Management (Admin) (existing in pre)
     private UserManagerPanel userManagerPanel; // Add instance field
 
+    // Panel for cache/latency diagnostics (Admin)
+    private DiagnosticsPanel diagnosticsPanel;
+
     /**
      * Constructor to initialize the main UI panel and its components.
      * This constructor is from MenuUI-pre.txt and accepts all necessary services.
@@ -199,6 +215,7 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
         JButton adminStatsButton = new JButton("Admin Stats");     // "管理员统计"
         JButton visualizationButton = new JButton("Visualization"); // "可视化"
         JButton userManagerButton = new JButton("User Management"); // NEW: User Management button from pre
+        JButton diagnosticsButton = new JButton("Diagnostics"); // Cache and latency metrics (admin)
 
 
         // Set consistent size for buttons
@@ -208,6 +225,7 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
         adminStatsButton.setMaximumSize(buttonSize);
         visualizationButton.setMaximumSize(buttonSize);
         userManagerButton.setMaximumSize(buttonSize); // Set size for new button
+        diagnosticsButton.setMaximumSize(buttonSize);
 
 
         menuButton.setAlignmentX(Component.CENTER_ALIGNMENT);
@@ -215,6 +233,7 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
         adminStatsButton.setAlignmentX(Component.CENTER_ALIGNMENT);
         visualizationButton.setAlignmentX(Component.CENTER_ALIGNMENT);
         userManagerButton.setAlignmentX(Component.CENTER_ALIGNMENT); // Align new button
+        diagnosticsButton.setAlignmentX(Component.CENTER_ALIGNMENT);
 
 
         leftPanel.add(menuButton);
@@ -228,6 +247,8 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
             leftPanel.add(Box.createRigidArea(new Dimension(0, 10)));
             leftPanel.add(userManagerButton); // NEW: User Management button
             leftPanel.add(Box.createRigidArea(new Dimension(0, 10)));
+            leftPanel.add(diagnosticsButton);
+            leftPanel.add(Box.createRigidArea(new Dimension(0, 10)));
             System.out.println("Admin user logged in, showing Admin and User Management buttons.");
         } else {
             System.out.println("Regular user logged in, hiding Admin buttons.");
@@ -271,6 +292,13 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
                     userManagerPanel.refreshPanelData(); // Call refresh method
                 }
             });
+
+            diagnosticsButton.addActionListener(e -> {
+                cardLayout.show(rightPanel, "Diagnostics");
+                if (diagnosticsPanel != null) {
+                    diagnosticsPanel.refreshPanelData();
+                }
+            });
         }
 
 
@@ -299,6 +327,8 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
         if ("admin".equalsIgnoreCase(currentUser.getRole())) {
             rightPanel.add(adminStatsPanel, "AdminStats");
             rightPanel.add(userManagerPanel, "UserManagement"); // NEW: Add User Management card
+            this.diagnosticsPanel = new DiagnosticsPanel();
+            rightPanel.add(diagnosticsPanel, "Diagnostics");
         }
         rightPanel.add(visualizationPanel, "Visualization");
 
@@ -389,31 +419,58 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
             String filePath = fileToImport.getAbsolutePath();
             System.out.println("User selected file for import: " + filePath);
 
+            // Non-modal progress window, updated from the import's progress callback
+            JDialog progressDialog = new JDialog(SwingUtilities.getWindowAncestor(this), "Importing", Dialog.ModalityType.MODELESS);
+            progressDialog.setLayout(new FlowLayout());
+            JLabel progressLabel = new JLabel("Reading " + fileToImport.getName() + "...");
+            progressDialog.add(progressLabel);
+            progressDialog.setSize(380, 100);
+            progressDialog.setResizable(false);
+            progressDialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+            progressDialog.setLocationRelativeTo(this);
+            progressDialog.setVisible(true);
+
             // Submit import task to the ExecutorService (from pre)
             executorService.submit(() -> { // Use submit
                 System.out.println("Import task submitted to ExecutorService.");
-                String message;
                 try {
-                    // Call the service method to handle the import logic
-                    int importedCount = transactionService.importTransactionsFromCsv(currentUser.getTransactionFilePath(), filePath);
-
-                    message = "Successfully imported " + importedCount + " transaction records.";
-                    System.out.println("Import task finished: " + message);
+                    // Call the service method to handle the import logic; progress is reported per batch
+                    ImportResult result = transactionService.importTransactions(currentUser.getTransactionFilePath(), filePath,
+                            (rowsRead, importedCount, duplicateCount) -> SwingUtilities.invokeLater(() ->
+                                    progressLabel.setText("Read " + rowsRead + " rows, imported " + importedCount
+                                            + ", skipped " + duplicateCount + " duplicates...")));
+
+                    // One summary for the whole import, duplicates included
+                    StringBuilder summary = new StringBuilder("Successfully imported " + result.getImportedCount() + " transaction records.");
+                    if (result.getDuplicateCount() > 0) {
+                        summary.append("\nSkipped ").append(result.getDuplicateCount())
+                                .append(" records whose order number already exists, e.g.:");
+                        for (String orderNumber : result.getDuplicateSamples()) {
+                            summary.append("\n  ").append(orderNumber);
+                        }
+                        if (result.getDuplicateCount() > result.getDuplicateSamples().size()) {
+                            summary.append("\n  ...");
+                        }
+                    }
+                    System.out.println("Import task finished: " + result);
 
-                    String finalMessage = message;
+                    String finalMessage = summary.toString();
+                    int messageType = result.getDuplicateCount() > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE;
                     SwingUtilities.invokeLater(() -> { // Update UI on EDT
+                        progressDialog.dispose();
                         loadCSVDataForCurrentUser(""); // Reload all data after adding/importing
                         clearSearchFields(); // Clear search fields after reload
-                        JOptionPane.showMessageDialog(this, finalMessage, "Import Successful", JOptionPane.INFORMATION_MESSAGE);
+                        JOptionPane.showMessageDialog(this, finalMessage, "Import Finished", messageType);
                     });
 
                 } catch (Exception ex) {
-                    message = "Import failed!\n" + ex.getMessage();
+                    String message = "Import failed!\n" + ex.getMessage();
                     System.err.println("Import task failed: " + ex.getMessage());
                     ex.printStackTrace();
-                    String finalMessage1 = message;
                     SwingUtilities.invokeLater(() -> { // Update UI on EDT
-                        JOptionPane.showMessageDialog(this, finalMessage1, "Import Error", JOptionPane.ERROR_MESSAGE);
+                        progressDialog.dispose();
+                        loadCSVDataForCurrentUser(""); // Batches written before the failure are kept
+                        JOptionPane.showMessageDialog(this, message, "Import Error", JOptionPane.ERROR_MESSAGE);
                     });
                 }
             });
@@ -423,87 +480,120 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
         }
     }
 
-    // Inside MenuUI class, showExportDialog method - NEW (from pre, uses ExecutorService)
+    // Inside MenuUI class, showExportDialog method - exports through the service, not from the table model
     private void showExportDialog() {
         JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setDialogTitle("Save CSV file"); // "Save CSV file"
+        fileChooser.setDialogTitle("Export transactions"); // "Export transactions"
         // Set a default file name
         fileChooser.setSelectedFile(new java.io.File("transactions_export.csv"));
-        // Add file filter for .csv files
-        fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("CSV Files (*.csv)", "csv"));
+        // One file filter per export format; the chosen filter decides the format if the name has no known extension
+        javax.swing.filechooser.FileNameExtensionFilter csvFilter = new javax.swing.filechooser.FileNameExtensionFilter("CSV Files (*.csv)", "csv");
+        fileChooser.addChoosableFileFilter(csvFilter);
+        fileChooser.addChoosableFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("Compressed CSV (*.csv.gz)", "gz"));
+        fileChooser.addChoosableFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("JSON Lines (*.jsonl)", "jsonl"));
+        fileChooser.addChoosableFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("Compressed JSON Lines (*.jsonl.gz)", "gz"));
+        fileChooser.setFileFilter(csvFilter);
 
         // Show save dialog
         int userSelection = fileChooser.showSaveDialog(this);
 
         if (userSelection == JFileChooser.APPROVE_OPTION) {
-            java.io.File fileToSave = fileChooser.getSelectedFile();
-            String filePath = fileToSave.getAbsolutePath();
-
-            // Ensure file extension is .csv if not already provided
-            if (!filePath.toLowerCase().endsWith(".csv")) {
-                filePath += ".csv";
-                fileToSave = new java.io.File(filePath); // Update File object
+            String filePath = fileChooser.getSelectedFile().getAbsolutePath();
+
+            ExportFormat format = ExportFormat.fromFileName(filePath);
+            if (format == null) {
+                // No known extension: take the format of the selected filter and add its extension
+                String description = fileChooser.getFileFilter().getDescription();
+                if (description.startsWith("Compressed CSV")) format = ExportFormat.CSV_GZIP;
+                else if (description.startsWith("JSON Lines")) format = ExportFormat.JSON_LINES;
+                else if (description.startsWith("Compressed JSON")) format = ExportFormat.JSON_LINES_GZIP;
+                else format = ExportFormat.CSV;
+                filePath += "." + format.getExtension();
             }
+            System.out.println("User selected file for export: " + filePath + " (" + format + ")");
+
+            // Export what the table is filtered by: the current search fields (read here, on the EDT)
+            Transaction searchCriteria = new Transaction(
+                    searchTransactionTimeField.getText().trim(),
+                    searchTransactionTypeField.getText().trim(),
+                    searchCounterpartyField.getText().trim(),
+                    searchCommodityField.getText().trim(),
+                    (String) searchInOutComboBox.getSelectedItem(),
+                    0,
+                    searchPaymentMethodField.getText().trim(),
+                    "", "", "", ""
+            );
 
-            System.out.println("User selected file for export: " + filePath);
+            // Non-modal progress window with a Cancel button
+            AtomicBoolean cancelled = new AtomicBoolean(false);
+            JDialog progressDialog = new JDialog(SwingUtilities.getWindowAncestor(this), "Exporting", Dialog.ModalityType.MODELESS);
+            progressDialog.setLayout(new BorderLayout(5, 5));
+            JLabel progressLabel = new JLabel("Exporting to " + new java.io.File(filePath).getName() + "...");
+            JProgressBar progressBar = new JProgressBar(0, 100);
+            JButton cancelButton = new JButton("Cancel");
+            cancelButton.addActionListener(e -> {
+                cancelled.set(true);
+                cancelButton.setEnabled(false);
+                progressLabel.setText("Cancelling...");
+            });
+            progressDialog.add(progressLabel, BorderLayout.NORTH);
+            progressDialog.add(progressBar, BorderLayout.CENTER);
+            JPanel cancelPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+            cancelPanel.add(cancelButton);
+            progressDialog.add(cancelPanel, BorderLayout.SOUTH);
+            progressDialog.setSize(380, 130);
+            progressDialog.setResizable(false);
+            progressDialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+            progressDialog.setLocationRelativeTo(this);
+            progressDialog.setVisible(true);
+
+            ExportProgressListener listener = new ExportProgressListener() {
+                @Override
+                public void onProgress(int rowsScanned, int totalRows, int rowsWritten) {
+                    int percent = totalRows == 0 ? 100 : (int) (100L * rowsScanned / totalRows);
+                    SwingUtilities.invokeLater(() -> {
+                        progressBar.setValue(percent);
+                        if (!cancelled.get()) {
+                            progressLabel.setText("Written " + rowsWritten + " records...");
+                        }
+                    });
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return cancelled.get();
+                }
+            };
 
             // Execute export logic in a background thread to avoid blocking UI
-            String finalFilePath = filePath; // Final variable for lambda
+            String finalFilePath = filePath; // Final variables for lambda
+            ExportFormat finalFormat = format;
             executorService.submit(() -> { // Use submit (from pre)
                 System.out.println("Export task submitted to ExecutorService for file: " + finalFilePath);
-                String message;
                 try {
-                    // Get data from the current table model
-                    DefaultTableModel model = (DefaultTableModel) table.getModel();
-                    int rowCount = model.getRowCount();
-                    int colCount = model.getColumnCount(); // Includes Modify/Delete columns
-
-                    // Get headers from table model
-                    String[] headers = new String[colCount - 2]; // Exclude Modify and Delete columns
-                    for (int i = 0; i < headers.length; i++) {
-                        headers[i] = model.getColumnName(i);
-                    }
-
-                    // Use Apache Commons CSV to write to file
-                    try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(finalFilePath), java.nio.charset.StandardCharsets.UTF_8);
-                         CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(headers).withTrim())) {
-
-                        // Write data rows
-                        for (int i = 0; i < rowCount; i++) {
-                            // Create a list/array for the row data, excluding the last two columns
-                            List<String> rowData = new ArrayList<>();
-                            for (int j = 0; j < colCount - 2; j++) { // Exclude Modify/Delete columns
-                                Object cellValue = model.getValueAt(i, j);
-                                rowData.add(cellValue != null ? cellValue.toString() : "");
-                            }
-                            csvPrinter.printRecord(rowData); // Write the row
-                        }
-                        csvPrinter.flush(); // Ensure data is written
+                    int exportedCount = transactionService.exportTransactions(searchCriteria, finalFilePath, finalFormat, listener);
 
-                        message = "Successfully exported " + rowCount + " transaction records to:\n" + finalFilePath; // "Successfully exported " ... " transaction records to:\n"
-                        System.out.println("Export task finished: " + message);
-
-                        String finalMessage = message;
-                        SwingUtilities.invokeLater(() -> { // Update UI on EDT
-                            JOptionPane.showMessageDialog(this, finalMessage, "Export Successful", JOptionPane.INFORMATION_MESSAGE); // "Export Successful"
-                        });
+                    String message = "Successfully exported " + exportedCount + " transaction records to:\n" + finalFilePath; // "Successfully exported " ... " transaction records to:\n"
+                    System.out.println("Export task finished: " + message);
+                    SwingUtilities.invokeLater(() -> { // Update UI on EDT
+                        progressDialog.dispose();
+                        JOptionPane.showMessageDialog(this, message, "Export Successful", JOptionPane.INFORMATION_MESSAGE); // "Export Successful"
+                    });
 
-                    } catch (IOException ex) {
-                        message = "Export failed!\n" + ex.getMessage();
-                        System.err.println("Export task failed: " + ex.getMessage());
-                        ex.printStackTrace();
-                        String finalMessage1 = message;
-                        SwingUtilities.invokeLater(() -> { // Update UI on EDT
-                            JOptionPane.showMessageDialog(this, finalMessage1, "Export Error", JOptionPane.ERROR_MESSAGE); // "Export Error"
-                        });
-                    }
+                } catch (CancellationException ex) {
+                    System.out.println("Export task cancelled: " + finalFilePath);
+                    SwingUtilities.invokeLater(() -> { // Update UI on EDT
+                        progressDialog.dispose();
+                        JOptionPane.showMessageDialog(this, "Export cancelled. No file was written.", "Export Cancelled", JOptionPane.INFORMATION_MESSAGE);
+                    });
 
-                } catch (Exception e) {
-                    // This catch block is for errors within the executorService task setup, not the IOException itself.
-                    System.err.println("Error during export task setup: " + e.getMessage());
-                    e.printStackTrace();
+                } catch (Exception ex) {
+                    String message = "Export failed!\n" + ex.getMessage();
+                    System.err.println("Export task failed: " + ex.getMessage());
+                    ex.printStackTrace();
                     SwingUtilities.invokeLater(() -> { // Update UI on EDT
-                        JOptionPane.showMessageDialog(this, "An unexpected error occurred during export: " + e.getMessage(), "Export Error", JOptionPane.ERROR_MESSAGE); // "Export Error"
+                        progressDialog.dispose();
+                        JOptionPane.showMessageDialog(this, message, "Export Error", JOptionPane.ERROR_MESSAGE); // "Export Error"
                     });
                 }
             });
@@ -593,9 +683,17 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
         JDialog waitingDialog = new JDialog(addDialog, "Please wait", true); // "Please wait"
         waitingDialog.setLayout(new FlowLayout());
         waitingDialog.add(new JLabel("Getting AI category suggestion...")); // "Getting AI category suggestion..."
-        waitingDialog.setSize(250, 100);
+        waitingDialog.setSize(250, 110);
         waitingDialog.setResizable(false);
         waitingDialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE); // Prevent closing with X (from pre)
+        AiTaskSlot suggestTask = new AiTaskSlot(); // The suggestion being fetched, if any
+        JButton cancelSuggestButton = new JButton("Cancel");
+        cancelSuggestButton.addActionListener(e -> { // Stops the request; no suggestion is filled in
+            suggestTask.cancel();
+            waitingDialog.setVisible(false);
+            aiSuggestButton.setEnabled(true);
+        });
+        waitingDialog.add(cancelSuggestButton);
 
 
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
@@ -638,50 +736,41 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
                     textFields[9].getText().trim()  // Remarks
             );
 
-            // 3. Submit the AI task to the ExecutorService
-            executorService.submit(() -> { // Use submit (from pre)
-                System.out.println("AI Suggest task submitted to ExecutorService...");
-                String aiSuggestion = null;
-                try {
-                    // Thread.sleep(3000); // Simulate delay
-                    aiSuggestion = collegeStudentNeeds.RecognizeTransaction(tempTransaction);
-                    System.out.println("AI Suggest task finished. Result: " + aiSuggestion);
-                } catch (Exception ex) {
-                    System.err.println("Error in AI Suggest task: " + ex.getMessage());
-                    ex.printStackTrace();
-                    aiSuggestion = "Error: " + ex.getMessage(); // Capture error
+            // 3. Start the AI task on the AI executor; the result arrives on the EDT
+            System.out.println("AI Suggest task submitted to the AI executor...");
+            suggestTask.start(collegeStudentNeeds.recognizeTransactionAsync(tempTransaction), (aiSuggestion, error) -> {
+                if (error != null) {
+                    System.err.println("Error in AI Suggest task: " + error.getMessage());
+                    error.printStackTrace();
                 }
-
-                // 4. Schedule UI update on Event Dispatch Thread (EDT)
-                String finalSuggestion = aiSuggestion;
-                SwingUtilities.invokeLater(() -> {
-                    System.out.println("Updating UI on EDT after AI Suggest task.");
-                    // --- Hide waiting dialog ---
-                    waitingDialog.setVisible(false); // This hides the modal dialog
-
-                    // --- Display AI suggestion ---
-                    if (finalSuggestion != null && !finalSuggestion.isEmpty() && !finalSuggestion.startsWith("Error:")) {
-                        // Safety Check against standard categories
-                        if (StandardCategories.ALL_KNOWN_TYPES.contains(finalSuggestion.trim())) {
-                            textFields[1].setText(finalSuggestion.trim()); // Update Transaction Type field
-                        } else {
-                            System.err.println("AI returned non-standard category despite prompt: " + finalSuggestion);
-                            JOptionPane.showMessageDialog(addDialog, "AI returned an unexpected category format:\n" + finalSuggestion + "\nPlease enter manually.", "AI Result Anomaly", JOptionPane.WARNING_MESSAGE);
-                            textFields[1].setText("");
-                        }
-                    } else if (finalSuggestion != null && finalSuggestion.startsWith("Error:")) {
-                        JOptionPane.showMessageDialog(addDialog, "Failed to get AI category suggestion!\n" + finalSuggestion.substring(6), "AI Error", JOptionPane.ERROR_MESSAGE);
-                        textFields[1].setText("");
+                String finalSuggestion = error != null ? "Error: " + error.getMessage() : aiSuggestion; // Capture error
+
+                // 4. Update the UI (already on the EDT)
+                System.out.println("Updating UI on EDT after AI Suggest task. Result: " + finalSuggestion);
+                // --- Hide waiting dialog ---
+                waitingDialog.setVisible(false); // This hides the modal dialog
+
+                // --- Display AI suggestion ---
+                if (finalSuggestion != null && !finalSuggestion.isEmpty() && !finalSuggestion.startsWith("Error:")) {
+                    // Safety Check against standard categories
+                    if (StandardCategories.ALL_KNOWN_TYPES.contains(finalSuggestion.trim())) {
+                        textFields[1].setText(finalSuggestion.trim()); // Update Transaction Type field
                     } else {
-                        JOptionPane.showMessageDialog(addDialog, "AI could not provide a category suggestion.", "AI Tip", JOptionPane.INFORMATION_MESSAGE);
+                        System.err.println("AI returned non-standard category despite prompt: " + finalSuggestion);
+                        JOptionPane.showMessageDialog(addDialog, "AI returned an unexpected category format:\n" + finalSuggestion + "\nPlease enter manually.", "AI Result Anomaly", JOptionPane.WARNING_MESSAGE);
                         textFields[1].setText("");
                     }
+                } else if (finalSuggestion != null && finalSuggestion.startsWith("Error:")) {
+                    JOptionPane.showMessageDialog(addDialog, "Failed to get AI category suggestion!\n" + finalSuggestion.substring(6), "AI Error", JOptionPane.ERROR_MESSAGE);
+                    textFields[1].setText("");
+                } else {
+                    JOptionPane.showMessageDialog(addDialog, "AI could not provide a category suggestion.", "AI Tip", JOptionPane.INFORMATION_MESSAGE);
+                    textFields[1].setText("");
+                }
 
-                    // 5. Re-enable buttons on EDT
-                    aiSuggestButton.setEnabled(true);
-                    // confirmButton.setEnabled(true);
-                    System.out.println("UI update complete, buttons re-enabled.");
-                });
+                // 5. Re-enable buttons on EDT
+                aiSuggestButton.setEnabled(true);
+                System.out.println("UI update complete, buttons re-enabled.");
             });
 
             // 6. Show the modal waiting dialog LAST in the EDT block
@@ -870,9 +959,17 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
             JDialog waitingDialog = new JDialog(editDialog, "Please wait", true); // "Please wait"
             waitingDialog.setLayout(new FlowLayout());
             waitingDialog.add(new JLabel("Getting AI category suggestion...")); // "Getting AI category suggestion..."
-            waitingDialog.setSize(250, 100);
+            waitingDialog.setSize(250, 110);
             waitingDialog.setResizable(false);
             waitingDialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE); // Prevent closing with X (from pre)
+            AiTaskSlot suggestTask = new AiTaskSlot(); // The suggestion being fetched, if any
+            JButton cancelSuggestButton = new JButton("Cancel");
+            cancelSuggestButton.addActionListener(e -> { // Stops the request; no suggestion is filled in
+                suggestTask.cancel();
+                waitingDialog.setVisible(false);
+                aiSuggestButton.setEnabled(true);
+            });
+            waitingDialog.add(cancelSuggestButton);
 
 
             JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
@@ -910,44 +1007,41 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
                         remarksField.getText().trim()
                 );
 
-                // Submit the AI task to the ExecutorService (from pre)
-                executorService.submit(() -> { // Use submit (from pre)
-                    System.out.println("AI Suggest task submitted to ExecutorService (edit dialog)...");
-                    String aiSuggestion = null;
-                    try {
-                        // Thread.sleep(3000); // Simulate delay
-                        aiSuggestion = collegeStudentNeeds.RecognizeTransaction(tempTransaction);
-                        System.out.println("AI Suggest task finished (edit dialog). Result: " + aiSuggestion);
-                    } catch (Exception ex) {
-                        System.err.println("Error in AI Suggest task (edit dialog): " + ex.getMessage());
-                        ex.printStackTrace();
-                        aiSuggestion = "Error: " + ex.getMessage();
+                // 3. Start the AI task on the AI executor; the result arrives on the EDT
+                System.out.println("AI Suggest task submitted to the AI executor (edit dialog)...");
+                suggestTask.start(collegeStudentNeeds.recognizeTransactionAsync(tempTransaction), (aiSuggestion, error) -> {
+                    if (error != null) {
+                        System.err.println("Error in AI Suggest task (edit dialog): " + error.getMessage());
+                        error.printStackTrace();
                     }
+                    String finalSuggestion = error != null ? "Error: " + error.getMessage() : aiSuggestion; // Capture error
 
-                    String finalSuggestion = aiSuggestion;
-                    SwingUtilities.invokeLater(() -> { // Update UI on EDT
-                        System.out.println("Updating UI on EDT after AI Suggest task (edit dialog).");
-                        waitingDialog.setVisible(false);
+                    // 4. Update the UI (already on the EDT)
+                    System.out.println("Updating UI on EDT after AI Suggest task (edit dialog). Result: " + finalSuggestion);
+                    // --- Hide waiting dialog ---
+                    waitingDialog.setVisible(false); // This hides the modal dialog
 
-                        if (finalSuggestion != null && !finalSuggestion.isEmpty() && !finalSuggestion.startsWith("Error:")) {
-                            if (StandardCategories.ALL_KNOWN_TYPES.contains(finalSuggestion.trim())) {
-                                transactionTypeField.setText(finalSuggestion.trim()); // Update Transaction Type field
-                            } else {
-                                System.err.println("AI returned non-standard category despite prompt (edit dialog): " + finalSuggestion);
-                                JOptionPane.showMessageDialog(editDialog, "AI returned an unexpected category format:\n" + finalSuggestion + "\nPlease enter manually.", "AI Result Anomaly", JOptionPane.WARNING_MESSAGE);
-                                transactionTypeField.setText("");
-                            }
-                        } else if (finalSuggestion != null && finalSuggestion.startsWith("Error:")) {
-                            JOptionPane.showMessageDialog(editDialog, "Failed to get AI category suggestion!\n" + finalSuggestion.substring(6), "AI Error", JOptionPane.ERROR_MESSAGE);
-                            transactionTypeField.setText("");
+                    // --- Display AI suggestion ---
+                    if (finalSuggestion != null && !finalSuggestion.isEmpty() && !finalSuggestion.startsWith("Error:")) {
+                        // Safety Check against standard categories
+                        if (StandardCategories.ALL_KNOWN_TYPES.contains(finalSuggestion.trim())) {
+                            transactionTypeField.setText(finalSuggestion.trim()); // Update Transaction Type field
                         } else {
-                            JOptionPane.showMessageDialog(editDialog, "AI could not provide a category suggestion.", "AI Tip", JOptionPane.INFORMATION_MESSAGE);
+                            System.err.println("AI returned non-standard category despite prompt (edit dialog): " + finalSuggestion);
+                            JOptionPane.showMessageDialog(editDialog, "AI returned an unexpected category format:\n" + finalSuggestion + "\nPlease enter manually.", "AI Result Anomaly", JOptionPane.WARNING_MESSAGE);
                             transactionTypeField.setText("");
                         }
+                    } else if (finalSuggestion != null && finalSuggestion.startsWith("Error:")) {
+                        JOptionPane.showMessageDialog(editDialog, "Failed to get AI category suggestion!\n" + finalSuggestion.substring(6), "AI Error", JOptionPane.ERROR_MESSAGE);
+                        transactionTypeField.setText("");
+                    } else {
+                        JOptionPane.showMessageDialog(editDialog, "AI could not provide a category suggestion.", "AI Tip", JOptionPane.INFORMATION_MESSAGE);
+                        transactionTypeField.setText("");
+                    }
 
-                        aiSuggestButton.setEnabled(true);
-                        System.out.println("UI update complete, buttons re-enabled (edit dialog).");
-                    });
+                    // 5. Re-enable buttons on EDT
+                    aiSuggestButton.setEnabled(true);
+                    System.out.println("UI update complete, buttons re-enabled (edit dialog).");
                 });
 
                 System.out.println("Showing waiting dialog (EDT block continues here in edit dialog).");
@@ -1070,6 +1164,12 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
     private JPanel createAIPanel() {
         JPanel panel = new JPanel(new BorderLayout(10, 10));
         panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        panel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentHidden(ComponentEvent e) {
+                stopAiWork(); // Switched to another view: nobody is waiting for the answer anymore
+            }
+        });
 
         // --- 通用分析面板 (原始数据) ---
         JPanel generalAnalysisPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 10));
@@ -1085,6 +1185,14 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
         generalAnalysisPanel.add(new JLabel("To:")); // "到:"
         generalAnalysisPanel.add(aiEndTimeField); // 将 aiEndTimeField 添加到布局中
         generalAnalysisPanel.add(aiAnalyzeButton);
+        aiForceRefreshCheckBox = new JCheckBox("Force refresh (ignore cached answers)");
+        aiForceRefreshCheckBox.setToolTipText("Answers to the same request on unchanged data are reused; tick to ask the AI again.");
+        generalAnalysisPanel.add(aiForceRefreshCheckBox);
+        aiStopButton = new JButton("Stop");
+        aiStopButton.setToolTipText("Stop the answer that is being generated.");
+        aiStopButton.setEnabled(false);
+        aiStopButton.addActionListener(e -> stopAiWork());
+        generalAnalysisPanel.add(aiStopButton);
 
         // --- 基于月度总结的分析面板 ---
         JPanel summaryAnalysisPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 10));
@@ -1145,7 +1253,9 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
                 "4. Click \"Personalized Saving Tips\" to get saving advice based on your spending categories.\n" + // "4. 点击“个性化省钱技巧”获取基于您消费类别的省钱建议。\n"
                 "5. Click \"Analyze Seasonal Spending (China Focus)\" for insights into your spending habits across different seasons/holidays.\n" + // "5. 点击“分析季节性消费 (中国视角)”获取您在不同季节/节假日的消费习惯洞察。\n" (新增说明 from post)
                 "6. Student users can click \"Budget Suggestion (Student)\" and \"Saving Tips (Student)\" for exclusive advice.\n" + // "6. 学生用户可以点击“预算建议”和“省钱技巧”获取专属建议。\n"
-                "7. (Admin only) Click \"Run Batch AI Analysis (Test ExecutorService)\" to test multi-threaded AI performance.\n"); // Added description for batch button (from pre)
+                "7. (Admin only) Click \"Run Batch AI Analysis (Test ExecutorService)\" to test multi-threaded AI performance.\n\n" + // Added description for batch button (from pre)
+                "Answers to a repeated request on unchanged data are reused; tick \"Force refresh\" to ask the AI again.\n" +
+                "Answers appear while the AI writes them; click \"Stop\" to cancel one.\n");
 
 
         JScrollPane resultScrollPane = new JScrollPane(aiResultArea);
@@ -1155,19 +1265,10 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
 
         // Seasonal Analysis Button Action Listener - NEW (from post, adapted to use pre's ExecutorService)
         aiSeasonalAnalysisButton.addActionListener(e -> {
-            aiResultArea.setText("--- Analyzing Seasonal Spending Patterns (China Focus) ---\n\nPlease wait while AI analyzes your monthly data for seasonal trends...\n"); // "--- 正在分析季节性消费模式 (中国视角) ---\n\n请稍候，AI正在分析您的月度数据以寻找季节性趋势...\n"
-            setAIButtonsEnabled(false);
-            // Use executorService from pre
-            executorService.submit(() -> { // Use submit
-                System.out.println("Seasonal Analysis task submitted to ExecutorService..."); // Optional logging
-                String result = aiTransactionService.analyzeSeasonalSpendingPatterns(currentUser.getTransactionFilePath());
-                System.out.println("Seasonal Analysis task finished."); // Optional logging
-                SwingUtilities.invokeLater(() -> {
-                    aiResultArea.setText("--- Seasonal Spending Analysis (China Focus) ---\n\n" + result); // "--- 季节性消费分析 (中国视角) ---\n\n"
-                    setAIButtonsEnabled(true);
-                    System.out.println("UI updated after Seasonal Analysis task."); // Optional logging
-                });
-            });
+            boolean forceRefresh = aiForceRefreshCheckBox.isSelected(); // Read on the EDT
+            streamIntoResultArea("--- Seasonal Spending Analysis (China Focus) ---", listener -> // "--- 季节性消费分析 (中国视角) ---"
+                    aiTransactionService.streamReport(AITransactionService.Report.SEASONAL_PATTERNS,
+                            currentUser.getTransactionFilePath(), forceRefresh, listener));
         });
 
 
@@ -1179,104 +1280,78 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
             String startTime = "2024/01/01"; // Example time range for batch tasks
             String endTime = ""; // Example time range
 
-            System.out.println("Starting batch AI analysis (" + numberOfTasks + " tasks) via ExecutorService...");
+            System.out.println("Starting batch AI analysis (" + numberOfTasks + " tasks) on the AI executor...");
 
             // Clear previous results and show a loading message
             aiResultArea.setText("Running batch AI analysis (" + numberOfTasks + " tasks), please wait...\n");
-            // Disable all AI related buttons while batch is running
+            // Disable all AI related buttons while batch is running; Stop cancels the whole batch
             setAIButtonsEnabled(false);
+            aiStopButton.setEnabled(true);
 
             // Use an AtomicInteger to track completed tasks across threads (from pre)
             java.util.concurrent.atomic.AtomicInteger completedTasks = new java.util.concurrent.atomic.AtomicInteger(0);
             long startTimeMillis = System.currentTimeMillis(); // Record start time for total duration
 
+            // Each task runs on the AI executor, so the batch never occupies the general executor's threads
+            List<CompletableFuture<String>> tasks = new ArrayList<>();
+            for (int i = 0; i < numberOfTasks; i++) {
+                tasks.add(aiTransactionService.analyzeTransactionsAsync(userRequest + " (Task " + (i + 1) + ")",
+                        filePath, startTime, endTime, false));
+            }
+            CompletableFuture<Void> batch = CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]));
+            batch.whenComplete((ignored, error) -> {
+                if (batch.isCancelled()) {
+                    tasks.forEach(task -> task.cancel(true)); // Stop pressed or view left
+                }
+            });
             for (int i = 0; i < numberOfTasks; i++) {
                 final int taskIndex = i;
-                // Submit each individual task to the ExecutorService (from pre)
-                executorService.submit(() -> { // Use submit
-                    String taskResult = "Task " + (taskIndex + 1) + " failed."; // Default error message for this specific task
-                    boolean success = false;
-                    try {
-                        // Call the AI service method for analysis (example)
-                        // In a real batch test, you might call analyzeTransactions or a simpler task
-                        String result = aiTransactionService.analyzeTransactions(userRequest + " (Task " + (taskIndex + 1) + ")", filePath, startTime, endTime);
-                        taskResult = "Task " + (taskIndex + 1) + " completed: " + result.substring(0, Math.min(result.length(), 50)) + "..."; // Truncate result for log
-                        success = true;
-                        System.out.println(taskResult);
-                    } catch (Exception ex) {
+                tasks.get(i).whenComplete((result, ex) -> {
+                    if (ex != null) {
                         System.err.println("Task " + (taskIndex + 1) + " failed: " + ex.getMessage());
-                        ex.printStackTrace();
-                        taskResult = "Task " + (taskIndex + 1) + " failed: " + ex.getMessage();
-                    } finally {
-                        // Increment completed task count
-                        int doneCount = completedTasks.incrementAndGet();
-
-                        // Update UI with progress and final status on EDT (from pre)
-                        SwingUtilities.invokeLater(() -> {
-                            // Append status for this task
-                            // aiResultArea.append(taskResult + "\n"); // Appending can make UI jumpy for large batches
-
-                            // Display overall progress instead of appending every result
-                            if (doneCount < numberOfTasks) {
-                                aiResultArea.setText("Running batch AI analysis... " + doneCount + "/" + numberOfTasks + " tasks completed.");
-                            } else {
-                                // All tasks are done
-                                long endTimeMillis = System.currentTimeMillis();
-                                long totalTimeSeconds = (endTimeMillis - startTimeMillis) / 1000;
-                                aiResultArea.setText("Batch run completed!\n" + numberOfTasks + " tasks finished in " + totalTimeSeconds + " seconds.");
-
-                                // Re-enable buttons
-                                setAIButtonsEnabled(true);
-                            }
-                        });
+                    } else {
+                        System.out.println("Task " + (taskIndex + 1) + " completed: " + result.substring(0, Math.min(result.length(), 50)) + "..."); // Truncate result for log
                     }
+                    int doneCount = completedTasks.incrementAndGet();
+                    // Display overall progress instead of appending every result
+                    SwingUtilities.invokeLater(() -> {
+                        if (!batch.isDone()) {
+                            aiResultArea.setText("Running batch AI analysis... " + doneCount + "/" + numberOfTasks + " tasks completed.");
+                        }
+                    });
                 });
             }
+            aiTask.start(batch, (ignored, ex) -> {
+                long totalTimeSeconds = (System.currentTimeMillis() - startTimeMillis) / 1000;
+                aiResultArea.setText("Batch run completed!\n" + numberOfTasks + " tasks finished in " + totalTimeSeconds + " seconds."
+                        + (ex != null ? "\nSome tasks failed: " + ex.getMessage() : ""));
+                aiStopButton.setEnabled(false);
+                setAIButtonsEnabled(true);
+            });
         });
 
         // Personal Spending Summary Button (from pre, uses ExecutorService)
         aiPersonalSummaryButton.addActionListener(e -> {
-            aiResultArea.setText("--- Generating Personal Spending Summary ---\n\nGenerating summary based on your monthly spending data, please wait...\n");
-            setAIButtonsEnabled(false);
-
-            // Submit task to ExecutorService
-            executorService.submit(() -> { // Use submit
-                String result = aiTransactionService.generatePersonalSummary(currentUser.getTransactionFilePath()); // Call the method
-                SwingUtilities.invokeLater(() -> { // Update UI on EDT
-                    aiResultArea.setText("--- Personal Spending Summary ---\n\n" + result);
-                    setAIButtonsEnabled(true);
-                });
-            });
+            boolean forceRefresh = aiForceRefreshCheckBox.isSelected(); // Read on the EDT
+            streamIntoResultArea("--- Personal Spending Summary ---", listener ->
+                    aiTransactionService.streamReport(AITransactionService.Report.PERSONAL_SUMMARY,
+                            currentUser.getTransactionFilePath(), forceRefresh, listener));
         });
 
         // Savings Goal Suggestions Button (from pre, uses ExecutorService)
         aiSavingsGoalsButton.addActionListener(e -> {
-            aiResultArea.setText("--- Generating Savings Goal Suggestions ---\n\nGenerating savings goal suggestions based on your income and expenses, please wait...\n");
-            setAIButtonsEnabled(false);
-
-            // Submit task to ExecutorService
-            executorService.submit(() -> { // Use submit
-                String result = aiTransactionService.suggestSavingsGoals(currentUser.getTransactionFilePath()); // Call the method
-                SwingUtilities.invokeLater(() -> { // Update UI on EDT
-                    aiResultArea.setText("--- Savings Goal Suggestions ---\n\n" + result);
-                    setAIButtonsEnabled(true);
-                });
-            });
+            boolean forceRefresh = aiForceRefreshCheckBox.isSelected(); // Read on the EDT
+            streamIntoResultArea("--- Savings Goal Suggestions ---", listener ->
+                    aiTransactionService.streamReport(AITransactionService.Report.SAVINGS_GOALS,
+                            currentUser.getTransactionFilePath(), forceRefresh, listener));
         });
 
         // Personalized Saving Tips Button (from pre, uses ExecutorService)
         aiPersonalSavingTipsButton.addActionListener(e -> {
-            aiResultArea.setText("--- Generating Personalized Saving Tips ---\n\nGenerating saving tips based on your spending categories, please wait...\n");
-            setAIButtonsEnabled(false);
-
-            // Submit task to ExecutorService
-            executorService.submit(() -> { // Use submit
-                String result = aiTransactionService.givePersonalSavingTips(currentUser.getTransactionFilePath()); // Call the method
-                SwingUtilities.invokeLater(() -> { // Update UI on EDT
-                    aiResultArea.setText("--- Personalized Saving Tips ---\n\n" + result);
-                    setAIButtonsEnabled(true);
-                });
-            });
+            boolean forceRefresh = aiForceRefreshCheckBox.isSelected(); // Read on the EDT
+            streamIntoResultArea("--- Personalized Saving Tips ---", listener ->
+                    aiTransactionService.streamReport(AITransactionService.Report.PERSONAL_SAVING_TIPS,
+                            currentUser.getTransactionFilePath(), forceRefresh, listener));
         });
 
         // General Analysis Button (from pre, uses ExecutorService)
@@ -1293,17 +1368,10 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
                 JOptionPane.showMessageDialog(this, "Please enter at least the start time for the analysis.", "Input Tip", JOptionPane.INFORMATION_MESSAGE);
                 return;
             }
-            aiResultArea.setText("--- Generating General Analysis ---\n\n" + "Performing AI general analysis, please wait...\n");
-            setAIButtonsEnabled(false);
-
-            // Submit task to ExecutorService
-            executorService.submit(() -> { // Use submit
-                String result = aiTransactionService.analyzeTransactions(userRequest, currentUser.getTransactionFilePath(), startTimeStr, endTimeStr);
-                SwingUtilities.invokeLater(() -> { // Update UI on EDT
-                    aiResultArea.setText("--- General Analysis Result ---\n\n" + result);
-                    setAIButtonsEnabled(true);
-                });
-            });
+            boolean forceRefresh = aiForceRefreshCheckBox.isSelected(); // Read on the EDT
+            streamIntoResultArea("--- General Analysis Result ---", listener ->
+                    aiTransactionService.streamAnalyzeTransactions(userRequest, currentUser.getTransactionFilePath(),
+                            startTimeStr, endTimeStr, forceRefresh, listener));
         });
 
         // College Student Budget Button (from pre, uses ExecutorService)
@@ -1311,29 +1379,26 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
             aiResultArea.setText("--- Generating Student Budget Suggestion ---\n\nGenerating budget suggestion based on your historical spending, please wait...\n");
             setAIButtonsEnabled(false);
 
-            // Submit task to ExecutorService
-            executorService.submit(() -> { // Use submit
+            aiStopButton.setEnabled(true);
+
+            // Run on the AI executor; the result arrives on the EDT unless Stop was pressed
+            aiTask.start(collegeStudentNeeds.generateBudgetAsync(currentUser.getTransactionFilePath()), (budgetRange, ex) -> {
                 String resultMessage;
-                try {
-                    double[] budgetRange = collegeStudentNeeds.generateBudget(currentUser.getTransactionFilePath());
-                    if (budgetRange != null && budgetRange.length == 2 && budgetRange[0] != -1) {
-                        resultMessage = String.format("Based on your spending records, the recommended budget range for next week is: [%.2f CNY, %.2f CNY]", budgetRange[0], budgetRange[1]);
-                    } else if (budgetRange != null && budgetRange.length == 2 && budgetRange[0] == -1) {
-                        resultMessage = "Not enough spending records to calculate weekly budget suggestions.";
-                    } else {
-                        resultMessage = "Failed to generate budget suggestion, AI did not return a valid range.";
-                        System.err.println("AI Budget generation failed, invalid response format.");
-                    }
-                } catch (Exception ex) {
+                if (ex != null) {
                     resultMessage = "Failed to generate budget suggestion!\n" + ex.getMessage();
                     System.err.println("Error generating AI budget:");
                     ex.printStackTrace();
+                } else if (budgetRange != null && budgetRange.length == 2 && budgetRange[0] != -1) {
+                    resultMessage = String.format("Based on your spending records, the recommended budget range for next week is: [%.2f CNY, %.2f CNY]", budgetRange[0], budgetRange[1]);
+                } else if (budgetRange != null && budgetRange.length == 2 && budgetRange[0] == -1) {
+                    resultMessage = "Not enough spending records to calculate weekly budget suggestions.";
+                } else {
+                    resultMessage = "Failed to generate budget suggestion, AI did not return a valid range.";
+                    System.err.println("AI Budget generation failed, invalid response format.");
                 }
-                String finalResultMessage = resultMessage;
-                SwingUtilities.invokeLater(() -> { // Update UI on EDT
-                    aiResultArea.setText("--- Student Budget Suggestion ---\n\n" + finalResultMessage);
-                    setAIButtonsEnabled(true);
-                });
+                aiResultArea.setText("--- Student Budget Suggestion ---\n\n" + resultMessage);
+                aiStopButton.setEnabled(false);
+                setAIButtonsEnabled(true);
             });
         });
 
@@ -1342,27 +1407,105 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
             aiResultArea.setText("--- Generating Student Saving Tips ---\n\nGenerating saving tips, please wait...\n");
             setAIButtonsEnabled(false);
 
-            // Submit task to ExecutorService
-            executorService.submit(() -> { // Use submit
-                String resultMessage;
-                try {
-                    resultMessage = collegeStudentNeeds.generateTipsForSaving(currentUser.getTransactionFilePath());
-                } catch (Exception ex) {
+            aiStopButton.setEnabled(true);
+
+            // Run on the AI executor; the result arrives on the EDT unless Stop was pressed
+            aiTask.start(collegeStudentNeeds.generateTipsForSavingAsync(currentUser.getTransactionFilePath()), (tips, ex) -> {
+                String resultMessage = tips;
+                if (ex != null) {
                     resultMessage = "Failed to generate saving tips!\n" + ex.getMessage();
                     System.err.println("Error generating AI tips:");
                     ex.printStackTrace();
                 }
-                String finalResultMessage = resultMessage;
-                SwingUtilities.invokeLater(() -> { // Update UI on EDT
-                    aiResultArea.setText("--- Student Saving Tips ---\n\n" + finalResultMessage);
-                    setAIButtonsEnabled(true);
-                });
+                aiResultArea.setText("--- Student Saving Tips ---\n\n" + resultMessage);
+                aiStopButton.setEnabled(false);
+                setAIButtonsEnabled(true);
             });
         });
 
         return panel;
     }
 
+    /**
+     * Shows an AI answer in the result area while it is being generated. The request is started on the
+     * AI executor (building the prompt reads the user's data, and the gateway may make it wait for a slot); chunks are appended in batches by a
+     * {@link TextAreaStreamAppender}. The AI buttons stay disabled and "Stop" enabled until the answer is
+     * complete, failed or stopped. Call on the EDT.
+     *
+     * @param heading Shown above the answer.
+     * @param request Starts the streaming request with the given listener.
+     */
+    private void streamIntoResultArea(String heading, Function<AiStreamListener, AiStream> request) {
+        aiResultArea.setText(heading + "\n\n");
+        setAIButtonsEnabled(false);
+        aiStopButton.setEnabled(true);
+        TextAreaStreamAppender appender = new TextAreaStreamAppender(aiResultArea, error -> {
+            if (error != null) {
+                aiResultArea.append("\n\n[AI request failed: " + error.getMessage() + "]");
+            }
+            finishAiStream();
+        });
+        currentAiAppender = appender;
+
+        currentAiStart = AiExecutor.supply(() -> {
+            AiStream stream;
+            try {
+                stream = request.apply(appender);
+            } catch (RuntimeException ex) {
+                System.err.println("MenuUI: Failed to start AI request.");
+                ex.printStackTrace();
+                appender.onError(ex); // Ignored if Stop was pressed meanwhile
+                return null;
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (currentAiAppender == appender) {
+                    currentAiStream = stream; // Still the current request: Stop may cancel it
+                } else {
+                    stream.cancel(); // Stopped before the request was under way
+                }
+            });
+            return stream;
+        });
+    }
+
+    /**
+     * Cancels whatever AI answer the result area is waiting for. Also called when the AI view is left.
+     */
+    private void stopAiWork() {
+        if (aiTask.cancel()) {
+            aiResultArea.append("\n\n[Stopped]");
+            aiStopButton.setEnabled(false);
+            setAIButtonsEnabled(true);
+        }
+        stopAiStream();
+    }
+
+    /**
+     * Cancels the answer being streamed; the text received so far stays visible.
+     */
+    private void stopAiStream() {
+        if (currentAiAppender == null) {
+            return;
+        }
+        currentAiAppender.stop();
+        if (currentAiStart != null) {
+            currentAiStart.cancel(true); // Still building the prompt or waiting for a gateway slot
+        }
+        if (currentAiStream != null) {
+            currentAiStream.cancel();
+        }
+        aiResultArea.append("\n\n[Stopped]");
+        finishAiStream();
+    }
+
+    private void finishAiStream() {
+        currentAiStart = null;
+        currentAiStream = null;
+        currentAiAppender = null;
+        aiStopButton.setEnabled(false);
+        setAIButtonsEnabled(true);
+    }
+
     /**
      * Helper method to enable or disable all AI-related buttons (Updated).
      * Includes the new seasonal and batch buttons.
@@ -1443,13 +1586,13 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
             SwingUtilities.invokeLater(() -> adminStatsArea.setText("Loading existing statistics...\n")); // "Loading existing statistics...\n"
             try {
                 // This loads data from the configured summary file path (likely admin's own or global)
-                List<SummaryStatistic> initialStats = summaryStatisticService.getAllSummaryStatistics(); // Call the method
+                List<SummaryStatistic> initialStats = summaryStatisticService.getRecentSummaryStatistics(ADMIN_STATS_WINDOW_WEEKS); // Only the visible window
                 System.out.println("Initial Admin Stats load task finished. Found " + initialStats.size() + " stats.");
                 if (!initialStats.isEmpty()) {
                     // If initial stats exist, trigger display (which submits another EDT task)
                     SwingUtilities.invokeLater(this::displaySummaryStatistics); // This triggers display using the loaded data (indirectly)
                 } else {
-                    SwingUtilities.invokeLater(() -> adminStatsArea.setText("No existing summary statistics found.\nPlease click the 'Generate/Update Statistics' button to generate them.")); // "No existing summary statistics found.\nPlease click the 'Generate/Update Statistics' button to generate them."
+                    SwingUtilities.invokeLater(() -> adminStatsArea.setText("No summary statistics found for the last " + ADMIN_STATS_WINDOW_WEEKS + " weeks.\nPlease click the 'Generate/Update Statistics' button to generate them."));
                 }
             } catch (IOException ex) {
                 System.err.println("Initial Admin Stats load task failed: " + ex.getMessage());
@@ -1472,11 +1615,11 @@ public class MenuUI extends JPanel { // Extend JPanel for easier use in Main (op
             String displayContent;
             try {
                 // This loads data from the configured summary file path (likely admin's own or global)
-                List<SummaryStatistic> stats = summaryStatisticService.getAllSummaryStatistics(); // Call the method
+                List<SummaryStatistic> stats = new ArrayList<>(summaryStatisticService.getRecentSummaryStatistics(ADMIN_STATS_WINDOW_WEEKS)); // Only the visible window
                 if (stats.isEmpty()) {
-                    displayContent = "No summary statistics currently available.\nPlease click the 'Generate/Update Statistics' button first."; // "No summary statistics currently available.\nPlease click the 'Generate/Update Statistics' button first."
+                    displayContent = "No summary statistics available for the last " + ADMIN_STATS_WINDOW_WEEKS + " weeks.\nPlease click the 'Generate/Update Statistics' button first.";
                 } else {
-                    StringBuilder sb = new StringBuilder("===== Summary Statistics =====\n\n"); // "===== Summary Statistics =====\n\n"
+                    StringBuilder sb = new StringBuilder("===== Summary Statistics (last " + ADMIN_STATS_WINDOW_WEEKS + " weeks) =====\n\n");
                     // Sort stats by week identifier (from pre)
                     stats.sort(Comparator.comparing(SummaryStatistic::getWeekIdentifier));
                     // Display in reverse chronological order (latest first) (from pre)
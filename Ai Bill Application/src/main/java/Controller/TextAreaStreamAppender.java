@@ -0,0 +1,113 @@
+package Controller;
+
+import Service.AIservice.AiStreamListener;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.util.function.Consumer;
+
+/**
+ * Shows a streamed AI answer in a text area without flooding the EDT: chunks arriving on the reader
+ * thread are collected in a buffer, and a Swing timer appends whatever has accumulated every
+ * {@link #FLUSH_INTERVAL_MS} ms (one repaint per interval instead of one per token).
+ */
+public class TextAreaStreamAppender implements AiStreamListener {
+
+    static final int FLUSH_INTERVAL_MS = 50;
+
+    private final JTextArea textArea;
+    private final Consumer<Throwable> onFinished; // Runs on the EDT; null on success
+    private final StringBuilder pending = new StringBuilder(); // Guarded by itself
+    private final Timer timer;
+    private boolean started; // EDT only
+    private boolean finished; // EDT only
+    private int updateCount; // EDT only
+
+    /**
+     * @param textArea Receives the text; it should already hold any header to show above the answer.
+     * @param onFinished Called on the EDT once the answer is complete (null) or failed (the error);
+     *                   not called if the stream is cancelled.
+     */
+    public TextAreaStreamAppender(JTextArea textArea, Consumer<Throwable> onFinished) {
+        this.textArea = textArea;
+        this.onFinished = onFinished;
+        this.timer = new Timer(FLUSH_INTERVAL_MS, e -> flush());
+        this.timer.setCoalesce(true);
+    }
+
+    @Override
+    public void onChunk(String text) {
+        boolean first;
+        synchronized (pending) {
+            first = pending.length() == 0;
+            pending.append(text);
+        }
+        if (first) {
+            SwingUtilities.invokeLater(this::startTimer);
+        }
+    }
+
+    @Override
+    public void onComplete(String fullText) {
+        SwingUtilities.invokeLater(() -> finish(null));
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        SwingUtilities.invokeLater(() -> finish(error));
+    }
+
+    /**
+     * Shows the text received so far and stops appending (e.g. when the stream is cancelled). Call on the EDT.
+     */
+    public void stop() {
+        flush();
+        finished = true;
+        timer.stop();
+    }
+
+    /**
+     * @return How many times text was appended to the area (for tests).
+     */
+    int getUpdateCount() {
+        return updateCount;
+    }
+
+    private void startTimer() {
+        if (!started && !finished) {
+            started = true;
+            flush(); // Show the first words right away
+            timer.start();
+        }
+    }
+
+    private void flush() {
+        if (finished) {
+            return;
+        }
+        String text;
+        synchronized (pending) {
+            if (pending.length() == 0) {
+                return;
+            }
+            text = pending.toString();
+            pending.setLength(0);
+        }
+        textArea.append(text);
+        textArea.setCaretPosition(textArea.getDocument().getLength());
+        updateCount++;
+    }
+
+    private void finish(Throwable error) {
+        if (finished) {
+            return;
+        }
+        flush();
+        finished = true;
+        timer.stop();
+        if (onFinished != null) {
+            onFinished.accept(error);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package DAO.Impl;
+
+import DAO.StatementFormat;
+import model.Transaction;
+import org.apache.commons.csv.CSVRecord;
+
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+/**
+ * {@link StatementFormat} described by a table: which header names feed which Transaction field, which
+ * columns must be present, and how values are converted. The built-in formats are set up in
+ * {@link StatementFormats}.
+ *
+ * {@link #compile} resolves the header into one column index and one converter per field, so mapping a
+ * row is plain array access with no header-name lookups.
+ *
+ * A record too short to hold every mapped column (e.g. a row torn by a crash mid-write) is rejected, so
+ * the reader skips it instead of loading a row of empty fields. Defaults only stand in for columns the
+ * header does not have and for empty cells.
+ *
+ * If the header has no In/Out column and the format sets no default for it, the direction comes from the
+ * debit/credit columns or, failing that, from the sign of the amount (negative = Expense); the stored
+ * amount is then positive.
+ */
+public final class ColumnMappedFormat implements StatementFormat {
+
+    /**
+     * Values a format can read. DEBIT/CREDIT are separate withdrawal/deposit amount columns of bank statements.
+     */
+    public enum Field {
+        TIME, TYPE, COUNTERPARTY, COMMODITY, IN_OUT, AMOUNT, PAYMENT_METHOD, STATUS, ORDER_NUMBER,
+        MERCHANT_NUMBER, REMARKS, DEBIT, CREDIT
+    }
+
+    private static final Field[] FIELDS = Field.values();
+
+    private final String name;
+    private final Map<String, Field> columns; // Normalized header name -> field
+    private final Set<Field> required;
+    private final EnumMap<Field, UnaryOperator<String>> converters;
+    private final EnumMap<Field, String> defaults;
+
+    private ColumnMappedFormat(Builder builder) {
+        this.name = builder.name;
+        this.columns = Map.copyOf(builder.columns);
+        this.required = Set.copyOf(builder.required);
+        this.converters = new EnumMap<>(builder.converters);
+        this.defaults = new EnumMap<>(builder.defaults);
+    }
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int match(List<String> normalizedHeader) {
+        Set<Field> found = EnumSet.noneOf(Field.class);
+        int recognised = 0;
+        for (String cell : normalizedHeader) {
+            Field field = columns.get(cell);
+            if (field != null) {
+                found.add(field);
+                recognised++;
+            }
+        }
+        return found.containsAll(required) ? recognised : 0;
+    }
+
+    @Override
+    public RowMapper compile(List<String> normalizedHeader) {
+        int[] index = new int[FIELDS.length];
+        Arrays.fill(index, -1);
+        int lastMapped = -1;
+        for (int i = 0; i < normalizedHeader.size(); i++) {
+            Field field = columns.get(normalizedHeader.get(i));
+            if (field != null && index[field.ordinal()] < 0) { // First matching column wins
+                index[field.ordinal()] = i;
+                lastMapped = i;
+            }
+        }
+        int minValues = lastMapped + 1;
+        UnaryOperator<String>[] convert = compiledConverters();
+        String[] fallback = new String[FIELDS.length];
+        for (Field field : FIELDS) {
+            fallback[field.ordinal()] = defaults.getOrDefault(field, "");
+        }
+        boolean hasInOut = index[Field.IN_OUT.ordinal()] >= 0 || !fallback[Field.IN_OUT.ordinal()].isEmpty();
+        boolean hasDebitCredit = index[Field.DEBIT.ordinal()] >= 0 || index[Field.CREDIT.ordinal()] >= 0;
+
+        return record -> {
+            if (record.size() < minValues) {
+                // Short or torn row: mapped columns are missing, not empty
+                throw new IllegalArgumentException("Record has " + record.size() + " values, the header maps "
+                        + minValues + " columns");
+            }
+            String[] v = new String[FIELDS.length];
+            for (int f = 0; f < FIELDS.length; f++) {
+                int i = index[f];
+                String raw = i >= 0 ? record.get(i).trim() : "";
+                String value = convert[f] != null ? convert[f].apply(raw) : raw;
+                v[f] = value.isEmpty() ? fallback[f] : value;
+            }
+
+            String inOut = v[Field.IN_OUT.ordinal()];
+            double amount;
+            if (!hasInOut && hasDebitCredit) {
+                double debit = parseAmount(v[Field.DEBIT.ordinal()], record);
+                double credit = parseAmount(v[Field.CREDIT.ordinal()], record);
+                amount = debit != 0 ? Math.abs(debit) : Math.abs(credit);
+                inOut = debit != 0 ? "Expense" : "Income";
+            } else {
+                amount = parseAmount(v[Field.AMOUNT.ordinal()], record);
+                if (!hasInOut) {
+                    inOut = amount < 0 ? "Expense" : "Income";
+                    amount = Math.abs(amount);
+                }
+            }
+
+            return new Transaction(
+                    v[Field.TIME.ordinal()],
+                    v[Field.TYPE.ordinal()],
+                    v[Field.COUNTERPARTY.ordinal()],
+                    v[Field.COMMODITY.ordinal()],
+                    inOut,
+                    amount,
+                    v[Field.PAYMENT_METHOD.ordinal()],
+                    v[Field.STATUS.ordinal()],
+                    v[Field.ORDER_NUMBER.ordinal()],
+                    v[Field.MERCHANT_NUMBER.ordinal()],
+                    v[Field.REMARKS.ordinal()]);
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private UnaryOperator<String>[] compiledConverters() {
+        UnaryOperator<String>[] convert = new UnaryOperator[FIELDS.length];
+        converters.forEach((field, converter) -> convert[field.ordinal()] = converter);
+        return convert;
+    }
+
+    /**
+     * Parses an amount such as "¥1,234.50", "￥4.00" or "-12.3". Unparseable amounts are logged and read as 0.
+     */
+    static double parseAmount(String value, CSVRecord record) {
+        if (value.isEmpty()) {
+            return 0.0;
+        }
+        String s = value;
+        if (s.startsWith("¥") || s.startsWith("￥") || s.startsWith("$")) { // Allow for currency symbols (full-width in GBK exports)
+            s = s.substring(1);
+        }
+        s = s.replace(",", "").trim();
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            System.err.println("Warning: Could not parse payment amount '" + value + "' at line " + record.getRecordNumber());
+            return 0.0;
+        }
+    }
+
+    /**
+     * Builder for the mapping table.
+     */
+    public static final class Builder {
+        private final String name;
+        private final Map<String, Field> columns = new HashMap<>();
+        private final Set<Field> required = EnumSet.noneOf(Field.class);
+        private final EnumMap<Field, UnaryOperator<String>> converters = new EnumMap<>(Field.class);
+        private final EnumMap<Field, String> defaults = new EnumMap<>(Field.class);
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Header names (any spelling {@link StatementFormats#normalizeHeader} folds together) that feed the field.
+         */
+        public Builder column(Field field, String... headerNames) {
+            for (String headerName : headerNames) {
+                columns.put(StatementFormats.normalizeHeader(headerName), field);
+            }
+            return this;
+        }
+
+        /**
+         * Header names like {@link #column}; the header is only of this format if one of them is present.
+         */
+        public Builder requiredColumn(Field field, String... headerNames) {
+            required.add(field);
+            return column(field, headerNames);
+        }
+
+        public Builder converter(Field field, UnaryOperator<String> converter) {
+            converters.put(field, converter);
+            return this;
+        }
+
+        /**
+         * Value used when the column is missing or the cell is empty (after conversion).
+         */
+        public Builder defaultValue(Field field, String value) {
+            defaults.put(field, value);
+            return this;
+        }
+
+        public ColumnMappedFormat build() {
+            return new ColumnMappedFormat(this);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package DAO.Impl;
 
 import DAO.SummaryStatisticDao;
+import Utils.FileFingerprint;
 import model.SummaryStatistic;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -9,16 +10,48 @@ import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.io.input.BOMInputStream;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Weekly summary statistics in a CSV file.
+ *
+ * Besides whole-file reads and rewrites, single weeks can be upserted: the new row is appended and a
+ * per-file index (week identifier -> byte range of the week's latest row) is updated, so storing the current
+ * week does not rewrite the history. A file can therefore hold superseded rows for a week; the last one
+ * wins. Once superseded rows outnumber live ones, the next upsert compacts the file (one atomic rewrite,
+ * sorted by week). Range reads use the index to read only the rows of the requested weeks.
+ *
+ * The index is built by one scan of the file and kept as long as the file's size and mtime are unchanged.
+ */
 public class CsvSummaryStatisticDao implements SummaryStatisticDao {
 
+    // Compaction is not worth it for a handful of superseded rows
+    private static final int COMPACT_MIN_SUPERSEDED = 16;
+
+    /**
+     * Where each week's current row is in one summary file.
+     */
+    private static final class WeekIndex {
+        String[] header; // null: file missing or empty
+        final TreeMap<String, long[]> rows = new TreeMap<>(); // week -> {start, end} byte offsets of its latest row
+        int rowCount; // All data rows in the file, including superseded ones
+        FileFingerprint fingerprint;
+    }
+
+    private final ConcurrentHashMap<String, WeekIndex> indexes = new ConcurrentHashMap<>();
+
     // Define the header for the summary statistics CSV
     private static final String[] HEADERS = {
             "week_identifier", "total_income_all_users", "total_expense_all_users",
@@ -28,12 +61,12 @@ public class CsvSummaryStatisticDao implements SummaryStatisticDao {
 
     @Override
     public List<SummaryStatistic> loadAllStatistics(String filePath) throws IOException {
-        List<SummaryStatistic> statistics = new ArrayList<>();
+        Map<String, SummaryStatistic> statistics = new LinkedHashMap<>(); // Week -> its last row (upserts append)
         Path path = Paths.get(filePath);
 
         if (!Files.exists(path) || Files.size(path) == 0) {
             System.out.println("Summary statistics CSV file not found or is empty: " + filePath);
-            return statistics;
+            return new ArrayList<>();
         }
 
         try (Reader reader = new InputStreamReader(
@@ -58,7 +91,7 @@ public class CsvSummaryStatisticDao implements SummaryStatisticDao {
                     try {
                         SummaryStatistic stat = parseRecord(record);
                         if (stat != null) { // parseRecord might return null on error
-                            statistics.add(stat);
+                            statistics.put(stat.getWeekIdentifier(), stat);
                         }
                     } catch (Exception e) {
                         System.err.println("Skipping malformed summary statistic record at line " + record.getRecordNumber() + ": " + record.toString());
@@ -72,7 +105,7 @@ public class CsvSummaryStatisticDao implements SummaryStatisticDao {
             throw e;
         }
         System.out.println("Successfully loaded " + statistics.size() + " summary statistics from " + filePath);
-        return statistics;
+        return new ArrayList<>(statistics.values());
     }
 
     // Helper to parse a single CSV record into a SummaryStatistic object
@@ -156,6 +189,7 @@ public class CsvSummaryStatisticDao implements SummaryStatisticDao {
         // Atomic replacement
         try {
             Files.move(tempFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            indexes.remove(indexKey(filePath)); // Offsets are stale; rebuilt on the next keyed access
             System.out.println("Atomically replaced " + filePath + " with updated summary statistics.");
         } catch (IOException e) {
             System.err.println("Failed to atomically replace original summary file: " + targetFile.toPath());
@@ -164,4 +198,207 @@ public class CsvSummaryStatisticDao implements SummaryStatisticDao {
             throw e; // Re-throw
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public synchronized void upsertStatistics(String filePath, List<SummaryStatistic> statistics) throws IOException {
+        if (statistics.isEmpty()) {
+            return;
+        }
+        Path path = Paths.get(filePath);
+        WeekIndex index = index(path);
+        if (index.header == null || !Arrays.equals(index.header, HEADERS)) {
+            // New file, or columns in another order (edited by hand): merge and rewrite once
+            Map<String, SummaryStatistic> merged = new TreeMap<>();
+            for (SummaryStatistic stat : loadAllStatistics(filePath)) {
+                merged.put(stat.getWeekIdentifier(), stat);
+            }
+            for (SummaryStatistic stat : statistics) {
+                merged.put(stat.getWeekIdentifier(), stat);
+            }
+            writeAllStatistics(filePath, new ArrayList<>(merged.values()));
+            return;
+        }
+
+        // Append the new rows, remembering where each one starts and ends
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long position = Files.size(path);
+        if (!endsWithLineBreak(path)) {
+            bytes.write('\r');
+            bytes.write('\n');
+            position += 2;
+        }
+        Map<String, long[]> appended = new LinkedHashMap<>();
+        for (SummaryStatistic stat : statistics) {
+            byte[] row = formatRow(stat).getBytes(StandardCharsets.UTF_8);
+            bytes.write(row);
+            bytes.write('\r');
+            bytes.write('\n');
+            appended.put(stat.getWeekIdentifier(), new long[]{position, position + row.length});
+            position += row.length + 2;
+        }
+        try {
+            Files.write(path, bytes.toByteArray(), StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            indexes.remove(indexKey(filePath)); // A partial append is found by the next scan
+            System.err.println("Error appending summary statistics to CSV: " + filePath);
+            e.printStackTrace();
+            throw e;
+        }
+        index.rows.putAll(appended);
+        index.rowCount += appended.size();
+        index.fingerprint = FileFingerprint.stat(path);
+        System.out.println("Upserted " + appended.size() + " week(s) in " + filePath);
+
+        int superseded = index.rowCount - index.rows.size();
+        if (superseded > Math.max(COMPACT_MIN_SUPERSEDED, index.rows.size())) {
+            System.out.println("Compacting " + filePath + " (" + superseded + " superseded rows)");
+            writeAllStatistics(filePath, loadStatisticsBetween(filePath, null, null));
+        }
+    }
+
+    @Override
+    public synchronized List<SummaryStatistic> loadStatisticsBetween(String filePath, String fromWeek, String toWeek) throws IOException {
+        Path path = Paths.get(filePath);
+        WeekIndex index = index(path);
+        List<SummaryStatistic> statistics = new ArrayList<>();
+        if (index.header == null) {
+            return statistics;
+        }
+        NavigableMap<String, long[]> window = index.rows;
+        if (fromWeek != null) {
+            window = window.tailMap(fromWeek, true);
+        }
+        if (toWeek != null) {
+            window = window.headMap(toWeek, true);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (long[] range : window.values()) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) (range[1] - range[0]));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, range[0] + buffer.position()) < 0) {
+                        throw new EOFException("Summary statistics file shrank while reading: " + filePath);
+                    }
+                }
+                SummaryStatistic stat = parseRow(index.header, new String(buffer.array(), StandardCharsets.UTF_8));
+                if (stat != null) {
+                    statistics.add(stat);
+                }
+            }
+        }
+        return statistics;
+    }
+
+    private static String indexKey(String filePath) {
+        return Paths.get(filePath).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * The file's index, rebuilt if the file was changed by someone else since it was last seen.
+     */
+    private WeekIndex index(Path path) throws IOException {
+        String key = indexKey(path.toString());
+        FileFingerprint current = FileFingerprint.stat(path);
+        WeekIndex index = indexes.get(key);
+        if (index == null || !index.fingerprint.sameStat(current)) {
+            index = buildIndex(path, current);
+            indexes.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Scans the file once, recording the byte range of each week's last row.
+     */
+    private WeekIndex buildIndex(Path path, FileFingerprint fingerprint) throws IOException {
+        WeekIndex index = new WeekIndex();
+        index.fingerprint = fingerprint;
+        if (fingerprint.getSize() <= 0) {
+            return index;
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        int offset = bytes.length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF ? 3 : 0;
+        int rowStart = offset;
+        boolean inQuotes = false;
+        for (int i = offset; i <= bytes.length; i++) {
+            if (i < bytes.length) {
+                if (bytes[i] == '"') {
+                    inQuotes = !inQuotes; // A quoted field may contain line breaks
+                }
+                if (bytes[i] != '\n' || inQuotes) {
+                    continue;
+                }
+            }
+            int rowEnd = i > rowStart && bytes[i - 1] == '\r' ? i - 1 : i;
+            if (rowEnd > rowStart) {
+                String row = new String(bytes, rowStart, rowEnd - rowStart, StandardCharsets.UTF_8);
+                if (index.header == null) {
+                    index.header = parseHeader(row);
+                } else {
+                    SummaryStatistic stat = parseRow(index.header, row);
+                    if (stat != null) {
+                        index.rows.put(stat.getWeekIdentifier(), new long[]{rowStart, rowEnd});
+                        index.rowCount++;
+                    }
+                }
+            }
+            rowStart = i + 1;
+        }
+        if (index.header != null && !Arrays.asList(index.header).containsAll(List.of(HEADERS))) {
+            throw new IOException("Missing required headers in summary statistics CSV file: " + List.of(HEADERS) +
+                    " Found: " + Arrays.toString(index.header));
+        }
+        return index;
+    }
+
+    private static String[] parseHeader(String row) throws IOException {
+        try (CSVParser csvParser = new CSVParser(new StringReader(row), CSVFormat.DEFAULT.withTrim(true))) {
+            Iterator<CSVRecord> records = csvParser.iterator();
+            if (!records.hasNext()) {
+                return null;
+            }
+            List<String> names = new ArrayList<>();
+            for (String name : records.next()) {
+                names.add(name.trim().toLowerCase());
+            }
+            return names.toArray(new String[0]);
+        }
+    }
+
+    private SummaryStatistic parseRow(String[] header, String row) {
+        try (CSVParser csvParser = new CSVParser(new StringReader(row), CSVFormat.DEFAULT.withHeader(header).withIgnoreHeaderCase(true).withTrim(true))) {
+            Iterator<CSVRecord> records = csvParser.iterator();
+            return records.hasNext() ? parseRecord(records.next()) : null;
+        } catch (Exception e) {
+            System.err.println("Skipping malformed summary statistic row: " + row);
+            return null;
+        }
+    }
+
+    private static String formatRow(SummaryStatistic stat) throws IOException {
+        StringWriter out = new StringWriter();
+        try (CSVPrinter csvPrinter = new CSVPrinter(out, CSVFormat.DEFAULT.withTrim())) {
+            csvPrinter.printRecord(
+                    stat.getWeekIdentifier(),
+                    stat.getTotalIncomeAllUsers(),
+                    stat.getTotalExpenseAllUsers(),
+                    stat.getTopExpenseCategory(),
+                    stat.getTopExpenseCategoryAmount(),
+                    stat.getNumberOfUsersWithTransactions(),
+                    stat.getTimestampGenerated()
+            );
+        }
+        String row = out.toString();
+        return row.endsWith("\r\n") ? row.substring(0, row.length() - 2) : row.trim();
+    }
+
+    private static boolean endsWithLineBreak(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            if (file.length() == 0) {
+                return true;
+            }
+            file.seek(file.length() - 1);
+            int last = file.read();
+            return last == '\n' || last == '\r';
+        }
+    }
+}
@@ -1,66 +1,124 @@
 package DAO.Impl; // Changed package
 
 import Constants.ConfigConstants;
+import DAO.StatementFormat;
 import DAO.TransactionDao; // Implement the interface
+import Utils.CharsetSniffer;
+import Utils.Metrics;
+import Utils.StatementReader;
 import model.Transaction;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.io.input.BOMInputStream;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional; // Using Optional for getTransactionByOrderNumber
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 
 public class CsvTransactionDao implements TransactionDao { // Implement TransactionDao interface
 
+    // File operations run under a Metrics timer (see timed)
+    @FunctionalInterface
+    private interface IoCall<T> {
+        T call() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    /**
+     * Runs a file operation under its {@link Metrics} timer; a failure is counted as an error and rethrown.
+     */
+    private static <T> T timed(String operation, IoCall<T> call) throws IOException {
+        Metrics.Timer timer = Metrics.startTimer(operation);
+        try {
+            return call.call();
+        } catch (IOException | RuntimeException e) {
+            timer.failed();
+            throw e;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private static void timed(String operation, IoAction action) throws IOException {
+        timed(operation, () -> {
+            action.run();
+            return null;
+        });
+    }
+
     @Override
     public List<Transaction> loadFromCSV(String filePath) throws IOException {
+        return timed("dao.transactions.load", () -> readCSV(filePath));
+    }
+
+    private List<Transaction> readCSV(String filePath) throws IOException {
         List<Transaction> transactions = new ArrayList<>();
+        forEachFromCSV(filePath, transactions::add);
+        return transactions;
+    }
+
+    @Override
+    public int forEachFromCSV(String filePath, Consumer<Transaction> action) throws IOException {
         Path path = Paths.get(filePath);
 
         if (!Files.exists(path) || Files.size(path) == 0) {
             System.out.println("CSV file not found or is empty: " + filePath);
-            return transactions;
+            return 0;
         }
 
-        try (Reader reader = new InputStreamReader(
-                new BOMInputStream(Files.newInputStream(path)),
-                StandardCharsets.UTF_8)) {
+        int count = 0;
+        // Encoding is sniffed (UTF-8 or GBK/GB18030 payment-app exports) and decoded on the fly; statement
+        // preambles and footers are dropped by StatementReader, in the same pass
+        try (Reader reader = new StatementReader(CharsetSniffer.newReader(Files.newInputStream(path)), StatementFormats::isHeader)) {
 
-            CSVFormat format = CSVFormat.DEFAULT
-                    .withFirstRecordAsHeader()
-                    .withIgnoreHeaderCase(true)
-                    .withTrim(true);
+            // No header handling in the parser: the first record is the header and picks the format adapter
+            CSVFormat format = CSVFormat.DEFAULT.withTrim(true);
 
             try (CSVParser csvParser = new CSVParser(reader, format)) {
-                // Define expected English headers
-                List<String> requiredHeaders = List.of(
-                        "Transaction Time", "Transaction Type", "Counterparty", "Commodity", "In/Out", "Amount(CNY)",
-                        "Payment Method", "Current Status", "Order Number", "Merchant Number", "Remarks"
-                );
-
-                Map<String, Integer> headerMap = csvParser.getHeaderMap();
-                if (headerMap == null || !headerMap.keySet().containsAll(requiredHeaders)) {
-                    throw new IOException("Missing required headers in CSV file. Expected: " + requiredHeaders +
-                            " Found: " + (headerMap == null ? "No headers found by parser" : headerMap.keySet()));
-                }
-                System.out.println("Successfully identified headers: " + headerMap.keySet() + " in file: " + filePath);
+                StatementFormat.RowMapper mapper = null;
 
+                // Records are parsed one at a time and handed on; nothing is collected here
                 for (CSVRecord record : csvParser) {
+                    if (mapper == null) {
+                        List<String> header = new ArrayList<>(record.size());
+                        for (int i = 0; i < record.size(); i++) {
+                            header.add(record.get(i));
+                        }
+                        StatementFormats.Compiled compiled = StatementFormats.forHeader(header);
+                        if (compiled == null) {
+                            throw new IOException("Missing required headers in CSV file. Expected: " + StatementFormats.NATIVE_HEADERS +
+                                    " (or a WeChat Pay, Alipay or bank statement) Found: " + header);
+                        }
+                        System.out.println("Successfully identified " + compiled.getFormat().getName() + " headers: " + header + " in file: " + filePath);
+                        mapper = compiled.getMapper();
+                        continue;
+                    }
+                    Transaction transaction;
                     try {
-                        transactions.add(parseRecord(record));
+                        transaction = mapper.map(record);
                     } catch (Exception e) {
                         System.err.println("Skipping malformed record at line " + record.getRecordNumber() + ": " + record.toString());
                         e.printStackTrace();
+                        continue;
                     }
+                    action.accept(transaction);
+                    count++;
+                }
+                if (mapper == null) {
+                    throw new IOException("Missing required headers in CSV file. Expected: " + StatementFormats.NATIVE_HEADERS +
+                            " Found: No headers found by parser");
                 }
             }
         } catch (IOException e) {
@@ -68,48 +126,8 @@ public class CsvTransactionDao implements TransactionDao { // Implement Transact
             e.printStackTrace();
             throw e;
         }
-        System.out.println("Successfully loaded " + transactions.size() + " records from " + filePath);
-        return transactions;
-    }
-
-    private Transaction parseRecord(CSVRecord record) {
-        // Now using English header names to get values from the record
-        String amountStr = record.get("Amount(CNY)").trim();
-        double paymentAmount = 0.0;
-        try {
-            if (amountStr.startsWith("¥") || amountStr.startsWith("$")) { // Allow for currency symbols
-                amountStr = amountStr.substring(1);
-            }
-            paymentAmount = Double.parseDouble(amountStr);
-        } catch (NumberFormatException e) {
-            System.err.println("Warning: Could not parse payment amount '" + record.get("Amount(CNY)") + "' at line " + record.getRecordNumber());
-        } catch (IllegalArgumentException e) {
-            System.err.println("Warning: Missing 'Amount(CNY)' column or empty value at line " + record.getRecordNumber());
-        }
-
-        // Expect English values for "In/Out" from CSV or standardize them here if necessary
-        // For now, assuming the CSV provides "Income" or "Expense" directly for "In/Out"
-        String inOut = record.get("In/Out").trim();
-        // Example standardization if CSV might still have Chinese:
-        // if (inOut.equals("收入") || inOut.equals("收")) {
-        //     inOut = "Income";
-        // } else if (inOut.equals("支出") || inOut.equals("支")) {
-        //     inOut = "Expense";
-        // }
-
-        return new Transaction(
-                record.get("Transaction Time").trim(),
-                record.get("Transaction Type").trim(),
-                record.get("Counterparty").trim(),
-                record.get("Commodity").trim(),
-                inOut, // Use the processed/standardized inOut
-                paymentAmount,
-                record.get("Payment Method").trim(),
-                record.get("Current Status").trim(),
-                record.get("Order Number").trim(),
-                record.get("Merchant Number").trim(),
-                record.get("Remarks").trim()
-        );
+        System.out.println("Successfully loaded " + count + " records from " + filePath);
+        return count;
     }
 
     @Override
@@ -119,16 +137,30 @@ public class CsvTransactionDao implements TransactionDao { // Implement Transact
 
     @Override
     public void addTransaction(String filePath, Transaction newTransaction) throws IOException {
+        appendTransactions(filePath, List.of(newTransaction));
+    }
+
+    @Override
+    public void appendTransactions(String filePath, List<Transaction> newTransactions) throws IOException {
+        timed("dao.transactions.append", () -> appendRows(filePath, newTransactions));
+    }
+
+    private void appendRows(String filePath, List<Transaction> newTransactions) throws IOException {
         Path path = Paths.get(filePath);
         if (path.getParent() != null) {
             Files.createDirectories(path.getParent());
         }
         boolean fileExists = Files.exists(path) && Files.size(path) > 0;
+        // Files edited by hand often lack the final line break; without it the first new row would be glued to the last one
+        boolean needsLineBreak = fileExists && !endsWithLineBreak(path);
 
         // Use English headers for writing
         String[] headers = {"Transaction Time", "Transaction Type", "Counterparty", "Commodity", "In/Out", "Amount(CNY)", "Payment Method", "Current Status", "Order Number", "Merchant Number", "Remarks"};
 
         try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (needsLineBreak) {
+                writer.write("\r\n");
+            }
             CSVFormat format;
             if (!fileExists) { // If file did not exist or was empty before this operation
                 format = CSVFormat.DEFAULT.withHeader(headers).withTrim();
@@ -137,21 +169,24 @@ public class CsvTransactionDao implements TransactionDao { // Implement Transact
             }
 
             try (CSVPrinter csvPrinter = new CSVPrinter(writer, format)) {
-                csvPrinter.printRecord(
-                        newTransaction.getTransactionTime(),
-                        newTransaction.getTransactionType(),
-                        newTransaction.getCounterparty(),
-                        newTransaction.getCommodity(),
-                        newTransaction.getInOut(), // Expecting this to be "Income" or "Expense"
-                        String.format("¥%.2f", newTransaction.getPaymentAmount()), // Or use "CNY" prefix if preferred
-                        newTransaction.getPaymentMethod(),
-                        newTransaction.getCurrentStatus(),
-                        newTransaction.getOrderNumber(),
-                        newTransaction.getMerchantNumber(),
-                        newTransaction.getRemarks()
-                );
+                for (Transaction newTransaction : newTransactions) {
+                    csvPrinter.printRecord(
+                            newTransaction.getTransactionTime(),
+                            newTransaction.getTransactionType(),
+                            newTransaction.getCounterparty(),
+                            newTransaction.getCommodity(),
+                            newTransaction.getInOut(), // Expecting this to be "Income" or "Expense"
+                            String.format("¥%.2f", newTransaction.getPaymentAmount()), // Or use "CNY" prefix if preferred
+                            newTransaction.getPaymentMethod(),
+                            newTransaction.getCurrentStatus(),
+                            newTransaction.getOrderNumber(),
+                            newTransaction.getMerchantNumber(),
+                            newTransaction.getRemarks()
+                    );
+                }
             }
-            System.out.println("Added transaction to " + filePath);
+            forceToDisk(path); // A crash must not leave a half-written row behind a completed add
+            System.out.println("Added " + newTransactions.size() + " transaction(s) to " + filePath);
         } catch (IOException e) {
             System.err.println("Error adding transaction to CSV: " + filePath);
             e.printStackTrace();
@@ -159,6 +194,40 @@ public class CsvTransactionDao implements TransactionDao { // Implement Transact
         }
     }
 
+    /**
+     * fsync: waits until the file's content is on the storage device, not just in the OS cache.
+     */
+    private static void forceToDisk(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Makes a rename durable. Not supported on every platform (e.g. Windows), so failures are ignored.
+     */
+    private static void forceDirectory(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort; the rename itself is still atomic
+        }
+    }
+
+    private static boolean endsWithLineBreak(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            if (file.length() == 0) {
+                return true;
+            }
+            file.seek(file.length() - 1);
+            int last = file.read();
+            return last == '\n' || last == '\r';
+        }
+    }
+
     @Override
     public boolean deleteTransaction(String filePath, String orderNumber) throws IOException {
         List<Transaction> allTransactions = loadFromCSV(filePath);
@@ -263,6 +332,10 @@ public class CsvTransactionDao implements TransactionDao { // Implement Transact
 
     @Override
     public void writeTransactionsToCSV(String filePath, List<Transaction> transactions) throws IOException {
+        timed("dao.transactions.write", () -> rewriteCSV(filePath, transactions));
+    }
+
+    private void rewriteCSV(String filePath, List<Transaction> transactions) throws IOException {
         Path path = Paths.get(filePath);
         if (path.getParent() != null) {
             Files.createDirectories(path.getParent());
@@ -298,7 +371,9 @@ public class CsvTransactionDao implements TransactionDao { // Implement Transact
         }
 
         try {
+            forceToDisk(tempFile.toPath()); // Content must be on disk before the rename can make it visible
             Files.move(tempFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(targetFile.toPath().toAbsolutePath().getParent());
             System.out.println("Atomically replaced " + filePath + " with updated data.");
         } catch (IOException e) {
             System.err.println("Failed to atomically replace original file: " + targetFile.toPath() + " with " + tempFile.toPath());
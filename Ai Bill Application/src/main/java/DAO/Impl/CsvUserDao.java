@@ -2,6 +2,7 @@ package DAO.Impl;
 
 import Constants.ConfigConstants;
 import DAO.UserDao;
+import Utils.FileFingerprint;
 import model.User;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -13,74 +14,111 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
-
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Users stored in a CSV file plus a change log next to it ("&lt;users.csv&gt;.log").
+ *
+ * All users are held in an index keyed by the case-folded username. Adding, updating and deleting a user
+ * appends one record (PUT or DELETE tombstone) to the log instead of rewriting users.csv, so the cost does
+ * not grow with the number of users. Once the log holds at least users.log_compact_min records and at least
+ * half as many records as there are users, it is folded into users.csv (one atomic rewrite) and deleted.
+ *
+ * Before each access the size and mtime of both files are compared with what this DAO last saw; only if
+ * someone else changed them are the files read again. Each log record carries a CRC32, and reading stops at
+ * the first record that does not check out (a write torn by a crash). The users read up to that point are then
+ * compacted right away, so later changes are not appended behind the broken record and lost with it.
+ */
 public class CsvUserDao implements UserDao {
 
     private final String filePath;
+    private final Path path;
+    private final Path logPath;
+    private final long compactMin;
 
     // Define the header for the users CSV
     private static final String[] HEADERS = {"username", "password", "role", "transaction_csv_path", "summary_csv_path"};
+    private static final String[] LOG_HEADERS = {"op", "username", "password", "role", "transaction_csv_path", "summary_csv_path", "crc"};
+    private static final String LOG_SUFFIX = ".log";
 
-    public CsvUserDao(String filePath) {
-        this.filePath = filePath;
+    /**
+     * Index entry; {@code order} keeps getAllUsers in file order (base file first, then log order).
+     */
+    private static final class Entry {
+        final User user;
+        final long order;
+
+        Entry(User user, long order) {
+            this.user = user;
+            this.order = order;
+        }
     }
 
-    @Override
-    public List<User> getAllUsers() throws IOException {
-        List<User> users = new ArrayList<>();
-        // Use BOMInputStream to handle potential Byte Order Mark issues
-        try (Reader reader = new InputStreamReader(
-                new BOMInputStream(Files.newInputStream(Paths.get(filePath))),
-                StandardCharsets.UTF_8)) {
+    // Replaced as a whole on reload, so lock-free readers never see a half-built index
+    private volatile ConcurrentHashMap<String, Entry> index;
+    // What the files looked like when this DAO last read or wrote them; written under the lock
+    private volatile FileFingerprint baseFingerprint;
+    private volatile FileFingerprint logFingerprint;
+    // Guarded by this
+    private int logRecords;
+    private long nextOrder;
 
-            // Configure CSVFormat to handle headers
-            CSVFormat format = CSVFormat.DEFAULT
-                    .withFirstRecordAsHeader()
-                    .withIgnoreHeaderCase(true) // Ignore header case for robustness
-                    .withTrim(true); // Trim leading/trailing whitespace
+    public CsvUserDao(String filePath) {
+        this(filePath, ConfigConstants.USERS_LOG_COMPACT_MIN);
+    }
 
-            try (CSVParser csvParser = new CSVParser(reader, format)) {
-                // Check if the required headers are present
-                List<String> requiredHeaders = List.of("username", "password", "role", "transaction_csv_path");
-                if (!csvParser.getHeaderMap().keySet().containsAll(requiredHeaders)) {
-                    throw new IOException("Missing required headers in users CSV file: " + requiredHeaders);
-                }
+    /**
+     * @param compactMin Minimum number of log records before the log is folded into the users file.
+     */
+    CsvUserDao(String filePath, long compactMin) {
+        this.filePath = filePath;
+        this.path = Paths.get(filePath);
+        this.logPath = Paths.get(filePath + LOG_SUFFIX);
+        this.compactMin = compactMin;
+    }
 
-                for (CSVRecord record : csvParser) {
-                    // Basic error handling for potentially missing fields in a row
-                    String username = record.get("username");
-                    String password = record.get("password");
-                    String role = record.get("role");
-                    String transactionFilePath = record.get("transaction_csv_path");
+    private static String key(String username) {
+        return username.trim().toLowerCase(Locale.ROOT);
+    }
 
-                    if (username == null || username.trim().isEmpty() || password == null || password.trim().isEmpty() || role == null || role.trim().isEmpty() || transactionFilePath == null || transactionFilePath.trim().isEmpty()) {
-                        System.err.println("Skipping malformed user record: " + record.toMap());
-                        continue; // Skip this row
-                    }
+    private static User copy(User user) {
+        return new User(user.getUsername(), user.getPassword(), user.getRole(), user.getTransactionFilePath(), user.getSummaryFilePath());
+    }
 
-                    User user = new User(username.trim(), password.trim(), role.trim(), transactionFilePath.trim());
-                    users.add(user);
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Error loading users from CSV file: " + filePath);
-            e.printStackTrace();
-            throw e; // Re-throw the exception after logging
+    @Override
+    public List<User> getAllUsers() throws IOException {
+        List<Entry> entries = new ArrayList<>(validatedIndex().values());
+        entries.sort(Comparator.comparingLong(e -> e.order));
+        List<User> users = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            users.add(copy(entry.user));
         }
         return users;
     }
 
+    @Override
+    public User getUserByUsername(String username) throws IOException {
+        if (username == null || username.trim().isEmpty()) {
+            return null;
+        }
+        Entry entry = validatedIndex().get(key(username));
+        return entry == null ? null : copy(entry.user);
+    }
+
     /**
-     * Adds a new user to the users CSV file.
-     * Appends the user record. Writes header if the file is empty.
+     * Adds a new user to the users store.
+     * Appends a record to the change log. Creates the users file with its header if it does not exist yet.
      * @param user The new user to add.
      * @throws IOException If an I/O error occurs.
-     * @throws IllegalArgumentException If user data is invalid.
+     * @throws IllegalArgumentException If user data is invalid or the username is taken (ignoring case).
      */
     @Override // Implement the new interface method
-    public void addUser(User user) throws IOException, IllegalArgumentException {
+    public synchronized void addUser(User user) throws IOException, IllegalArgumentException {
         if (user == null || user.getUsername() == null || user.getUsername().trim().isEmpty() ||
                 user.getPassword() == null || user.getPassword().trim().isEmpty() ||
                 user.getRole() == null || user.getRole().trim().isEmpty() ||
@@ -88,46 +126,25 @@ public class CsvUserDao implements UserDao {
                 user.getSummaryFilePath() == null || user.getSummaryFilePath().trim().isEmpty()) { // Validate all fields
             throw new IllegalArgumentException("Invalid user data: essential fields are null or empty.");
         }
-
-
-        Path path = Paths.get(filePath);
-        // Ensure the directory exists
-        if (path.getParent() != null) {
-            Files.createDirectories(path.getParent());
+        Map<String, Entry> current = validatedIndex();
+        if (current.containsKey(key(user.getUsername()))) {
+            throw new IllegalArgumentException("Username '" + user.getUsername().trim() + "' already exists.");
         }
 
-        boolean fileExistsAndNotEmpty = Files.exists(path) && Files.size(path) > 0;
-
-        // Define the header for the users CSV
-        String[] headers = {"username", "password", "role", "transaction_csv_path", "summary_csv_path"};
-
-        // Use StandardOpenOption.CREATE (creates if not exists) and APPEND
-        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-             // Use CSVPrinter.withHeader ONLY if the file was empty BEFORE opening
-             CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withTrim()
-                     .withHeader(fileExistsAndNotEmpty ? new String[0] : headers))) // Write header only if file is new
-        {
-            // Append the new user record
-            csvPrinter.printRecord(
-                    user.getUsername(),
-                    user.getPassword(), // Store password directly (for simplicity in this project)
-                    user.getRole(),
-                    user.getTransactionFilePath(),
-                    user.getSummaryFilePath()
-            );
-            // csvPrinter.flush(); // Auto-flushed on close
-            System.out.println("Added user '" + user.getUsername() + "' to users CSV: " + filePath);
-
-        } catch (IOException e) {
-            System.err.println("Error adding user to CSV file: " + filePath);
-            e.printStackTrace();
-            throw e; // Re-throw
+        User stored = new User(user.getUsername().trim(), user.getPassword().trim(), user.getRole().trim(),
+                user.getTransactionFilePath().trim(), user.getSummaryFilePath().trim());
+        appendLog("PUT", stored);
+        current.put(key(stored.getUsername()), new Entry(stored, nextOrder++));
+        System.out.println("Added user '" + stored.getUsername() + "' to users log: " + logPath);
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            compact(); // First user: create users.csv with its header right away
+        } else {
+            compactIfDue();
         }
     }
 
     /**
-     * Deletes a user identified by username from the users CSV file.
+     * Deletes a user identified by username (ignoring case) from the users store.
      * Also attempts to delete the user's transaction and summary files.
      *
      * @param username The username of the user to delete.
@@ -135,7 +152,7 @@ public class CsvUserDao implements UserDao {
      * @throws IOException If an I/O error occurs during loading or saving.
      */
     @Override // Implement the new interface method
-    public boolean deleteUser(String username) throws IOException {
+    public synchronized boolean deleteUser(String username) throws IOException {
         if (username == null || username.trim().isEmpty()) {
             System.err.println("Cannot delete user: username is null or empty.");
             return false;
@@ -143,58 +160,44 @@ public class CsvUserDao implements UserDao {
         String usernameToDel = username.trim();
         System.out.println("Attempting to delete user: " + usernameToDel + " from " + filePath);
 
-        // 1. Load all users
-        List<User> allUsers = getAllUsers();
-
-        // 2. Filter out the user to be deleted
-        List<User> updatedUsers = allUsers.stream()
-                .filter(user -> !user.getUsername().trim().equals(usernameToDel))
-                .collect(Collectors.toList());
-
-        // Check if a user was actually removed
-        boolean userFoundAndRemoved = allUsers.size() > updatedUsers.size();
-
-        if (userFoundAndRemoved) {
-            // Find the user object to get file paths before writing updated list
-            User userToDelete = allUsers.stream()
-                    .filter(user -> user.getUsername().trim().equals(usernameToDel))
-                    .findFirst().orElse(null); // Should not be null if userFoundAndRemoved is true
-
-            // 3. Write the remaining users back to the CSV file (Atomic write)
-            writeUsersToCSV(filePath, updatedUsers);
-            System.out.println("User '" + usernameToDel + "' removed from users CSV.");
-
-            // 4. Attempt to delete associated data files
-            if (userToDelete != null) {
-                System.out.println("Attempting to delete data files for user: " + userToDelete.getUsername());
-                try {
-                    if (userToDelete.getTransactionFilePath() != null && !userToDelete.getTransactionFilePath().trim().isEmpty()) {
-                        Path txPath = Paths.get(userToDelete.getTransactionFilePath());
-                        boolean txDeleted = Files.deleteIfExists(txPath);
-                        System.out.println("Transaction file " + txPath + " deleted: " + txDeleted);
-                    }
-                    if (userToDelete.getSummaryFilePath() != null && !userToDelete.getSummaryFilePath().trim().isEmpty()) {
-                        Path summaryPath = Paths.get(userToDelete.getSummaryFilePath());
-                        boolean summaryDeleted = Files.deleteIfExists(summaryPath);
-                        System.out.println("Summary file " + summaryPath + " deleted: " + summaryDeleted);
-                    }
-                } catch (IOException e) {
-                    System.err.println("Error deleting user data files for '" + usernameToDel + "': " + e.getMessage());
-                    // Decide if user deletion should fail if file deletion fails.
-                    // For now, user is deleted from list, just log file deletion error.
-                }
-            }
-
-            return true; // User successfully deleted from list
-        } else {
+        Map<String, Entry> current = validatedIndex();
+        Entry entry = current.get(key(usernameToDel));
+        if (entry == null) {
             System.out.println("User '" + usernameToDel + "' not found in users CSV.");
             return false; // User not found
         }
+        User userToDelete = entry.user;
+
+        appendLog("DELETE", userToDelete); // Tombstone
+        current.remove(key(usernameToDel));
+        System.out.println("User '" + usernameToDel + "' removed from users store.");
+
+        // Attempt to delete associated data files
+        System.out.println("Attempting to delete data files for user: " + userToDelete.getUsername());
+        try {
+            if (userToDelete.getTransactionFilePath() != null && !userToDelete.getTransactionFilePath().trim().isEmpty()) {
+                Path txPath = Paths.get(userToDelete.getTransactionFilePath());
+                boolean txDeleted = Files.deleteIfExists(txPath);
+                System.out.println("Transaction file " + txPath + " deleted: " + txDeleted);
+            }
+            if (userToDelete.getSummaryFilePath() != null && !userToDelete.getSummaryFilePath().trim().isEmpty()) {
+                Path summaryPath = Paths.get(userToDelete.getSummaryFilePath());
+                boolean summaryDeleted = Files.deleteIfExists(summaryPath);
+                System.out.println("Summary file " + summaryPath + " deleted: " + summaryDeleted);
+            }
+        } catch (IOException e) {
+            System.err.println("Error deleting user data files for '" + usernameToDel + "': " + e.getMessage());
+            // Decide if user deletion should fail if file deletion fails.
+            // For now, user is deleted from list, just log file deletion error.
+        }
+
+        compactIfDue();
+        return true; // User successfully deleted from list
     }
 
     /**
-     * Updates an existing user's information in the users CSV file.
-     * Matches by username.
+     * Updates an existing user's information. Matches by username (ignoring case).
+     * Only a non-empty password and role are applied; file paths are not changed.
      *
      * @param updatedUser The User object with updated information (matched by username).
      * @return true if the user was found and updated, false otherwise.
@@ -202,56 +205,233 @@ public class CsvUserDao implements UserDao {
      * @throws IllegalArgumentException If updatedUser data is invalid or username is missing.
      */
     @Override // Implement the new interface method
-    public boolean updateUser(User updatedUser) throws IOException, IllegalArgumentException {
+    public synchronized boolean updateUser(User updatedUser) throws IOException, IllegalArgumentException {
         if (updatedUser == null || updatedUser.getUsername() == null || updatedUser.getUsername().trim().isEmpty()) {
             throw new IllegalArgumentException("Updated user object and username cannot be null or empty.");
         }
         String usernameToUpdate = updatedUser.getUsername().trim();
         System.out.println("Attempting to update user: " + usernameToUpdate + " in " + filePath);
 
+        Map<String, Entry> current = validatedIndex();
+        Entry entry = current.get(key(usernameToUpdate));
+        if (entry == null) {
+            System.out.println("User '" + usernameToUpdate + "' not found for update in users CSV.");
+            return false;
+        }
 
-        // 1. Load all users
-        List<User> allUsers = getAllUsers();
+        // Indexed users are never modified in place (readers may hold them); store an updated copy
+        User user = copy(entry.user);
+        if (updatedUser.getPassword() != null && !updatedUser.getPassword().isEmpty()) {
+            user.setPassword(updatedUser.getPassword());
+        }
+        if (updatedUser.getRole() != null && !updatedUser.getRole().isEmpty()) {
+            user.setRole(updatedUser.getRole());
+        }
+        appendLog("PUT", user);
+        current.put(key(usernameToUpdate), new Entry(user, entry.order));
+        System.out.println("User '" + usernameToUpdate + "' updated in users store.");
 
-        // 2. Find and update the user in the list
-        boolean userFoundAndUpdatedInMemory = false;
-        List<User> updatedList = new ArrayList<>(allUsers.size()); // Create a new list or modify in place
+        compactIfDue();
+        return true;
+    }
 
-        for (User user : allUsers) {
-            if (user.getUsername().trim().equals(usernameToUpdate)) {
-                // Found the user, apply updates from updatedUser object
-                // Only update fields that are not null/empty in updatedUser (or based on specific logic)
-                // For simplicity, let's apply all fields from updatedUser, except maybe username itself if it's the key.
-                // Assuming username is the key and not intended to be changed via this method.
-                // If password is empty string in updatedUser, maybe keep old password? Or allow empty password?
-                // Let's assume non-null/non-empty fields in updatedUser overwrite. Empty string might mean clear.
-                if (updatedUser.getPassword() != null && !updatedUser.getPassword().isEmpty()) {
-                    user.setPassword(updatedUser.getPassword());
-                }
-                if (updatedUser.getRole() != null && !updatedUser.getRole().isEmpty()) { // Allow setting empty role? Probably not.
-                    user.setRole(updatedUser.getRole());
+    /**
+     * Folds the change log into the users file (atomic rewrite) and deletes the log.
+     * A crash in between is harmless: replaying the log over the new file gives the same users.
+     */
+    synchronized void compact() throws IOException {
+        List<User> users = getAllUsers();
+        writeUsersToCSV(filePath, users);
+        Files.deleteIfExists(logPath);
+        System.out.println("Compacted " + logRecords + " user log record(s) into " + filePath);
+        logRecords = 0;
+        baseFingerprint = FileFingerprint.stat(path);
+        logFingerprint = FileFingerprint.stat(logPath);
+    }
+
+    private void compactIfDue() throws IOException {
+        // Proportional to the user count, so the rewrite costs O(1) per change on average
+        if (logRecords >= Math.max(compactMin, index.size() / 2)) {
+            compact();
+        }
+    }
+
+    /**
+     * The index, reloaded first if the users file or the log was changed by someone else.
+     */
+    private Map<String, Entry> validatedIndex() throws IOException {
+        ConcurrentHashMap<String, Entry> current = index;
+        if (current != null && unchangedOnDisk()) {
+            return current;
+        }
+        synchronized (this) {
+            if (index == null || !unchangedOnDisk()) {
+                reload();
+            }
+            return index;
+        }
+    }
+
+    private boolean unchangedOnDisk() {
+        FileFingerprint base = baseFingerprint;
+        FileFingerprint log = logFingerprint;
+        return base != null && log != null
+                && base.sameStat(FileFingerprint.stat(path))
+                && log.sameStat(FileFingerprint.stat(logPath));
+    }
+
+    private void reload() throws IOException {
+        // Stat before reading: a change during the read is picked up by the next check
+        FileFingerprint base = FileFingerprint.stat(path);
+        FileFingerprint log = FileFingerprint.stat(logPath);
+
+        ConcurrentHashMap<String, Entry> loaded = new ConcurrentHashMap<>();
+        long order = 0;
+        // A missing or empty users file means no users yet (it is created with the first one)
+        boolean baseExists = Files.exists(path) && Files.size(path) > 0;
+        for (User user : baseExists ? readUsersFile() : List.<User>of()) {
+            loaded.put(key(user.getUsername()), new Entry(user, order++));
+        }
+        int records = 0;
+        List<String[]> logRecordsRead = new ArrayList<>();
+        boolean logComplete = readLog(logRecordsRead);
+        for (String[] record : logRecordsRead) {
+            User user = new User(record[1], record[2], record[3], record[4], record[5].isEmpty() ? null : record[5]);
+            String userKey = key(user.getUsername());
+            if ("DELETE".equals(record[0])) {
+                loaded.remove(userKey);
+            } else {
+                Entry existing = loaded.get(userKey);
+                loaded.put(userKey, new Entry(user, existing != null ? existing.order : order++));
+            }
+            records++;
+        }
+
+        index = loaded;
+        logRecords = records;
+        nextOrder = order;
+        baseFingerprint = base;
+        logFingerprint = log;
+        System.out.println("CsvUserDao: Loaded " + loaded.size() + " users (" + records + " log record(s)) from " + filePath);
+        if (!logComplete) {
+            // Appends would land behind the broken record, where the next reload stops reading
+            System.err.println("CsvUserDao: Repairing " + logPath + " by compacting the " + records + " valid record(s).");
+            compact();
+        }
+    }
+
+    /**
+     * Reads the users file (without the log).
+     */
+    private List<User> readUsersFile() throws IOException {
+        List<User> users = new ArrayList<>();
+        // Use BOMInputStream to handle potential Byte Order Mark issues
+        try (Reader reader = new InputStreamReader(
+                new BOMInputStream(Files.newInputStream(path)),
+                StandardCharsets.UTF_8)) {
+
+            // Configure CSVFormat to handle headers
+            CSVFormat format = CSVFormat.DEFAULT
+                    .withFirstRecordAsHeader()
+                    .withIgnoreHeaderCase(true) // Ignore header case for robustness
+                    .withTrim(true); // Trim leading/trailing whitespace
+
+            try (CSVParser csvParser = new CSVParser(reader, format)) {
+                // Check if the required headers are present
+                List<String> requiredHeaders = List.of("username", "password", "role", "transaction_csv_path");
+                if (!csvParser.getHeaderMap().keySet().containsAll(requiredHeaders)) {
+                    throw new IOException("Missing required headers in users CSV file: " + requiredHeaders);
                 }
-                // File paths usually shouldn't be updated directly via updateUser if they follow a convention.
-                // If they can be manually reassigned, add logic here.
-                // if (updatedUser.getTransactionFilePath() != null && !updatedUser.getTransactionFilePath().isEmpty()) { ... }
-                // if (updatedUser.getSummaryFilePath() != null && !updatedUser.getSummaryFilePath().isEmpty()) { ... }
 
-                System.out.println("User '" + usernameToUpdate + "' found and updated in memory.");
-                userFoundAndUpdatedInMemory = true;
+                for (CSVRecord record : csvParser) {
+                    // Basic error handling for potentially missing fields in a row
+                    String username = record.get("username");
+                    String password = record.get("password");
+                    String role = record.get("role");
+                    String transactionFilePath = record.get("transaction_csv_path");
+                    String summaryFilePath = record.isSet("summary_csv_path") ? record.get("summary_csv_path") : null;
+
+                    if (username == null || username.trim().isEmpty() || password == null || password.trim().isEmpty() || role == null || role.trim().isEmpty() || transactionFilePath == null || transactionFilePath.trim().isEmpty()) {
+                        System.err.println("Skipping malformed user record: " + record.toMap());
+                        continue; // Skip this row
+                    }
+
+                    User user = new User(username.trim(), password.trim(), role.trim(), transactionFilePath.trim(),
+                            summaryFilePath == null || summaryFilePath.trim().isEmpty() ? null : summaryFilePath.trim());
+                    users.add(user);
+                }
             }
-            updatedList.add(user); // Add the original or modified user to the new list
+        } catch (IOException e) {
+            System.err.println("Error loading users from CSV file: " + filePath);
+            e.printStackTrace();
+            throw e; // Re-throw the exception after logging
         }
+        return users;
+    }
 
+    /**
+     * Reads the change log: op, username, password, role, transaction path, summary path (never null).
+     * Stops at the first record with a wrong field count or checksum.
+     *
+     * @param records Receives the valid records.
+     * @return False if reading stopped at a broken record.
+     */
+    private boolean readLog(List<String[]> records) throws IOException {
+        if (!Files.exists(logPath)) {
+            return true;
+        }
+        try (Reader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8);
+             CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+            for (CSVRecord record : csvParser) {
+                if (record.size() != LOG_HEADERS.length) {
+                    System.err.println("CsvUserDao: Ignoring incomplete record at line " + record.getRecordNumber() + " of " + logPath + " and everything after it.");
+                    return false;
+                }
+                String[] fields = new String[LOG_HEADERS.length - 1];
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = record.get(i);
+                }
+                if (!Long.toString(checksum(fields)).equals(record.get(fields.length))) {
+                    System.err.println("CsvUserDao: Checksum mismatch at line " + record.getRecordNumber() + " of " + logPath + "; ignoring it and everything after it.");
+                    return false;
+                }
+                records.add(fields);
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading users log: " + logPath);
+            e.printStackTrace();
+            throw e;
+        }
+        return true;
+    }
 
-        if (userFoundAndUpdatedInMemory) {
-            // 3. Write the updated list back to the CSV file (Atomic write)
-            writeUsersToCSV(filePath, updatedList);
-            System.out.println("User '" + usernameToUpdate + "' updated and users CSV written.");
-        } else {
-            System.out.println("User '" + usernameToUpdate + "' not found for update in users CSV.");
+    private void appendLog(String op, User user) throws IOException {
+        String[] fields = {op, user.getUsername(), nullToEmpty(user.getPassword()), nullToEmpty(user.getRole()),
+                nullToEmpty(user.getTransactionFilePath()), nullToEmpty(user.getSummaryFilePath())};
+        boolean logExists = Files.exists(logPath) && Files.size(logPath) > 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(logPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+             CSVPrinter csvPrinter = new CSVPrinter(writer, logExists ? CSVFormat.DEFAULT : CSVFormat.DEFAULT.withHeader(LOG_HEADERS))) {
+            List<String> values = new ArrayList<>(List.of(fields));
+            values.add(Long.toString(checksum(fields)));
+            csvPrinter.printRecord(values);
+        } catch (IOException e) {
+            System.err.println("Error appending to users log: " + logPath);
+            e.printStackTrace();
+            throw e;
         }
+        logRecords++;
+        logFingerprint = FileFingerprint.stat(logPath);
+    }
 
-        return userFoundAndUpdatedInMemory; // Return true if user was found and updated
+    private static long checksum(String[] fields) {
+        CRC32 crc = new CRC32();
+        crc.update(String.join("\u001F", fields).getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
     }
 
     /**
@@ -301,37 +481,4 @@ public class CsvUserDao implements UserDao {
             throw e;
         }
     }
-
-    // Helper method to parse a single record (optional, can be in getAllUsers)
-    // Helper method to parse a single CSV record into a User object (same as before)
-    // Helper method to parse a single CSV record into a User object (same as before)
-    private User parseRecord(CSVRecord record) {
-        String username = record.get("username");
-        String password = record.get("password");
-        String role = record.get("role");
-        String transactionFilePath = record.get("transaction_csv_path");
-        String summaryFilePath = record.get("summary_csv_path");
-
-
-        // Basic validation for essential fields (should match headers)
-        if (username == null || username.trim().isEmpty() ||
-                password == null || password.trim().isEmpty() ||
-                role == null || role.trim().isEmpty() ||
-                transactionFilePath == null || transactionFilePath.trim().isEmpty() ||
-                summaryFilePath == null || summaryFilePath.trim().isEmpty())
-        {
-            System.err.println("Skipping malformed user record due to missing essential fields: " + record.toMap());
-            return null; // Indicate parsing failed for this record
-        }
-
-
-        return new User(
-                username.trim(),
-                password.trim(),
-                role.trim(),
-                transactionFilePath.trim(),
-                summaryFilePath.trim()
-        );
-    }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,222 @@
+package DAO.Impl;
+
+import DAO.StatementFormat;
+import DAO.Impl.ColumnMappedFormat.Field;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Registry of {@link StatementFormat}s, picked by header fingerprint.
+ *
+ * Built in: the app's own transaction files, WeChat Pay and Alipay (old and current column sets) exports,
+ * and generic bank statements (Chinese and English column names). More can be added with {@link #register}.
+ *
+ * The compiled mapper of each distinct header (its fingerprint is the normalized header row) is cached,
+ * so the user's own file, reloaded many times, is matched and compiled once per process.
+ */
+public final class StatementFormats {
+
+    public static final List<String> NATIVE_HEADERS = List.of(
+            "Transaction Time", "Transaction Type", "Counterparty", "Commodity", "In/Out", "Amount(CNY)",
+            "Payment Method", "Current Status", "Order Number", "Merchant Number", "Remarks");
+
+    private static final Pattern DASHED_DATE = Pattern.compile("^(\\d{4})-(\\d{1,2})-(\\d{1,2})");
+
+    // "2025-03-02 12:30:00" -> "2025/03/02 12:30:00", the format used everywhere else in the app
+    private static final UnaryOperator<String> SLASH_DATE = value -> {
+        Matcher m = DASHED_DATE.matcher(value);
+        if (!m.find()) {
+            return value;
+        }
+        return String.format("%s/%02d/%02d", m.group(1), Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)))
+                + value.substring(m.end());
+    };
+    // Payment apps write "/" for "no value"
+    private static final UnaryOperator<String> SLASH_IS_EMPTY = value -> value.equals("/") ? "" : value;
+    private static final UnaryOperator<String> IN_OUT_TO_ENGLISH = value -> {
+        switch (value) {
+            case "支出": return "Expense";
+            case "收入": return "Income";
+            case "/": return "";
+            default: return value;
+        }
+    };
+
+    public static final StatementFormat NATIVE = ColumnMappedFormat.builder("Ai Bill")
+            .requiredColumn(Field.TIME, "Transaction Time")
+            .requiredColumn(Field.TYPE, "Transaction Type")
+            .requiredColumn(Field.COUNTERPARTY, "Counterparty")
+            .requiredColumn(Field.COMMODITY, "Commodity")
+            .requiredColumn(Field.IN_OUT, "In/Out")
+            .requiredColumn(Field.AMOUNT, "Amount(CNY)")
+            .requiredColumn(Field.PAYMENT_METHOD, "Payment Method")
+            .requiredColumn(Field.STATUS, "Current Status")
+            .requiredColumn(Field.ORDER_NUMBER, "Order Number")
+            .requiredColumn(Field.MERCHANT_NUMBER, "Merchant Number")
+            .requiredColumn(Field.REMARKS, "Remarks")
+            .build();
+
+    public static final StatementFormat WECHAT_PAY = withPaymentAppConverters(ColumnMappedFormat.builder("WeChat Pay"))
+            .requiredColumn(Field.TIME, "交易时间")
+            .column(Field.TYPE, "交易类型")
+            .requiredColumn(Field.COUNTERPARTY, "交易对方")
+            .column(Field.COMMODITY, "商品")
+            .requiredColumn(Field.IN_OUT, "收/支")
+            .requiredColumn(Field.AMOUNT, "金额(元)")
+            .column(Field.PAYMENT_METHOD, "支付方式")
+            .column(Field.STATUS, "当前状态")
+            .requiredColumn(Field.ORDER_NUMBER, "交易单号")
+            .column(Field.MERCHANT_NUMBER, "商户单号")
+            .column(Field.REMARKS, "备注")
+            .build();
+
+    public static final StatementFormat ALIPAY = withPaymentAppConverters(ColumnMappedFormat.builder("Alipay"))
+            .requiredColumn(Field.TIME, "交易创建时间", "交易时间")
+            .column(Field.TYPE, "类型", "交易分类")
+            .requiredColumn(Field.COUNTERPARTY, "交易对方")
+            .column(Field.COMMODITY, "商品名称", "商品说明")
+            .requiredColumn(Field.IN_OUT, "收/支")
+            .requiredColumn(Field.AMOUNT, "金额（元）", "金额")
+            .column(Field.PAYMENT_METHOD, "收/付款方式")
+            .column(Field.STATUS, "交易状态")
+            .requiredColumn(Field.ORDER_NUMBER, "交易号", "交易订单号")
+            .column(Field.MERCHANT_NUMBER, "商家订单号")
+            .column(Field.REMARKS, "备注")
+            .defaultValue(Field.PAYMENT_METHOD, "Alipay")
+            .build();
+
+    public static final StatementFormat BANK = ColumnMappedFormat.builder("Bank statement")
+            .requiredColumn(Field.TIME, "交易日期", "记账日期", "交易时间", "Date", "Transaction Date", "Posting Date", "Booking Date")
+            .column(Field.COUNTERPARTY, "对方户名", "对方账户名", "对方名称", "Payee", "Counterparty", "Beneficiary")
+            .column(Field.COMMODITY, "摘要", "交易摘要", "用途", "Description", "Details", "Narrative", "Memo")
+            .column(Field.AMOUNT, "交易金额", "发生额", "Amount")
+            .column(Field.DEBIT, "支出金额", "借方发生额", "Debit", "Withdrawal", "Withdrawals", "Money Out")
+            .column(Field.CREDIT, "收入金额", "贷方发生额", "Credit", "Deposit", "Deposits", "Money In")
+            .column(Field.ORDER_NUMBER, "流水号", "交易流水号", "Reference", "Transaction ID")
+            .column(Field.REMARKS, "备注", "附言", "Notes")
+            .converter(Field.TIME, SLASH_DATE)
+            .defaultValue(Field.TYPE, "Bank Transfer")
+            .defaultValue(Field.PAYMENT_METHOD, "Bank Card")
+            .defaultValue(Field.STATUS, "Completed")
+            .build();
+
+    private static final List<StatementFormat> formats = new CopyOnWriteArrayList<>(List.of(NATIVE, WECHAT_PAY, ALIPAY, BANK));
+    private static final ConcurrentHashMap<String, Compiled> compiled = new ConcurrentHashMap<>();
+    private static final int MIN_RECOGNISED_COLUMNS = 3; // Fewer recognised cells: not a header row
+    private static final int MAX_CACHED_HEADERS = 64;
+
+    private StatementFormats() {
+    }
+
+    /**
+     * A header's format and its compiled mapper.
+     */
+    public static final class Compiled {
+        private final StatementFormat format;
+        private final StatementFormat.RowMapper mapper;
+
+        Compiled(StatementFormat format, StatementFormat.RowMapper mapper) {
+            this.format = format;
+            this.mapper = mapper;
+        }
+
+        public StatementFormat getFormat() {
+            return format;
+        }
+
+        public StatementFormat.RowMapper getMapper() {
+            return mapper;
+        }
+    }
+
+    private static ColumnMappedFormat.Builder withPaymentAppConverters(ColumnMappedFormat.Builder builder) {
+        for (Field field : Field.values()) {
+            builder.converter(field, SLASH_IS_EMPTY);
+        }
+        return builder
+                .converter(Field.TIME, SLASH_DATE)
+                .converter(Field.IN_OUT, IN_OUT_TO_ENGLISH);
+    }
+
+    /**
+     * Adds a format. It is tried before the built-in ones, so it wins when it scores the same.
+     */
+    public static void register(StatementFormat format) {
+        formats.add(0, format);
+        compiled.clear();
+    }
+
+    /**
+     * Finds the best format for a header row and returns its compiled mapper (cached per distinct header).
+     *
+     * @param header The raw header cells.
+     * @return The match, or null if no format recognises the header.
+     */
+    public static Compiled forHeader(List<String> header) {
+        List<String> normalized = new ArrayList<>(header.size());
+        for (String cell : header) {
+            normalized.add(normalizeHeader(cell));
+        }
+        // Exports often end every row with a comma; trailing empty cells are not part of the fingerprint
+        while (!normalized.isEmpty() && normalized.get(normalized.size() - 1).isEmpty()) {
+            normalized.remove(normalized.size() - 1);
+        }
+        String fingerprint = String.join("\u001F", normalized);
+        Compiled result = compiled.get(fingerprint);
+        if (result != null) {
+            return result;
+        }
+        StatementFormat best = null;
+        int bestScore = MIN_RECOGNISED_COLUMNS - 1;
+        for (StatementFormat format : formats) {
+            int score = format.match(normalized);
+            if (score > bestScore) {
+                best = format;
+                bestScore = score;
+            }
+        }
+        if (best == null) {
+            return null; // Not cached: preamble lines are probed here too and would only fill the cache
+        }
+        if (compiled.size() >= MAX_CACHED_HEADERS) {
+            compiled.clear();
+        }
+        System.out.println("StatementFormats: Header " + header + " is " + best.getName() + " format.");
+        result = new Compiled(best, best.compile(normalized));
+        compiled.put(fingerprint, result);
+        return result;
+    }
+
+    /**
+     * True if some format recognises the header row (used to find the header below an export's preamble).
+     */
+    public static boolean isHeader(List<String> header) {
+        return forHeader(header) != null;
+    }
+
+    /**
+     * Lower-case, without whitespace or a BOM, with full-width brackets and slashes folded to ASCII, so
+     * "金额（元）", "金额(元)" and " Amount(CNY) " / "amount(cny)" compare equal to their counterparts.
+     */
+    public static String normalizeHeader(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            switch (c) {
+                case '（': c = '('; break;
+                case '）': c = ')'; break;
+                case '／': c = '/'; break;
+                default: break;
+            }
+            if (!Character.isWhitespace(c) && c != '﻿' && c != '"') {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+}
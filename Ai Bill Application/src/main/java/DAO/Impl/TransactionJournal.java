@@ -0,0 +1,441 @@
+package DAO.Impl;
+
+import model.Transaction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of one transaction file (see Service.Impl.TransactionWriteQueue).
+ *
+ * Every change to a transaction file is first written here and forced to disk, then applied to the CSV;
+ * once the CSV holds it, the journal is deleted. If the application or the machine dies in between, the
+ * journal is replayed into the CSV at the next start. In write-behind mode the journal holds all edits
+ * that are not in the CSV yet.
+ *
+ * The journal lives next to the CSV ("&lt;file&gt;.journal"). File layout (big-endian):
+ * <pre>
+ *     int MAGIC, int VERSION
+ *     frames, one per committed batch:
+ *         int  payload length
+ *         long CRC32 of the payload
+ *         payload: byte kind, long CSV length before the batch, int record count,
+ *                  records: byte op, 10 strings + 1 double in CSV column order
+ * </pre>
+ * Strings are an int byte length (-1 for null) followed by UTF-8 bytes.
+ *
+ * A batch is one frame, so it is replayed completely or not at all. Reading stops at the first frame that
+ * is truncated or fails its checksum (the tail of a crash mid-append; that batch was never acknowledged).
+ * Records are keyed by order number, so replaying a journal twice gives the same result. A batch that removes
+ * or edits a row that cannot be addressed that way (blank or duplicated order number) is journaled as a full
+ * image of the file instead (RESET followed by one IMAGE record per row).
+ */
+public class TransactionJournal {
+
+    public static final String SUFFIX = ".journal";
+
+    private static final int MAGIC = 0x41424A31; // "ABJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int FRAME_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    // Larger frames are corrupt; guards the allocation when the length field itself is damaged
+    private static final int MAX_FRAME_BYTES = 256 * 1024 * 1024;
+
+    /**
+     * PUT and DELETE address rows by order number. RESET drops all rows; each IMAGE record that follows
+     * adds one row as it is.
+     */
+    public enum Op { PUT, DELETE, RESET, IMAGE }
+
+    /**
+     * How a batch is (or will be) applied to the CSV; decides how it is recovered.
+     */
+    public enum Kind {
+        /** The batch's rows are appended to the CSV right after journaling. */
+        APPEND,
+        /** The CSV is atomically rewritten right after journaling. */
+        REWRITE,
+        /** Write-behind: the CSV is rewritten later, together with other batches. */
+        DEFERRED
+    }
+
+    /**
+     * One journaled change.
+     */
+    public static final class Record {
+        private final Op op;
+        private final Transaction transaction;
+
+        public Record(Op op, Transaction transaction) {
+            this.op = op;
+            this.transaction = transaction;
+        }
+
+        public Op getOp() {
+            return op;
+        }
+
+        /**
+         * @return The new row for PUT and IMAGE; for DELETE only the order number is meaningful; empty for RESET.
+         */
+        public Transaction getTransaction() {
+            return transaction;
+        }
+    }
+
+    /**
+     * One journaled batch.
+     */
+    public static final class Frame {
+        private final Kind kind;
+        private final long csvLengthBefore;
+        private final List<Record> records;
+
+        Frame(Kind kind, long csvLengthBefore, List<Record> records) {
+            this.kind = kind;
+            this.csvLengthBefore = csvLengthBefore;
+            this.records = records;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return Size of the CSV when the batch was journaled (-1 if not recorded). For APPEND, the offset
+         *         the batch's rows start at.
+         */
+        public long getCsvLengthBefore() {
+            return csvLengthBefore;
+        }
+
+        public List<Record> getRecords() {
+            return records;
+        }
+    }
+
+    private final Path journalPath;
+
+    /**
+     * @param csvFilePath The transaction CSV this journal belongs to.
+     */
+    public TransactionJournal(String csvFilePath) {
+        this.journalPath = Paths.get(csvFilePath + SUFFIX);
+    }
+
+    public Path getPath() {
+        return journalPath;
+    }
+
+    public boolean exists() {
+        return Files.exists(journalPath);
+    }
+
+    /**
+     * Appends one batch as a single frame and forces it to disk before returning.
+     */
+    public void append(Kind kind, long csvLengthBefore, List<Record> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        byte[] payload = encode(kind, csvLengthBefore, records);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long position = channel.size();
+            if (position < HEADER_BYTES) {
+                // New file, or a header torn by a crash (no frame can follow a torn header)
+                position = 0;
+                channel.truncate(0);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((position == 0 ? HEADER_BYTES : 0) + FRAME_HEADER_BYTES + payload.length);
+            if (position == 0) {
+                buffer.putInt(MAGIC).putInt(VERSION);
+            }
+            buffer.putInt(payload.length).putLong(crc.getValue()).put(payload);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Reads all intact frames, in order.
+     */
+    public List<Frame> readFrames() throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        if (!exists()) {
+            return frames;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journalPath));
+        if (buffer.remaining() < HEADER_BYTES) {
+            return frames; // Crashed while creating the journal; nothing was acknowledged
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a transaction journal (or an unsupported version): " + journalPath);
+        }
+        while (buffer.hasRemaining()) {
+            int frameStart = buffer.position();
+            try {
+                int length = buffer.getInt();
+                long expectedCrc = buffer.getLong();
+                if (length < 0 || length > MAX_FRAME_BYTES || length > buffer.remaining()) {
+                    throw new IllegalStateException("Frame length " + length + " exceeds journal size");
+                }
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                CRC32 crc = new CRC32();
+                crc.update(payload.duplicate());
+                if (crc.getValue() != expectedCrc) {
+                    throw new IllegalStateException("Checksum mismatch");
+                }
+                frames.add(decode(payload));
+                buffer.position(buffer.position() + length);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalStateException | IllegalArgumentException e) {
+                System.err.println("TransactionJournal: Ignoring damaged frame at byte " + frameStart + " of " + journalPath
+                        + " and everything after it (" + e.getMessage() + ")");
+                break;
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * All records of all intact frames, in order.
+     */
+    public List<Record> readAll() throws IOException {
+        List<Record> records = new ArrayList<>();
+        for (Frame frame : readFrames()) {
+            records.addAll(frame.getRecords());
+        }
+        return records;
+    }
+
+    public void delete() throws IOException {
+        Files.deleteIfExists(journalPath);
+    }
+
+    private static byte[] encode(Kind kind, long csvLengthBefore, List<Record> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + records.size() * 160);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(kind.ordinal());
+        out.writeLong(csvLengthBefore);
+        out.writeInt(records.size());
+        for (Record record : records) {
+            Transaction t = record.transaction;
+            out.writeByte(record.op.ordinal());
+            writeString(out, t.getTransactionTime());
+            writeString(out, t.getTransactionType());
+            writeString(out, t.getCounterparty());
+            writeString(out, t.getCommodity());
+            writeString(out, t.getInOut());
+            out.writeDouble(t.getPaymentAmount());
+            writeString(out, t.getPaymentMethod());
+            writeString(out, t.getCurrentStatus());
+            writeString(out, t.getOrderNumber());
+            writeString(out, t.getMerchantNumber());
+            writeString(out, t.getRemarks());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Frame decode(ByteBuffer payload) {
+        Kind kind = Kind.values()[payload.get()];
+        long csvLengthBefore = payload.getLong();
+        int count = payload.getInt();
+        List<Record> records = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            Op op = Op.values()[payload.get()];
+            String transactionTime = readString(payload);
+            String transactionType = readString(payload);
+            String counterparty = readString(payload);
+            String commodity = readString(payload);
+            String inOut = readString(payload);
+            double paymentAmount = payload.getDouble();
+            String paymentMethod = readString(payload);
+            String currentStatus = readString(payload);
+            String orderNumber = readString(payload);
+            String merchantNumber = readString(payload);
+            String remarks = readString(payload);
+            records.add(new Record(op, new Transaction(transactionTime, transactionType, counterparty, commodity, inOut,
+                    paymentAmount, paymentMethod, currentStatus, orderNumber, merchantNumber, remarks)));
+        }
+        if (payload.hasRemaining()) {
+            throw new IllegalStateException("Unexpected trailing bytes in frame");
+        }
+        return new Frame(kind, csvLengthBefore, records);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IllegalStateException("String length " + length + " exceeds frame size");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Row-level changes that turn {@code before} into {@code after}. Rows are compared by identity:
+     * cached rows are never modified in place, so a row object that is not in {@code before} is new or edited.
+     * If a removed or edited row has a blank or duplicated order number, a PUT or DELETE could not single it
+     * out on replay, so the result is a full image of {@code after} instead.
+     */
+    public static List<Record> diff(List<Transaction> before, List<Transaction> after) {
+        Set<Transaction> unchanged = Collections.newSetFromMap(new IdentityHashMap<>());
+        unchanged.addAll(before);
+        Set<Transaction> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        kept.addAll(after);
+        Map<String, Integer> rowsPerKey = new HashMap<>();
+        for (Transaction t : before) {
+            rowsPerKey.merge(key(t), 1, Integer::sum);
+        }
+        for (Transaction t : before) {
+            if (!kept.contains(t) && (key(t).isEmpty() || rowsPerKey.get(key(t)) > 1)) {
+                return image(after);
+            }
+        }
+        Set<String> remainingOrderNumbers = new HashSet<>();
+        List<Record> records = new ArrayList<>();
+        for (Transaction t : after) {
+            remainingOrderNumbers.add(key(t));
+            if (!unchanged.contains(t)) {
+                records.add(new Record(Op.PUT, t));
+            }
+        }
+        for (Transaction t : before) {
+            if (!key(t).isEmpty() && !remainingOrderNumbers.contains(key(t))) {
+                records.add(new Record(Op.DELETE, t));
+                remainingOrderNumbers.add(key(t)); // One DELETE per order number
+            }
+        }
+        return records;
+    }
+
+    private static List<Record> image(List<Transaction> rows) {
+        List<Record> records = new ArrayList<>(rows.size() + 1);
+        records.add(new Record(Op.RESET, new Transaction()));
+        for (Transaction t : rows) {
+            records.add(new Record(Op.IMAGE, t));
+        }
+        return records;
+    }
+
+    /**
+     * Applies records to a file's rows. Edited rows keep their position, new order numbers go to the end.
+     * A PUT or DELETE applies to every row with that order number. Rows without an order number cannot be
+     * addressed; a PUT of one is skipped if an identical row is already there, so replays stay idempotent.
+     * RESET drops every row and IMAGE appends one unconditionally (a full image replaces the rows as a whole).
+     *
+     * @return A new list; {@code rows} is not modified.
+     */
+    public static List<Transaction> replay(List<Transaction> rows, List<Record> records) {
+        List<Transaction> slots = new ArrayList<>(rows);
+        Map<String, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < slots.size(); i++) {
+            String key = key(slots.get(i));
+            if (!key.isEmpty()) {
+                positions.computeIfAbsent(key, k -> new ArrayList<>(1)).add(i);
+            }
+        }
+        for (Record record : records) {
+            String key = key(record.transaction);
+            if (record.op == Op.RESET) {
+                slots.clear();
+                positions.clear();
+                continue;
+            }
+            if (record.op == Op.IMAGE) {
+                slots.add(record.transaction);
+                if (!key.isEmpty()) {
+                    positions.computeIfAbsent(key, k -> new ArrayList<>(1)).add(slots.size() - 1);
+                }
+                continue;
+            }
+            List<Integer> existing = key.isEmpty() ? null : positions.get(key);
+            if (record.op == Op.PUT) {
+                if (key.isEmpty()) {
+                    if (slots.stream().noneMatch(t -> t != null && sameRow(t, record.transaction))) {
+                        slots.add(record.transaction);
+                    }
+                } else if (existing == null) {
+                    slots.add(record.transaction);
+                    positions.computeIfAbsent(key, k -> new ArrayList<>(1)).add(slots.size() - 1);
+                } else {
+                    for (int position : existing) {
+                        slots.set(position, record.transaction);
+                    }
+                }
+            } else if (existing != null) {
+                for (int position : existing) {
+                    slots.set(position, null);
+                }
+                positions.remove(key);
+            }
+        }
+        List<Transaction> result = new ArrayList<>(slots.size());
+        for (Transaction t : slots) {
+            if (t != null) {
+                result.add(t);
+            }
+        }
+        return result;
+    }
+
+    private static boolean sameRow(Transaction a, Transaction b) {
+        return same(a.getTransactionTime(), b.getTransactionTime())
+                && same(a.getTransactionType(), b.getTransactionType())
+                && same(a.getCounterparty(), b.getCounterparty())
+                && same(a.getCommodity(), b.getCommodity())
+                && same(a.getInOut(), b.getInOut())
+                && Math.abs(a.getPaymentAmount() - b.getPaymentAmount()) < 0.005 // The CSV keeps two decimals
+                && same(a.getPaymentMethod(), b.getPaymentMethod())
+                && same(a.getCurrentStatus(), b.getCurrentStatus())
+                && same(a.getMerchantNumber(), b.getMerchantNumber())
+                && same(a.getRemarks(), b.getRemarks());
+    }
+
+    // As the CSV stores it: trimmed, null written as empty
+    private static boolean same(String a, String b) {
+        return (a == null ? "" : a.trim()).equals(b == null ? "" : b.trim());
+    }
+
+    private static String key(Transaction t) {
+        return t.getOrderNumber() == null ? "" : t.getOrderNumber().trim();
+    }
+}
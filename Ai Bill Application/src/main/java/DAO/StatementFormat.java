@@ -0,0 +1,45 @@
+package DAO;
+
+import model.Transaction;
+import org.apache.commons.csv.CSVRecord;
+
+import java.util.List;
+
+/**
+ * Adapter for one kind of transaction CSV (our own files, Alipay, WeChat Pay, bank statements, ...).
+ *
+ * An adapter recognises its header row and compiles it once into a {@link RowMapper} that reads each data
+ * row by column index and converts the values into a {@link Transaction}.
+ */
+public interface StatementFormat {
+
+    /**
+     * @return A short display name, e.g. "WeChat Pay".
+     */
+    String getName();
+
+    /**
+     * Scores how well a header row fits this format.
+     *
+     * @param normalizedHeader The header cells, normalized (see DAO.Impl.StatementFormats#normalizeHeader).
+     * @return 0 if the header is not of this format, otherwise a higher number for a better fit
+     *         (typically the number of recognised columns).
+     */
+    int match(List<String> normalizedHeader);
+
+    /**
+     * Resolves the header once into column positions and converters.
+     *
+     * @param normalizedHeader A header for which {@link #match} returned more than 0.
+     */
+    RowMapper compile(List<String> normalizedHeader);
+
+    /**
+     * Converts one data row of a compiled header. Implementations hold no per-file state and are
+     * safe to share between threads.
+     */
+    @FunctionalInterface
+    interface RowMapper {
+        Transaction map(CSVRecord record);
+    }
+}
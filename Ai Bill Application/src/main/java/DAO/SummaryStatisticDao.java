@@ -23,6 +23,21 @@ public interface SummaryStatisticDao {
      */
     void writeAllStatistics(String filePath, List<SummaryStatistic> statistics) throws IOException;
 
-    // Optional: Add method to get statistic by week identifier if needed
-    // SummaryStatistic getStatisticByWeek(String filePath, String weekIdentifier) throws IOException;
+    /**
+     * Inserts or replaces the statistics of individual weeks, leaving all other weeks untouched.
+     * @param filePath The path to the summary statistics CSV file (created if missing).
+     * @param statistics The statistics to store, at most one per week identifier.
+     * @throws IOException If an I/O error occurs during saving.
+     */
+    void upsertStatistics(String filePath, List<SummaryStatistic> statistics) throws IOException;
+
+    /**
+     * Loads the statistics of the weeks between two week identifiers (inclusive), ordered by week.
+     * @param filePath The path to the summary statistics CSV file.
+     * @param fromWeek First week, e.g. "2025-W10"; null for no lower bound.
+     * @param toWeek Last week; null for no upper bound.
+     * @return The statistics in the range (empty if the file does not exist).
+     * @throws IOException If an I/O error occurs during loading.
+     */
+    List<SummaryStatistic> loadStatisticsBetween(String filePath, String fromWeek, String toWeek) throws IOException;
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import model.Transaction;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Interface for Data Access Object (DAO) operations related to Transactions.
@@ -14,6 +15,17 @@ public interface TransactionDao {
     // Keep loadFromCSV - used by cache loader
     List<Transaction> loadFromCSV(String filePath) throws IOException;
 
+    /**
+     * Parses the specified file record by record and hands each transaction to the action, without
+     * holding the whole file in memory. Malformed records are skipped.
+     *
+     * @param filePath The path to the CSV file.
+     * @param action Receives each parsed transaction, in file order.
+     * @return The number of transactions handed to the action.
+     * @throws IOException If the file cannot be read or lacks the required headers.
+     */
+    int forEachFromCSV(String filePath, Consumer<Transaction> action) throws IOException;
+
     /**
      * Loads all transactions from the specified data source file.
      * @param filePath The path to the user's CSV file.
@@ -32,6 +44,16 @@ public interface TransactionDao {
      */
     void addTransaction(String filePath, Transaction transaction) throws IOException;
 
+    /**
+     * Appends several transactions to the specified data source file in one write
+     * (creating the file with headers if needed).
+     *
+     * @param filePath The path to the user's CSV file.
+     * @param transactions The transactions to append, in order.
+     * @throws IOException If an I/O error occurs during saving.
+     */
+    void appendTransactions(String filePath, List<Transaction> transactions) throws IOException;
+
     /**
      * Deletes a transaction identified by its order number from the specified data source file.
      *
@@ -18,6 +18,15 @@ public interface UserDao {
      */
     List<User> getAllUsers() throws IOException;
 
+    /**
+     * Finds a user by username, ignoring case.
+     *
+     * @param username The username to look up.
+     * @return The user, or null if there is no such user.
+     * @throws IOException If an I/O error occurs during loading.
+     */
+    User getUserByUsername(String username) throws IOException;
+
     /**
      * Adds a new user to the data source.
      *
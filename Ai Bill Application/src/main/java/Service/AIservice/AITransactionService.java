@@ -1,19 +1,20 @@
 package Service.AIservice;
 
+import Constants.ConfigConstants;
 import DAO.TransactionDao;
 import DAO.Impl.CsvTransactionDao;
 import Service.TransactionService;
 import Utils.CacheManager;
+import Utils.FileFingerprint;
+import Utils.Metrics;
+import Utils.SingleFlight;
+import Utils.TransactionSnapshot;
 import model.MonthlySummary;
 import model.Transaction;
 
-import com.volcengine.ark.runtime.model.completion.chat.ChatCompletionRequest;
-import com.volcengine.ark.runtime.model.completion.chat.ChatMessage;
-import com.volcengine.ark.runtime.model.completion.chat.ChatMessageRole;
-import com.volcengine.ark.runtime.service.ArkService;
 
 import java.io.IOException;
-import java.time.Duration;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -28,25 +29,98 @@ import model.MonthlySummary;
 import static Constants.CaffeineKeys.TRANSACTION_CAFFEINE_KEY;
 
 public class AITransactionService {
-    // Keep static ArkService as it's typically thread-safe and stateless
-    private static final String API_KEY = System.getenv("ARK_API_KEY"); // Or load from config.properties
-    private static final ArkService service = ArkService.builder()
-            .timeout(Duration.ofSeconds(1800))
-            .connectTimeout(Duration.ofSeconds(20))
-            .baseUrl("https://ark.cn-beijing.volces.com/api/v3")
-            .apiKey(API_KEY) // Ensure API_KEY is loaded
-            .build();
+    // The configured Ark endpoint; one client (and connection pool) shared by all instances
+    private static final LlmClient defaultClient = ArkLlmClient.fromConfig();
+
+    // Answers to earlier prompts, shared by all instances (null if disabled in config)
+    private static final AiResponseCache responseCache = createResponseCache();
+    // Identical prompts asked at the same time (double clicks, several panels) share one round-trip
+    private static final SingleFlight<String, String> inFlightRequests = new SingleFlight<>();
+    // Every request to the endpoint: concurrency cap, rate limit, retries and circuit breaker
+    private static final AiGateway defaultGateway = createGateway();
+    private static final String NO_ANALYSIS_DATA_MESSAGE = "No transaction records found matching the criteria within this time period, analysis cannot be performed. Please check the time and transaction data.";
+
+    /**
+     * The reports built from the monthly summaries, with the answer given when there is no data for them.
+     */
+    public enum Report {
+        PERSONAL_SUMMARY("Not enough transaction data found to generate a personal spending summary."),
+        SAVINGS_GOALS("Not enough transaction data found to suggest savings goals."),
+        PERSONAL_SAVING_TIPS("Not enough transaction data found to provide personalized saving tips."),
+        SEASONAL_PATTERNS("Not enough monthly transaction data found to analyze detailed seasonal spending patterns.");
+
+        private final String noDataMessage;
+
+        Report(String noDataMessage) {
+            this.noDataMessage = noDataMessage;
+        }
+
+        public String getNoDataMessage() {
+            return noDataMessage;
+        }
+    }
 
     // Need access to TransactionService to get monthly summaries
     private final TransactionService transactionService; // Inject TransactionService
+    private final LlmClient llmClient; // The model that is asked
+    private final AiGateway gateway; // Admission control of that model's endpoint
 
 
     /**
      * Constructor now accepts TransactionService instance.
+     * Uses the model and limits from config.properties.
      */
     public AITransactionService(TransactionService transactionService) {
+        this(transactionService, defaultClient, defaultGateway);
+    }
+
+    /**
+     * Uses the given model, e.g. a {@link FakeLlmClient} or an {@link ArkLlmClient} on a {@link StubChatServer}.
+     *
+     * @param gateway Limits for requests to that model (share one instance among services using the same endpoint).
+     */
+    public AITransactionService(TransactionService transactionService, LlmClient llmClient, AiGateway gateway) {
         this.transactionService = transactionService; // Inject the service
-        System.out.println("AITransactionService initialized with TransactionService.");
+        this.llmClient = llmClient;
+        this.gateway = gateway;
+        System.out.println("AITransactionService initialized with TransactionService (model " + llmClient.getModelId() + ").");
+    }
+
+    private static AiResponseCache createResponseCache() {
+        if (!ConfigConstants.AI_CACHE_ENABLED) {
+            return null;
+        }
+        AiResponseCache cache = new AiResponseCache(Paths.get(ConfigConstants.AI_CACHE_DIR),
+                ConfigConstants.AI_CACHE_TTL_MINUTES * 60_000L, ConfigConstants.AI_CACHE_MAX_MB * 1024L * 1024L);
+        Metrics.registerMBean("type=AiResponseCache", cache);
+        return cache;
+    }
+
+    private static AiGateway createGateway() {
+        AiGateway gateway = AiGateway.fromConfig();
+        Metrics.registerMBean("type=AiGateway", gateway);
+        return gateway;
+    }
+
+    /**
+     * @return The admission control of requests to the configured endpoint (for diagnostics).
+     */
+    public static AiGateway getGateway() {
+        return defaultGateway;
+    }
+
+    /**
+     * @return The shared answer cache, or null if it is disabled.
+     */
+    public static AiResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * @return The coalescing of concurrent identical requests (for diagnostics).
+     */
+    public static SingleFlight<String, String> getInFlightRequests() {
+        return inFlightRequests;
     }
 
     /**
@@ -59,27 +133,30 @@ public class AITransactionService {
      * @return AI analysis result as a String.
      */
     public String analyzeTransactions(String userRequest, String filePath, String startTimeStr, String endTimeStr) {
+        return analyzeTransactions(userRequest, filePath, startTimeStr, endTimeStr, false);
+    }
+
+    /**
+     * Like {@link #analyzeTransactions(String, String, String, String)}.
+     *
+     * @param forceRefresh True to ask the model even if an answer for the same request and data is cached.
+     */
+    public String analyzeTransactions(String userRequest, String filePath, String startTimeStr, String endTimeStr, boolean forceRefresh) {
         try {
             // Get transactions for the specified file path using CacheManager
             // Need to pass a DAO instance for the CacheManager's loader if it needs to load from file.
             TransactionDao transactionDaoForLoading = new CsvTransactionDao(); // Create a DAO instance for loading
-            List<Transaction> transactions = CacheManager.getTransactions(filePath, transactionDaoForLoading);
+            TransactionSnapshot snapshot = CacheManager.getSnapshot(filePath, transactionDaoForLoading);
+            List<Transaction> transactions = snapshot;
             System.out.println("AI Service: Retrieved " + transactions.size() + " transactions for file: " + filePath);
 
 
-            // Format filtered transactions for the AI prompt
-            List<String> transactionDetails = formatTransactions(transactions, startTimeStr, endTimeStr);
-            System.out.println("AI Service: Formatted " + transactionDetails.size() + " transactions for AI.");
-
-
-            // Check if any transactions were found after filtering
-            if (transactionDetails.isEmpty() || (transactionDetails.size() == 1 && transactionDetails.get(0).startsWith("No transactions found within this time period"))) {
-                return "No transaction records found matching the criteria within this time period, analysis cannot be performed. Please check the time and transaction data.";
+            String aiPrompt = analysisPrompt(userRequest, transactions, startTimeStr, endTimeStr);
+            if (aiPrompt == null) {
+                return NO_ANALYSIS_DATA_MESSAGE;
             }
-
-            String aiPrompt = userRequest + "\n" + "Here is my billing information:\n" + String.join("\n", transactionDetails);
             System.out.println("AI Service: Sending prompt to AI. Prompt length: " + aiPrompt.length());
-            return askAi(aiPrompt);
+            return askAi(aiPrompt, dataVersion(snapshot.getFingerprint()), forceRefresh);
         } catch (IllegalArgumentException e) {
             System.err.println("AI analysis failed due to invalid time format: " + e.getMessage());
             return "AI analysis failed: Incorrect time format. " + e.getMessage();
@@ -92,10 +169,112 @@ public class AITransactionService {
     }
 
 
+    /**
+     * Streaming variant of {@link #analyzeTransactions(String, String, String, String, boolean)}: the answer
+     * is passed to the listener while it is generated. Problems found before asking the model (bad time
+     * format, no data) are reported through the listener like an answer, as the blocking variant returns them.
+     *
+     * @return Handle to cancel the request.
+     */
+    public AiStream streamAnalyzeTransactions(String userRequest, String filePath, String startTimeStr, String endTimeStr,
+                                              boolean forceRefresh, AiStreamListener listener) {
+        String aiPrompt;
+        String version;
+        try {
+            TransactionSnapshot snapshot = CacheManager.getSnapshot(filePath, new CsvTransactionDao());
+            System.out.println("AI Service: Retrieved " + snapshot.size() + " transactions for file: " + filePath);
+            aiPrompt = analysisPrompt(userRequest, snapshot, startTimeStr, endTimeStr);
+            version = dataVersion(snapshot.getFingerprint());
+        } catch (IllegalArgumentException e) {
+            System.err.println("AI analysis failed due to invalid time format: " + e.getMessage());
+            return answerWithoutModel("AI analysis failed: Incorrect time format. " + e.getMessage(), listener);
+        } catch (Exception e) {
+            System.err.println("AI analysis failed during data retrieval for file: " + filePath);
+            e.printStackTrace();
+            listener.onError(e);
+            return AiStream.finished();
+        }
+        if (aiPrompt == null) {
+            return answerWithoutModel(NO_ANALYSIS_DATA_MESSAGE, listener);
+        }
+        System.out.println("AI Service: Streaming prompt to AI. Prompt length: " + aiPrompt.length());
+        return askAiStreaming(aiPrompt, version, forceRefresh, listener);
+    }
+
+    /**
+     * @return The analysis prompt, or null if no transactions fall in the time range.
+     * @throws IllegalArgumentException If a time cannot be parsed.
+     */
+    private String analysisPrompt(String userRequest, List<Transaction> transactions, String startTimeStr, String endTimeStr) {
+        RangeTotals totals = totalsByCounterparty(transactions, startTimeStr, endTimeStr);
+        if (totals.filteredCount == 0) {
+            return null;
+        }
+        // Biggest money flows first; small counterparties are folded into one "Others" line if the budget is tight
+        Comparator<Map.Entry<String, double[]>> byAbsoluteNet = Comparator.comparingDouble(e -> -Math.abs(e.getValue()[0]));
+        List<Map.Entry<String, double[]>> counterparties = new ArrayList<>(totals.byCounterparty.entrySet());
+        counterparties.sort(byAbsoluteNet);
+        PromptBudgeter.Section<Map.Entry<String, double[]>> section = new PromptBudgeter.Section<>(null, counterparties,
+                byAbsoluteNet,
+                e -> formatCounterparty(e.getKey(), e.getValue()[0], (int) e.getValue()[1]),
+                AITransactionService::summarizeOtherCounterparties);
+        String fixedText = userRequest + "\n" + "Here is my billing information:\n" + totals.rangeInfo() + "\n";
+        return new PromptBudgeter((int) ConfigConstants.AI_PROMPT_BUDGET_TOKENS)
+                .build("General analysis", fixedText, List.of(section));
+    }
+
+    private static String summarizeOtherCounterparties(List<Map.Entry<String, double[]>> rest) {
+        double net = 0;
+        int count = 0;
+        for (Map.Entry<String, double[]> e : rest) {
+            net += e.getValue()[0];
+            count += (int) e.getValue()[1];
+        }
+        return String.format("Others (%d more counterparties): Net %s: %.2f CNY, Transaction Count: %d",
+                rest.size(), net >= 0 ? "Total Income" : "Total Expense", Math.abs(net), count);
+    }
+
     // Keep formatTransactions, parseDateTime, askAi methods. Ensure parseDateTime is robust.
     // The formatTransactions method relies on parseDateTime, ensure consistency with TransactionServiceImpl's parser.
 
     public List<String> formatTransactions(List<Transaction> transactions, String startTimeStr, String endTimeStr) {
+        RangeTotals totals = totalsByCounterparty(transactions, startTimeStr, endTimeStr);
+
+        List<String> results = totals.byCounterparty.entrySet().stream()
+                .map(e -> formatCounterparty(e.getKey(), e.getValue()[0], (int) e.getValue()[1]))
+                .collect(Collectors.toList());
+        System.out.println("Formatted grouped results.");
+
+
+        // Add time range information to the results list
+        String rangeInfo = totals.rangeInfo();
+        results.add(0, rangeInfo); // Add range info at the beginning
+
+        if (totals.filteredCount == 0) { // Check if the filtered list was empty before grouping
+            return List.of(rangeInfo, "No transactions found within this time period.");
+        }
+        return results;
+    }
+
+    /**
+     * Transactions of a time range, netted per counterparty.
+     */
+    private static final class RangeTotals {
+        LocalDateTime startTime;
+        LocalDateTime endTime;
+        int filteredCount;
+        Map<String, double[]> byCounterparty; // double[0] = net amount (income positive), double[1] = count
+
+        String rangeInfo() {
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm");
+            return String.format("Analysis Time Range: %s - %s", formatter.format(startTime), formatter.format(endTime));
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException If a time cannot be parsed.
+     */
+    private RangeTotals totalsByCounterparty(List<Transaction> transactions, String startTimeStr, String endTimeStr) {
         LocalDateTime startTime = parseDateTime(startTimeStr);
         // If end time is empty, use current time
         LocalDateTime endTime = (endTimeStr == null || endTimeStr.trim().isEmpty())
@@ -150,33 +329,21 @@ public class AITransactionService {
         }
         System.out.println("Grouped transactions by counterparty. Found " + grouped.size() + " counterparties.");
 
+        RangeTotals totals = new RangeTotals();
+        totals.startTime = startTime;
+        totals.endTime = endTime;
+        totals.filteredCount = filtered.size();
+        totals.byCounterparty = grouped;
+        return totals;
+    }
 
-        List<String> results = grouped.entrySet().stream()
-                .map(e -> {
-                    String cp = e.getKey();
-                    double net = e.getValue()[0];
-                    int count = (int) e.getValue()[1];
-                    String inOutLabel = net >= 0 ? "Total Income" : "Total Expense";
-                    if (Math.abs(net) < 0.01 && count > 0) { // If net is near zero but there were transactions
-                        inOutLabel = "Net Zero"; // Or specify "Income equals Expense"
-                    }
-                    return String.format("Counterparty: %s, Net %s: %.2f CNY, Transaction Count: %d",
-                            cp, inOutLabel, Math.abs(net), count);
-                })
-                .collect(Collectors.toList());
-        System.out.println("Formatted grouped results.");
-
-
-        // Add time range information to the results list
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm");
-        String rangeInfo = String.format("Analysis Time Range: %s - %s",
-                formatter.format(startTime), formatter.format(endTime));
-        results.add(0, rangeInfo); // Add range info at the beginning
-
-        if (filtered.isEmpty()) { // Check if the filtered list was empty before grouping
-            return List.of(rangeInfo, "No transactions found within this time period.");
+    private static String formatCounterparty(String counterparty, double net, int count) {
+        String inOutLabel = net >= 0 ? "Total Income" : "Total Expense";
+        if (Math.abs(net) < 0.01 && count > 0) { // If net is near zero but there were transactions
+            inOutLabel = "Net Zero"; // Or specify "Income equals Expense"
         }
-        return results;
+        return String.format("Counterparty: %s, Net %s: %.2f CNY, Transaction Count: %d",
+                counterparty, inOutLabel, Math.abs(net), count);
     }
 
 
@@ -220,33 +387,50 @@ public class AITransactionService {
     }
 
 
-    // Keep askAi method
+    /**
+     * Sends a prompt that does not depend on the user's stored data (the prompt carries everything).
+     * Answers are cached like those of {@link #askAi(String, String, boolean)} with an empty data version.
+     */
     public String askAi(String prompt) {
+        return askAi(prompt, "", false);
+    }
+
+    /**
+     * Sends a prompt to the model, or returns the cached answer to the same prompt on the same data.
+     * Only successful answers are cached; errors are returned as text as before.
+     * If the same prompt on the same data is already on its way to the model, this waits for that answer
+     * instead of sending it again.
+     *
+     * @param prompt The prompt.
+     * @param dataVersion Version of the data the prompt was built from ("" if none; null to bypass the cache).
+     * @param forceRefresh True to skip the cache lookup; the fresh answer replaces the cached one.
+     * @return The answer, or an error message.
+     */
+    public String askAi(String prompt, String dataVersion, boolean forceRefresh) {
+        String requestKey = AiResponseCache.key(llmClient.getModelId(), prompt, dataVersion == null ? "" : dataVersion);
+        boolean cacheable = responseCache != null && dataVersion != null;
+        if (cacheable && !forceRefresh) {
+            String cached = responseCache.get(requestKey);
+            if (cached != null) {
+                System.out.println("AI Service: Answer served from cache.");
+                return cached;
+            }
+        }
         try {
-            if (API_KEY == null || API_KEY.trim().isEmpty()) {
+            if (!llmClient.isConfigured()) {
                 System.err.println("ARK_API_KEY environment variable is not set.");
                 return "AI service configuration error: ARK_API_KEY not set.";
             }
-            // Ensure the static service instance is properly built with the key
-            // This might be better done once at application startup if API_KEY is loaded from config.
-            // For now, relying on the static final initialization is acceptable if the env var is set before class loading.
-
-
-            List<ChatMessage> messages = List.of(
-                    ChatMessage.builder().role(ChatMessageRole.USER).content(prompt).build()
-            );
-
-            ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
-                    .model("ep-20250308174053-7pbkq") // Use your model name
-                    .messages(messages)
-                    .build();
-
-            System.out.println("AI Service: Sending request to VolcEngine Ark...");
-            // Use the static service instance
-            String responseContent = (String) service.createChatCompletion(chatCompletionRequest)
-                    .getChoices().get(0).getMessage().getContent();
-            System.out.println("AI Service: Received response from AI.");
-            return responseContent;
+            // Cache before the call is released, so a caller arriving right after it finds the answer.
+            // The call runs on a thread of its own: cancelling this caller must not fail the others.
+            CompletableFuture<String> answer = inFlightRequests.submit(requestKey, () -> {
+                String responseContent = gateway.call(() -> requestCompletion(prompt));
+                if (cacheable && responseContent != null) {
+                    responseCache.put(requestKey, responseContent);
+                }
+                return responseContent;
+            }, AiExecutor.sharedCalls());
+            return awaitShared(answer);
 
         } catch (Exception e) {
             System.err.println("AI Service: AI request failed.");
@@ -255,27 +439,129 @@ public class AITransactionService {
         }
     }
 
-    // Keep runAiInThread method, ensure it uses the correct analyzeTransactions method
-    public void runAiInThread(String userRequest, String filePath,String startTimeStr, String endTimeStr) {
-        // ExecutorService should ideally be managed at a higher level in a larger app,
-        // but a simple single thread executor per request is acceptable for this scale.
-        // However, this creates a new thread and executor every time.
-        // A fixed thread pool managed statically or by a dedicated AI Service Manager would be more efficient.
-        // For now, let's keep it simple as in the original code.
-
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.submit(() -> {
-            // Call the instance method analyzeTransactions
-            String result = this.analyzeTransactions(userRequest, filePath,startTimeStr, endTimeStr);
-            System.out.println("AI analysis thread finished. Result: " + result);
-            // TODO: How to pass the result back to the UI?
-            // This thread doesn't have access to the UI components directly.
-            // Need a mechanism like a callback or SwingUtilities.invokeLater.
-            // This will be addressed when integrating AI output into the UI (Step 10).
+    /**
+     * Waits for this caller's view of a shared model call.
+     *
+     * @throws CancellationException If this caller was interrupted (only this caller stops waiting; the flag stays set).
+     */
+    private static String awaitShared(CompletableFuture<String> answer) throws Exception {
+        try {
+            return answer.get();
+        } catch (InterruptedException e) {
+            answer.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("AI request cancelled");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Streaming variant of {@link #askAi(String, String, boolean)}: the answer is passed to the listener
+     * while the model generates it. A cached answer is passed as a single chunk; a complete streamed answer
+     * is cached. Each call reads its own stream (identical streaming requests are not coalesced).
+     *
+     * @param prompt The prompt.
+     * @param dataVersion Version of the data the prompt was built from ("" if none; null to bypass the cache).
+     * @param forceRefresh True to skip the cache lookup; the fresh answer replaces the cached one.
+     * @param listener Receives the answer (not on the EDT).
+     * @return Handle to cancel the request.
+     */
+    public AiStream askAiStreaming(String prompt, String dataVersion, boolean forceRefresh, AiStreamListener listener) {
+        String requestKey = AiResponseCache.key(llmClient.getModelId(), prompt, dataVersion == null ? "" : dataVersion);
+        boolean cacheable = responseCache != null && dataVersion != null;
+        if (cacheable && !forceRefresh) {
+            String cached = responseCache.get(requestKey);
+            if (cached != null) {
+                System.out.println("AI Service: Answer served from cache.");
+                return answerWithoutModel(cached, listener);
+            }
+        }
+        if (!llmClient.isConfigured()) {
+            System.err.println("ARK_API_KEY environment variable is not set.");
+            listener.onError(new IllegalStateException("AI service configuration error: ARK_API_KEY not set."));
+            return AiStream.finished();
+        }
+        AiGateway.Permit permit;
+        try {
+            permit = gateway.admit(); // Held until the stream ends; a stream is not retried once text was shown
+        } catch (RuntimeException e) {
+            System.err.println("AI Service: Streaming request not sent: " + e.getMessage());
+            listener.onError(e);
+            return AiStream.finished();
+        }
+        AiStream stream = llmClient.stream(prompt, new AiStreamListener() {
+            @Override
+            public void onChunk(String text) {
+                listener.onChunk(text);
+            }
+
+            @Override
+            public void onComplete(String fullText) {
+                permit.release(null);
+                if (cacheable && !fullText.isEmpty()) {
+                    responseCache.put(requestKey, fullText); // A cancelled or failed stream is never cached
+                }
+                listener.onComplete(fullText);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                permit.release(error);
+                listener.onError(error);
+            }
         });
-        // Consider shutting down the executor more gracefully, e.g., when the app exits.
-        // executor.shutdown(); // Shutting down immediately might cancel the task
-        // A better approach is `executor.shutdown()` after submitting, but manage the executor lifecycle elsewhere.
+        stream.whenDone(() -> permit.release(new CancellationException("Stream cancelled"))); // No-op unless cancelled
+        return stream;
+    }
+
+    /**
+     * Passes a text that needs no model call (cached answer, "no data" notice) to the listener at once.
+     */
+    private static AiStream answerWithoutModel(String text, AiStreamListener listener) {
+        listener.onChunk(text);
+        listener.onComplete(text);
+        return AiStream.finished();
+    }
+
+    /**
+     * One chat completion round-trip to the model.
+     */
+    private String requestCompletion(String prompt) {
+        Metrics.Timer timer = Metrics.startTimer("ai.request");
+        try {
+            return llmClient.complete(prompt);
+        } catch (RuntimeException e) {
+            timer.failed();
+            throw e;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Version of a user's transaction data for cache keys: the file's size, mtime and checksum, which change
+     * with every edit and stay the same across restarts.
+     *
+     * Take it from the snapshot the prompt was built from (e.g. {@link PromptContext#getDataVersion}), never
+     * from a second read of the file, which may already see a later write.
+     */
+    static String dataVersion(FileFingerprint fingerprint) {
+        return fingerprint.getSize() + ":" + fingerprint.getLastModifiedMillis() + ":" + Long.toHexString(fingerprint.getChecksum());
+    }
+
+    /**
+     * Starts an analysis in the background and logs its result.
+     *
+     * @return The result, as {@link #analyzeTransactionsAsync} returns it.
+     */
+    public CompletableFuture<String> runAiInThread(String userRequest, String filePath, String startTimeStr, String endTimeStr) {
+        CompletableFuture<String> result = analyzeTransactionsAsync(userRequest, filePath, startTimeStr, endTimeStr, false);
+        result.thenAccept(answer -> System.out.println("AI analysis thread finished. Result: " + answer));
+        return result;
     }
 
     /**
@@ -284,49 +570,32 @@ public class AITransactionService {
      * @return AI analysis result as a String.
      */
     public String generatePersonalSummary(String userFilePath) {
+        return generatePersonalSummary(userFilePath, false);
+    }
+
+    /**
+     * Like {@link #generatePersonalSummary(String)}.
+     *
+     * @param forceRefresh True to ask the model even if an answer for the same data is cached.
+     */
+    public String generatePersonalSummary(String userFilePath, boolean forceRefresh) {
         try {
             // Get monthly summary data from TransactionService
             // Note: TransactionService already operates on the current user's data implicitly if passed correctly.
             // We might not need userFilePath explicitly in this method signature if the service instance is user-specific.
             // Let's assume the injected transactionService is already scoped to the current user.
-            Map<String, MonthlySummary> summaries = transactionService.getMonthlyTransactionSummary();
+            PromptContext context = PromptContext.of(userFilePath, transactionService);
+            Map<String, MonthlySummary> summaries = context.getMonthlySummaries();
             System.out.println("AI Service: Retrieved " + summaries.size() + " months of summary data.");
 
             if (summaries.isEmpty()) {
-                return "Not enough transaction data found to generate a personal spending summary.";
-            }
-
-            // Format the summary data for the AI prompt
-            StringBuilder summaryPromptBuilder = new StringBuilder();
-            summaryPromptBuilder.append("Please generate a personal spending habits summary based on the following monthly data. Analyze main expense categories, monthly trends, and assess my spending health:\n\n");
-
-            // Sort months chronologically for better trend analysis by AI
-            List<String> sortedMonths = new ArrayList<>(summaries.keySet());
-            Collections.sort(sortedMonths);
-
-            for (String month : sortedMonths) {
-                MonthlySummary ms = summaries.get(month);
-                summaryPromptBuilder.append("--- ").append(ms.getMonthIdentifier()).append(" ---\n");
-                summaryPromptBuilder.append("  Total Income: ").append(String.format("%.2f", ms.getTotalIncome())).append(" CNY\n");
-                summaryPromptBuilder.append("  Total Expense: ").append(String.format("%.2f", ms.getTotalExpense())).append(" CNY\n");
-                summaryPromptBuilder.append("  Expense Breakdown:\n");
-                if (ms.getExpenseByCategory().isEmpty()) {
-                    summaryPromptBuilder.append("    (No expenses)\n");
-                } else {
-                    // Sort categories by amount descending for AI to easily see major categories
-                    ms.getExpenseByCategory().entrySet().stream()
-                            .sorted(Map.Entry.comparingByValue(Collections.reverseOrder()))
-                            .forEach(entry ->
-                                    summaryPromptBuilder.append(String.format("    %s: %.2f CNY\n", entry.getKey(), entry.getValue()))
-                            );
-                }
-                summaryPromptBuilder.append("\n"); // Add space between months
+                return Report.PERSONAL_SUMMARY.getNoDataMessage();
             }
 
-            String aiPrompt = summaryPromptBuilder.toString();
+            String aiPrompt = reportPrompt(Report.PERSONAL_SUMMARY, context);
             System.out.println("AI Service: Sending personal summary prompt to AI. Prompt length: " + aiPrompt.length());
 
-            return askAi(aiPrompt); // Call the generic AI method
+            return askAi(aiPrompt, context.getDataVersion(), forceRefresh); // Call the generic AI method
         } catch (Exception e) {
             System.err.println("AI Service: Failed to generate personal summary.");
             e.printStackTrace();
@@ -334,40 +603,40 @@ public class AITransactionService {
         }
     }
 
+    private static String personalSummaryPrompt(PromptContext context) {
+        // The shared monthly data first, then what to do with it
+        return context.monthlyDataPrompt()
+                + "Please generate a personal spending habits summary based on the monthly data above. Analyze main expense categories, monthly trends, and assess my spending health.\n";
+    }
+
     /**
      * Generates suggestions for savings goals based on monthly data.
      * @param userFilePath The path to the user's transaction CSV file. (Might not be strictly needed)
      * @return AI suggestions as a String.
      */
     public String suggestSavingsGoals(String userFilePath) {
+        return suggestSavingsGoals(userFilePath, false);
+    }
+
+    /**
+     * Like {@link #suggestSavingsGoals(String)}.
+     *
+     * @param forceRefresh True to ask the model even if an answer for the same data is cached.
+     */
+    public String suggestSavingsGoals(String userFilePath, boolean forceRefresh) {
         try {
-            Map<String, MonthlySummary> summaries = transactionService.getMonthlyTransactionSummary();
+            PromptContext context = PromptContext.of(userFilePath, transactionService);
+            Map<String, MonthlySummary> summaries = context.getMonthlySummaries();
             System.out.println("AI Service: Retrieved " + summaries.size() + " months of summary data for savings goal suggestion.");
 
             if (summaries.isEmpty()) {
-                return "Not enough transaction data found to suggest savings goals.";
+                return Report.SAVINGS_GOALS.getNoDataMessage();
             }
 
-            StringBuilder promptBuilder = new StringBuilder();
-            promptBuilder.append("Please provide some reasonable savings goal suggestions for my spending habits based on the following monthly income and expense summary data:\n\n");
-
-            List<String> sortedMonths = new ArrayList<>(summaries.keySet());
-            Collections.sort(sortedMonths);
-
-            for (String month : sortedMonths) {
-                MonthlySummary ms = summaries.get(month);
-                promptBuilder.append("--- ").append(ms.getMonthIdentifier()).append(" ---\n");
-                promptBuilder.append("  Total Income: ").append(String.format("%.2f", ms.getTotalIncome())).append(" CNY\n");
-                promptBuilder.append("  Total Expense: ").append(String.format("%.2f", ms.getTotalExpense())).append(" CNY\n");
-                double net = ms.getTotalIncome() - ms.getTotalExpense();
-                promptBuilder.append("  Monthly Net Income/Expense: ").append(String.format("%.2f", net)).append(" CNY\n");
-                promptBuilder.append("\n");
-            }
-
-            String aiPrompt = promptBuilder.toString();
+            String aiPrompt = reportPrompt(Report.SAVINGS_GOALS, context);
             System.out.println("AI Service: Sending savings goals prompt to AI. Prompt length: " + aiPrompt.length());
 
-            return askAi(aiPrompt);
+            return askAi(aiPrompt, context.getDataVersion(), forceRefresh);
         } catch (Exception e) {
             System.err.println("AI Service: Failed to suggest savings goals.");
             e.printStackTrace();
@@ -375,48 +644,39 @@ public class AITransactionService {
         }
     }
 
+    private static String savingsGoalsPrompt(PromptContext context) {
+        return context.monthlyDataPrompt()
+                + "Please provide some reasonable savings goal suggestions for my spending habits based on the monthly income and expense data above.\n";
+    }
+
     /**
      * Generates personalized cost-cutting recommendations based on monthly data.
      * @param userFilePath The path to the user's transaction CSV file. (Might not be strictly needed)
      * @return AI recommendations as a String.
      */
     public String givePersonalSavingTips(String userFilePath) {
+        return givePersonalSavingTips(userFilePath, false);
+    }
+
+    /**
+     * Like {@link #givePersonalSavingTips(String)}.
+     *
+     * @param forceRefresh True to ask the model even if an answer for the same data is cached.
+     */
+    public String givePersonalSavingTips(String userFilePath, boolean forceRefresh) {
         try {
-            Map<String, MonthlySummary> summaries = transactionService.getMonthlyTransactionSummary();
+            PromptContext context = PromptContext.of(userFilePath, transactionService);
+            Map<String, MonthlySummary> summaries = context.getMonthlySummaries();
             System.out.println("AI Service: Retrieved " + summaries.size() + " months of summary data for saving tips.");
 
             if (summaries.isEmpty()) {
-                return "Not enough transaction data found to provide personalized saving tips.";
-            }
-
-            StringBuilder promptBuilder = new StringBuilder();
-            promptBuilder.append("Please provide some targeted cost-saving suggestions for me based on the following monthly spending summary data:\n\n");
-
-            List<String> sortedMonths = new ArrayList<>(summaries.keySet());
-            Collections.sort(sortedMonths);
-
-            for (String month : sortedMonths) {
-                MonthlySummary ms = summaries.get(month);
-                promptBuilder.append("--- ").append(ms.getMonthIdentifier()).append(" ---\n");
-                promptBuilder.append("  Total Expense: ").append(String.format("%.2f", ms.getTotalExpense())).append(" CNY\n");
-                promptBuilder.append("  Expense Breakdown:\n");
-                if (ms.getExpenseByCategory().isEmpty()) {
-                    promptBuilder.append("    (No expenses)\n");
-                } else {
-                    // Sort categories by amount descending
-                    ms.getExpenseByCategory().entrySet().stream()
-                            .sorted(Map.Entry.comparingByValue(Collections.reverseOrder()))
-                            .forEach(entry ->
-                                    promptBuilder.append(String.format("    %s: %.2f CNY\n", entry.getKey(), entry.getValue()))
-                            );
-                }
-                promptBuilder.append("\n");
+                return Report.PERSONAL_SAVING_TIPS.getNoDataMessage();
             }
 
-            String aiPrompt = promptBuilder.toString();
+            String aiPrompt = reportPrompt(Report.PERSONAL_SAVING_TIPS, context);
             System.out.println("AI Service: Sending personal saving tips prompt to AI. Prompt length: " + aiPrompt.length());
 
-            return askAi(aiPrompt);
+            return askAi(aiPrompt, context.getDataVersion(), forceRefresh);
         } catch (Exception e) {
             System.err.println("AI Service: Failed to give personal saving tips.");
             e.printStackTrace();
@@ -424,59 +684,34 @@ public class AITransactionService {
         }
     }
 
+    private static String personalSavingTipsPrompt(PromptContext context) {
+        return context.monthlyDataPrompt()
+                + "Please provide some targeted cost-saving suggestions for me based on the monthly spending data above.\n";
+    }
+
     public String analyzeSeasonalSpendingPatterns(String userFilePath) {
+        return analyzeSeasonalSpendingPatterns(userFilePath, false);
+    }
+
+    /**
+     * Like {@link #analyzeSeasonalSpendingPatterns(String)}.
+     *
+     * @param forceRefresh True to ask the model even if an answer for the same data is cached.
+     */
+    public String analyzeSeasonalSpendingPatterns(String userFilePath, boolean forceRefresh) {
         try {
-            Map<String, MonthlySummary> summaries = transactionService.getMonthlyTransactionSummary();
+            PromptContext context = PromptContext.of(userFilePath, transactionService);
+            Map<String, MonthlySummary> summaries = context.getMonthlySummaries();
             System.out.println("AI Service: Retrieved " + summaries.size() + " months of summary data for detailed seasonal analysis.");
 
             if (summaries.isEmpty()) {
-                return "Not enough monthly transaction data found to analyze detailed seasonal spending patterns.";
-            }
-
-            StringBuilder promptBuilder = new StringBuilder();
-            promptBuilder.append("I am a user in China. Please analyze my monthly financial data below to identify seasonal spending patterns and provide budgeting advice. Focus on the following aspects:\n\n");
-
-            // 1. 法定节假日支出分析和预算建议
-            promptBuilder.append("1.  **Public Holiday Spending Analysis & Budgeting Advice:**\n");
-            promptBuilder.append("    *   Analyze spending around major Chinese public holidays: Spring Festival (Chinese New Year, typically Jan/Feb), Qingming Festival (April), Labor Day (May 1st), Dragon Boat Festival (Duanwu, typically May/June), National Day (Oct 1st), and New Year's Day (Jan 1st).\n");
-            promptBuilder.append("    *   Identify any significant increases or changes in spending categories (e.g., travel, gifts, dining out, red packets/hongbao) during these holiday periods.\n");
-            promptBuilder.append("    *   Provide specific budgeting suggestions to prepare for these holidays. For example, how much should I consider setting aside in the months leading up to these holidays based on my past spending?\n\n");
-
-            // 2. 季节变化与衣物支出，以及季节性行为不符之处
-            promptBuilder.append("2.  **Seasonal Changes & Clothing Expenses:**\n");
-            promptBuilder.append("    *   Analyze spending on clothing. Are there noticeable increases during season changes (e.g., spring/summer, autumn/winter transitions)?\n");
-            promptBuilder.append("    *   Suggest how much I should budget for seasonal clothing changes.\n");
-            promptBuilder.append("    *   Identify any spending patterns that seem unusual for the season in China (e.g., high spending on winter clothing in summer, or vice-versa). If such inconsistencies are found, please point them out.\n\n");
-
-            promptBuilder.append("Please provide clear, actionable insights and advice based on the data. Here is my monthly financial data:\n\n");
-
-
-            List<String> sortedMonths = new ArrayList<>(summaries.keySet());
-            Collections.sort(sortedMonths);
-
-            for (String month : sortedMonths) {
-                MonthlySummary ms = summaries.get(month);
-                promptBuilder.append("--- ").append(ms.getMonthIdentifier()).append(" ---\n");
-                promptBuilder.append("  Total Income: ").append(String.format("%.2f", ms.getTotalIncome())).append(" CNY\n");
-                promptBuilder.append("  Total Expense: ").append(String.format("%.2f", ms.getTotalExpense())).append(" CNY\n");
-                promptBuilder.append("  Net (Income - Expense): ").append(String.format("%.2f", ms.getTotalIncome() - ms.getTotalExpense())).append(" CNY\n");
-                promptBuilder.append("  Expense Breakdown:\n");
-                if (ms.getExpenseByCategory().isEmpty()) {
-                    promptBuilder.append("    (No expenses recorded this month)\n");
-                } else {
-                    ms.getExpenseByCategory().entrySet().stream()
-                            .sorted(Map.Entry.comparingByValue(Collections.reverseOrder()))
-                            .forEach(entry ->
-                                    promptBuilder.append(String.format("    %s: %.2f CNY\n", entry.getKey(), entry.getValue()))
-                            );
-                }
-                promptBuilder.append("\n");
+                return Report.SEASONAL_PATTERNS.getNoDataMessage();
             }
 
-            String aiPrompt = promptBuilder.toString();
+            String aiPrompt = reportPrompt(Report.SEASONAL_PATTERNS, context);
             System.out.println("AI Service: Sending detailed seasonal spending analysis prompt to AI. Prompt length: " + aiPrompt.length());
 
-            return askAi(aiPrompt);
+            return askAi(aiPrompt, context.getDataVersion(), forceRefresh);
 
         } catch (Exception e) {
             System.err.println("AI Service: Failed to analyze detailed seasonal spending patterns.");
@@ -485,7 +720,114 @@ public class AITransactionService {
         }
     }
 
+    private static String seasonalPatternsPrompt(PromptContext context) {
+        StringBuilder promptBuilder = new StringBuilder(context.monthlyDataPrompt());
+        promptBuilder.append("I am a user in China. Please analyze my monthly financial data above to identify seasonal spending patterns and provide budgeting advice. Focus on the following aspects:\n\n");
+
+        // 1. 法定节假日支出分析和预算建议
+        promptBuilder.append("1.  **Public Holiday Spending Analysis & Budgeting Advice:**\n");
+        promptBuilder.append("    *   Analyze spending around major Chinese public holidays: Spring Festival (Chinese New Year, typically Jan/Feb), Qingming Festival (April), Labor Day (May 1st), Dragon Boat Festival (Duanwu, typically May/June), National Day (Oct 1st), and New Year's Day (Jan 1st).\n");
+        promptBuilder.append("    *   Identify any significant increases or changes in spending categories (e.g., travel, gifts, dining out, red packets/hongbao) during these holiday periods.\n");
+        promptBuilder.append("    *   Provide specific budgeting suggestions to prepare for these holidays. For example, how much should I consider setting aside in the months leading up to these holidays based on my past spending?\n\n");
+
+        // 2. 季节变化与衣物支出，以及季节性行为不符之处
+        promptBuilder.append("2.  **Seasonal Changes & Clothing Expenses:**\n");
+        promptBuilder.append("    *   Analyze spending on clothing. Are there noticeable increases during season changes (e.g., spring/summer, autumn/winter transitions)?\n");
+        promptBuilder.append("    *   Suggest how much I should budget for seasonal clothing changes.\n");
+        promptBuilder.append("    *   Identify any spending patterns that seem unusual for the season in China (e.g., high spending on winter clothing in summer, or vice-versa). If such inconsistencies are found, please point them out.\n\n");
+
+        promptBuilder.append("Please provide clear, actionable insights and advice based on the data.\n");
 
+        return promptBuilder.toString();
+    }
+
+    /**
+     * Streaming variant of the report methods ({@link #generatePersonalSummary(String, boolean)} and the
+     * others named by {@link Report}). Without data the report's notice is passed as the answer.
+     *
+     * @return Handle to cancel the request.
+     */
+    public AiStream streamReport(Report report, String userFilePath, boolean forceRefresh, AiStreamListener listener) {
+        String aiPrompt;
+        String dataVersion;
+        try {
+            PromptContext context = PromptContext.of(userFilePath, transactionService);
+            Map<String, MonthlySummary> summaries = context.getMonthlySummaries();
+            System.out.println("AI Service: Retrieved " + summaries.size() + " months of summary data for " + report + ".");
+            if (summaries.isEmpty()) {
+                return answerWithoutModel(report.getNoDataMessage(), listener);
+            }
+            aiPrompt = reportPrompt(report, context);
+            dataVersion = context.getDataVersion();
+        } catch (Exception e) {
+            System.err.println("AI Service: Failed to prepare " + report + ".");
+            e.printStackTrace();
+            listener.onError(e);
+            return AiStream.finished();
+        }
+        System.out.println("AI Service: Streaming " + report + " prompt to AI. Prompt length: " + aiPrompt.length());
+        return askAiStreaming(aiPrompt, dataVersion, forceRefresh, listener);
+    }
+
+    private static String reportPrompt(Report report, PromptContext context) {
+        switch (report) {
+            case PERSONAL_SUMMARY:
+                return personalSummaryPrompt(context);
+            case SAVINGS_GOALS:
+                return savingsGoalsPrompt(context);
+            case PERSONAL_SAVING_TIPS:
+                return personalSavingTipsPrompt(context);
+            case SEASONAL_PATTERNS:
+                return seasonalPatternsPrompt(context);
+            default:
+                throw new IllegalArgumentException("Unknown report: " + report);
+        }
+    }
+
+
+
+    /**
+     * Background variant of {@link #analyzeTransactions(String, String, String, String, boolean)}, run on the
+     * {@link AiExecutor}.
+     *
+     * @return The answer or error text; cancelling it stops the request.
+     */
+    public CompletableFuture<String> analyzeTransactionsAsync(String userRequest, String filePath, String startTimeStr,
+                                                              String endTimeStr, boolean forceRefresh) {
+        return AiExecutor.supply(() -> analyzeTransactions(userRequest, filePath, startTimeStr, endTimeStr, forceRefresh));
+    }
+
+    /**
+     * Background variant of the report methods ({@link #generatePersonalSummary(String, boolean)} and the
+     * others named by {@link Report}), run on the {@link AiExecutor}.
+     *
+     * @return The report or error text; cancelling it stops the request.
+     */
+    public CompletableFuture<String> reportAsync(Report report, String userFilePath, boolean forceRefresh) {
+        return AiExecutor.supply(() -> {
+            switch (report) {
+                case PERSONAL_SUMMARY:
+                    return generatePersonalSummary(userFilePath, forceRefresh);
+                case SAVINGS_GOALS:
+                    return suggestSavingsGoals(userFilePath, forceRefresh);
+                case PERSONAL_SAVING_TIPS:
+                    return givePersonalSavingTips(userFilePath, forceRefresh);
+                case SEASONAL_PATTERNS:
+                    return analyzeSeasonalSpendingPatterns(userFilePath, forceRefresh);
+                default:
+                    throw new IllegalArgumentException("Unknown report: " + report);
+            }
+        });
+    }
+
+    /**
+     * Background variant of {@link #askAi(String)}, run on the {@link AiExecutor}.
+     *
+     * @return The answer or error text; cancelling it stops the request.
+     */
+    public CompletableFuture<String> askAiAsync(String prompt) {
+        return AiExecutor.supply(() -> askAi(prompt));
+    }
 
     // ... Keep other methods like analyzeTransactions, formatTransactions, parseDateTime, askAi ...
 
@@ -0,0 +1,112 @@
+package Service.AIservice;
+
+import Constants.ConfigConstants;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs AI tasks in the background on threads of their own, so slow model calls do not hold up the
+ * application's general executor (file imports, statistics).
+ *
+ * {@link CompletableFuture#cancel} alone does not stop the work behind a future. Futures returned by
+ * {@link #supply} do: cancelling one interrupts its worker thread, and the code below reacts to the interrupt
+ * (the gateway stops waiting for a slot or a retry, the Ark SDK drops its HTTP call).
+ *
+ * Model calls shared by identical requests (see {@link AITransactionService#askAi(String, String, boolean)})
+ * run on {@link #sharedCalls()} instead of on any caller's thread. Interrupting a caller only makes that caller
+ * stop waiting; the shared call goes on for the callers still waiting for it and is cancelled with the last one.
+ */
+public final class AiExecutor {
+
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            (int) ConfigConstants.AI_ASYNC_THREADS, (int) ConfigConstants.AI_ASYNC_THREADS,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "ai-worker-" + threadNumber.incrementAndGet());
+        t.setDaemon(true); // Never keeps the application alive
+        return t;
+    });
+
+    // Model calls shared by identical requests. Unbounded, but each thread belongs to a caller waiting for it,
+    // and the gateway limits how many of them reach the model at a time. A separate pool, so callers running
+    // on the AI threads never wait for work queued behind them.
+    private static final ExecutorService sharedCalls = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "ai-call-" + threadNumber.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        executor.allowCoreThreadTimeOut(true); // No idle threads when AI is not used
+    }
+
+    private AiExecutor() {
+    }
+
+    /**
+     * Starts a task on the AI threads.
+     *
+     * @param task The work; its exception completes the future exceptionally.
+     * @return The result; cancelling it interrupts the task if it is running, or drops it if it has not started.
+     */
+    public static <T> CompletableFuture<T> supply(Callable<T> task) {
+        return supply(task, executor);
+    }
+
+    static <T> CompletableFuture<T> supply(Callable<T> task, ExecutorService executorService) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> running;
+        try {
+            running = executorService.submit(() -> {
+                if (result.isDone()) {
+                    return; // Cancelled while queued
+                }
+                try {
+                    result.complete(task.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                running.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return Runs the model calls shared by identical requests.
+     */
+    static Executor sharedCalls() {
+        return sharedCalls;
+    }
+
+    /**
+     * @return Tasks waiting for a free AI thread.
+     */
+    public static int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return Tasks being run right now.
+     */
+    public static int getActiveCount() {
+        return executor.getActiveCount();
+    }
+}
@@ -0,0 +1,332 @@
+package Service.AIservice;
+
+import Constants.ConfigConstants;
+import Utils.CircuitBreaker;
+import Utils.LatencyHistogram;
+import Utils.Metrics;
+import Utils.TokenBucket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Admission control for calls to the model endpoint, shared by all AI features:
+ * <ul>
+ *   <li>a circuit breaker turns calls away at once while the endpoint keeps failing;</li>
+ *   <li>a semaphore caps the requests in flight (independent of the thread pool the callers run on);</li>
+ *   <li>a token bucket spaces requests out; its rate is halved when the endpoint reports throttling and
+ *       creeps back up to the configured rate with each success;</li>
+ *   <li>{@link #call} retries timeouts, connection errors, throttling and 5xx answers with exponential
+ *       backoff and jitter.</li>
+ * </ul>
+ * Time spent waiting for admission is recorded as "ai.gateway.queue", time spent in the call as
+ * "ai.gateway.service", so a slow endpoint can be told apart from a long queue.
+ */
+public final class AiGateway implements AiGatewayMXBean {
+
+    // Exception text of HTTP failures that are worth retrying (the SDK reports the status in the message)
+    private static final Pattern RETRYABLE_STATUS = Pattern.compile("\\b(408|429|500|502|503|504)\\b");
+    private static final Pattern THROTTLED = Pattern.compile("\\b429\\b|(?i)rate.?limit|too many requests|overloaded");
+
+    /**
+     * Thrown when a call is turned away without being sent (circuit open, or no slot within the queue timeout).
+     */
+    public static final class RejectedException extends RuntimeException {
+        public RejectedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Sleeps between retries (replaced in tests).
+     */
+    interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    private final int maxInFlight;
+    private final Semaphore slots;
+    private final TokenBucket rateLimiter;
+    private final double maxRatePerSecond;
+    private final long queueTimeoutMillis;
+    private final int maxAttempts;
+    private final long backoffBaseMillis;
+    private final long backoffMaxMillis;
+    private final CircuitBreaker breaker;
+    private final Sleeper sleeper;
+    private final DoubleSupplier random;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final LatencyHistogram queueTime = Metrics.histogram("ai.gateway.queue");
+    private final LatencyHistogram serviceTime = Metrics.histogram("ai.gateway.service");
+
+    /**
+     * A slot for one call. Report the outcome with {@link #release} exactly once (later calls are ignored).
+     */
+    final class Permit {
+        private final long admittedNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * @param error Null if the call succeeded; a CancellationException if it was abandoned.
+         */
+        void release(Throwable error) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            slots.release();
+            long elapsed = System.nanoTime() - admittedNanos;
+            if (error == null) {
+                breaker.onSuccess();
+                rateLimiter.setRate(Math.min(maxRatePerSecond, rateLimiter.getRate() + maxRatePerSecond / 10));
+            } else if (error instanceof CancellationException) {
+                breaker.onIgnored();
+            } else if (isRetryable(error)) {
+                breaker.onFailure();
+                serviceTime.recordError();
+                if (isThrottled(error)) {
+                    double rate = Math.max(maxRatePerSecond / 16, rateLimiter.getRate() / 2);
+                    rateLimiter.setRate(rate);
+                    System.out.println("AiGateway: Endpoint is throttling; rate lowered to " + String.format("%.2f", rate) + "/s");
+                }
+            } else {
+                breaker.onSuccess(); // The endpoint answered; the request itself was bad
+                serviceTime.recordError();
+            }
+            serviceTime.recordNanos(elapsed);
+        }
+    }
+
+    /**
+     * @param maxInFlight Max requests sent at the same time.
+     * @param ratePerSecond Max requests started per second.
+     * @param queueTimeoutMillis Max wait for a slot and a rate token before the call is rejected.
+     * @param maxAttempts Attempts per call in {@link #call} (1 = no retries).
+     * @param backoffBaseMillis Delay before the first retry (doubled for each further retry).
+     * @param backoffMaxMillis Upper bound of the delay.
+     * @param breaker Circuit breaker of the endpoint.
+     */
+    public AiGateway(int maxInFlight, double ratePerSecond, long queueTimeoutMillis, int maxAttempts,
+                     long backoffBaseMillis, long backoffMaxMillis, CircuitBreaker breaker) {
+        this(maxInFlight, ratePerSecond, queueTimeoutMillis, maxAttempts, backoffBaseMillis, backoffMaxMillis, breaker,
+                Thread::sleep, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    AiGateway(int maxInFlight, double ratePerSecond, long queueTimeoutMillis, int maxAttempts,
+              long backoffBaseMillis, long backoffMaxMillis, CircuitBreaker breaker, Sleeper sleeper, DoubleSupplier random) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.slots = new Semaphore(this.maxInFlight, true); // Fair: first come, first served
+        this.maxRatePerSecond = ratePerSecond;
+        this.rateLimiter = new TokenBucket(ratePerSecond, this.maxInFlight); // No point bursting beyond the cap
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffBaseMillis = backoffBaseMillis;
+        this.backoffMaxMillis = backoffMaxMillis;
+        this.breaker = breaker;
+        this.sleeper = sleeper;
+        this.random = random;
+    }
+
+    /**
+     * Runs a request under admission control, retrying retryable failures.
+     *
+     * @param request Sends the request; a RuntimeException is its failure.
+     * @return The request's result.
+     * @throws RejectedException If the call was turned away (not retried).
+     * @throws CancellationException If the thread was interrupted while waiting or sending (the flag stays set).
+     */
+    public <T> T call(Supplier<T> request) {
+        for (int attempt = 1; ; attempt++) {
+            Permit permit = admit();
+            try {
+                T result = request.get();
+                permit.release(null);
+                return result;
+            } catch (RuntimeException e) {
+                if (isInterruption(e)) {
+                    // The caller gave up; neither an endpoint failure nor worth a retry
+                    CancellationException cancelled = new CancellationException("AI request cancelled");
+                    cancelled.initCause(e);
+                    permit.release(cancelled);
+                    Thread.currentThread().interrupt();
+                    throw cancelled;
+                }
+                permit.release(e);
+                if (!isRetryable(e) || attempt >= maxAttempts) {
+                    throw e;
+                }
+                long delay = backoffMillis(attempt);
+                retries.incrementAndGet();
+                System.out.println("AiGateway: Attempt " + attempt + " failed (" + e.getMessage() + "); retrying in " + delay + " ms");
+                try {
+                    sleeper.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while backing off");
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for a slot and a rate token. For calls whose outcome is known only later (streams).
+     *
+     * @return The slot; release it when the call has ended.
+     * @throws RejectedException If the circuit is open or no slot was free within the queue timeout.
+     * @throws CancellationException If the thread was interrupted while waiting (the flag stays set).
+     */
+    Permit admit() {
+        if (!breaker.tryAcquire()) {
+            rejected.incrementAndGet();
+            throw new RejectedException("AI service temporarily unavailable (too many recent failures); retry in "
+                    + (breaker.getRemainingOpenMillis() / 1000 + 1) + " s.");
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        queued.incrementAndGet();
+        boolean slotTaken = false;
+        try {
+            slotTaken = slots.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (!slotTaken || !rateLimiter.acquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                throw new RejectedException("AI service busy: no request slot free within " + queueTimeoutMillis + " ms.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandonAdmission(slotTaken);
+            throw new CancellationException("Interrupted while waiting for an AI request slot");
+        } catch (RejectedException e) {
+            abandonAdmission(slotTaken);
+            rejected.incrementAndGet();
+            throw e;
+        } finally {
+            queued.decrementAndGet();
+            queueTime.recordNanos(System.nanoTime() - start);
+        }
+        return new Permit();
+    }
+
+    private void abandonAdmission(boolean slotTaken) {
+        if (slotTaken) {
+            slots.release();
+        }
+        breaker.onIgnored(); // A half-open trial that never ran
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half the delay is fixed, half random, so retries of
+     * callers that failed together spread out but still back off.
+     */
+    long backoffMillis(int attempt) {
+        long cap = Math.min(backoffMaxMillis, backoffBaseMillis << Math.min(attempt - 1, 20));
+        return cap / 2 + (long) (random.getAsDouble() * (cap - cap / 2));
+    }
+
+    /**
+     * @return True for timeouts, connection errors, throttling and 5xx answers.
+     */
+    static boolean isRetryable(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof IOException) {
+                return true; // Includes SocketTimeoutException and connection resets
+            }
+            if (t.getMessage() != null && (RETRYABLE_STATUS.matcher(t.getMessage()).find() || THROTTLED.matcher(t.getMessage()).find())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if the request failed because its thread was interrupted (the SDK clears the flag and
+     *         wraps the InterruptedException), not because of the endpoint.
+     */
+    static boolean isInterruption(Throwable error) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof InterruptedException || t instanceof CancellationException
+                    || (t instanceof InterruptedIOException && !(t instanceof SocketTimeoutException)
+                        && !"timeout".equals(t.getMessage()))) { // OkHttp's call timeout is an InterruptedIOException too
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isThrottled(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && THROTTLED.matcher(t.getMessage()).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Gateway configured from config.properties (ai.max_in_flight and the other ai.* limits).
+     */
+    static AiGateway fromConfig() {
+        return new AiGateway(
+                (int) ConfigConstants.AI_MAX_IN_FLIGHT,
+                ConfigConstants.AI_REQUESTS_PER_MINUTE / 60.0,
+                ConfigConstants.AI_QUEUE_TIMEOUT_MS,
+                (int) ConfigConstants.AI_MAX_ATTEMPTS,
+                ConfigConstants.AI_BACKOFF_BASE_MS,
+                ConfigConstants.AI_BACKOFF_MAX_MS,
+                new CircuitBreaker((int) ConfigConstants.AI_BREAKER_FAILURES,
+                        ConfigConstants.AI_BREAKER_OPEN_SECONDS * 1000L));
+    }
+
+    @Override
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    @Override
+    public int getInFlight() {
+        return maxInFlight - slots.availablePermits();
+    }
+
+    @Override
+    public int getQueued() {
+        return queued.get();
+    }
+
+    @Override
+    public double getRatePerSecond() {
+        return rateLimiter.getRate();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public String getCircuitState() {
+        return breaker.getState().name();
+    }
+
+    @Override
+    public long getCircuitOpenCount() {
+        return breaker.getOpenCount();
+    }
+}
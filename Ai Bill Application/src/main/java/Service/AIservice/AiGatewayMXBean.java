@@ -0,0 +1,22 @@
+package Service.AIservice;
+
+/**
+ * JMX view of the AI call gateway ({@link AiGateway}, registered as AiBill:type=AiGateway).
+ */
+public interface AiGatewayMXBean {
+    int getMaxInFlight();
+
+    int getInFlight();
+
+    int getQueued();
+
+    double getRatePerSecond();
+
+    long getRetryCount();
+
+    long getRejectedCount();
+
+    String getCircuitState();
+
+    long getCircuitOpenCount();
+}
@@ -0,0 +1,184 @@
+package Service.AIservice;
+
+import Constants.ConfigConstants;
+import Service.Impl.TransactionServiceImpl;
+import Utils.CircuitBreaker;
+import Utils.LatencyHistogram;
+import Utils.Metrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Drives the AI features at a chosen concurrency and reports latency percentiles and throughput.
+ *
+ * The model is one of: the in-process {@link FakeLlmClient} ("fake"), the real Ark client against a local
+ * {@link StubChatServer} ("stub"), or the configured Ark endpoint ("ark", needs ARK_API_KEY and costs tokens).
+ * Requests go through a gateway of their own, so the limits can be varied without touching config.properties.
+ *
+ * Usage (all optional):
+ * <pre>
+ * --mode=fake|stub|ark --target=analyze|summary|budget --concurrency=8 --requests=200
+ * --latency-ms=300 --error-rate=0.05 --file=path/to/transactions.csv --max-in-flight=4 --rpm=600
+ * </pre>
+ * "analyze" varies the request text so every call reaches the model. "summary" forces a refresh, but
+ * identical concurrent requests are still coalesced. "budget" sends the same prompt each time, so after the
+ * first answer it measures the response cache (the model call count shows this).
+ */
+public class AiLoadHarness {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        String mode = options.getOrDefault("mode", "fake");
+        String target = options.getOrDefault("target", "analyze");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "8"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "200"));
+        long latencyMillis = Long.parseLong(options.getOrDefault("latency-ms", "300"));
+        double errorRate = Double.parseDouble(options.getOrDefault("error-rate", "0"));
+        String file = options.getOrDefault("file", ConfigConstants.CSV_PATH);
+        int maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", String.valueOf(ConfigConstants.AI_MAX_IN_FLIGHT)));
+        double ratePerMinute = Double.parseDouble(options.getOrDefault("rpm", String.valueOf(ConfigConstants.AI_REQUESTS_PER_MINUTE)));
+
+        StubChatServer server = null;
+        LlmClient client;
+        IntSupplier modelCalls;
+        switch (mode) {
+            case "fake":
+                FakeLlmClient fake = new FakeLlmClient().setLatency(latencyMillis).setErrorRate(errorRate, 42);
+                client = fake;
+                modelCalls = fake::getCallCount;
+                break;
+            case "stub":
+                server = new StubChatServer(0)
+                        .setResponder(prompt -> "[300.00, 450.00]\nStub answer to a prompt of " + prompt.length() + " characters.")
+                        .setLatency(latencyMillis, latencyMillis / 2)
+                        .setErrorRate(errorRate, 42);
+                client = new ArkLlmClient(server.getBaseUrl(), "stub-key", "stub", Duration.ofSeconds(ConfigConstants.AI_TIMEOUT_SECONDS));
+                modelCalls = server::getRequestCount;
+                break;
+            case "ark":
+                client = ArkLlmClient.fromConfig();
+                modelCalls = () -> -1;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode + " (fake, stub or ark)");
+        }
+
+        AiGateway gateway = new AiGateway(maxInFlight, ratePerMinute / 60.0, ConfigConstants.AI_QUEUE_TIMEOUT_MS,
+                (int) ConfigConstants.AI_MAX_ATTEMPTS, ConfigConstants.AI_BACKOFF_BASE_MS, ConfigConstants.AI_BACKOFF_MAX_MS,
+                new CircuitBreaker((int) ConfigConstants.AI_BREAKER_FAILURES, ConfigConstants.AI_BREAKER_OPEN_SECONDS * 1000L));
+        AITransactionService aiService = new AITransactionService(new TransactionServiceImpl(file), client, gateway);
+        CollegeStudentNeeds studentNeeds = new CollegeStudentNeeds(new TransactionServiceImpl(file), aiService);
+
+        System.out.println("AiLoadHarness: " + requests + " x " + target + " on " + mode + " model, concurrency " + concurrency
+                + ", max in flight " + maxInFlight + ", " + ratePerMinute + " req/min, latency " + latencyMillis
+                + " ms, error rate " + errorRate + ", data " + file);
+
+        LatencyHistogram latency = new LatencyHistogram("harness." + target);
+        AtomicInteger errors = new AtomicInteger();
+        long cacheHitsBefore = cacheHits();
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                int n = i;
+                futures.add(pool.submit(() -> {
+                    long t0 = System.nanoTime();
+                    boolean ok;
+                    try {
+                        ok = runOne(target, n, aiService, studentNeeds, file);
+                    } catch (Exception e) {
+                        System.err.println("AiLoadHarness: Request " + n + " failed: " + e.getMessage());
+                        ok = false;
+                    }
+                    latency.recordNanos(System.nanoTime() - t0);
+                    if (!ok) {
+                        latency.recordError();
+                        errors.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println();
+        System.out.println("===== AiLoadHarness: " + target + " on " + mode + " model =====");
+        System.out.printf("Requests: %d, errors: %d, wall time: %.2f s, throughput: %.2f req/s%n",
+                latency.getCount(), errors.get(), seconds, latency.getCount() / seconds);
+        System.out.printf("Latency ms: p50 %.1f, p90 %.1f, p99 %.1f, max %.1f, mean %.1f%n",
+                latency.getP50Millis(), latency.getP90Millis(), latency.getP99Millis(), latency.getMaxMillis(), latency.getMeanMillis());
+        int calls = modelCalls.getAsInt();
+        System.out.println("Model calls: " + (calls < 0 ? "n/a" : calls) + ", response cache hits: " + (cacheHits() - cacheHitsBefore));
+        printHistogram("Gateway queue", Metrics.histogram("ai.gateway.queue"));
+        printHistogram("Gateway service", Metrics.histogram("ai.gateway.service"));
+        System.out.println("Gateway: " + gateway.getRetryCount() + " retries, " + gateway.getRejectedCount()
+                + " rejected, circuit " + gateway.getCircuitState() + " (opened " + gateway.getCircuitOpenCount() + " times)");
+
+        if (client instanceof ArkLlmClient) {
+            ((ArkLlmClient) client).shutdown();
+        }
+        if (server != null) {
+            server.close();
+        }
+        System.exit(0); // Cache and metrics threads are not daemons
+    }
+
+    /**
+     * @return True if the feature produced an answer, false if it reported a failure.
+     */
+    private static boolean runOne(String target, int n, AITransactionService aiService, CollegeStudentNeeds studentNeeds,
+                                  String file) throws Exception {
+        switch (target) {
+            case "analyze":
+                // A different request each time, so neither the cache nor coalescing hides the model
+                return isAnswer(aiService.analyzeTransactions("Summarize my spending and name the three largest expenses (run " + n + ").",
+                        file, "2000/01/01", "", true));
+            case "summary":
+                return isAnswer(aiService.generatePersonalSummary(file, true));
+            case "budget":
+                return studentNeeds.generateBudget(file)[0] >= 0;
+            default:
+                throw new IllegalArgumentException("Unknown target: " + target + " (analyze, summary or budget)");
+        }
+    }
+
+    private static boolean isAnswer(String result) {
+        return result != null && !result.startsWith("AI request failed") && !result.startsWith("AI analysis failed")
+                && !result.startsWith("AI service configuration error") && !result.startsWith("Failed");
+    }
+
+    private static long cacheHits() {
+        AiResponseCache cache = AITransactionService.getResponseCache();
+        return cache == null ? 0 : cache.getHitCount();
+    }
+
+    private static void printHistogram(String label, LatencyHistogram histogram) {
+        System.out.printf("%s ms: count %d, p50 %.1f, p90 %.1f, p99 %.1f, max %.1f%n", label, histogram.getCount(),
+                histogram.getP50Millis(), histogram.getP90Millis(), histogram.getP99Millis(), histogram.getMaxMillis());
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,419 @@
+package Service.AIservice;
+
+import Utils.Metrics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache of AI answers, so asking the same question about the same data twice does not call the model twice.
+ *
+ * The key is a SHA-256 over the model id, the normalized prompt (see {@link #normalizePrompt}) and the version
+ * of the user's transaction data; an edit to the transaction file changes the version and with it every key.
+ * Entries expire after a fixed time to live, since the model (and "recent" in a prompt) changes too.
+ *
+ * Answers are kept in memory (Caffeine) and in one small file per key on local disk, so they survive a
+ * restart. Files are written to a temp file and atomically moved into place. When the directory grows past
+ * its byte budget, the least recently used files are deleted (a disk hit touches the file's mtime).
+ * A file that cannot be read is treated as a miss and removed.
+ *
+ * File layout (big-endian): int MAGIC, int VERSION, long created (epoch millis), int length, UTF-8 answer.
+ */
+public class AiResponseCache implements AiResponseCacheMXBean {
+
+    private static final int MAGIC = 0x41494331; // "AIC1"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".ai";
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+    private static final long MEMORY_MAX_CHARS = 4L * 1024 * 1024; // Heap budget of the in-memory tier (chars)
+
+    private final Path cacheDir; // null: memory only
+    private final long ttlMillis;
+    private final long maxDiskBytes;
+    private final LongSupplier clock;
+    private final Cache<String, Entry> memory;
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static final class Entry {
+        final long createdMillis;
+        final String response;
+
+        Entry(long createdMillis, String response) {
+            this.createdMillis = createdMillis;
+            this.response = response;
+        }
+    }
+
+    /**
+     * @param cacheDir Directory for the on-disk copies, or null to keep answers in memory only.
+     * @param ttlMillis How long an answer may be reused.
+     * @param maxDiskBytes Budget for the directory; older files are deleted beyond it.
+     */
+    public AiResponseCache(Path cacheDir, long ttlMillis, long maxDiskBytes) {
+        this(cacheDir, ttlMillis, maxDiskBytes, System::currentTimeMillis);
+    }
+
+    AiResponseCache(Path cacheDir, long ttlMillis, long maxDiskBytes, LongSupplier clock) {
+        this.cacheDir = cacheDir;
+        this.ttlMillis = ttlMillis;
+        this.maxDiskBytes = maxDiskBytes;
+        this.clock = clock;
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(MEMORY_MAX_CHARS)
+                .weigher((String key, Entry entry) -> entry.response.length() + 64)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .build();
+        if (cacheDir != null) {
+            try {
+                Files.createDirectories(cacheDir);
+                diskBytes.set(listEntries().stream().mapToLong(AiResponseCache::sizeOf).sum());
+                System.out.println("AiResponseCache: Using " + cacheDir + " (" + diskBytes.get() / 1024 + " KB on disk)");
+            } catch (IOException e) {
+                System.err.println("AiResponseCache: Cannot use cache directory " + cacheDir + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Builds the cache key of a request.
+     *
+     * @param modelId The model (endpoint) the prompt is sent to.
+     * @param prompt The prompt; normalized before hashing.
+     * @param dataVersion Version of the data the prompt was built from ("" if it does not depend on any).
+     * @return Hex SHA-256.
+     */
+    public static String key(String modelId, String prompt, String dataVersion) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelId.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update((dataVersion == null ? "" : dataVersion).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(normalizePrompt(prompt).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e); // Guaranteed by every JRE
+        }
+    }
+
+    /**
+     * Unix line endings, no leading or trailing spaces/tabs on a line, inner runs of them folded to one, no
+     * leading or trailing blank lines. Prompts that differ only in such whitespace share an answer.
+     */
+    public static String normalizePrompt(String prompt) {
+        if (prompt == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(prompt.length());
+        for (String line : prompt.replace("\r\n", "\n").replace('\r', '\n').split("\n", -1)) {
+            boolean space = false;
+            int start = sb.length();
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == ' ' || c == '\t') {
+                    space = true;
+                    continue;
+                }
+                if (space && sb.length() > start) {
+                    sb.append(' ');
+                }
+                space = false;
+                sb.append(c);
+            }
+            sb.append('\n');
+        }
+        return sb.toString().strip();
+    }
+
+    /**
+     * @return The cached answer, or null on a miss (or if it expired).
+     */
+    public String get(String key) {
+        long now = clock.getAsLong();
+        Entry entry = memory.getIfPresent(key);
+        if (entry == null && cacheDir != null) {
+            entry = readFile(key);
+            if (entry != null && !isExpired(entry, now)) {
+                memory.put(key, entry);
+                diskHits.incrementAndGet();
+                touch(key, now);
+            }
+        }
+        if (entry != null && isExpired(entry, now)) {
+            expired.incrementAndGet();
+            invalidate(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.response;
+    }
+
+    /**
+     * Stores an answer in memory and on disk. Disk failures are logged, never thrown.
+     */
+    public void put(String key, String response) {
+        if (response == null) {
+            return;
+        }
+        Entry entry = new Entry(clock.getAsLong(), response);
+        memory.put(key, entry);
+        if (cacheDir == null) {
+            return;
+        }
+        Metrics.Timer timer = Metrics.startTimer("ai.cache.write");
+        try {
+            long written = writeFile(key, entry);
+            if (diskBytes.addAndGet(written) > maxDiskBytes) {
+                evictToBudget();
+            }
+        } catch (IOException e) {
+            timer.failed();
+            System.err.println("AiResponseCache: Failed to write " + key + ": " + e.getMessage());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Drops one answer (memory and disk).
+     */
+    public void invalidate(String key) {
+        memory.invalidate(key);
+        if (cacheDir != null) {
+            deleteFile(file(key));
+        }
+    }
+
+    /**
+     * Drops all answers (memory and disk).
+     */
+    public void clear() {
+        memory.invalidateAll();
+        if (cacheDir != null) {
+            try {
+                for (Path path : listEntries()) {
+                    deleteFile(path);
+                }
+            } catch (IOException e) {
+                System.err.println("AiResponseCache: Failed to clear " + cacheDir + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /** Hits that were read from disk (included in {@link #getHitCount}). */
+    @Override
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public double getHitRate() {
+        long requests = hits.get() + misses.get();
+        return requests == 0 ? 0.0 : (double) hits.get() / requests;
+    }
+
+    /** Answers found but past their time to live (counted as misses). */
+    @Override
+    public long getExpiredCount() {
+        return expired.get();
+    }
+
+    /** Files deleted to stay within the disk budget. */
+    @Override
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public long getDiskBytes() {
+        return diskBytes.get();
+    }
+
+    @Override
+    public long getMaxDiskBytes() {
+        return maxDiskBytes;
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.createdMillis >= ttlMillis;
+    }
+
+    private Path file(String key) {
+        return cacheDir.resolve(key + SUFFIX);
+    }
+
+    private Entry readFile(String key) {
+        Path path = file(key);
+        try (InputStream in = Files.newInputStream(path);
+             DataInputStream data = new DataInputStream(in)) {
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+                throw new IOException("not an AI cache file");
+            }
+            long created = data.readLong();
+            int length = data.readInt();
+            if (length < 0 || length > Files.size(path)) {
+                throw new IOException("bad length " + length);
+            }
+            byte[] bytes = data.readNBytes(length);
+            if (bytes.length != length) {
+                throw new IOException("truncated");
+            }
+            return new Entry(created, new String(bytes, StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("AiResponseCache: Dropping unreadable entry " + path.getFileName() + ": " + e.getMessage());
+            deleteFile(path);
+            return null;
+        }
+    }
+
+    /**
+     * @return Bytes added to the directory (the size of the new file minus any file it replaced).
+     */
+    private long writeFile(String key, Entry entry) throws IOException {
+        byte[] bytes = entry.response.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(HEADER_BYTES + bytes.length);
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(entry.createdMillis);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        Path target = file(key);
+        long previous = sizeOf(target);
+        Path temp = Files.createTempFile(cacheDir, key, ".tmp");
+        try {
+            Files.write(temp, buffer.toByteArray());
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return buffer.size() - previous;
+    }
+
+    private void touch(String key, long now) {
+        try {
+            Files.setLastModifiedTime(file(key), FileTime.fromMillis(now));
+        } catch (IOException e) {
+            // Only affects eviction order
+        }
+    }
+
+    private void deleteFile(Path path) {
+        long size = sizeOf(path);
+        try {
+            if (Files.deleteIfExists(path)) {
+                diskBytes.addAndGet(-size);
+            }
+        } catch (IOException e) {
+            System.err.println("AiResponseCache: Failed to delete " + path.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes least recently used files until the directory is at 90% of its budget.
+     */
+    private void evictToBudget() {
+        synchronized (evictionLock) {
+            try {
+                List<Path> entries = listEntries();
+                long total = entries.stream().mapToLong(AiResponseCache::sizeOf).sum();
+                diskBytes.set(total); // Resync with what is really there
+                long target = maxDiskBytes * 9 / 10;
+                if (total <= maxDiskBytes) {
+                    return;
+                }
+                entries.sort(Comparator.comparingLong(AiResponseCache::lastModified));
+                int deleted = 0;
+                for (Path path : entries) {
+                    if (diskBytes.get() <= target) {
+                        break;
+                    }
+                    memory.invalidate(path.getFileName().toString().replace(SUFFIX, ""));
+                    deleteFile(path);
+                    deleted++;
+                }
+                evictions.addAndGet(deleted);
+                System.out.println("AiResponseCache: Evicted " + deleted + " entries, " + diskBytes.get() / 1024 + " KB left on disk");
+            } catch (IOException e) {
+                System.err.println("AiResponseCache: Eviction failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private List<Path> listEntries() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir, "*" + SUFFIX)) {
+            stream.forEach(entries::add);
+        }
+        return entries;
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package Service.AIservice;
+
+/**
+ * JMX view of the AI answer cache ({@link AiResponseCache}, registered as AiBill:type=AiResponseCache).
+ */
+public interface AiResponseCacheMXBean {
+    long getHitCount();
+
+    long getDiskHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getExpiredCount();
+
+    long getEvictionCount();
+
+    long getDiskBytes();
+
+    long getMaxDiskBytes();
+}
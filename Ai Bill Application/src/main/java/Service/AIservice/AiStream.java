@@ -0,0 +1,99 @@
+package Service.AIservice;
+
+import io.reactivex.disposables.Disposable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Handle of a streaming AI request ({@link LlmClient#stream}, {@link AITransactionService#askAiStreaming}).
+ * Cancelling stops reading the response and silences the listener.
+ */
+public final class AiStream {
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile Disposable subscription;
+    private final List<Runnable> doneActions = new ArrayList<>(); // Guarded by this
+
+    AiStream() {
+    }
+
+    /**
+     * A stream that has already ended (answer from the cache, nothing to ask, or a failure before sending).
+     */
+    static AiStream finished() {
+        AiStream stream = new AiStream();
+        stream.finish();
+        return stream;
+    }
+
+    void attach(Disposable subscription) {
+        this.subscription = subscription;
+        if (cancelled.get() && subscription != null) {
+            subscription.dispose(); // Cancelled before the request was under way
+        }
+    }
+
+    void finish() {
+        List<Runnable> actions;
+        synchronized (this) {
+            if (isDone()) {
+                return;
+            }
+            finished.countDown();
+            actions = new ArrayList<>(doneActions);
+            doneActions.clear();
+        }
+        actions.forEach(Runnable::run);
+    }
+
+    /**
+     * Runs the action once the stream is done (at once if it already is), after the listener was told.
+     */
+    void whenDone(Runnable action) {
+        synchronized (this) {
+            if (!isDone()) {
+                doneActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * Stops the request. Chunks already delivered stay delivered; no more listener calls follow.
+     */
+    public void cancel() {
+        if (cancelled.compareAndSet(false, true)) {
+            Disposable current = subscription;
+            if (current != null) {
+                current.dispose();
+            }
+            finish();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * @return True once the stream completed, failed or was cancelled.
+     */
+    public boolean isDone() {
+        return finished.getCount() == 0;
+    }
+
+    /**
+     * Waits until the stream is done.
+     *
+     * @return False if the timeout elapsed first.
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+}
@@ -0,0 +1,28 @@
+package Service.AIservice;
+
+/**
+ * Receives an AI answer while it is being generated.
+ *
+ * Methods are called on the thread that reads the response (not the EDT). After {@link AiStream#cancel}
+ * no further calls are made. Exactly one of {@link #onComplete} and {@link #onError} ends a stream that
+ * was not cancelled.
+ */
+public interface AiStreamListener {
+
+    /**
+     * A piece of the answer, in order.
+     */
+    void onChunk(String text);
+
+    /**
+     * The answer is complete.
+     *
+     * @param fullText All chunks joined (or a message that was produced without asking the model).
+     */
+    void onComplete(String fullText);
+
+    /**
+     * The request failed; chunks received so far stay valid.
+     */
+    void onError(Throwable error);
+}
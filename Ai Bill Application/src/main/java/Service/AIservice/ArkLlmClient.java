@@ -0,0 +1,149 @@
+package Service.AIservice;
+
+import Constants.ConfigConstants;
+import Utils.Metrics;
+import com.volcengine.ark.runtime.model.completion.chat.ChatCompletionChoice;
+import com.volcengine.ark.runtime.model.completion.chat.ChatCompletionChunk;
+import com.volcengine.ark.runtime.model.completion.chat.ChatCompletionRequest;
+import com.volcengine.ark.runtime.model.completion.chat.ChatMessage;
+import com.volcengine.ark.runtime.model.completion.chat.ChatMessageRole;
+import com.volcengine.ark.runtime.service.ArkService;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * {@link LlmClient} backed by the VolcEngine Ark SDK. Point the base URL at a {@link StubChatServer} to run
+ * the real client code against a local endpoint.
+ */
+public class ArkLlmClient implements LlmClient {
+
+    private final ArkService service; // Thread-safe; shared by all requests
+    private final String modelId;
+    private final boolean configured;
+
+    /**
+     * @param baseUrl Ark API base URL.
+     * @param apiKey API key (null or empty: {@link #isConfigured()} is false).
+     * @param modelId Endpoint id of the model.
+     * @param timeout Read timeout of one request.
+     */
+    public ArkLlmClient(String baseUrl, String apiKey, String modelId, Duration timeout) {
+        this(ArkService.builder()
+                .timeout(timeout)
+                .connectTimeout(Duration.ofSeconds(20))
+                .retryTimes(0) // Retries are left to the gateway, which backs off and respects the circuit breaker
+                .baseUrl(baseUrl)
+                .apiKey(apiKey)
+                .build(), modelId, apiKey != null && !apiKey.trim().isEmpty());
+    }
+
+    ArkLlmClient(ArkService service, String modelId, boolean configured) {
+        this.service = service;
+        this.modelId = modelId;
+        this.configured = configured;
+    }
+
+    /**
+     * @return Client for the endpoint in config.properties (ai.base_url, ai.model_id), keyed by ARK_API_KEY.
+     */
+    public static ArkLlmClient fromConfig() {
+        return new ArkLlmClient(ConfigConstants.AI_BASE_URL, System.getenv("ARK_API_KEY"), ConfigConstants.AI_MODEL_ID,
+                Duration.ofSeconds(ConfigConstants.AI_TIMEOUT_SECONDS));
+    }
+
+    @Override
+    public String getModelId() {
+        return modelId;
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return configured;
+    }
+
+    @Override
+    public String complete(String prompt) {
+        ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
+                .model(modelId)
+                .messages(List.of(ChatMessage.builder().role(ChatMessageRole.USER).content(prompt).build()))
+                .build();
+        System.out.println("ArkLlmClient: Sending request to VolcEngine Ark...");
+        String responseContent = (String) service.createChatCompletion(chatCompletionRequest)
+                .getChoices().get(0).getMessage().getContent();
+        System.out.println("ArkLlmClient: Received response from AI.");
+        return responseContent;
+    }
+
+    /**
+     * Streaming chat completion; the listener is called on the SDK's reader thread.
+     */
+    @Override
+    public AiStream stream(String prompt, AiStreamListener listener) {
+        AiStream stream = new AiStream();
+        ChatCompletionRequest request = ChatCompletionRequest.builder()
+                .model(modelId)
+                .messages(List.of(ChatMessage.builder().role(ChatMessageRole.USER).content(prompt).build()))
+                .stream(true)
+                .build();
+
+        StringBuilder fullText = new StringBuilder(); // Only touched by the reader thread
+        Metrics.Timer firstTokenTimer = Metrics.startTimer("ai.stream.first_token");
+        Metrics.Timer timer = Metrics.startTimer("ai.stream");
+        System.out.println("ArkLlmClient: Sending streaming request to VolcEngine Ark...");
+        try {
+            stream.attach(service.streamChatCompletion(request).subscribe(
+                    chunk -> {
+                        String text = textOf(chunk);
+                        if (text.isEmpty() || stream.isCancelled()) {
+                            return; // Role-only or final chunk, or nobody is listening anymore
+                        }
+                        firstTokenTimer.stop(); // Only the first call counts
+                        fullText.append(text);
+                        listener.onChunk(text);
+                    },
+                    error -> {
+                        timer.failed();
+                        timer.stop();
+                        if (!stream.isCancelled()) {
+                            System.err.println("ArkLlmClient: Streaming request failed: " + error.getMessage());
+                            listener.onError(error);
+                        }
+                        stream.finish();
+                    },
+                    () -> {
+                        timer.stop();
+                        if (!stream.isCancelled()) {
+                            System.out.println("ArkLlmClient: Received " + fullText.length() + " characters.");
+                            listener.onComplete(fullText.toString());
+                        }
+                        stream.finish();
+                    }));
+        } catch (RuntimeException e) { // Request could not be sent at all
+            timer.failed();
+            timer.stop();
+            stream.finish();
+            listener.onError(e);
+        }
+        return stream;
+    }
+
+    /**
+     * @return The text a chunk adds to the answer ("" if none).
+     */
+    private static String textOf(ChatCompletionChunk chunk) {
+        List<ChatCompletionChoice> choices = chunk.getChoices();
+        if (choices == null || choices.isEmpty() || choices.get(0).getMessage() == null) {
+            return "";
+        }
+        Object content = choices.get(0).getMessage().getContent(); // The SDK maps each chunk's "delta" here
+        return content == null ? "" : content.toString();
+    }
+
+    /**
+     * Stops the SDK's connection pool and threads.
+     */
+    public void shutdown() {
+        service.shutdownExecutor();
+    }
+}
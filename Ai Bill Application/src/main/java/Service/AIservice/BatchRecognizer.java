@@ -0,0 +1,191 @@
+package Service.AIservice;
+
+import Constants.StandardCategories;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Classifies many transactions with few model calls: rows are packed into numbered prompts that fit a
+ * token budget, and the numbered answer lines are matched back to the rows.
+ *
+ * A row whose answer is missing or not a known category is retried in a later, smaller prompt together
+ * with the other failed rows only (up to {@link #MAX_ATTEMPTS} attempts; retries bypass the answer cache).
+ * If the model stops answering part way through a batch (output cut off), later batches hold at most as
+ * many rows as were answered. When a whole attempt gets no usable answer (endpoint down, key missing), the
+ * remaining rows are given up at once instead of retried.
+ */
+final class BatchRecognizer {
+
+    static final int MAX_ATTEMPTS = 3;
+    static final int MAX_ROWS_PER_BATCH = 100;
+    static final int ANSWER_TOKENS_PER_ROW = 8; // "123. Daily Necessities" plus a line break
+    // "12. Dining", "12) Dining", "12: Dining", "12、Dining", "[12] Dining"
+    private static final Pattern ANSWER_LINE = Pattern.compile("^\\s*\\[?(\\d+)\\s*[\\].):：、\\-]\\s*(.+?)\\s*$");
+
+    private final BiFunction<String, Boolean, String> model; // (prompt, bypass cache) -> answer text
+    private final String instructions;
+    private final int tokenBudget;
+    private int rowCap = MAX_ROWS_PER_BATCH;
+    private int calls;
+
+    /**
+     * @param model Sends a prompt; the flag is true for retries, which must not be answered from a cache.
+     * @param instructions Text put before the numbered rows.
+     * @param tokenBudget Max estimated tokens of prompt plus expected answer per call.
+     */
+    BatchRecognizer(BiFunction<String, Boolean, String> model, String instructions, int tokenBudget) {
+        this.model = model;
+        this.instructions = instructions;
+        this.tokenBudget = tokenBudget;
+    }
+
+    /**
+     * @param rows One description line per transaction (no line breaks).
+     * @return The category of each row, in the same order; null where none was obtained.
+     */
+    List<String> recognize(List<String> rows) {
+        String[] results = new String[rows.size()];
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            pending.add(i);
+        }
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            List<Integer> failed = new ArrayList<>();
+            int answeredThisAttempt = 0;
+            int pos = 0;
+            while (pos < pending.size()) {
+                List<Integer> batch = nextBatch(rows, pending, pos);
+                pos += batch.size();
+                Map<Integer, String> answers = parse(model.apply(prompt(rows, batch), attempt > 1), batch.size());
+                calls++;
+                for (int k = 0; k < batch.size(); k++) {
+                    String category = answers.get(k + 1);
+                    if (category != null) {
+                        results[batch.get(k)] = category;
+                        answeredThisAttempt++;
+                    } else {
+                        failed.add(batch.get(k));
+                    }
+                }
+                adaptRowCap(answers, batch.size());
+            }
+            System.out.println("BatchRecognizer: Attempt " + attempt + " recognized " + answeredThisAttempt + "/" + pending.size()
+                    + " rows (" + calls + " calls so far, batch cap " + rowCap + ")");
+            if (answeredThisAttempt == 0) {
+                break; // Nothing usable came back; retrying would fail the same way
+            }
+            pending = failed;
+        }
+        List<String> list = new ArrayList<>(results.length);
+        for (String result : results) {
+            list.add(result);
+        }
+        return list;
+    }
+
+    /**
+     * @return Model calls made so far.
+     */
+    int getCallCount() {
+        return calls;
+    }
+
+    int getRowCap() {
+        return rowCap;
+    }
+
+    /**
+     * Takes rows from pending[pos] on while the prompt and its expected answer fit the budget (at least one).
+     */
+    private List<Integer> nextBatch(List<String> rows, List<Integer> pending, int pos) {
+        List<Integer> batch = new ArrayList<>();
+        int tokens = TokenEstimator.estimate(instructions);
+        for (int i = pos; i < pending.size() && batch.size() < rowCap; i++) {
+            int row = pending.get(i);
+            int rowTokens = TokenEstimator.estimate(rows.get(row)) + 2 + ANSWER_TOKENS_PER_ROW; // "n. " prefix
+            if (!batch.isEmpty() && tokens + rowTokens > tokenBudget) {
+                break;
+            }
+            batch.add(row);
+            tokens += rowTokens;
+        }
+        return batch;
+    }
+
+    private String prompt(List<String> rows, List<Integer> batch) {
+        StringBuilder sb = new StringBuilder(instructions).append('\n');
+        for (int k = 0; k < batch.size(); k++) {
+            sb.append(k + 1).append(". ").append(rows.get(batch.get(k)).replace('\n', ' ')).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return Line number -> known category, for the numbers 1..batchSize that got a valid answer.
+     */
+    static Map<Integer, String> parse(String answer, int batchSize) {
+        Map<Integer, String> answers = new HashMap<>();
+        if (answer == null) {
+            return answers;
+        }
+        for (String line : answer.split("\\R")) {
+            Matcher m = ANSWER_LINE.matcher(line);
+            if (!m.matches()) {
+                continue;
+            }
+            int number;
+            try {
+                number = Integer.parseInt(m.group(1));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (number < 1 || number > batchSize || answers.containsKey(number)) {
+                continue; // Out of range, or a repeated number: keep the first
+            }
+            String category = cleanCategory(m.group(2));
+            if (category != null) {
+                answers.put(number, category);
+            }
+        }
+        return answers;
+    }
+
+    /**
+     * Strips quotes and trailing punctuation and maps aliases to the standard name.
+     *
+     * @return The standard category, or null if the text is not one.
+     */
+    private static String cleanCategory(String text) {
+        String s = text.trim();
+        while (!s.isEmpty() && "\"'`*“”‘’。.;；,，".indexOf(s.charAt(s.length() - 1)) >= 0) {
+            s = s.substring(0, s.length() - 1).trim();
+        }
+        while (!s.isEmpty() && "\"'`*“‘".indexOf(s.charAt(0)) >= 0) {
+            s = s.substring(1).trim();
+        }
+        String standard = StandardCategories.getStandardCategory(s);
+        return StandardCategories.ALL_KNOWN_TYPES.contains(standard) ? standard : null;
+    }
+
+    /**
+     * If only the first m rows were answered, the answer was probably cut off: cap later batches at m rows.
+     */
+    private void adaptRowCap(Map<Integer, String> answers, int batchSize) {
+        if (answers.isEmpty() || answers.size() == batchSize) {
+            return;
+        }
+        int m = answers.size();
+        for (int k = 1; k <= m; k++) {
+            if (!answers.containsKey(k)) {
+                return; // Gaps: individual rows failed, not a truncated answer
+            }
+        }
+        rowCap = Math.max(1, Math.min(rowCap, m));
+    }
+}
@@ -1,10 +1,10 @@
 package Service.AIservice;
 
+import Constants.ConfigConstants;
 import Constants.StandardCategories;
-import DAO.TransactionDao;
-import DAO.Impl.CsvTransactionDao;
 // Removed: import Service.Impl.TransactionServiceImpl; // Not directly used here
-import Utils.CacheManager;
+import Utils.CategoryResolver;
+import Utils.TransactionClassifier;
 import model.Transaction;
 import model.MonthlySummary;
 import Service.TransactionService;
@@ -15,30 +15,49 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Collections;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 public class CollegeStudentNeeds {
     // Prompts for AI interaction
     private final String requestBudge = "I am a college student with a limited budget. Based on my historical weekly spending and monthly income/expense summary provided below, please help me set a budget range for next week. You must provide the answer in the format [minimum_budget, maximum_budget], with no additional text.";
-    private final String requestTips = "I am a college student with a limited budget. Based on my monthly spending summary data provided below, please recommend some targeted ways for me to save money.";
+    private final String requestTips = "I am a college student with a limited budget. Based on my monthly spending summary data above, please recommend some targeted ways for me to save money.";
     private final String requestRecognition =
             "Please infer the most appropriate transaction type based on the following billing information. The returned type must exactly match one of the entries in the following list:\n" +
                     StandardCategories.getAllCategoriesString() + "\n" + // Include the list of valid categories
                     "If it cannot be determined, please return 'Other Expenses' or 'Other Income' (depending on the income/expense direction). Return only the type string, do not include additional text or explanations. Billing information:";
+    private final String requestBatchRecognition =
+            "Please infer the most appropriate transaction type for each numbered billing record below. Each type must exactly match one of the entries in the following list:\n" +
+                    StandardCategories.getAllCategoriesString() + "\n" +
+                    "If it cannot be determined, use 'Other Expenses' or 'Other Income' (depending on the income/expense direction). " +
+                    "Answer with exactly one line per record, in the form '<number>. <type>', in the same order, with no additional text. Billing records:";
 
     // TransactionService is injected to access transaction data and summaries.
     private final TransactionService transactionService;
+    // Used only for askAi, which needs no TransactionService
+    private final AITransactionService aiService;
+    // Learned from the user's categorised transactions; answers before the AI is asked
+    private final TransactionClassifier classifier = new TransactionClassifier();
 
     /**
      * Constructor that accepts a TransactionService instance.
      * @param transactionService The service to interact with transaction data.
      */
     public CollegeStudentNeeds(TransactionService transactionService) {
+        this(transactionService, new AITransactionService(null));
+    }
+
+    /**
+     * @param aiService Sends the prompts (e.g. one built on a {@link FakeLlmClient}).
+     */
+    public CollegeStudentNeeds(TransactionService transactionService, AITransactionService aiService) {
         this.transactionService = transactionService;
+        this.aiService = aiService;
         System.out.println("CollegeStudentNeeds initialized with TransactionService.");
     }
 
@@ -53,9 +72,123 @@ public class CollegeStudentNeeds {
         if (transaction == null) {
             return "Cannot recognize empty transaction information";
         }
-        StringBuilder sb = new StringBuilder();
-        // Build the string with transaction details for the AI prompt.
+        // Local merchant keywords first; only ambiguous rows need the AI round trip.
+        // The row's own type is not an answer: it is what is being recognised (e.g. in the edit dialog)
+        String localCategory = CategoryResolver.getInstance().resolveByKeywords(transaction);
+        if (localCategory != null) {
+            System.out.println("CollegeStudentNeeds: Recognized locally as " + localCategory + ", skipping AI call.");
+            return localCategory;
+        }
+        // Then what the user's own categorised transactions say
+        if (syncClassifier()) {
+            String learned = classifyFromHistory(transaction);
+            if (learned != null) {
+                return learned;
+            }
+        }
+        String details = describeForRecognition(transaction);
+        System.out.println("CollegeStudentNeeds: Sending recognition request to AI: " + details);
+        return aiService.askAi(requestRecognition + details);
+    }
+
+    /**
+     * Background variant of {@link #RecognizeTransaction(Transaction)}, run on the {@link AiExecutor}.
+     *
+     * @return The suggested category; cancelling it stops the request.
+     */
+    public CompletableFuture<String> recognizeTransactionAsync(Transaction transaction) {
+        return AiExecutor.supply(() -> RecognizeTransaction(transaction));
+    }
+
+    /**
+     * Recognizes the categories of many transactions, e.g. a freshly imported month.
+     * Rows the local rules or the classifier learned from the user's history can place skip the AI; the rest are sent as numbered lists, as many per request
+     * as fit the ai.recognition_batch_tokens budget, and rows without a usable answer are retried on their own.
+     *
+     * @param transactions The transactions to recognize.
+     * @return One category per transaction, in the same order; null where neither the rules nor the AI gave one.
+     */
+    public List<String> recognizeTransactions(List<Transaction> transactions) {
+        List<String> categories = new ArrayList<>(Collections.nCopies(transactions.size(), (String) null));
+        List<Integer> remoteRows = new ArrayList<>();
+        List<String> remoteDetails = new ArrayList<>();
+        CategoryResolver resolver = CategoryResolver.getInstance();
+        boolean useClassifier = syncClassifier();
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            if (transaction == null) {
+                continue;
+            }
+            String localCategory = resolver.resolveByKeywords(transaction); // Not the row's own type
+            if (localCategory == null && useClassifier) {
+                localCategory = classifyFromHistory(transaction);
+            }
+            if (localCategory != null) {
+                categories.set(i, localCategory);
+            } else {
+                remoteRows.add(i);
+                remoteDetails.add(describeForRecognition(transaction));
+            }
+        }
+        System.out.println("CollegeStudentNeeds: " + (transactions.size() - remoteRows.size()) + " of " + transactions.size()
+                + " transactions recognized locally, " + remoteRows.size() + " sent to AI in batches.");
+        if (remoteRows.isEmpty()) {
+            return categories;
+        }
+        BatchRecognizer recognizer = new BatchRecognizer(
+                (prompt, retry) -> aiService.askAi(prompt, "", retry),
+                requestBatchRecognition,
+                (int) ConfigConstants.AI_RECOGNITION_BATCH_TOKENS);
+        List<String> remoteCategories = recognizer.recognize(remoteDetails);
+        for (int k = 0; k < remoteRows.size(); k++) {
+            categories.set(remoteRows.get(k), remoteCategories.get(k));
+        }
+        System.out.println("CollegeStudentNeeds: Batch recognition used " + recognizer.getCallCount() + " AI requests for "
+                + remoteRows.size() + " transactions.");
+        return categories;
+    }
+
+    /**
+     * Brings the classifier up to date with the user's transactions (only rows added or removed since the last call).
+     *
+     * @return True if it has learned from enough rows to be asked.
+     */
+    private boolean syncClassifier() {
+        if (transactionService == null) {
+            return false;
+        }
+        try {
+            classifier.sync(transactionService.getAllTransactions());
+        } catch (Exception e) {
+            // No history, no local answer; the AI still can
+            System.err.println("CollegeStudentNeeds: Could not load transactions for the local classifier: " + e.getMessage());
+            return false;
+        }
+        return classifier.getExampleCount() >= ConfigConstants.CATEGORY_CLASSIFIER_MIN_EXAMPLES;
+    }
+
+    /**
+     * @return The category learned from the user's history, or null if the classifier is not sure enough.
+     *         The transaction's own row in the history (e.g. when it is being edited) is not counted.
+     */
+    private String classifyFromHistory(Transaction transaction) {
+        long start = System.nanoTime();
+        TransactionClassifier.Prediction prediction = classifier.reclassify(transaction);
+        long micros = (System.nanoTime() - start) / 1000;
+        if (prediction == null || prediction.getConfidence() < ConfigConstants.CATEGORY_CLASSIFIER_MIN_CONFIDENCE) {
+            System.out.println("CollegeStudentNeeds: Local classifier not sure (" + prediction + ", " + micros + " us), asking AI.");
+            return null;
+        }
+        System.out.println("CollegeStudentNeeds: Classified from history as " + prediction + " in " + micros + " us, skipping AI call.");
+        return prediction.getCategory();
+    }
+
+    /**
+     * One line with the transaction details the AI needs to pick a category.
+     */
+    private static String describeForRecognition(Transaction transaction) {
         // Assuming In/Out and other fields are in English or will be handled by AI.
+        StringBuilder sb = new StringBuilder();
         sb.append("Transaction Type:").append(transaction.getTransactionType()).append(",")
                 .append("Counterparty:").append(transaction.getCounterparty()).append(",")
                 .append("Commodity:").append(transaction.getCommodity()).append(",")
@@ -63,11 +196,16 @@ public class CollegeStudentNeeds {
                 .append("Amount(CNY):").append(String.format("%.2f", transaction.getPaymentAmount())).append(",")
                 .append("Payment Method:").append(transaction.getPaymentMethod()).append(",")
                 .append("Remarks:").append(transaction.getRemarks());
+        return sb.toString();
+    }
 
-        System.out.println("CollegeStudentNeeds: Sending recognition request to AI: " + sb.toString());
-        // Create a local AITransactionService instance for askAi calls, as it doesn't need an injected TransactionService for this specific task.
-        AITransactionService localAiService = new AITransactionService(null);
-        return localAiService.askAi(requestRecognition + sb.toString());
+    /**
+     * Background variant of {@link #recognizeTransactions(List)}, run on the {@link AiExecutor}.
+     *
+     * @return The categories; cancelling it stops the remaining requests.
+     */
+    public CompletableFuture<List<String>> recognizeTransactionsAsync(List<Transaction> transactions) {
+        return AiExecutor.supply(() -> recognizeTransactions(transactions));
     }
 
     /**
@@ -78,44 +216,22 @@ public class CollegeStudentNeeds {
      */
     public String generateTipsForSaving(String userFilePath) {
         try {
-            // Get monthly summary data using the injected TransactionService.
-            Map<String, MonthlySummary> summaries = transactionService.getMonthlyTransactionSummary();
+            // Monthly data shared with the other AI features (rendered once per data version)
+            PromptContext context = PromptContext.of(userFilePath, transactionService);
+            Map<String, MonthlySummary> summaries = context.getMonthlySummaries();
             System.out.println("CollegeStudentNeeds: Retrieved " + summaries.size() + " months of summary data for tips.");
 
             if (summaries.isEmpty()) {
                 return "Not enough transaction data found to provide personalized saving tips.";
             }
 
-            StringBuilder promptBuilder = new StringBuilder();
-            promptBuilder.append(requestTips).append("\n\nHere is my monthly spending summary data:\n\n");
-
-            // Sort months chronologically to present data in order to the AI.
-            List<String> sortedMonths = new ArrayList<>(summaries.keySet());
-            Collections.sort(sortedMonths);
-
-            for (String month : sortedMonths) {
-                MonthlySummary ms = summaries.get(month);
-                promptBuilder.append("--- ").append(ms.getMonthIdentifier()).append(" ---\n");
-                promptBuilder.append("  Total Expense: ").append(String.format("%.2f", ms.getTotalExpense())).append(" CNY\n");
-                promptBuilder.append("  Expense Breakdown:\n");
-                if (ms.getExpenseByCategory().isEmpty()) {
-                    promptBuilder.append("    (No expenses)\n");
-                } else {
-                    // Sort categories by amount in descending order for clarity.
-                    ms.getExpenseByCategory().entrySet().stream()
-                            .sorted(Map.Entry.comparingByValue(Collections.reverseOrder()))
-                            .forEach(entry ->
-                                    promptBuilder.append(String.format("    %s: %.2f CNY\n", entry.getKey(), entry.getValue()))
-                            );
-                }
-                promptBuilder.append("\n");
-            }
+            StringBuilder promptBuilder = new StringBuilder(context.monthlyDataPrompt());
+            promptBuilder.append(requestTips).append("\n");
 
             String aiPrompt = promptBuilder.toString();
             System.out.println("CollegeStudentNeeds: Sending saving tips prompt to AI. Prompt length: " + aiPrompt.length());
 
-            AITransactionService localAiService = new AITransactionService(null);
-            return localAiService.askAi(aiPrompt);
+            return aiService.askAi(aiPrompt);
 
         } catch (Exception e) {
             System.err.println("CollegeStudentNeeds: Failed to generate saving tips.");
@@ -124,6 +240,24 @@ public class CollegeStudentNeeds {
         }
     }
 
+    /**
+     * Background variant of {@link #generateTipsForSaving(String)}, run on the {@link AiExecutor}.
+     *
+     * @return The tips or error text; cancelling it stops the request.
+     */
+    public CompletableFuture<String> generateTipsForSavingAsync(String userFilePath) {
+        return AiExecutor.supply(() -> generateTipsForSaving(userFilePath));
+    }
+
+    /**
+     * Background variant of {@link #generateBudget(String)}, run on the {@link AiExecutor}.
+     *
+     * @return The budget range; completes exceptionally if the data cannot be read. Cancelling it stops the request.
+     */
+    public CompletableFuture<double[]> generateBudgetAsync(String filePath) {
+        return AiExecutor.supply(() -> generateBudget(filePath));
+    }
+
     /**
      * Analyzes weekly spending and monthly summaries to ask AI for a budget range.
      * @param filePath The path to the user's transaction CSV file.
@@ -131,17 +265,18 @@ public class CollegeStudentNeeds {
      * @throws Exception If there's an error accessing transaction data or summaries.
      */
     public double[] generateBudget(String filePath) throws Exception {
+        PromptContext context;
         List<Transaction> transactions;
         Map<String, MonthlySummary> summaries;
 
         try {
-            // Get transactions using CacheManager.
-            TransactionDao transactionDaoForLoading = new CsvTransactionDao();
-            transactions = CacheManager.getTransactions(filePath, transactionDaoForLoading);
+            // Transactions and monthly summaries of the current data version, shared with the other AI features.
+            context = PromptContext.of(filePath, transactionService);
+            transactions = context.getTransactions();
             System.out.println("CollegeStudentNeeds: Retrieved " + transactions.size() + " transactions for budget analysis from: " + filePath);
 
-            // Get monthly summary data for additional context.
-            summaries = transactionService.getMonthlyTransactionSummary();
+            // Monthly summary data for additional context.
+            summaries = context.getMonthlySummaries();
             System.out.println("CollegeStudentNeeds: Retrieved " + summaries.size() + " months of summary data for budget context.");
 
         } catch (Exception e) {
@@ -155,48 +290,15 @@ public class CollegeStudentNeeds {
             System.out.println("CollegeStudentNeeds: No transactions found for budget analysis.");
             if (!summaries.isEmpty()) {
                 // If monthly summaries exist, use them for the AI prompt.
-                StringBuilder promptBuilder = new StringBuilder();
-                promptBuilder.append("Here is my monthly income and expense summary data:\n\n");
-                List<String> sortedMonths = new ArrayList<>(summaries.keySet());
-                Collections.sort(sortedMonths);
-                for (String month : sortedMonths) {
-                    MonthlySummary ms = summaries.get(month);
-                    promptBuilder.append("--- ").append(ms.getMonthIdentifier()).append(" ---\n");
-                    promptBuilder.append("  Total Income: ").append(String.format("%.2f", ms.getTotalIncome())).append(" CNY\n");
-                    promptBuilder.append("  Total Expense: ").append(String.format("%.2f", ms.getTotalExpense())).append(" CNY\n");
-                    double net = ms.getTotalIncome() - ms.getTotalExpense();
-                    promptBuilder.append("  Monthly Net Income/Expense: ").append(String.format("%.2f", net)).append(" CNY\n");
-                    promptBuilder.append("  Main Expense Categories:\n");
-                    if (ms.getExpenseByCategory().isEmpty()) {
-                        promptBuilder.append("    (No expenses)\n");
-                    } else {
-                        ms.getExpenseByCategory().entrySet().stream()
-                                .sorted(Map.Entry.comparingByValue(Collections.reverseOrder()))
-                                .forEach(entry ->
-                                        promptBuilder.append(String.format("    %s: %.2f CNY\n", entry.getKey(), entry.getValue()))
-                                );
-                    }
-                    promptBuilder.append("\n");
-                }
-                String answer = new AITransactionService(null).askAi(requestBudge + "\n\nNo weekly spending data found.\n" + promptBuilder.toString());
+                String answer = aiService.askAi(budgetPrompt(requestBudge + "\n\nNo weekly spending data found.\n",
+                        List.of(monthSection("Here is my monthly income and expense summary data:\n", context))));
                 return parseDoubleArrayFromString(answer);
             }
             return new double[]{-1, -1}; // No data at all.
         }
 
-        // Filter for 'Expense' transactions and sort them by date (newest first).
-        // Assumes In/Out field uses "Expense" or "Out" for expense transactions.
-        List<Transaction> expenseTransactions = transactions.stream()
-                .filter(t -> t.getInOut() != null && (t.getInOut().equalsIgnoreCase("Expense") || t.getInOut().equalsIgnoreCase("Out")))
-                .sorted((t1, t2) -> {
-                    LocalDate date1 = parseDateSafe(t1.getTransactionTime());
-                    LocalDate date2 = parseDateSafe(t2.getTransactionTime());
-                    if (date1 != null && date2 != null) { return date2.compareTo(date1); }
-                    else if (date1 == null && date2 == null) { return 0; }
-                    else if (date1 == null) { return 1; } // Treat null dates as later for sorting purposes if needed.
-                    else { return -1; }
-                })
-                .collect(Collectors.toList());
+        // Expense transactions, newest first (computed once per data version).
+        List<Transaction> expenseTransactions = context.fragment("budget.expenses", () -> expenseTransactions(transactions));
         System.out.println("CollegeStudentNeeds: Filtered " + expenseTransactions.size() + " expense transactions for budget analysis.");
 
         // Handle case with no expense transactions.
@@ -204,36 +306,74 @@ public class CollegeStudentNeeds {
             System.out.println("CollegeStudentNeeds: No expense transactions found for budget analysis.");
             if (!summaries.isEmpty()) {
                 // If monthly summaries exist, use them for the AI prompt.
-                StringBuilder promptBuilder = new StringBuilder();
-                promptBuilder.append("Here is my monthly income and expense summary data:\n\n");
-                List<String> sortedMonths = new ArrayList<>(summaries.keySet());
-                Collections.sort(sortedMonths);
-                for (String month : sortedMonths) {
-                    MonthlySummary ms = summaries.get(month);
-                    promptBuilder.append("--- ").append(ms.getMonthIdentifier()).append(" ---\n");
-                    promptBuilder.append("  Total Income: ").append(String.format("%.2f", ms.getTotalIncome())).append(" CNY\n");
-                    promptBuilder.append("  Total Expense: ").append(String.format("%.2f", ms.getTotalExpense())).append(" CNY\n");
-                    double net = ms.getTotalIncome() - ms.getTotalExpense();
-                    promptBuilder.append("  Monthly Net Income/Expense: ").append(String.format("%.2f", net)).append(" CNY\n");
-                    promptBuilder.append("  Main Expense Categories:\n");
-                    if (ms.getExpenseByCategory().isEmpty()) {
-                        promptBuilder.append("    (No expenses)\n");
-                    } else {
-                        ms.getExpenseByCategory().entrySet().stream()
-                                .sorted(Map.Entry.comparingByValue(Collections.reverseOrder()))
-                                .forEach(entry ->
-                                        promptBuilder.append(String.format("    %s: %.2f CNY\n", entry.getKey(), entry.getValue()))
-                                );
-                    }
-                    promptBuilder.append("\n");
-                }
-                String answer = new AITransactionService(null).askAi(requestBudge + "\n\nNo weekly spending data found.\n" + promptBuilder.toString());
+                String answer = aiService.askAi(budgetPrompt(requestBudge + "\n\nNo weekly spending data found.\n",
+                        List.of(monthSection("Here is my monthly income and expense summary data:\n", context))));
                 return parseDoubleArrayFromString(answer);
             }
             return new double[]{-1, -1}; // No expense data and no summary data.
         }
 
-        // Calculate weekly expenses from the filtered expense transactions.
+        // Weekly expenses from the filtered expense transactions (computed once per data version).
+        List<Double> weeklyExpenses = context.fragment("budget.weeklyExpenses", () -> weeklyExpenses(expenseTransactions));
+        System.out.println("CollegeStudentNeeds: Calculated weekly expenses for " + weeklyExpenses.size() + " weeks: " + weeklyExpenses);
+
+        // Format the prompt including both weekly expenses and monthly summary (recent ones first if it must be cut down).
+        String aiPrompt = context.fragment("budget.prompt", () -> budgetPrompt(weeklyExpenses, context));
+        System.out.println("CollegeStudentNeeds: Sending budget request to AI. Prompt length: " + aiPrompt.length());
+
+        String answer = aiService.askAi(aiPrompt);
+        System.out.println("CollegeStudentNeeds: Received budget response from AI: " + answer);
+
+        double[] ret = parseDoubleArrayFromString(answer);
+        if (ret == null || ret.length != 2) {
+            System.err.println("CollegeStudentNeeds: Failed to parse budget array from AI response: " + answer + ". Full AI Response: " + answer);
+            return new double[]{-1, -1};
+        }
+        return ret;
+    }
+
+    /**
+     * @return The budget request with the weekly and monthly data.
+     */
+    private String budgetPrompt(List<Double> weeklyExpenses, PromptContext context) {
+        Map<String, MonthlySummary> summaries = context.getMonthlySummaries();
+        List<PromptBudgeter.Section<?>> sections = new ArrayList<>();
+        if (weeklyExpenses.isEmpty()) {
+            sections.add(fixedSection("Here is my recent weekly spending data:\n(Not enough periodic expense data found)"));
+        } else {
+            sections.add(weekSection(weeklyExpenses));
+        }
+        if (summaries.isEmpty()) {
+            sections.add(fixedSection("\nAdditionally, here is my monthly income and expense summary data:\n\n(No monthly summary data found)"));
+        } else {
+            sections.add(monthSection("\nAdditionally, here is my monthly income and expense summary data:\n", context));
+        }
+        return budgetPrompt(requestBudge + "\n\n", sections);
+    }
+
+    /**
+     * @return The expense transactions, newest first.
+     */
+    private List<Transaction> expenseTransactions(List<Transaction> transactions) {
+        // Assumes In/Out field uses "Expense" or "Out" for expense transactions.
+        return transactions.stream()
+                .filter(t -> t.getInOut() != null && (t.getInOut().equalsIgnoreCase("Expense") || t.getInOut().equalsIgnoreCase("Out")))
+                .sorted((t1, t2) -> {
+                    LocalDate date1 = parseDateSafe(t1.getTransactionTime());
+                    LocalDate date2 = parseDateSafe(t2.getTransactionTime());
+                    if (date1 != null && date2 != null) { return date2.compareTo(date1); }
+                    else if (date1 == null && date2 == null) { return 0; }
+                    else if (date1 == null) { return 1; } // Treat null dates as later for sorting purposes if needed.
+                    else { return -1; }
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param expenseTransactions Newest first.
+     * @return Total spent per 7-day period, most recent first.
+     */
+    private List<Double> weeklyExpenses(List<Transaction> expenseTransactions) {
         List<Double> weeklyExpenses = new ArrayList<>();
         LocalDate currentWeekStart = null;
         double currentWeekTotal = 0;
@@ -259,65 +399,63 @@ public class CollegeStudentNeeds {
         if (currentWeekTotal > 0 || currentWeekStart != null) { // Add the last week's total.
             weeklyExpenses.add(currentWeekTotal);
         }
-        System.out.println("CollegeStudentNeeds: Calculated weekly expenses for " + weeklyExpenses.size() + " weeks: " + weeklyExpenses);
-
-        // Format the prompt including both weekly expenses and monthly summary.
-        StringBuilder promptBuilder = new StringBuilder();
-        promptBuilder.append(requestBudge).append("\n\n");
+        return weeklyExpenses;
+    }
 
-        promptBuilder.append("Here is my recent weekly spending data:\n");
-        if (weeklyExpenses.isEmpty()) {
-            promptBuilder.append("(Not enough periodic expense data found)\n");
-        } else {
-            for (int i = 0; i < weeklyExpenses.size(); i++) {
-                promptBuilder.append("Week ");
-                promptBuilder.append(weeklyExpenses.size() - i); // Week numbers count down (e.g., Week 3, Week 2, Week 1 (most recent))
-                promptBuilder.append(": Spent ");
-                promptBuilder.append(String.format("%.2f", weeklyExpenses.get(i)));
-                promptBuilder.append(" CNY; ");
-            }
-            promptBuilder.append("\n");
-        }
+    /**
+     * Joins the budget request and its data, cut down to the prompt budget.
+     */
+    private static String budgetPrompt(String fixedText, List<PromptBudgeter.Section<?>> sections) {
+        return new PromptBudgeter((int) ConfigConstants.AI_PROMPT_BUDGET_TOKENS).build("Student budget", fixedText, sections);
+    }
 
-        promptBuilder.append("\nAdditionally, here is my monthly income and expense summary data:\n\n");
-        if (summaries.isEmpty()) {
-            promptBuilder.append("(No monthly summary data found)\n");
-        } else {
-            List<String> sortedMonths = new ArrayList<>(summaries.keySet());
-            Collections.sort(sortedMonths);
-            for (String month : sortedMonths) {
-                MonthlySummary ms = summaries.get(month);
-                promptBuilder.append("--- ").append(ms.getMonthIdentifier()).append(" ---\n");
-                promptBuilder.append("  Total Income: ").append(String.format("%.2f", ms.getTotalIncome())).append(" CNY\n");
-                promptBuilder.append("  Total Expense: ").append(String.format("%.2f", ms.getTotalExpense())).append(" CNY\n");
-                double net = ms.getTotalIncome() - ms.getTotalExpense();
-                promptBuilder.append("  Monthly Net Income/Expense: ").append(String.format("%.2f", net)).append(" CNY\n");
-                promptBuilder.append("  Main Expense Categories:\n");
-                if (ms.getExpenseByCategory().isEmpty()) {
-                    promptBuilder.append("    (No expenses)\n");
-                } else {
-                    ms.getExpenseByCategory().entrySet().stream()
-                            .sorted(Map.Entry.comparingByValue(Collections.reverseOrder()))
-                            .forEach(entry ->
-                                    promptBuilder.append(String.format("    %s: %.2f CNY\n", entry.getKey(), entry.getValue()))
-                            );
-                }
-                promptBuilder.append("\n");
-            }
+    /**
+     * Weekly totals, most recent first; older weeks are averaged if the budget is tight.
+     *
+     * @param weeklyExpenses Totals, most recent week first.
+     */
+    private static PromptBudgeter.Section<Integer> weekSection(List<Double> weeklyExpenses) {
+        List<Integer> weeks = new ArrayList<>();
+        for (int i = 0; i < weeklyExpenses.size(); i++) {
+            weeks.add(i);
         }
+        return new PromptBudgeter.Section<>("Here is my recent weekly spending data:", weeks, Comparator.naturalOrder(),
+                // Week numbers count down (e.g., Week 3 (most recent), Week 2, Week 1)
+                i -> String.format("Week %d: Spent %.2f CNY", weeklyExpenses.size() - i, weeklyExpenses.get(i)),
+                rest -> {
+                    double total = 0;
+                    for (int i : rest) {
+                        total += weeklyExpenses.get(i);
+                    }
+                    return String.format("Earlier weeks (%d): Spent %.2f CNY per week on average", rest.size(), total / rest.size());
+                });
+    }
 
-        String aiPrompt = promptBuilder.toString();
-        System.out.println("CollegeStudentNeeds: Sending budget request to AI. Prompt length: " + aiPrompt.length());
-
-        String answer = new AITransactionService(null).askAi(aiPrompt);
-        System.out.println("CollegeStudentNeeds: Received budget response from AI: " + answer);
+    /**
+     * Monthly summaries in calendar order; if the budget is tight the most recent months are kept in full
+     * and the earlier ones are added up in one line.
+     */
+    private static PromptBudgeter.Section<MonthlySummary> monthSection(String heading, PromptContext context) {
+        return new PromptBudgeter.Section<>(heading, context.getMonths(),
+                Comparator.comparing(MonthlySummary::getMonthIdentifier).reversed(),
+                context::month, // Same text as in the other AI features' prompts
+                rest -> {
+                    double income = 0;
+                    double expense = 0;
+                    for (MonthlySummary ms : rest) {
+                        income += ms.getTotalIncome();
+                        expense += ms.getTotalExpense();
+                    }
+                    return String.format("Earlier months (%d, %s to %s): Total Income %.2f CNY, Total Expense %.2f CNY\n",
+                            rest.size(), rest.get(0).getMonthIdentifier(), rest.get(rest.size() - 1).getMonthIdentifier(), income, expense);
+                });
+    }
 
-        double[] ret = parseDoubleArrayFromString(answer);
-        if (ret == null || ret.length != 2) {
-            System.err.println("CollegeStudentNeeds: Failed to parse budget array from AI response: " + answer + ". Full AI Response: " + answer);
-            return new double[]{-1, -1};
-        }
-        return ret;
+    /**
+     * A section that is always sent as is.
+     */
+    private static PromptBudgeter.Section<String> fixedSection(String text) {
+        return new PromptBudgeter.Section<>(text, List.of(), (a, b) -> 0, item -> item, rest -> "");
     }
 
     /**
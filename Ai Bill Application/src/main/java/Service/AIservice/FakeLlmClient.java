@@ -0,0 +1,135 @@
+package Service.AIservice;
+
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * In-process {@link LlmClient} with predictable answers, for tests and offline load runs.
+ *
+ * The answer is computed from the prompt by a responder function (by default a fixed text that includes a
+ * budget range, so every AI feature can parse it). A latency and a failure rate can be set; failures
+ * come from a seeded random generator, so a run with the same seed fails the same requests.
+ */
+public class FakeLlmClient implements LlmClient {
+
+    private final AtomicInteger callCount = new AtomicInteger();
+    private volatile Function<String, String> responder = FakeLlmClient::defaultAnswer;
+    private volatile long latencyMillis;
+    private volatile double errorRate;
+    private Random random = new Random(42); // Guarded by this
+    private volatile int chunkChars = 4;
+
+    @Override
+    public String getModelId() {
+        return "fake";
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return true;
+    }
+
+    /**
+     * @param responder Computes the answer from the prompt.
+     */
+    public FakeLlmClient setResponder(Function<String, String> responder) {
+        this.responder = responder;
+        return this;
+    }
+
+    /**
+     * @param latencyMillis Time before the answer (or its first chunk) is returned.
+     */
+    public FakeLlmClient setLatency(long latencyMillis) {
+        this.latencyMillis = Math.max(0, latencyMillis);
+        return this;
+    }
+
+    /**
+     * @param errorRate Share of requests that fail with a retryable "503" error (0 to 1).
+     * @param seed Seed of the generator that picks the failing requests.
+     */
+    public synchronized FakeLlmClient setErrorRate(double errorRate, long seed) {
+        this.errorRate = errorRate;
+        this.random = new Random(seed);
+        return this;
+    }
+
+    /**
+     * @return Requests received so far (completions and streams).
+     */
+    public int getCallCount() {
+        return callCount.get();
+    }
+
+    @Override
+    public String complete(String prompt) {
+        callCount.incrementAndGet();
+        boolean fail = nextFails();
+        sleep(latencyMillis);
+        if (fail) {
+            throw new IllegalStateException("Fake model error: 503 Service Unavailable");
+        }
+        return responder.apply(prompt);
+    }
+
+    /**
+     * Streams the answer in small chunks from a background thread; the first chunk comes after the latency.
+     */
+    @Override
+    public AiStream stream(String prompt, AiStreamListener listener) {
+        callCount.incrementAndGet();
+        boolean fail = nextFails();
+        AiStream stream = new AiStream();
+        Thread reader = new Thread(() -> {
+            try {
+                sleep(latencyMillis);
+                if (stream.isCancelled()) {
+                    return;
+                }
+                if (fail) {
+                    listener.onError(new IllegalStateException("Fake model error: 503 Service Unavailable"));
+                    return;
+                }
+                String answer = responder.apply(prompt);
+                for (int i = 0; i < answer.length(); i += chunkChars) {
+                    if (stream.isCancelled()) {
+                        return;
+                    }
+                    listener.onChunk(answer.substring(i, Math.min(answer.length(), i + chunkChars)));
+                }
+                if (!stream.isCancelled()) {
+                    listener.onComplete(answer);
+                }
+            } finally {
+                stream.finish();
+            }
+        }, "fake-llm-stream");
+        reader.setDaemon(true);
+        reader.start();
+        return stream;
+    }
+
+    private synchronized boolean nextFails() {
+        return errorRate > 0 && random.nextDouble() < errorRate;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for the fake model");
+        }
+    }
+
+    private static String defaultAnswer(String prompt) {
+        return "[300.00, 450.00]\nFake answer to a prompt of " + prompt.length() + " characters (#"
+                + Integer.toHexString(prompt.hashCode()) + ").";
+    }
+}
@@ -0,0 +1,38 @@
+package Service.AIservice;
+
+/**
+ * A chat model the AI features can ask. {@link ArkLlmClient} talks to the VolcEngine Ark endpoint (or
+ * anything speaking its protocol, such as {@link StubChatServer}); {@link FakeLlmClient} answers
+ * in-process for tests and load runs without a network.
+ *
+ * Implementations are thread-safe. Rate limits, retries and caching are not their concern; callers go
+ * through {@link AiGateway} and {@link AiResponseCache}.
+ */
+public interface LlmClient {
+
+    /**
+     * @return Identifies the model in cache keys (answers of different models are not shared).
+     */
+    String getModelId();
+
+    /**
+     * @return False if the client cannot send requests at all (e.g. no API key).
+     */
+    boolean isConfigured();
+
+    /**
+     * Sends the prompt and waits for the whole answer.
+     *
+     * @return The answer text.
+     * @throws RuntimeException If the request failed.
+     */
+    String complete(String prompt);
+
+    /**
+     * Sends the prompt and passes the answer to the listener while it is generated; returns once the
+     * request is under way. Failures are reported through the listener.
+     *
+     * @return Handle to cancel the request.
+     */
+    AiStream stream(String prompt, AiStreamListener listener);
+}
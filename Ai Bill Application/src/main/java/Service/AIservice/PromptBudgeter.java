@@ -0,0 +1,141 @@
+package Service.AIservice;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keeps the data part of a prompt within a token budget (estimated with {@link TokenEstimator}).
+ *
+ * The data is given as sections of items (counterparties, weeks, months). If everything fits it is sent
+ * unchanged. Otherwise each section gets a share of the budget that is left after the fixed text, fills
+ * it with its most important items, and the items that did not fit are replaced by one summary line
+ * (e.g. "Others (37 counterparties): ..."), so totals stay complete even when details are dropped.
+ * A share a section does not use passes on to the sections after it. Kept items stay in display order.
+ */
+public final class PromptBudgeter {
+
+    private final int tokenBudget;
+
+    /**
+     * One kind of context data.
+     *
+     * @param <T> Item type.
+     */
+    public static final class Section<T> {
+        private final String heading;
+        private final List<T> items;
+        private final Comparator<? super T> importance;
+        private final Function<? super T, String> render;
+        private final Function<List<T>, String> summarizeRest;
+
+        /**
+         * @param heading Line put before the items (null for none).
+         * @param items Items in the order they are shown.
+         * @param importance Orders the most important items first.
+         * @param render Text of one item (one or more lines, without the final line break).
+         * @param summarizeRest One line standing in for the items that were left out (in display order).
+         */
+        public Section(String heading, List<T> items, Comparator<? super T> importance,
+                       Function<? super T, String> render, Function<List<T>, String> summarizeRest) {
+            this.heading = heading;
+            this.items = items;
+            this.importance = importance;
+            this.render = render;
+            this.summarizeRest = summarizeRest;
+        }
+
+        private String headingText() {
+            return heading == null ? "" : heading + "\n";
+        }
+
+        private String renderAll() {
+            StringBuilder sb = new StringBuilder(headingText());
+            for (T item : items) {
+                sb.append(render.apply(item)).append('\n');
+            }
+            return sb.toString();
+        }
+
+        /**
+         * @return The section within the given number of tokens (at least the heading and the summary line).
+         */
+        private String renderWithin(int tokens) {
+            List<Integer> byImportance = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                byImportance.add(i);
+            }
+            byImportance.sort((a, b) -> importance.compare(items.get(a), items.get(b))); // Stable: ties keep display order
+
+            String[] rendered = new String[items.size()];
+            boolean[] kept = new boolean[items.size()];
+            // Room for the summary line; the summary of everything is about as long as that of any subset
+            int used = TokenEstimator.estimate(headingText()) + TokenEstimator.estimate(summarizeRest.apply(items)) + 1;
+            for (int i : byImportance) {
+                rendered[i] = render.apply(items.get(i)) + "\n";
+                int cost = TokenEstimator.estimate(rendered[i]);
+                if (used + cost > tokens) {
+                    break; // Keep the top items only, not a scattering of small ones
+                }
+                kept[i] = true;
+                used += cost;
+            }
+
+            StringBuilder sb = new StringBuilder(headingText());
+            List<T> rest = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                if (kept[i]) {
+                    sb.append(rendered[i]);
+                } else {
+                    rest.add(items.get(i));
+                }
+            }
+            if (!rest.isEmpty()) {
+                sb.append(summarizeRest.apply(rest)).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * @param tokenBudget Max estimated tokens of the whole prompt.
+     */
+    public PromptBudgeter(int tokenBudget) {
+        this.tokenBudget = tokenBudget;
+    }
+
+    /**
+     * Builds the prompt: the fixed text, then each section (cut down if needed).
+     *
+     * @param label Names the prompt in the log line.
+     * @param fixedText Instructions and other text that is always sent in full (ends with a line break if sections follow).
+     * @param sections The data, most important section first.
+     * @return The prompt.
+     */
+    public String build(String label, String fixedText, List<Section<?>> sections) {
+        StringBuilder full = new StringBuilder(fixedText);
+        for (Section<?> section : sections) {
+            full.append(section.renderAll());
+        }
+        int fullTokens = TokenEstimator.estimate(full);
+        if (fullTokens <= tokenBudget) {
+            System.out.println("PromptBudgeter: " + label + " prompt " + fullTokens + " tokens (" + full.length()
+                    + " chars), within budget " + tokenBudget);
+            return full.toString();
+        }
+
+        StringBuilder compact = new StringBuilder(fixedText);
+        int remaining = tokenBudget - TokenEstimator.estimate(fixedText);
+        for (int s = 0; s < sections.size(); s++) {
+            int share = Math.max(0, remaining) / (sections.size() - s);
+            String text = sections.get(s).renderWithin(share);
+            compact.append(text);
+            remaining -= TokenEstimator.estimate(text);
+        }
+        System.out.println("PromptBudgeter: " + label + " prompt compacted from " + fullTokens + " to "
+                + TokenEstimator.estimate(compact) + " tokens (" + full.length() + " -> " + compact.length()
+                + " chars), budget " + tokenBudget);
+        return compact.toString();
+    }
+}
@@ -0,0 +1,202 @@
+package Service.AIservice;
+
+import DAO.Impl.CsvTransactionDao;
+import Service.TransactionService;
+import Utils.CacheManager;
+import Utils.TransactionSnapshot;
+import model.MonthlySummary;
+import model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The data part of the AI prompts of one user, rendered once per version of the user's transactions and
+ * shared by all AI features (summary, savings goals, tips, seasonal analysis, student budget).
+ *
+ * The monthly summaries are fetched once per version, and each month is rendered to the same text for
+ * every feature. {@link #monthlyDataPrompt()} puts all of them under one heading. Prompts start with that
+ * block and add their instructions after it, so requests about the same data share a long identical
+ * prefix (which providers with prompt caching can reuse). Other derived data (e.g. the budget's weekly
+ * totals) is kept with {@link #fragment}.
+ *
+ * The version is the snapshot's generation plus the file fingerprint, so edits not yet written to the
+ * file count as a new version too.
+ */
+public final class PromptContext {
+
+    static final String MONTHLY_DATA_HEADING = "Here is my monthly income and expense data:\n\n";
+
+    private static final ConcurrentHashMap<String, PromptContext> contexts = new ConcurrentHashMap<>(); // By file path
+    private static final Object BUILD_LOCK = new Object();
+    private static final AtomicLong builds = new AtomicLong();
+    private static final AtomicLong reuses = new AtomicLong();
+
+    private final String version;
+    private final String dataVersion; // Cache version of the snapshot this was built from
+    private final List<Transaction> transactions;
+    private final Map<String, MonthlySummary> summaries; // Calendar order
+    private final Map<String, String> monthTexts = new ConcurrentHashMap<>(); // Month -> rendered fragment
+    private final Map<String, Object> fragments = new ConcurrentHashMap<>();
+    private volatile String monthlyData;
+
+    PromptContext(String version, List<Transaction> transactions, Map<String, MonthlySummary> summaries) {
+        this(version, null, transactions, summaries);
+    }
+
+    private PromptContext(String version, String dataVersion, List<Transaction> transactions, Map<String, MonthlySummary> summaries) {
+        this.version = version;
+        this.dataVersion = dataVersion;
+        this.transactions = transactions;
+        this.summaries = Collections.unmodifiableMap(new TreeMap<>(summaries));
+    }
+
+    /**
+     * @param filePath The user's transaction file (null: nothing is reused).
+     * @param transactionService Computes the monthly summaries of that file.
+     * @return The context of the current version of the file, built if the data changed since the last call.
+     * @throws Exception If the data cannot be read.
+     */
+    public static PromptContext of(String filePath, TransactionService transactionService) throws Exception {
+        if (filePath == null) {
+            return new PromptContext(null, List.of(), transactionService.getMonthlyTransactionSummary());
+        }
+        TransactionSnapshot snapshot = CacheManager.getSnapshot(filePath, new CsvTransactionDao());
+        String dataVersion = AITransactionService.dataVersion(snapshot.getFingerprint());
+        String version = snapshot.getGeneration() + ":" + dataVersion;
+        PromptContext current = contexts.get(filePath);
+        if (current != null && current.version.equals(version)) {
+            reuses.incrementAndGet();
+            return current;
+        }
+        synchronized (BUILD_LOCK) {
+            current = contexts.get(filePath); // Concurrent requests for new data build it only once
+            if (current != null && current.version.equals(version)) {
+                reuses.incrementAndGet();
+                return current;
+            }
+            PromptContext fresh = new PromptContext(version, dataVersion, snapshot, transactionService.getMonthlyTransactionSummary());
+            contexts.put(filePath, fresh);
+            builds.incrementAndGet();
+            System.out.println("PromptContext: Prepared " + fresh.summaries.size() + " months of prompt data for " + filePath
+                    + " (version " + version + ")");
+            return fresh;
+        }
+    }
+
+    /**
+     * Forgets all contexts (e.g. on logout).
+     */
+    public static void clear() {
+        contexts.clear();
+    }
+
+    /**
+     * @return Contexts built because the data was new or had changed.
+     */
+    public static long getBuildCount() {
+        return builds.get();
+    }
+
+    /**
+     * @return Requests served by a context built earlier.
+     */
+    public static long getReuseCount() {
+        return reuses.get();
+    }
+
+    /**
+     * @return Version for the AI answer cache: the fingerprint of the snapshot this context was built from,
+     *         so an answer is never tagged with a later write (null without a file: not cached).
+     */
+    public String getDataVersion() {
+        return dataVersion;
+    }
+
+    /**
+     * @return The user's transactions of this version (read-only).
+     */
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * @return Monthly summaries by month identifier, in calendar order (read-only).
+     */
+    public Map<String, MonthlySummary> getMonthlySummaries() {
+        return summaries;
+    }
+
+    /**
+     * @return The summaries in calendar order.
+     */
+    public List<MonthlySummary> getMonths() {
+        return new ArrayList<>(summaries.values());
+    }
+
+    /**
+     * @return The heading and every month's fragment; the common start of the report prompts.
+     */
+    public String monthlyDataPrompt() {
+        String text = monthlyData;
+        if (text == null) {
+            StringBuilder sb = new StringBuilder(MONTHLY_DATA_HEADING);
+            for (MonthlySummary ms : summaries.values()) {
+                sb.append(month(ms)).append('\n'); // Blank line between months
+            }
+            text = sb.toString();
+            monthlyData = text;
+        }
+        return text;
+    }
+
+    /**
+     * @return The month's fragment: totals, net and expense breakdown (largest category first), ending with a line break.
+     */
+    public String month(MonthlySummary ms) {
+        return monthTexts.computeIfAbsent(ms.getMonthIdentifier(), id -> formatMonth(ms));
+    }
+
+    /**
+     * Other data derived from this version, computed on first use.
+     *
+     * @param name Identifies the fragment.
+     * @param compute Computes it (may call {@code fragment} for other names).
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T fragment(String name, Supplier<T> compute) {
+        Object value = fragments.get(name);
+        if (value == null) {
+            value = compute.get(); // Not inside computeIfAbsent: compute may ask for other fragments
+            Object raced = fragments.putIfAbsent(name, value);
+            if (raced != null) {
+                value = raced;
+            }
+        }
+        return (T) value;
+    }
+
+    static String formatMonth(MonthlySummary ms) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("--- ").append(ms.getMonthIdentifier()).append(" ---\n");
+        sb.append("  Total Income: ").append(String.format("%.2f", ms.getTotalIncome())).append(" CNY\n");
+        sb.append("  Total Expense: ").append(String.format("%.2f", ms.getTotalExpense())).append(" CNY\n");
+        sb.append("  Net (Income - Expense): ").append(String.format("%.2f", ms.getTotalIncome() - ms.getTotalExpense())).append(" CNY\n");
+        sb.append("  Expense Breakdown:\n");
+        if (ms.getExpenseByCategory().isEmpty()) {
+            sb.append("    (No expenses)\n");
+        } else {
+            // Largest categories first, so the main ones stand out
+            ms.getExpenseByCategory().entrySet().stream()
+                    .sorted(Map.Entry.comparingByValue(Collections.reverseOrder()))
+                    .forEach(entry -> sb.append(String.format("    %s: %.2f CNY\n", entry.getKey(), entry.getValue())));
+        }
+        return sb.toString();
+    }
+}
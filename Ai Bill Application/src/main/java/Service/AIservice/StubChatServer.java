@@ -0,0 +1,321 @@
+package Service.AIservice;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the Ark chat completions endpoint, for tests and for trying the AI features offline
+ * (set ai.base_url to {@link #getBaseUrl()}).
+ *
+ * Answers POST .../chat/completions in the OpenAI-compatible format the Ark SDK reads: one JSON completion,
+ * or with "stream": true an SSE stream of "chat.completion.chunk" events ending with "data: [DONE]".
+ * The answer text comes from a responder function of the last message's content and is streamed in small
+ * pieces with a fixed delay between them, like a model generating tokens. For load tests a latency before
+ * the first byte and a share of failed requests (503 or 429, picked by a seeded generator) can be set.
+ */
+public class StubChatServer implements AutoCloseable {
+
+    private static final Pattern STREAM_FLAG = Pattern.compile("\"stream\"\\s*:\\s*true");
+    private static final Pattern CONTENT = Pattern.compile("\"content\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "stub-chat-server");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile Function<String, String> responder = prompt -> "Stub answer to a prompt of " + prompt.length() + " characters.";
+    private volatile int chunkChars = 4;
+    private volatile long chunkDelayMillis = 20;
+    private volatile long latencyMillis;
+    private volatile long latencyJitterMillis;
+    private volatile double errorRate;
+    private Random random = new Random(42); // Guarded by this
+
+    /**
+     * Starts the server on 127.0.0.1.
+     *
+     * @param port Port to listen on (0 for any free port).
+     */
+    public StubChatServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("StubChatServer: Listening on " + getBaseUrl());
+    }
+
+    /**
+     * @return URL to use as the SDK's base URL, e.g. http://127.0.0.1:12345/api/v3
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v3";
+    }
+
+    /**
+     * @param responder Computes the answer from the prompt (the content of the last message).
+     */
+    public StubChatServer setResponder(Function<String, String> responder) {
+        this.responder = responder;
+        return this;
+    }
+
+    /**
+     * @param chunkChars Characters per streamed chunk.
+     * @param chunkDelayMillis Pause before each chunk.
+     */
+    public StubChatServer setChunking(int chunkChars, long chunkDelayMillis) {
+        this.chunkChars = Math.max(1, chunkChars);
+        this.chunkDelayMillis = Math.max(0, chunkDelayMillis);
+        return this;
+    }
+
+    /**
+     * @param latencyMillis Wait before the response starts.
+     * @param jitterMillis Up to this much is added at random.
+     */
+    public StubChatServer setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = Math.max(0, latencyMillis);
+        this.latencyJitterMillis = Math.max(0, jitterMillis);
+        return this;
+    }
+
+    /**
+     * @param errorRate Share of requests answered with an error, three 503s to one 429 (0 to 1).
+     * @param seed Seed of the generator that picks the failing requests.
+     */
+    public synchronized StubChatServer setErrorRate(double errorRate, long seed) {
+        this.errorRate = errorRate;
+        this.random = new Random(seed);
+        return this;
+    }
+
+    /**
+     * @return Chat completion requests received so far.
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod()) || !exchange.getRequestURI().getPath().endsWith("/chat/completions")) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            requestCount.incrementAndGet();
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            int errorStatus;
+            long latency;
+            synchronized (this) {
+                errorStatus = errorRate > 0 && random.nextDouble() < errorRate ? (random.nextInt(4) == 0 ? 429 : 503) : 0;
+                latency = latencyMillis + (latencyJitterMillis > 0 ? (long) (random.nextDouble() * latencyJitterMillis) : 0);
+            }
+            sleep(latency);
+            if (errorStatus != 0) {
+                fail(exchange, errorStatus);
+                return;
+            }
+            String answer = responder.apply(lastContent(body));
+            if (STREAM_FLAG.matcher(body).find()) {
+                stream(exchange, answer);
+            } else {
+                respond(exchange, answer);
+            }
+        } catch (IOException e) {
+            // Client went away (e.g. cancelled stream); nothing left to answer
+            System.out.println("StubChatServer: Connection closed by client: " + e.getMessage());
+        }
+    }
+
+    private void respond(HttpExchange exchange, String answer) throws IOException {
+        String json = "{\"id\":\"stub-" + requestCount.get() + "\",\"object\":\"chat.completion\",\"created\":" + now()
+                + ",\"model\":\"stub\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":" + quote(answer)
+                + "},\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":0,\"completion_tokens\":0,\"total_tokens\":0}}";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Sends an error in the OpenAI format; the SDK puts the message into its exception.
+     */
+    private void fail(HttpExchange exchange, int status) throws IOException {
+        String message = status == 429 ? "429 Too Many Requests: RateLimitExceeded" : "503 Service Unavailable";
+        String code = status == 429 ? "RateLimitExceeded" : "ServiceUnavailable";
+        String json = "{\"error\":{\"code\":\"" + code + "\",\"message\":" + quote(message)
+                + ",\"type\":\"" + code + "\",\"param\":\"\"}}";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void stream(HttpExchange exchange, String answer) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0); // Chunked: length unknown
+        String id = "stub-" + requestCount.get();
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (String piece : split(answer, chunkChars)) {
+                pause();
+                sendEvent(out, chunkJson(id, "{\"role\":\"assistant\",\"content\":" + quote(piece) + "}", "null"));
+            }
+            sendEvent(out, chunkJson(id, "{}", "\"stop\""));
+            sendEvent(out, "[DONE]");
+        }
+    }
+
+    private static String chunkJson(String id, String delta, String finishReason) {
+        return "{\"id\":\"" + id + "\",\"object\":\"chat.completion.chunk\",\"created\":" + now()
+                + ",\"model\":\"stub\",\"choices\":[{\"index\":0,\"delta\":" + delta + ",\"finish_reason\":" + finishReason + "}]}";
+    }
+
+    private static void sendEvent(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void pause() throws IOException {
+        sleep(chunkDelayMillis);
+    }
+
+    private static void sleep(long millis) throws IOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Stub server stopped", e);
+        }
+    }
+
+    private static List<String> split(String text, int size) {
+        List<String> pieces = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            int end = Math.min(text.length(), i + size);
+            if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                end++; // Keep surrogate pairs together
+            }
+            pieces.add(text.substring(i, end));
+            i = end;
+        }
+        return pieces;
+    }
+
+    /**
+     * @return The unescaped value of the last "content" field in the request (the user's prompt).
+     */
+    static String lastContent(String json) {
+        Matcher m = CONTENT.matcher(json);
+        String last = "";
+        while (m.find()) {
+            last = m.group(1);
+        }
+        return unquote(last);
+    }
+
+    static String quote(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String unquote(String escaped) {
+        StringBuilder sb = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if (c != '\\' || i + 1 == escaped.length()) {
+                sb.append(c);
+                continue;
+            }
+            char e = escaped.charAt(++i);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (i + 4 < escaped.length()) {
+                        sb.append((char) Integer.parseInt(escaped.substring(i + 1, i + 5), 16));
+                        i += 4;
+                    }
+                    break;
+                default: sb.append(e); // \" \\ \/
+            }
+        }
+        return sb.toString();
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * Runs the stub until the process is stopped.
+     *
+     * @param args Optional port (default 8089), latency in ms (default 0) and error rate (default 0).
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8089;
+        StubChatServer server = new StubChatServer(port);
+        if (args.length > 1) {
+            long latency = Long.parseLong(args[1]);
+            server.setLatency(latency, latency / 2);
+        }
+        if (args.length > 2) {
+            server.setErrorRate(Double.parseDouble(args[2]), System.nanoTime());
+        }
+        System.out.println("StubChatServer: Set ai.base_url in config.properties to the URL above. Stop with Ctrl+C.");
+    }
+}
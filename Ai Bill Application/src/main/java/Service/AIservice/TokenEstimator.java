@@ -0,0 +1,34 @@
+package Service.AIservice;
+
+/**
+ * Rough token count of prompt text, for sizing requests before they are sent.
+ *
+ * No tokenizer of the model is available locally, so this uses the usual rule of thumb: about four
+ * characters per token for Latin text and digits, about one token per CJK character. It errs on the high
+ * side, which is the safe direction for staying under a limit.
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * @return Estimated tokens of the text (0 for null or empty).
+     */
+    public static int estimate(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int narrow = 0;
+        int wide = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x0300) {
+                narrow++;
+            } else if (!Character.isLowSurrogate(c)) {
+                wide++; // CJK, full-width punctuation, emoji (a surrogate pair counts once)
+            }
+        }
+        return wide + (narrow + 3) / 4;
+    }
+}
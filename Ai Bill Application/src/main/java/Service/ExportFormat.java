@@ -0,0 +1,48 @@
+package Service;
+
+/**
+ * File formats supported by {@link TransactionService#exportTransactions}.
+ */
+public enum ExportFormat {
+    CSV("csv", false), // Same columns and value format as the user's transaction file (re-importable)
+    CSV_GZIP("csv.gz", true),
+    JSON_LINES("jsonl", false), // One JSON object per transaction per line
+    JSON_LINES_GZIP("jsonl.gz", true);
+
+    private final String extension;
+    private final boolean compressed;
+
+    ExportFormat(String extension, boolean compressed) {
+        this.extension = extension;
+        this.compressed = compressed;
+    }
+
+    /**
+     * @return The usual file name extension, without the leading dot (e.g. "csv.gz").
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public boolean isJson() {
+        return this == JSON_LINES || this == JSON_LINES_GZIP;
+    }
+
+    /**
+     * Picks the format from a file name's extension, or null if it has none of the known ones.
+     */
+    public static ExportFormat fromFileName(String fileName) {
+        String lower = fileName.toLowerCase();
+        // Longest extensions first, so "x.csv.gz" is not taken for plain CSV
+        for (ExportFormat format : new ExportFormat[]{CSV_GZIP, JSON_LINES_GZIP, CSV, JSON_LINES}) {
+            if (lower.endsWith("." + format.extension)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
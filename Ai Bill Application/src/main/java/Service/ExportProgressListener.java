@@ -0,0 +1,23 @@
+package Service;
+
+/**
+ * Receives progress of an export and can cancel it. Called on the exporting (worker) thread, so UI
+ * implementations must hand updates to the event dispatch thread themselves.
+ */
+@FunctionalInterface
+public interface ExportProgressListener {
+
+    /**
+     * @param rowsScanned Transactions looked at so far.
+     * @param totalRows Transactions that will be looked at in total (the whole list; not all of them match).
+     * @param rowsWritten Matching transactions written so far.
+     */
+    void onProgress(int rowsScanned, int totalRows, int rowsWritten);
+
+    /**
+     * Polled while exporting; returning true stops the export and leaves no output file behind.
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
@@ -8,6 +8,8 @@ import model.SummaryStatistic;
 import model.Transaction;
 import model.User;
 import Utils.CacheManager; // Import CacheManager
+import Utils.CategoryResolver;
+import Utils.Metrics;
 import Constants.ConfigConstants; // Import ConfigConstants for summary file path
 
 import java.io.IOException;
@@ -142,6 +144,30 @@ public class SummaryStatisticService {
         return summaryStatisticDao.loadAllStatistics(summaryFilePath);
     }
 
+    /**
+     * Retrieves the summary statistics of the weeks between two week identifiers (inclusive), ordered by week.
+     * Only the rows of those weeks are read.
+     * @param fromWeek First week (e.g. "2025-W10"); null for no lower bound.
+     * @param toWeek Last week; null for no upper bound.
+     * @return List of summary statistics.
+     * @throws IOException If loading fails.
+     */
+    public List<SummaryStatistic> getSummaryStatisticsBetween(String fromWeek, String toWeek) throws IOException {
+        return summaryStatisticDao.loadStatisticsBetween(summaryFilePath, fromWeek, toWeek);
+    }
+
+    /**
+     * Retrieves the summary statistics of the last few weeks, including the current one.
+     * @param weeks Number of weeks.
+     * @return List of summary statistics, ordered by week.
+     * @throws IOException If loading fails.
+     */
+    public List<SummaryStatistic> getRecentSummaryStatistics(int weeks) throws IOException {
+        DateTimeFormatter weekFormatter = DateTimeFormatter.ofPattern("yyyy-'W'ww"); // Same identifiers as generated below
+        String fromWeek = LocalDate.now().minusWeeks(Math.max(weeks - 1, 0)).format(weekFormatter);
+        return getSummaryStatisticsBetween(fromWeek, null);
+    }
+
 
     // --- Revised Plan for generateAndSaveWeeklyStatistics ---
     // The previous approach of loading all transactions and then grouping by week
@@ -150,6 +176,18 @@ public class SummaryStatisticService {
     // A better approach for unique user count is to process user by user.
 
     public void generateAndSaveWeeklyStatistics() throws Exception {
+        Metrics.Timer timer = Metrics.startTimer("service.statistics.generateWeekly");
+        try {
+            generateAndSaveWeeklyStatisticsInternal();
+        } catch (Exception e) {
+            timer.failed();
+            throw e;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private void generateAndSaveWeeklyStatisticsInternal() throws Exception {
         System.out.println("Generating weekly summary statistics (Revised approach)...");
         List<User> allUsers = userDao.getAllUsers();
         System.out.println("Loaded " + allUsers.size() + " users.");
@@ -165,6 +203,7 @@ public class SummaryStatisticService {
 
         WeekFields weekFields = WeekFields.ISO;
         DateTimeFormatter weekFormatter = DateTimeFormatter.ofPattern("yyyy-'W'ww");
+        CategoryResolver categoryResolver = CategoryResolver.getInstance();
 
 
         // Iterate through each user
@@ -205,13 +244,13 @@ public class SummaryStatisticService {
                                 totalExpenseByWeek.put(weekIdentifier, totalExpenseByWeek.getOrDefault(weekIdentifier, 0.0) + t.getPaymentAmount());
 
                                 // Aggregate expense by standard category
-                                String rawType = t.getTransactionType();
-                                String standardCategory = StandardCategories.getStandardCategory(rawType);
-                                // Only aggregate standard expense categories for the top category calculation
-                                if (StandardCategories.isStandardExpenseCategory(standardCategory) || !StandardCategories.ALL_KNOWN_TYPES.contains(standardCategory)) {
-                                    String effectiveExpenseCategoryForTop = StandardCategories.isStandardExpenseCategory(standardCategory) ? standardCategory : "其他支出";
+                                // Known non-expense types (Salary, Transfer, ...) are left out of the top category calculation
+                                String resolvedType = categoryResolver.resolveType(t.getTransactionType());
+                                if (resolvedType == null || StandardCategories.isStandardExpenseCategory(resolvedType)) {
+                                    // Unknown types fall back to counterparty/commodity keywords, then "Other Expenses"
+                                    String effectiveExpenseCategoryForTop = categoryResolver.resolveExpenseCategory(t);
                                     expenseByCategoryByWeek.computeIfAbsent(weekIdentifier, k -> new HashMap<>())
-                                            .put(effectiveExpenseCategoryForTop, expenseByCategoryByWeek.get(weekIdentifier).getOrDefault(effectiveExpenseCategoryForTop, 0.0) + t.getPaymentAmount());
+                                            .merge(effectiveExpenseCategoryForTop, t.getPaymentAmount(), Double::sum);
                                 }
                             }
                         }
@@ -274,27 +313,33 @@ public class SummaryStatisticService {
 
 
         // 6. Load existing statistics
-        List<SummaryStatistic> existingStatistics = getAllSummaryStatistics();
+        List<SummaryStatistic> existingStatistics = getSummaryStatisticsBetween(null, null);
         System.out.println("Loaded " + existingStatistics.size() + " existing summary statistics.");
-
-        // 7. Merge existing and newly calculated statistics (overwrite new weeks, keep old)
-        Map<String, SummaryStatistic> finalStatisticsMap = new HashMap<>();
-        for(SummaryStatistic stat : existingStatistics) {
-            finalStatisticsMap.put(stat.getWeekIdentifier(), stat);
-        }
-        for(SummaryStatistic stat : calculatedStatistics) {
-            finalStatisticsMap.put(stat.getWeekIdentifier(), stat); // New calculation replaces old for the week
+        Map<String, SummaryStatistic> existingByWeek = new HashMap<>();
+        for (SummaryStatistic stat : existingStatistics) {
+            existingByWeek.put(stat.getWeekIdentifier(), stat);
         }
 
-        // 8. Sort merged statistics by week identifier (chronologically)
-        List<SummaryStatistic> finalStatistics = finalStatisticsMap.values().stream()
-                .sorted(Comparator.comparing(SummaryStatistic::getWeekIdentifier))
+        // 7. Keep only the weeks whose figures changed (usually just the current one); other weeks stay as stored
+        List<SummaryStatistic> changedStatistics = calculatedStatistics.stream()
+                .filter(stat -> !sameFigures(existingByWeek.get(stat.getWeekIdentifier()), stat))
                 .collect(Collectors.toList());
 
-        // 9. Save the final list
-        summaryStatisticDao.writeAllStatistics(summaryFilePath, finalStatistics);
+        // 8. Upsert the changed weeks
+        summaryStatisticDao.upsertStatistics(summaryFilePath, changedStatistics);
+        System.out.println("Updated " + changedStatistics.size() + " of " + calculatedStatistics.size() + " weeks.");
         System.out.println("Weekly summary statistics generated and saved successfully to " + summaryFilePath);
     }
 
-
-}
\ No newline at end of file
+    /**
+     * @return true if both statistics have the same figures (the generation timestamp is not compared).
+     */
+    private static boolean sameFigures(SummaryStatistic stored, SummaryStatistic calculated) {
+        return stored != null
+                && Math.abs(stored.getTotalIncomeAllUsers() - calculated.getTotalIncomeAllUsers()) < 0.005
+                && Math.abs(stored.getTotalExpenseAllUsers() - calculated.getTotalExpenseAllUsers()) < 0.005
+                && Objects.equals(stored.getTopExpenseCategory(), calculated.getTopExpenseCategory())
+                && Math.abs(stored.getTopExpenseCategoryAmount() - calculated.getTopExpenseCategoryAmount()) < 0.005
+                && stored.getNumberOfUsersWithTransactions() == calculated.getNumberOfUsersWithTransactions();
+    }
+}
@@ -0,0 +1,201 @@
+package Service.Impl;
+
+import Service.ExportFormat;
+import Service.ExportProgressListener;
+import model.Transaction;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes transactions to a file in one of the {@link ExportFormat}s, one row at a time.
+ *
+ * The rows come straight from the caller's list (normally the cached, immutable snapshot) and are filtered
+ * on the fly, so memory use does not grow with the number of rows. Values are written from the
+ * Transaction fields themselves, not from their display form: CSV uses the transaction file's columns and
+ * amount format, JSON lines use a plain number.
+ *
+ * Output goes to a temporary file next to the target through a buffered file channel and replaces the
+ * target only when complete, so a failed or cancelled export leaves any existing file untouched.
+ */
+final class TransactionExporter {
+
+    static final String[] CSV_HEADERS = {"Transaction Time", "Transaction Type", "Counterparty", "Commodity", "In/Out",
+            "Amount(CNY)", "Payment Method", "Current Status", "Order Number", "Merchant Number", "Remarks"};
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PROGRESS_INTERVAL = 1000; // Rows between progress reports / cancellation checks
+
+    private TransactionExporter() {
+    }
+
+    /**
+     * @param rows Rows to scan, in the order they are written.
+     * @param filter Rows to keep.
+     * @param target The file to create or replace.
+     * @param format Output format.
+     * @param listener Progress and cancellation; may be null.
+     * @return The number of rows written.
+     * @throws IOException If writing fails.
+     * @throws CancellationException If the listener cancelled or the thread was interrupted.
+     */
+    static int export(List<Transaction> rows, Predicate<Transaction> filter, Path target, ExportFormat format,
+                      ExportProgressListener listener) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path temp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        boolean done = false;
+        try {
+            int written;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                // The streams are flushed, not closed: closing them would close the channel before the force
+                BufferedOutputStream buffered = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+                GZIPOutputStream gzip = format.isCompressed() ? new GZIPOutputStream(buffered, BUFFER_SIZE) : null;
+                Writer writer = new OutputStreamWriter(gzip != null ? gzip : buffered, StandardCharsets.UTF_8);
+                written = format.isJson()
+                        ? writeJsonLines(rows, filter, writer, listener)
+                        : writeCsv(rows, filter, writer, listener);
+                writer.flush();
+                if (gzip != null) {
+                    gzip.finish();
+                }
+                buffered.flush();
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            done = true;
+            return written;
+        } finally {
+            if (!done) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private static int writeCsv(List<Transaction> rows, Predicate<Transaction> filter, Writer writer,
+                                ExportProgressListener listener) throws IOException {
+        // Not closed here; the caller finishes the stream
+        CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(CSV_HEADERS));
+        int written = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            checkpoint(i, rows.size(), written, listener);
+            Transaction t = rows.get(i);
+            if (!filter.test(t)) {
+                continue;
+            }
+            printer.printRecord(
+                    t.getTransactionTime(),
+                    t.getTransactionType(),
+                    t.getCounterparty(),
+                    t.getCommodity(),
+                    t.getInOut(),
+                    String.format("¥%.2f", t.getPaymentAmount()), // Same format as the transaction file
+                    t.getPaymentMethod(),
+                    t.getCurrentStatus(),
+                    t.getOrderNumber(),
+                    t.getMerchantNumber(),
+                    t.getRemarks());
+            written++;
+        }
+        printer.flush();
+        report(rows.size(), rows.size(), written, listener);
+        return written;
+    }
+
+    private static int writeJsonLines(List<Transaction> rows, Predicate<Transaction> filter, Writer writer,
+                                      ExportProgressListener listener) throws IOException {
+        StringBuilder line = new StringBuilder(256);
+        int written = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            checkpoint(i, rows.size(), written, listener);
+            Transaction t = rows.get(i);
+            if (!filter.test(t)) {
+                continue;
+            }
+            line.setLength(0);
+            line.append('{');
+            appendField(line, "transactionTime", t.getTransactionTime()).append(',');
+            appendField(line, "transactionType", t.getTransactionType()).append(',');
+            appendField(line, "counterparty", t.getCounterparty()).append(',');
+            appendField(line, "commodity", t.getCommodity()).append(',');
+            appendField(line, "inOut", t.getInOut()).append(',');
+            line.append("\"paymentAmount\":").append(amount(t.getPaymentAmount())).append(',');
+            appendField(line, "paymentMethod", t.getPaymentMethod()).append(',');
+            appendField(line, "currentStatus", t.getCurrentStatus()).append(',');
+            appendField(line, "orderNumber", t.getOrderNumber()).append(',');
+            appendField(line, "merchantNumber", t.getMerchantNumber()).append(',');
+            appendField(line, "remarks", t.getRemarks());
+            line.append("}\n");
+            writer.append(line);
+            written++;
+        }
+        writer.flush();
+        report(rows.size(), rows.size(), written, listener);
+        return written;
+    }
+
+    /**
+     * Every PROGRESS_INTERVAL rows: stop if cancelled, otherwise report progress.
+     */
+    private static void checkpoint(int index, int total, int written, ExportProgressListener listener) {
+        if (index % PROGRESS_INTERVAL != 0) {
+            return;
+        }
+        if (Thread.currentThread().isInterrupted() || (listener != null && listener.isCancelled())) {
+            throw new CancellationException("Export cancelled after " + written + " rows");
+        }
+        if (index > 0) {
+            report(index, total, written, listener);
+        }
+    }
+
+    private static void report(int scanned, int total, int written, ExportProgressListener listener) {
+        if (listener != null) {
+            listener.onProgress(scanned, total, written);
+        }
+    }
+
+    private static String amount(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "null"; // Not representable in JSON
+        }
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    private static StringBuilder appendField(StringBuilder sb, String name, String value) {
+        sb.append('"').append(name).append("\":");
+        if (value == null) {
+            return sb.append("null");
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"');
+    }
+}
@@ -0,0 +1,196 @@
+package Service.Impl;
+
+import DAO.TransactionDao;
+import Service.ImportProgressListener;
+import Utils.BloomFilter;
+import model.ImportResult;
+import model.Transaction;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Streams one CSV file into a user's transaction file: parse, normalize, de-duplicate, append.
+ *
+ * Rows are never all held in memory. Each row is parsed, gets an order number if it has none, and is
+ * checked against the order numbers already in the user's file and those imported earlier in the same run.
+ * The check first asks a Bloom filter; only a "maybe" is confirmed against the exact order-number index,
+ * and the index of the existing rows is built on the first such "maybe" (a file of new rows never needs it).
+ * Accepted rows are appended through the file's {@link TransactionWriteQueue} in batches; the next batch is
+ * parsed while the previous one is being written.
+ *
+ * Duplicates are checked against the rows as they were when the import started. Nothing here touches
+ * Swing: progress goes to the listener and duplicates are summarised in the {@link ImportResult}.
+ */
+final class TransactionImporter {
+
+    private static final int DUPLICATE_SAMPLE_LIMIT = 20; // Order numbers listed in the summary
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+    private static final int ESTIMATED_BYTES_PER_ROW = 64; // Deliberately low, to size the filter generously
+
+    private final TransactionDao importDao;
+    private final TransactionWriteQueue targetQueue;
+    private final int batchSize;
+
+    // Per-run state (an importer is used for one run)
+    private List<Transaction> existingRows;
+    private BloomFilter bloomFilter;
+    private Set<String> existingOrderNumbers; // Built on the first Bloom filter hit
+    private final Set<String> importedOrderNumbers = new HashSet<>();
+    private final List<String> duplicateSamples = new ArrayList<>();
+    private List<Transaction> batch;
+    private CompletableFuture<Void> inFlight; // Previous batch, still being written
+    private int inFlightSize;
+    private int rowsRead;
+    private int importedCount;
+    private int duplicateCount;
+    private int generatedOrderNumbers;
+    private ImportProgressListener listener;
+
+    TransactionImporter(TransactionDao importDao, TransactionWriteQueue targetQueue, int batchSize) {
+        this.importDao = importDao;
+        this.targetQueue = targetQueue;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Runs the import.
+     *
+     * @param importFilePath The CSV file to import from.
+     * @param existingRows The rows currently in the target file (e.g. the cached snapshot).
+     * @param listener Receives progress after each written batch; may be null.
+     * @return The summary of the run.
+     * @throws Exception The first read or write failure. Batches written before it are kept.
+     */
+    ImportResult run(String importFilePath, List<Transaction> existingRows, ImportProgressListener listener) throws Exception {
+        this.existingRows = existingRows;
+        this.listener = listener;
+        this.bloomFilter = new BloomFilter(existingRows.size() + estimateRows(importFilePath), BLOOM_FALSE_POSITIVE_RATE);
+        for (Transaction t : existingRows) {
+            bloomFilter.put(t.getOrderNumber().trim());
+        }
+        this.batch = new ArrayList<>(batchSize);
+
+        try {
+            importDao.forEachFromCSV(importFilePath, this::accept);
+        } catch (BatchFailedException e) {
+            throw e.getCause();
+        }
+        // Last partial batch, then wait for everything to be on disk
+        submitBatch();
+        awaitInFlight();
+
+        System.out.println("TransactionImporter: Read " + rowsRead + " rows, imported " + importedCount
+                + ", skipped " + duplicateCount + " duplicates, generated " + generatedOrderNumbers + " order numbers.");
+        return new ImportResult(rowsRead, importedCount, duplicateCount, generatedOrderNumbers, duplicateSamples);
+    }
+
+    private void accept(Transaction importedTx) {
+        rowsRead++;
+        // Normalize: every row needs an order number (parsed fields are already trimmed)
+        String orderNumber = importedTx.getOrderNumber() == null ? "" : importedTx.getOrderNumber().trim();
+        if (orderNumber.isEmpty()) {
+            // Generate a unique ID for transactions without one; it cannot clash, so no duplicate check
+            importedTx.setOrderNumber("IMPORT_" + UUID.randomUUID());
+            generatedOrderNumbers++;
+        } else {
+            if (isDuplicate(orderNumber)) {
+                duplicateCount++;
+                if (duplicateSamples.size() < DUPLICATE_SAMPLE_LIMIT) {
+                    duplicateSamples.add(orderNumber);
+                }
+                return;
+            }
+            importedTx.setOrderNumber(orderNumber);
+            importedOrderNumbers.add(orderNumber);
+            bloomFilter.put(orderNumber);
+        }
+        batch.add(importedTx);
+        if (batch.size() >= batchSize) {
+            try {
+                submitBatch();
+            } catch (Exception e) {
+                throw new BatchFailedException(e); // Stops the parser; unwrapped in run()
+            }
+        }
+    }
+
+    private boolean isDuplicate(String orderNumber) {
+        if (!bloomFilter.mightContain(orderNumber)) {
+            return false; // Definitely new
+        }
+        // Maybe seen: confirm against the exact index
+        if (importedOrderNumbers.contains(orderNumber)) {
+            return true;
+        }
+        if (existingOrderNumbers == null) {
+            existingOrderNumbers = new HashSet<>(existingRows.size() * 2);
+            for (Transaction t : existingRows) {
+                existingOrderNumbers.add(t.getOrderNumber().trim());
+            }
+        }
+        return existingOrderNumbers.contains(orderNumber);
+    }
+
+    /**
+     * Waits for the previous batch, then queues the current one. At most one batch is in flight.
+     */
+    private void submitBatch() throws Exception {
+        awaitInFlight();
+        if (batch.isEmpty()) {
+            return;
+        }
+        inFlight = targetQueue.append(batch);
+        inFlightSize = batch.size();
+        batch = new ArrayList<>(batchSize);
+    }
+
+    private void awaitInFlight() throws Exception {
+        if (inFlight == null) {
+            return;
+        }
+        try {
+            inFlight.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } finally {
+            inFlight = null;
+        }
+        importedCount += inFlightSize;
+        if (listener != null) {
+            listener.onProgress(rowsRead, importedCount, duplicateCount);
+        }
+    }
+
+    private static int estimateRows(String importFilePath) {
+        try {
+            Path path = Paths.get(importFilePath);
+            return (int) Math.min(Integer.MAX_VALUE / 2, Files.size(path) / ESTIMATED_BYTES_PER_ROW);
+        } catch (IOException e) {
+            return 0; // The parser reports the real problem
+        }
+    }
+
+    /**
+     * Carries a write failure out of the parser callback.
+     */
+    private static final class BatchFailedException extends RuntimeException {
+        BatchFailedException(Exception cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized Exception getCause() {
+            return (Exception) super.getCause();
+        }
+    }
+}
@@ -1,21 +1,31 @@
 package Service.Impl;
 
-import Constants.StandardCategories;
+import Constants.ConfigConstants;
 import DAO.TransactionDao; // Import the interface
 import DAO.Impl.CsvTransactionDao; // Import the implementation
+import Service.ExportFormat;
+import Service.ExportProgressListener;
+import Service.ImportProgressListener;
 import Service.TransactionService;
 import Utils.CacheManager; // Import the new CacheManager
+import Utils.CategoryResolver;
+import Utils.Metrics;
+import model.ImportResult;
 import model.MonthlySummary;
 import model.Transaction;
 
-import javax.swing.*;
 import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException; // Added for clarity in catch blocks if specific parsing errors are handled
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors; // Needed for search
 
 public class TransactionServiceImpl implements TransactionService {
@@ -23,6 +33,8 @@ public class TransactionServiceImpl implements TransactionService {
     private final String currentUserTransactionFilePath; // Store the user's file path
     // TransactionDao instance needed to load data if cache misses
     private final TransactionDao transactionDao;
+    // All writes to the user's file go through its single writer (shared with other services on the same file)
+    private final TransactionWriteQueue writeQueue;
 
     /**
      * Constructor now accepts the user's transaction file path.
@@ -33,6 +45,7 @@ public class TransactionServiceImpl implements TransactionService {
         this.currentUserTransactionFilePath = currentUserTransactionFilePath;
         // Create a DAO instance for this service instance.
         this.transactionDao = new CsvTransactionDao(); // One DAO instance per service instance
+        this.writeQueue = TransactionWriteQueue.forFile(currentUserTransactionFilePath, transactionDao);
         System.out.println("TransactionServiceImpl initialized for file: " + currentUserTransactionFilePath);
         // Cache is managed by CacheManager, not directly by this instance.
     }
@@ -45,7 +58,7 @@ public class TransactionServiceImpl implements TransactionService {
 
     /**
      * Imports transactions from a given CSV file path into the current user's transactions.
-     * Reads the import file, merges with existing data, and saves back.
+     * Streams the import file and appends the new rows in batches (see {@link #importTransactions}).
      *
      * @param userFilePath The file path for the current user's transactions (target).
      * @param importFilePath The file path of the CSV to import from (source).
@@ -54,83 +67,107 @@ public class TransactionServiceImpl implements TransactionService {
      */
     @Override // Implement the new interface method
     public int importTransactionsFromCsv(String userFilePath, String importFilePath) throws Exception {
-        System.out.println("Starting import from " + importFilePath + " to user file " + userFilePath);
-        List<Transaction> existingTransactions;
-        List<Transaction> transactionsToImport;
+        return importTransactions(userFilePath, importFilePath, null).getImportedCount();
+    }
 
+    @Override
+    public ImportResult importTransactions(String userFilePath, String importFilePath, ImportProgressListener listener) throws Exception {
+        Metrics.Timer timer = Metrics.startTimer("service.transactions.import");
         try {
-            // 1. Load existing transactions for the current user (from cache/file)
-            // Use the method that uses the CacheManager
-            existingTransactions = getAllTransactions(); // Already uses CacheManager
+            return importTransactionsInternal(userFilePath, importFilePath, listener);
+        } catch (Exception e) {
+            timer.failed();
+            throw e;
+        } finally {
+            timer.stop();
+        }
+    }
 
-            // 2. Read and parse transactions from the import file
-            // Use the DAO's loadFromCSV method with the import file path
-            // Need a *separate* DAO instance or method call that targets the import file
-            TransactionDao importDao = new CsvTransactionDao(); // Create a temporary DAO for reading the import file
-            transactionsToImport = importDao.loadFromCSV(importFilePath); // Load from the selected file
-            System.out.println("Read " + transactionsToImport.size() + " transactions from import file.");
+    private ImportResult importTransactionsInternal(String userFilePath, String importFilePath, ImportProgressListener listener) throws Exception {
+        System.out.println("Starting import from " + importFilePath + " to user file " + userFilePath);
+
+        // Duplicates are checked against the target's current rows (the cached snapshot, no copy)
+        List<Transaction> existingRows = CacheManager.getTransactions(userFilePath, transactionDao);
+        TransactionWriteQueue targetQueue = userFilePath.equals(currentUserTransactionFilePath)
+                ? writeQueue
+                : TransactionWriteQueue.forFile(userFilePath, transactionDao);
 
+        // Need a *separate* DAO instance that reads the import file
+        TransactionImporter importer = new TransactionImporter(new CsvTransactionDao(), targetQueue,
+                (int) Math.min(Integer.MAX_VALUE, ConfigConstants.IMPORT_BATCH_SIZE));
+        ImportResult result;
+        try {
+            result = importer.run(importFilePath, existingRows, listener);
         } catch (IOException e) {
-            System.err.println("Error loading files during import process.");
+            System.err.println("Error importing transactions from " + importFilePath);
             e.printStackTrace();
-            throw new Exception("Failed to read transaction data!", e); // Wrap and re-throw
+            throw new Exception("Failed to import transaction data!", e); // Wrap and re-throw
         }
 
-        // 3. Merge imported transactions with existing ones
-        // Simple merge: add all imported transactions.
-        // Handle potential duplicates: check if order number exists.
-        // If order numbers are not guaranteed unique in imported file or against existing,
-        // consider generating new unique IDs for imported items if their ON is empty or conflicts.
-        List<Transaction> mergedTransactions = new ArrayList<>(existingTransactions);
-        int importedCount = 0;
-
-        for (Transaction importedTx : transactionsToImport) {
-            // Basic Check: Ensure imported transaction has an order number or generate one
-            if (importedTx.getOrderNumber() == null || importedTx.getOrderNumber().trim().isEmpty()) {
-                // Generate a unique ID for transactions without one
-                String uniqueId = "IMPORT_" + UUID.randomUUID().toString();
-                importedTx.setOrderNumber(uniqueId);
-                System.out.println("Generated unique order number for imported transaction: " + uniqueId);
-            } else {
-                // Check for potential duplicate order number against existing transactions
-                boolean duplicate = existingTransactions.stream()
-                        .anyMatch(t -> t.getOrderNumber().trim().equals(importedTx.getOrderNumber().trim()));
-                if (duplicate) {
-                    System.err.println("Skipping imported transaction due to duplicate order number: " + importedTx.getOrderNumber());
-                    // Decide: skip, overwrite, or generate new ID. Skipping for now.
-                    JOptionPane.showMessageDialog(null, "Duplicate transaction order number found: " + importedTx.getOrderNumber() + ", skipped.", "Import Warning", JOptionPane.WARNING_MESSAGE);
-                    continue; // Skip this duplicate transaction
-                }
-            }
+        System.out.println("Import process finished: " + result);
+        return result; // Duplicates are reported once, by the caller, from the result
+    }
 
-            // Add the transaction to the merged list
-            mergedTransactions.add(importedTx);
-            importedCount++;
+    @Override
+    public int exportTransactions(Transaction searchCriteria, String targetFilePath, ExportFormat format, ExportProgressListener listener) throws Exception {
+        Metrics.Timer timer = Metrics.startTimer("service.transactions.export");
+        try {
+            // The cached snapshot is immutable, so it is scanned in place while edits go on
+            List<Transaction> allTransactions = getAllTransactionsForCurrentUser();
+            System.out.println("Exporting from " + allTransactions.size() + " transactions to " + targetFilePath + " as " + format);
+            int written;
+            try {
+                written = TransactionExporter.export(allTransactions,
+                        t -> searchCriteria == null || matchesCriteria(t, searchCriteria),
+                        Paths.get(targetFilePath), format, listener);
+            } catch (ClosedByInterruptException e) {
+                // Interrupted in the middle of a write (e.g. Future.cancel(true)): same as a cancel
+                throw new CancellationException("Export interrupted");
+            }
+            System.out.println("Exported " + written + " transactions to " + targetFilePath);
+            return written;
+        } catch (CancellationException e) {
+            System.out.println("Export to " + targetFilePath + " cancelled.");
+            throw e;
+        } catch (Exception e) {
+            timer.failed();
+            System.err.println("Error exporting transactions to: " + targetFilePath);
+            e.printStackTrace();
+            throw e;
+        } finally {
+            timer.stop();
         }
-        System.out.println("Merged transactions. Total after merge: " + mergedTransactions.size() + ". Successfully imported count: " + importedCount);
-
+    }
 
-        // 4. Save the merged list back to the current user's file
+    /**
+     * Waits for a queued write and rethrows its failure as-is (IOException, IllegalArgumentException, ...).
+     */
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
         try {
-            // Use the DAO instance associated with this service
-            transactionDao.writeTransactionsToCSV(userFilePath, mergedTransactions);
-            System.out.println("Saved merged transactions to user file: " + userFilePath);
-
-            // 5. Invalidate or update the cache for the current user's file
-            // Invalidation is simpler: forces CacheManager to reload from the updated file next time.
-            CacheManager.invalidateTransactionCache(userFilePath);
-            System.out.println("Cache invalidated for user file: " + userFilePath);
-
-
-        } catch (IOException e) {
-            System.err.println("Error saving merged transactions after import.");
-            e.printStackTrace();
-            // Consider leaving the original file untouched on save failure
-            throw new Exception("Failed to save imported transaction data!", e); // Wrap and re-throw
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
         }
+    }
 
-        System.out.println("Import process finished.");
-        return importedCount; // Return the count of transactions actually added
+    /**
+     * Like {@link #await}, for callers that may only throw IOException.
+     */
+    private static <T> T awaitIO(CompletableFuture<T> future) throws IOException {
+        try {
+            return await(future);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the write", e);
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
     }
 
     /**
@@ -159,12 +196,9 @@ public class TransactionServiceImpl implements TransactionService {
         }
 
         try {
-            // Call DAO layer to add transaction to the user's specific file
-            transactionDao.addTransaction(currentUserTransactionFilePath, transaction);
-
-            // After adding, invalidate the cache for this user's file
-            CacheManager.invalidateTransactionCache(currentUserTransactionFilePath);
-            System.out.println("Transaction added and cache invalidated for " + currentUserTransactionFilePath);
+            // Queue the append; the writer appends it to the user's file and publishes the new cache snapshot
+            awaitIO(writeQueue.append(List.of(transaction)));
+            System.out.println("Transaction added for " + currentUserTransactionFilePath);
 
         } catch (IOException e) {
             System.err.println("Error adding transaction for user file: " + currentUserTransactionFilePath);
@@ -181,41 +215,36 @@ public class TransactionServiceImpl implements TransactionService {
     @Override
     public void changeTransaction(Transaction updatedTransaction) throws Exception {
         try {
-            // Load existing transactions (from cache/file)
-            List<Transaction> allTransactions = getAllTransactionsForCurrentUser();
-
-            // Find and update the target transaction in the list
-            boolean foundAndUpdatedInMemory = false;
-            List<Transaction> updatedList = new ArrayList<>(allTransactions.size());
-            for (Transaction t : allTransactions) {
-                if (t.getOrderNumber().trim().equals(updatedTransaction.getOrderNumber().trim())) {
-                    // Found the transaction, apply updates
-                    updateTransactionFields(t, updatedTransaction); // Helper method to apply updates
-                    updatedList.add(t); // Add the modified transaction
-                    foundAndUpdatedInMemory = true;
-                    System.out.println("Transaction with order number " + updatedTransaction.getOrderNumber() + " found and updated in memory.");
-                } else {
-                    updatedList.add(t); // Add unchanged transactions
+            // Runs on the file's writer against the current rows, so concurrent edits are not lost
+            await(writeQueue.submit(rows -> {
+                // Build the next version of the list. Cached transactions are shared with concurrent readers,
+                // so the edited row is a copy; all other rows are reused as they are.
+                boolean foundAndUpdatedInMemory = false;
+                for (int i = 0; i < rows.size(); i++) {
+                    Transaction t = rows.get(i);
+                    if (t.getOrderNumber().trim().equals(updatedTransaction.getOrderNumber().trim())) {
+                        // Found the transaction, apply updates to a copy
+                        Transaction edited = new Transaction(t);
+                        updateTransactionFields(edited, updatedTransaction); // Helper method to apply updates
+                        rows.set(i, edited); // Replace with the modified transaction
+                        foundAndUpdatedInMemory = true;
+                        System.out.println("Transaction with order number " + updatedTransaction.getOrderNumber() + " found and updated in memory.");
+                    }
                 }
-            }
 
-            if (!foundAndUpdatedInMemory) {
-                throw new IllegalArgumentException("Transaction order number not found: " + updatedTransaction.getOrderNumber() + " in file " + currentUserTransactionFilePath);
-            }
-
-            // Write the entire updated list back to the CSV file
-            transactionDao.writeTransactionsToCSV(currentUserTransactionFilePath, updatedList);
+                if (!foundAndUpdatedInMemory) {
+                    throw new IllegalArgumentException("Transaction order number not found: " + updatedTransaction.getOrderNumber() + " in file " + currentUserTransactionFilePath);
+                }
+                return null;
+            }));
+            // The writer has written the file and published the modified list as the next cache snapshot
             System.out.println("Updated transaction with order number " + updatedTransaction.getOrderNumber() + " and wrote back to file.");
 
-            // Update the cache with the modified list
-            CacheManager.putTransactions(currentUserTransactionFilePath, updatedList, transactionDao);
-            System.out.println("Cache updated with the modified transaction list for " + currentUserTransactionFilePath);
-
         } catch (IOException e) {
             System.err.println("Error changing transaction for user file: " + currentUserTransactionFilePath);
             e.printStackTrace();
             throw e;
-        } catch (Exception e) { // Catch exception from getAllTransactionsForCurrentUser
+        } catch (Exception e) { // Catch exception from loading or from the update itself
             System.err.println("Error loading transactions for change operation: " + currentUserTransactionFilePath);
             e.printStackTrace();
             throw e;
@@ -278,13 +307,12 @@ public class TransactionServiceImpl implements TransactionService {
     @Override
     public boolean deleteTransaction(String orderNumber) throws Exception {
         try {
-            // Call DAO layer to delete transaction from the user's specific file
-            boolean deleted = transactionDao.deleteTransaction(currentUserTransactionFilePath, orderNumber);
+            // Queue the delete; the writer rewrites the user's file and publishes the new cache snapshot
+            boolean deleted = await(writeQueue.submit(rows ->
+                    rows.removeIf(t -> t.getOrderNumber().trim().equals(orderNumber.trim()))));
 
             if (deleted) {
-                // After deleting, invalidate the cache for this user's file
-                CacheManager.invalidateTransactionCache(currentUserTransactionFilePath);
-                System.out.println("Transaction with order number " + orderNumber + " deleted and cache invalidated for " + currentUserTransactionFilePath);
+                System.out.println("Transaction with order number " + orderNumber + " deleted for " + currentUserTransactionFilePath);
             } else {
                 System.out.println("Transaction with order number " + orderNumber + " not found for deletion in " + currentUserTransactionFilePath);
             }
@@ -305,6 +333,7 @@ public class TransactionServiceImpl implements TransactionService {
      */
     @Override
     public List<Transaction> searchTransaction(Transaction searchCriteria) {
+        Metrics.Timer timer = Metrics.startTimer("service.transactions.search");
         try {
             List<Transaction> allTransactions = getAllTransactionsForCurrentUser();
             System.out.println("Searching through " + allTransactions.size() + " transactions for user " + currentUserTransactionFilePath);
@@ -326,9 +355,12 @@ public class TransactionServiceImpl implements TransactionService {
             System.out.println("Matched transactions sorted.");
             return matched;
         } catch (Exception e) {
+            timer.failed();
             System.err.println("Error during search operation for user file: " + currentUserTransactionFilePath);
             e.printStackTrace();
             return List.of();
+        } finally {
+            timer.stop();
         }
     }
 
@@ -420,6 +452,18 @@ public class TransactionServiceImpl implements TransactionService {
      */
     @Override
     public Map<String, MonthlySummary> getMonthlyTransactionSummary() throws Exception {
+        Metrics.Timer timer = Metrics.startTimer("service.transactions.monthlySummary");
+        try {
+            return buildMonthlyTransactionSummary();
+        } catch (Exception e) {
+            timer.failed();
+            throw e;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private Map<String, MonthlySummary> buildMonthlyTransactionSummary() throws Exception {
         System.out.println("Generating monthly transaction summary for user file: " + currentUserTransactionFilePath);
         List<Transaction> allTransactions;
         try {
@@ -432,6 +476,7 @@ public class TransactionServiceImpl implements TransactionService {
         }
 
         Map<String, MonthlySummary> monthlySummaries = new HashMap<>();
+        CategoryResolver categoryResolver = CategoryResolver.getInstance();
         DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("yyyy-MM");
 
         for (Transaction t : allTransactions) {
@@ -453,9 +498,8 @@ public class TransactionServiceImpl implements TransactionService {
                 if (inOut.equalsIgnoreCase("Income") || inOut.equalsIgnoreCase("In")) { // Use English here
                     currentMonthSummary.addIncome(t.getPaymentAmount());
                 } else if (inOut.equalsIgnoreCase("Expense") || inOut.equalsIgnoreCase("Out")) { // Use English here
-                    String rawType = t.getTransactionType();
-                    String standardCategory = StandardCategories.getStandardCategory(rawType);
-                    String effectiveExpenseCategoryForSummary = StandardCategories.isStandardExpenseCategory(standardCategory) ? standardCategory : StandardCategories.EXPENSE_CATEGORIES.get(StandardCategories.EXPENSE_CATEGORIES.size() - 1); // Default to "Other Expenses"
+                    // Type/alias lookup, then counterparty/commodity keywords; defaults to "Other Expenses"
+                    String effectiveExpenseCategoryForSummary = categoryResolver.resolveExpenseCategory(t);
                     currentMonthSummary.addExpense(t.getPaymentAmount(), effectiveExpenseCategoryForSummary);
                 }
             }
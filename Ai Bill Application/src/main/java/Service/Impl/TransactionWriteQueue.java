@@ -0,0 +1,552 @@
+package Service.Impl;
+
+import Constants.ConfigConstants;
+import DAO.Impl.TransactionJournal;
+import DAO.TransactionDao;
+import DAO.UserDao;
+import Utils.CacheManager;
+import Utils.Metrics;
+import model.Transaction;
+import model.User;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Single writer for one user's transaction file.
+ *
+ * All mutations of a file (add, change, delete, import) are queued here instead of each doing its own
+ * read-modify-write. One drain at a time per file takes everything that queued up during a short window,
+ * applies the mutations in order to the current rows, writes the file once (an append if the batch only
+ * adds rows, otherwise one atomic rewrite), publishes the result to {@link CacheManager}, and then
+ * completes all the batch's futures together. This makes concurrent edits from the executor safe (no lost
+ * updates) and turns a burst of N edits into one I/O cycle.
+ *
+ * A mutation that throws only fails its own future; the rows are rolled back to before it and the rest of
+ * the batch goes on. If the write itself fails, every future in the batch fails and the cache is invalidated.
+ *
+ * Every batch is first written to the file's {@link TransactionJournal} (forced to disk) and the journal is
+ * deleted once the CSV holds the batch. A journal found at startup ({@link #recoverAll(UserDao, TransactionDao)}) or when a writer
+ * is created is replayed into the CSV before anything reads it: an interrupted append is cut back to where
+ * it started and appended again from the journal, anything else is replayed by order number and the file
+ * rewritten once. Recovery work is proportional to the journal, except when the interrupted batch was a
+ * rewrite anyway.
+ *
+ * Write-behind mode (transactions.write_mode=write_behind): a batch only appends its row changes to the
+ * journal and publishes the new rows to the cache, then completes; the CSV itself is rewritten later.
+ * Unflushed edits are bounded: the CSV is rewritten at the latest transactions.flush_interval_ms after the
+ * first unflushed edit, as soon as transactions.flush_max_pending edits are waiting, and on exit
+ * ({@link #flushAll}). If the application dies in between, the journal is replayed as above.
+ */
+public final class TransactionWriteQueue {
+
+    // How long a drain waits for more mutations before writing
+    static final long COALESCE_WINDOW_MILLIS = 5;
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private static final ConcurrentHashMap<String, TransactionWriteQueue> queues = new ConcurrentHashMap<>();
+
+    // Shared by all files; each queue runs at most one drain at a time
+    private static final ExecutorService writerPool = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "transaction-writer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // Write-behind: triggers the timed flush of each dirty file
+    private static final ScheduledExecutorService flushTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "transaction-flush-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A change to a file's rows. Runs on the writer thread against a private working copy.
+     *
+     * @param <T> Result handed back to the caller.
+     */
+    @FunctionalInterface
+    public interface Mutation<T> {
+        /**
+         * @param rows The file's rows; modify in place. Do not modify the Transaction objects already in it
+         *             (they are shared with cache readers); replace them with copies instead.
+         * @return The result for the caller.
+         * @throws Exception To reject the mutation (e.g. the order number does not exist).
+         */
+        T apply(List<Transaction> rows) throws Exception;
+    }
+
+    private enum Kind { APPEND, MUTATION, FLUSH }
+
+    private static final class Pending<T> {
+        final Kind kind;
+        final Mutation<T> mutation; // Only for MUTATION
+        final List<Transaction> appendedRows; // Only for APPEND
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        T result;
+
+        Pending(Kind kind, Mutation<T> mutation, List<Transaction> appendedRows) {
+            this.kind = kind;
+            this.mutation = mutation;
+            this.appendedRows = appendedRows;
+        }
+    }
+
+    private final String filePath;
+    private final TransactionDao transactionDao;
+    private final boolean writeBehind;
+    private final long flushIntervalMillis;
+    private final long flushMaxPending;
+    private final TransactionJournal journal;
+    private final ConcurrentLinkedQueue<Pending<?>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean flushTimerArmed = new AtomicBoolean(false);
+
+    // Write-behind state, only touched by the (single) drain
+    private List<Transaction> unflushedRows; // null when the CSV is up to date
+    private int unflushedEdits;
+
+    /**
+     * @param writeBehind false: every batch is written to the CSV before its futures complete.
+     * @param flushIntervalMillis Write-behind: max age of unflushed edits.
+     * @param flushMaxPending Write-behind: number of unflushed edits that triggers a flush.
+     */
+    TransactionWriteQueue(String filePath, TransactionDao transactionDao, boolean writeBehind,
+                          long flushIntervalMillis, long flushMaxPending) {
+        this.filePath = filePath;
+        this.transactionDao = transactionDao;
+        this.writeBehind = writeBehind;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.flushMaxPending = flushMaxPending;
+        this.journal = new TransactionJournal(filePath);
+        recoverJournal();
+    }
+
+    /**
+     * Gets the writer for a file. All callers writing the same file share one queue.
+     * Creating the writer replays a journal left behind by a previous run.
+     *
+     * @param filePath The user's transaction CSV file.
+     * @param transactionDao DAO used for reading and writing the file (the first caller's is kept).
+     */
+    public static TransactionWriteQueue forFile(String filePath, TransactionDao transactionDao) {
+        String key = Paths.get(filePath).toAbsolutePath().normalize().toString();
+        return queues.computeIfAbsent(key, k -> new TransactionWriteQueue(filePath, transactionDao,
+                ConfigConstants.TRANSACTIONS_WRITE_BEHIND, ConfigConstants.TRANSACTIONS_FLUSH_INTERVAL_MS,
+                ConfigConstants.TRANSACTIONS_FLUSH_MAX_PENDING));
+    }
+
+    /**
+     * Replays the journals left behind by a previous run into the transaction files of all registered users.
+     * Call at startup, before the first transaction file is read. Users' files can live anywhere (users.csv
+     * holds the path of each), so this goes by the user store rather than by directory.
+     *
+     * @param userDao Source of every user's transaction file path.
+     * @param transactionDao DAO used for reading and writing the files.
+     * @return Number of journals found.
+     */
+    public static int recoverAll(UserDao userDao, TransactionDao transactionDao) {
+        List<User> users;
+        try {
+            users = userDao.getAllUsers();
+        } catch (IOException e) {
+            System.err.println("TransactionWriteQueue: Failed to read users; their journals are recovered when each file is first written");
+            e.printStackTrace();
+            return 0;
+        }
+        int found = 0;
+        for (User user : users) {
+            String filePath = user.getTransactionFilePath();
+            if (filePath == null || filePath.isBlank() || !new TransactionJournal(filePath).exists()) {
+                continue;
+            }
+            forFile(filePath, transactionDao); // Creating the writer replays the journal
+            found++;
+        }
+        return found;
+    }
+
+    /**
+     * Replays the journals left behind by a previous run into their CSVs. Call at startup, before the first
+     * transaction file is read.
+     *
+     * @param userDataBaseDir Directory holding the users' transaction files (searched recursively).
+     * @param transactionDao DAO used for reading and writing the files.
+     * @return Number of journals found.
+     */
+    public static int recoverAll(String userDataBaseDir, TransactionDao transactionDao) {
+        Path baseDir = Paths.get(userDataBaseDir);
+        if (!Files.isDirectory(baseDir)) {
+            return 0;
+        }
+        List<Path> journals;
+        try (Stream<Path> files = Files.walk(baseDir)) {
+            journals = files.filter(p -> p.getFileName().toString().endsWith(TransactionJournal.SUFFIX)).toList();
+        } catch (IOException e) {
+            System.err.println("TransactionWriteQueue: Failed to scan " + baseDir + " for journals");
+            e.printStackTrace();
+            return 0;
+        }
+        for (Path journalPath : journals) {
+            String fileName = journalPath.getFileName().toString();
+            Path csvPath = journalPath.resolveSibling(fileName.substring(0, fileName.length() - TransactionJournal.SUFFIX.length()));
+            forFile(csvPath.toString(), transactionDao); // Creating the writer replays the journal
+        }
+        return journals.size();
+    }
+
+    /**
+     * Writes all unflushed edits of all files to their CSVs (write-behind mode; a no-op otherwise).
+     * Called from the shutdown hook.
+     *
+     * @param timeoutMillis How long to wait in total.
+     * @return true if everything was flushed in time.
+     */
+    public static boolean flushAll(long timeoutMillis) {
+        List<CompletableFuture<Void>> flushes = new ArrayList<>();
+        for (TransactionWriteQueue queue : queues.values()) {
+            if (queue.writeBehind) {
+                flushes.add(queue.flush());
+            }
+        }
+        try {
+            CompletableFuture.allOf(flushes.toArray(new CompletableFuture[0])).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            System.out.println("TransactionWriteQueue: Flushed " + flushes.size() + " file(s).");
+            return true;
+        } catch (TimeoutException e) {
+            System.err.println("TransactionWriteQueue: Flush did not finish in time; unflushed edits stay in the journals.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("TransactionWriteQueue: Flush failed; unflushed edits stay in the journals.");
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Queues rows to be appended to the file.
+     */
+    public CompletableFuture<Void> append(List<Transaction> rows) {
+        return enqueue(new Pending<Void>(Kind.APPEND, null, new ArrayList<>(rows)));
+    }
+
+    /**
+     * Queues an arbitrary change; the file is rewritten.
+     */
+    public <T> CompletableFuture<T> submit(Mutation<T> mutation) {
+        return enqueue(new Pending<>(Kind.MUTATION, mutation, null));
+    }
+
+    /**
+     * Queues a flush of unflushed edits to the CSV (completes immediately in sync mode).
+     */
+    public CompletableFuture<Void> flush() {
+        return enqueue(new Pending<Void>(Kind.FLUSH, null, null));
+    }
+
+    private <T> CompletableFuture<T> enqueue(Pending<T> item) {
+        pending.add(item);
+        scheduleDrain();
+        return item.future;
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            writerPool.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            Thread.sleep(COALESCE_WINDOW_MILLIS); // Let a burst of edits join this batch
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Pending<?>> batch = new ArrayList<>();
+        Pending<?> item;
+        while (batch.size() < MAX_BATCH_SIZE && (item = pending.poll()) != null) {
+            batch.add(item);
+        }
+        try {
+            if (!batch.isEmpty()) {
+                commit(batch);
+            }
+        } finally {
+            drainScheduled.set(false);
+            if (!pending.isEmpty()) {
+                scheduleDrain(); // Arrived during the commit, or more than one batch's worth
+            }
+        }
+    }
+
+    private void commit(List<Pending<?>> batch) {
+        Metrics.Timer timer = Metrics.startTimer(writeBehind ? "service.transactions.journal" : "service.transactions.commit");
+        List<Pending<?>> applied = new ArrayList<>(batch.size());
+        List<Pending<?>> flushRequests = new ArrayList<>();
+        try {
+            List<Transaction> base = unflushedRows != null
+                    ? unflushedRows
+                    : CacheManager.getTransactions(filePath, transactionDao);
+            List<Transaction> working = new ArrayList<>(base);
+            List<Transaction> appendedRows = new ArrayList<>();
+            boolean appendOnly = true;
+
+            for (Pending<?> item : batch) {
+                if (item.kind == Kind.FLUSH) {
+                    flushRequests.add(item);
+                    continue;
+                }
+                if (item.kind == Kind.APPEND) {
+                    working.addAll(item.appendedRows);
+                    appendedRows.addAll(item.appendedRows);
+                    applied.add(item);
+                    continue;
+                }
+                List<Transaction> before = new ArrayList<>(working);
+                try {
+                    applyMutation(item, working);
+                    applied.add(item);
+                    // A mutation that changed nothing (e.g. delete of a missing row) needs no rewrite
+                    if (!sameRows(before, working)) {
+                        appendOnly = false;
+                    }
+                } catch (Exception e) {
+                    working = before; // Roll back this mutation only
+                    item.future.completeExceptionally(e);
+                }
+            }
+
+            if (!applied.isEmpty() && sameRows(base, working)) {
+                // Nothing to write: the file (or the unflushed rows) already hold exactly these rows
+                System.out.println("TransactionWriteQueue: " + applied.size() + " mutation(s) left " + filePath + " unchanged; nothing written.");
+                for (Pending<?> item : applied) {
+                    completeWithResult(item);
+                }
+            } else if (!applied.isEmpty()) {
+                List<TransactionJournal.Record> records = TransactionJournal.diff(base, working);
+                if (writeBehind) {
+                    // Durable, then visible to readers; the CSV follows later
+                    journal.append(TransactionJournal.Kind.DEFERRED, -1, records);
+                    unflushedRows = working;
+                    unflushedEdits += applied.size();
+                    CacheManager.putUnflushedTransactions(filePath, working);
+                } else {
+                    long csvLength = csvLength();
+                    journal.append(appendOnly ? TransactionJournal.Kind.APPEND : TransactionJournal.Kind.REWRITE, csvLength, records);
+                    try {
+                        if (appendOnly) {
+                            transactionDao.appendTransactions(filePath, appendedRows);
+                        } else {
+                            transactionDao.writeTransactionsToCSV(filePath, working);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        undoFailedWrite(appendOnly, csvLength);
+                        throw e;
+                    }
+                    CacheManager.putTransactions(filePath, working, transactionDao);
+                    deleteJournal(); // The CSV holds the batch now
+                }
+                System.out.println("TransactionWriteQueue: Committed " + applied.size() + " mutation(s) to " + filePath
+                        + (writeBehind ? " (journal)" : appendOnly ? " (append)" : " (rewrite)"));
+                for (Pending<?> item : applied) {
+                    completeWithResult(item);
+                }
+            }
+        } catch (Exception e) {
+            timer.failed();
+            System.err.println("TransactionWriteQueue: Failed to commit " + applied.size() + " mutation(s) to " + filePath);
+            e.printStackTrace();
+            if (unflushedRows == null) {
+                // The file may or may not have been written; let the next read decide from disk
+                CacheManager.invalidateTransactionCache(filePath);
+            }
+            for (Pending<?> item : batch) {
+                if (item.kind != Kind.FLUSH) {
+                    item.future.completeExceptionally(e); // No-op for futures already completed above
+                }
+            }
+        } finally {
+            timer.stop();
+        }
+
+        if (unflushedRows != null && (!flushRequests.isEmpty() || unflushedEdits >= flushMaxPending)) {
+            flushUnflushed(flushRequests);
+        } else {
+            flushRequests.forEach(item -> item.future.complete(null)); // Nothing to flush
+        }
+        if (unflushedRows != null && flushTimerArmed.compareAndSet(false, true)) {
+            flushTimer.schedule(() -> {
+                flushTimerArmed.set(false);
+                flush();
+            }, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Write-behind: rewrites the CSV with all unflushed edits, then drops the journal.
+     */
+    private void flushUnflushed(List<Pending<?>> flushRequests) {
+        Metrics.Timer timer = Metrics.startTimer("service.transactions.flush");
+        try {
+            int edits = unflushedEdits;
+            transactionDao.writeTransactionsToCSV(filePath, unflushedRows);
+            CacheManager.putTransactions(filePath, unflushedRows, transactionDao);
+            journal.delete(); // Only after the CSV holds everything the journal did
+            unflushedRows = null;
+            unflushedEdits = 0;
+            System.out.println("TransactionWriteQueue: Flushed " + edits + " edit(s) to " + filePath);
+            flushRequests.forEach(item -> item.future.complete(null));
+        } catch (Exception e) {
+            timer.failed();
+            // Edits stay in memory and in the journal; the next trigger tries again
+            System.err.println("TransactionWriteQueue: Failed to flush " + filePath + "; will retry.");
+            e.printStackTrace();
+            flushRequests.forEach(item -> item.future.completeExceptionally(e));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private void deleteJournal() {
+        try {
+            journal.delete();
+        } catch (IOException e) {
+            // Harmless: replaying a batch the CSV already holds changes nothing
+            System.err.println("TransactionWriteQueue: Failed to delete journal " + journal.getPath());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A batch whose CSV write failed was not acknowledged, so it must not be replayed later: cut off a
+     * partial append, then drop the journal. If that fails too, the journal stays and the batch is completed
+     * by the next recovery instead.
+     */
+    private void undoFailedWrite(boolean appendOnly, long csvLength) {
+        try {
+            if (appendOnly && csvLength >= 0) {
+                truncateCsv(csvLength);
+            }
+            journal.delete();
+        } catch (IOException e) {
+            System.err.println("TransactionWriteQueue: Failed to roll back " + filePath + "; the journal will complete the write on recovery.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Applies a journal left behind by a previous run (crash during a write, or write-behind edits that were
+     * never flushed) to the CSV. Recovery is idempotent, so a crash during recovery is recovered the same
+     * way next time.
+     */
+    private void recoverJournal() {
+        if (!journal.exists()) {
+            return;
+        }
+        Metrics.Timer timer = Metrics.startTimer("service.transactions.recover");
+        try {
+            List<TransactionJournal.Frame> frames = journal.readFrames();
+            int recordCount = 0;
+            for (TransactionJournal.Frame frame : frames) {
+                recordCount += frame.getRecords().size();
+            }
+            TransactionJournal.Frame single = frames.size() == 1 ? frames.get(0) : null;
+            if (frames.isEmpty()) {
+                System.out.println("TransactionWriteQueue: Journal " + journal.getPath() + " holds no complete batch.");
+            } else if (single != null && single.getKind() == TransactionJournal.Kind.APPEND
+                    && single.getCsvLengthBefore() >= 0 && csvLength() >= single.getCsvLengthBefore()) {
+                // Interrupted append: redo just that append, whatever part of it reached the CSV
+                truncateCsv(single.getCsvLengthBefore());
+                List<Transaction> rows = new ArrayList<>(single.getRecords().size());
+                for (TransactionJournal.Record record : single.getRecords()) {
+                    rows.add(record.getTransaction());
+                }
+                transactionDao.appendTransactions(filePath, rows);
+            } else {
+                List<TransactionJournal.Record> records = new ArrayList<>(recordCount);
+                frames.forEach(frame -> records.addAll(frame.getRecords()));
+                List<Transaction> recovered = TransactionJournal.replay(transactionDao.loadFromCSV(filePath), records);
+                transactionDao.writeTransactionsToCSV(filePath, recovered);
+            }
+            journal.delete();
+            CacheManager.invalidateTransactionCache(filePath); // Anything cached predates the recovered rows
+            System.out.println("TransactionWriteQueue: Recovered " + frames.size() + " journaled batch(es), "
+                    + recordCount + " change(s), into " + filePath);
+        } catch (IOException | RuntimeException e) {
+            timer.failed();
+            // Keep the journal; recovery is retried the next time a writer for this file is created
+            System.err.println("TransactionWriteQueue: Failed to recover journal " + journal.getPath());
+            e.printStackTrace();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * @return Current size of the CSV (0 if it does not exist yet).
+     */
+    private long csvLength() throws IOException {
+        Path path = Paths.get(filePath);
+        return Files.exists(path) ? Files.size(path) : 0;
+    }
+
+    private void truncateCsv(long length) throws IOException {
+        Path path = Paths.get(filePath);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (channel.size() > length) {
+                channel.truncate(length);
+                channel.force(true);
+            }
+        }
+    }
+
+    /**
+     * @return True if both lists hold the same row objects in the same order (rows are never edited in place).
+     */
+    private static boolean sameRows(List<Transaction> a, List<Transaction> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <T> void applyMutation(Pending<T> item, List<Transaction> working) throws Exception {
+        item.result = item.mutation.apply(working);
+    }
+
+    private static <T> void completeWithResult(Pending<T> item) {
+        item.future.complete(item.result);
+    }
+}
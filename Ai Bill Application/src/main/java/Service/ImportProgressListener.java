@@ -0,0 +1,16 @@
+package Service;
+
+/**
+ * Receives progress of a bulk import. Called on the importing (worker) thread after each batch is
+ * written, so UI implementations must hand the update to the event dispatch thread themselves.
+ */
+@FunctionalInterface
+public interface ImportProgressListener {
+
+    /**
+     * @param rowsRead Rows read from the import file so far.
+     * @param importedCount Rows written to the user's file so far.
+     * @param duplicateCount Rows skipped as duplicates so far.
+     */
+    void onProgress(int rowsRead, int importedCount, int duplicateCount);
+}
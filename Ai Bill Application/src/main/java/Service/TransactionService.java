@@ -1,5 +1,6 @@
 package Service;
 
+import model.ImportResult;
 import model.MonthlySummary;
 import model.Transaction;
 
@@ -55,6 +56,33 @@ public interface TransactionService {
      */
     int importTransactionsFromCsv(String userFilePath, String importFilePath) throws Exception; // Added this method
 
+    /**
+     * Imports transactions from a CSV file in batches, skipping rows whose order number already exists.
+     * Never shows any UI; duplicates are reported in the result.
+     *
+     * @param userFilePath The file path for the current user's transactions (target).
+     * @param importFilePath The file path of the CSV to import from (source).
+     * @param listener Receives progress after each written batch; may be null.
+     * @return Counts of imported and skipped rows, with a sample of the skipped order numbers.
+     * @throws Exception If an error occurs during reading, parsing, or saving. Batches written before the
+     *                   error stay in the user's file.
+     */
+    ImportResult importTransactions(String userFilePath, String importFilePath, ImportProgressListener listener) throws Exception;
+
+    /**
+     * Exports the current user's transactions that match the search criteria (as in {@link #searchTransaction})
+     * to a file, in the order they are stored. Rows are streamed from the cached data, not copied.
+     *
+     * @param searchCriteria Filter; null exports everything.
+     * @param targetFilePath The file to create or replace.
+     * @param format The output format.
+     * @param listener Receives progress and can cancel; may be null.
+     * @return The number of transactions written.
+     * @throws java.util.concurrent.CancellationException If the export was cancelled; no file is written.
+     * @throws Exception If an error occurs during loading or writing.
+     */
+    int exportTransactions(Transaction searchCriteria, String targetFilePath, ExportFormat format, ExportProgressListener listener) throws Exception;
+
 
     /**
      * Aggregates transactions for the current user by month and standard category.
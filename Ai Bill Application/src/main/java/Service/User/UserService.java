@@ -16,9 +16,11 @@ import java.nio.file.StandardOpenOption;
 import java.util.ArrayList; // Added for List.of() which returns immutable list, sometimes mutable needed
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 import java.util.Collections; // Added for Collections.unmodifiableList
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public class UserService {
@@ -26,7 +28,8 @@ public class UserService {
     private final TransactionDao transactionDao;
     private final SummaryStatisticDao summaryStatisticDao;
 
-    private final Map<String, User> userCache = new HashMap<>(); // Cache users in memory
+    // Cache users in memory, keyed by case-folded username (see cacheKey); read from the EDT and the executor
+    private final Map<String, User> userCache = new ConcurrentHashMap<>();
     private final String userDataBaseDir;
 
     /**
@@ -46,16 +49,22 @@ public class UserService {
         loadUsers(); // Load users when the service is initialized
     }
 
+    private static String cacheKey(String username) {
+        return username.trim().toLowerCase(Locale.ROOT);
+    }
+
     /**
      * Loads all users into an in-memory cache.
      */
     private void loadUsers() {
         try {
             List<User> users = userDao.getAllUsers();
-            userCache.clear();
+            Map<String, User> loaded = new HashMap<>();
             for (User user : users) {
-                userCache.put(user.getUsername(), user);
+                loaded.put(cacheKey(user.getUsername()), user);
             }
+            userCache.keySet().retainAll(loaded.keySet());
+            userCache.putAll(loaded);
             System.out.println("Loaded " + userCache.size() + " users into cache.");
         } catch (IOException e) {
             System.err.println("Failed to load users from data source.");
@@ -95,7 +104,7 @@ public class UserService {
             return null;
         }
 
-        User user = userCache.get(username.trim());
+        User user = userCache.get(cacheKey(username));
         if (user != null && user.getPassword().equals(password.trim())) {
             System.out.println("Authentication successful for user: " + username);
             return user;
@@ -112,7 +121,7 @@ public class UserService {
         if (username == null || username.trim().isEmpty()) {
             return null;
         }
-        return userCache.get(username.trim());
+        return userCache.get(cacheKey(username));
     }
 
 
@@ -128,7 +137,7 @@ public class UserService {
         }
 
         // --- Check if username already exists ---
-        // Check against the most up-to-date source (file) to avoid race conditions if users.csv is modified externally or by multiple app instances
+        // Check against the data source (an index lookup, revalidated against the files) in case users.csv was modified externally
         try {
             if (getUserByUsernameFromDataSource(username) != null) {
                 System.out.println("Registration failed: Username '" + username + "' already exists (checked file).");
@@ -211,7 +220,7 @@ public class UserService {
             System.out.println("Added new user to users.csv.");
 
             // --- Update in-memory cache ---
-            userCache.put(newUser.getUsername(), newUser); // Add the new user to the cache
+            userCache.put(cacheKey(newUser.getUsername()), newUser); // Add the new user to the cache
             System.out.println("Added new user to in-memory cache.");
 
 
@@ -253,7 +262,7 @@ public class UserService {
         System.out.println("Attempting to delete user: " + usernameToDel);
 
         // 1. Find the user in the cache to get file paths before deleting from file
-        User userToDelete = userCache.get(usernameToDel);
+        User userToDelete = userCache.get(cacheKey(usernameToDel));
         // If not in cache, check file directly (ensure cache is refreshed periodically or rely on file check)
         if (userToDelete == null) {
             try {
@@ -299,7 +308,7 @@ public class UserService {
             }
 
             // 4. Remove user from in-memory cache
-            userCache.remove(usernameToDel);
+            userCache.remove(cacheKey(usernameToDel));
             System.out.println("User '" + usernameToDel + "' removed from cache.");
 
             return true; // Deletion from list was successful
@@ -351,16 +360,11 @@ public class UserService {
         if (updatedInList) {
             // 3. Update in-memory cache
             // Update the object in the cache directly with the fields from updatedUser.
-            User userInCache = userCache.get(usernameToUpdate);
-            if (userInCache != null) {
-                // Apply updates to the object in cache. Only update fields allowed by updateUser method.
-                if (updatedUser.getPassword() != null && !updatedUser.getPassword().isEmpty()) {
-                    userInCache.setPassword(updatedUser.getPassword());
-                }
-                if (updatedUser.getRole() != null && !updatedUser.getRole().isEmpty()) {
-                    userInCache.setRole(updatedUser.getRole());
-                }
-                // File paths are NOT updated via updateUser in DAO currently, so don't update them in cache here.
+            // Replace the cached object (readers on other threads may hold the old one) with the stored state.
+            // File paths are NOT updated via updateUser in DAO currently, so they stay as they were.
+            User stored = userDao.getUserByUsername(usernameToUpdate);
+            if (stored != null) {
+                userCache.put(cacheKey(usernameToUpdate), stored);
                 System.out.println("User '" + usernameToUpdate + "' updated in cache.");
             } else {
                 // If not in cache but updated in file, reload all users cache (safer, though less performant)
@@ -377,9 +381,8 @@ public class UserService {
 
 
     /**
-     * Retrieves a user by username directly from the data source file (bypasses cache).
-     * Useful for checking existence without relying solely on potentially stale cache.
-     * NOTE: This method bypasses the cache. Use getUserByUsername for cached access.
+     * Retrieves a user by username (ignoring case) from the data source (bypasses this service's cache).
+     * The DAO answers from its index and only rereads the file if it was changed since it last saw it.
      * @param username The username.
      * @return The User object if found in the data source, null otherwise.
      * @throws IOException If an I/O error occurs.
@@ -388,11 +391,6 @@ public class UserService {
         if (username == null || username.trim().isEmpty()) {
             return null;
         }
-        // Reload all users from the file to check for existence
-        List<User> allUsers = userDao.getAllUsers(); // This bypasses the cache.
-        return allUsers.stream()
-                .filter(user -> user.getUsername().equalsIgnoreCase(username.trim()))
-                .findFirst()
-                .orElse(null);
+        return userDao.getUserByUsername(username);
     }
 }
\ No newline at end of file
@@ -1,67 +1,135 @@
 package Utils;
 
-import Constants.CaffeineKeys;
-import DAO.Impl.CsvTransactionDao; // Assuming CsvTransactionDao is in DAO.Impl
+import Constants.ConfigConstants;
 import DAO.TransactionDao; // Assuming TransactionDao interface is in DAO
 import model.Transaction;
 import com.github.benmanes.caffeine.cache.Cache; // Use general Cache interface
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Manages Caffeine caches for different transaction data files (per user).
- * Uses the file path as the cache key.
+ * Manages one shared Caffeine cache for the transaction lists of all users' files.
+ * Uses the (normalized) file path as the cache key.
+ *
+ * Cached lists are immutable {@link TransactionSnapshot}s. Readers (search, charts, AI tasks on the executor)
+ * iterate them without locks; writers build a new list and publish it through {@link #putTransactions},
+ * which atomically replaces the snapshot with a higher generation. A reader that is still iterating the
+ * previous snapshot simply finishes on the old version.
+ *
+ * The cache is bounded by estimated memory (row count x per-row estimate) rather than by entry count,
+ * so a long admin session that touches many user files stays under the configured budget
+ * (cache.max_weight_mb). Caffeine's W-TinyLFU policy decides which users' lists to evict.
+ *
+ * Entries are tagged with the file's fingerprint (size, mtime, checksum) and revalidated on access:
+ * a stat call detects external edits immediately, and the file is only reparsed when its content
+ * actually changed. A {@link FileChangeWatcher} on the user data directory invalidates entries as soon
+ * as their file changes on disk, so there is no time-based refresh anymore.
+ *
+ * Behind the in-memory cache (L1) sits a {@link TransactionSnapshotStore} (L2): a binary copy of each parsed
+ * list on local disk. An L1 miss first tries the snapshot, which is only used while the CSV keeps the size
+ * and mtime it was taken from; after a CSV parse the snapshot is rewritten in the background. This makes the
+ * first access after a restart a sequential read instead of a CSV parse.
+ *
+ * Rows edited in write-behind mode but not yet flushed to the CSV exist nowhere else, so they are kept
+ * apart from the evictable cache ({@link #putUnflushedTransactions}) and served ahead of it until the
+ * flush publishes them through {@link #putTransactions}.
  */
 public class CacheManager {
 
-    // Use a map to hold caches, keyed by file path
-    // The value is the Caffeine LoadingCache for that specific file path
-    private static final ConcurrentHashMap<String, LoadingCache<String, List<Transaction>>> fileCaches = new ConcurrentHashMap<>();
+    // Rough heap cost of one parsed Transaction: object header + 11 fields, 10 short Strings with their arrays
+    static final int ESTIMATED_BYTES_PER_ROW = 512;
+    // Fixed cost of an entry (list, fingerprint, cache node), so that empty files still weigh something
+    private static final int ENTRY_OVERHEAD_BYTES = 1024;
 
-    // Define default cache parameters
-    private static final int DEFAULT_MAX_SIZE = 1; // Only cache one instance (the list of transactions) per file
-    private static final long DEFAULT_EXPIRE_AFTER_WRITE_MINUTES = 10; // Cache entry expires after 10 minutes
-    private static final long DEFAULT_REFRESH_AFTER_WRITE_MINUTES = 1; // Refresh entry after 1 minute
+    private static final long DEFAULT_MAX_WEIGHT_BYTES = ConfigConstants.CACHE_MAX_WEIGHT_MB * 1024L * 1024L;
+    // Safety net only: entries are revalidated against the file on every access, so this just frees idle memory
+    private static final long DEFAULT_EXPIRE_AFTER_ACCESS_MINUTES = 30;
+
+    // Single cache for all files: key = normalized file path, value = that file's current snapshot
+    private static final Cache<String, TransactionSnapshot> transactionCache = Caffeine.newBuilder()
+            .maximumWeight(DEFAULT_MAX_WEIGHT_BYTES)
+            .weigher((String filePath, TransactionSnapshot snapshot) -> estimatedBytes(snapshot))
+            .expireAfterAccess(DEFAULT_EXPIRE_AFTER_ACCESS_MINUTES, TimeUnit.MINUTES)
+            .evictionListener((String filePath, TransactionSnapshot snapshot, RemovalCause cause) ->
+                    System.out.println("CacheManager: Evicted " + filePath + " (" + cause + ", ~"
+                            + (snapshot == null ? 0 : estimatedBytes(snapshot) / 1024) + " KB)"))
+            .recordStats()
+            .build();
+
+    // Write-behind rows not in the CSV yet; never evicted, replaced by the flush's putTransactions
+    private static final ConcurrentHashMap<String, TransactionSnapshot> unflushedSnapshots = new ConcurrentHashMap<>();
+
+    // L2: on-disk snapshots of parsed lists (null if disabled in config)
+    private static final TransactionSnapshotStore snapshotStore = ConfigConstants.CACHE_SNAPSHOT_ENABLED
+            ? new TransactionSnapshotStore(Paths.get(ConfigConstants.CACHE_SNAPSHOT_DIR))
+            : null;
+
+    // Source of snapshot generations (shared by all files, so a generation is never reused)
+    private static final AtomicLong generationCounter = new AtomicLong();
+
+    private static volatile FileChangeWatcher fileWatcher;
+
+    static {
+        Metrics.registerMBean("type=TransactionCache", new TransactionCacheStats());
+    }
+
+    private static int estimatedBytes(TransactionSnapshot snapshot) {
+        long bytes = ENTRY_OVERHEAD_BYTES + (long) snapshot.size() * ESTIMATED_BYTES_PER_ROW;
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private static TransactionSnapshot newSnapshot(List<Transaction> transactions, FileFingerprint fingerprint) {
+        return new TransactionSnapshot(transactions, generationCounter.incrementAndGet(), fingerprint);
+    }
 
     // Private constructor to prevent instantiation
     private CacheManager() {}
 
     /**
-     * Gets or creates a LoadingCache for the specified transaction file path.
-     * The cache loads List<Transaction> from the file using TransactionDao.
-     *
-     * @param filePath The path to the user's transaction CSV file.
-     * @param transactionDao The TransactionDao instance to use for loading.
-     * @return The LoadingCache instance for the given file path.
-     */
-    public static LoadingCache<String, List<Transaction>> getTransactionCache(String filePath, TransactionDao transactionDao) {
-        // Use computeIfAbsent to get or create the cache atomically
-        return fileCaches.computeIfAbsent(filePath, key -> {
-            System.out.println("CacheManager: Creating new cache for file: " + filePath);
-            // Create a new LoadingCache for this specific file path
-            return Caffeine.newBuilder()
-                    .maximumSize(DEFAULT_MAX_SIZE)
-                    .expireAfterWrite(DEFAULT_EXPIRE_AFTER_WRITE_MINUTES, TimeUnit.MINUTES)
-                    .refreshAfterWrite(DEFAULT_REFRESH_AFTER_WRITE_MINUTES, TimeUnit.MINUTES)
-                    // Define the loader function: how to load data when cache is missed or refreshed
-                    .build(cacheKey -> {
-                        System.out.println("CacheManager: Loading transactions from file: " + filePath + " (Cache Miss/Refresh)");
-                        try {
-                            // The cacheKey here will likely be a constant like "transactions"
-                            // We use the outer filePath variable to load from the correct file
-                            return transactionDao.loadFromCSV(filePath);
-                        } catch (IOException e) {
-                            System.err.println("CacheManager: Error loading data for file " + filePath);
-                            e.printStackTrace();
-                            throw new RuntimeException("Error loading transactions from " + filePath, e); // Wrap IOException in RuntimeException for Caffeine loader
-                        }
-                    });
-        });
+     * Same file, same key: "a/../b.csv", "./b.csv" and the absolute path share one entry.
+     */
+    private static String cacheKey(String filePath) {
+        return Paths.get(filePath).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Loads a file's transactions for the cache (called by Caffeine on a miss, at most once per key at a time).
+     * Tries the on-disk snapshot first and only parses the CSV if there is no matching snapshot.
+     */
+    private static TransactionSnapshot load(String filePath, TransactionDao transactionDao) {
+        watchParentDirectory(filePath); // Files outside the user data dir (e.g. admin's) are watched too
+        Path path = Paths.get(filePath);
+        if (snapshotStore != null) {
+            TransactionSnapshotStore.Snapshot snapshot = snapshotStore.read(filePath, FileFingerprint.stat(path));
+            if (snapshot != null) {
+                System.out.println("CacheManager: Loaded transactions for " + filePath + " from snapshot (L1 miss, L2 hit)");
+                return newSnapshot(snapshot.getTransactions(), snapshot.getFingerprint());
+            }
+        }
+        System.out.println("CacheManager: Loading transactions from file: " + filePath + " (Cache Miss)");
+        try {
+            // Fingerprint first: if the file changes while we parse, the next access sees a mismatch
+            FileFingerprint fingerprint = FileFingerprint.of(path);
+            TransactionSnapshot snapshot = newSnapshot(transactionDao.loadFromCSV(filePath), fingerprint);
+            if (snapshotStore != null) {
+                snapshotStore.writeAsync(filePath, fingerprint, snapshot);
+            }
+            return snapshot;
+        } catch (IOException e) {
+            System.err.println("CacheManager: Error loading data for file " + filePath);
+            e.printStackTrace();
+            throw new RuntimeException("Error loading transactions from " + filePath, e); // Wrap IOException in RuntimeException for Caffeine loader
+        }
     }
 
     /**
@@ -69,18 +137,18 @@ public class CacheManager {
      * @param filePath The path to the user's transaction CSV file.
      */
     public static void invalidateTransactionCache(String filePath) {
-        LoadingCache<String, List<Transaction>> cache = fileCaches.get(filePath);
-        if (cache != null) {
-            System.out.println("CacheManager: Invalidating cache for file: " + filePath);
-            // The cache key for List<Transaction> is likely a constant like "transactions"
-            cache.invalidate(CaffeineKeys.TRANSACTION_CAFFEINE_KEY); // Invalidate the entry storing the transaction list
+        System.out.println("CacheManager: Invalidating cache for file: " + filePath);
+        String key = cacheKey(filePath);
+        transactionCache.invalidate(key);
+        if (snapshotStore != null) {
+            snapshotStore.delete(key);
         }
-
     }
 
     /**
      * Gets the transaction list from the cache for the specified file path.
-     * Loads data if not present or expired. Handles exceptions thrown by the loader.
+     * Loads data if not present, or if the file's content changed since it was cached.
+     * The returned list is an immutable {@link TransactionSnapshot}; do not modify its transactions.
      *
      * @param filePath The path to the user's transaction CSV file.
      * @param transactionDao The TransactionDao instance to use for loading if cache misses.
@@ -88,32 +156,240 @@ public class CacheManager {
      * @throws Exception If an error occurs during loading (e.g., IOException).
      */
     public static List<Transaction> getTransactions(String filePath, TransactionDao transactionDao) throws Exception {
-        LoadingCache<String, List<Transaction>> cache = getTransactionCache(filePath, transactionDao);
-        // The cache key for the list of transactions from a specific file is a constant.
-        // This constant key maps to the *entire list* of transactions for that file.
-        return cache.get(CaffeineKeys.TRANSACTION_CAFFEINE_KEY);
+        return getSnapshot(filePath, transactionDao);
     }
 
     /**
-     * Manually puts a list of transactions into the cache for a specific file path.
+     * Like {@link #getTransactions}, with access to the snapshot's generation and fingerprint.
+     */
+    public static TransactionSnapshot getSnapshot(String filePath, TransactionDao transactionDao) throws Exception {
+        String key = cacheKey(filePath);
+        TransactionSnapshot unflushed = unflushedSnapshots.get(key);
+        if (unflushed != null) {
+            return unflushed; // Newer than the file by design; the file is only revalidated once it is flushed
+        }
+        TransactionSnapshot snapshot = transactionCache.get(key, k -> load(k, transactionDao));
+        TransactionSnapshot valid = revalidate(key, snapshot);
+        if (valid == null) {
+            System.out.println("CacheManager: File changed on disk, reloading: " + filePath);
+            transactionCache.asMap().remove(key, snapshot); // Only drop the stale snapshot, not a fresher one
+            valid = transactionCache.get(key, k -> load(k, transactionDao));
+        }
+        return valid;
+    }
+
+    /**
+     * Checks a cached snapshot against the file on disk.
+     * Same size and mtime: valid without reading the file. Otherwise the checksum decides, so a file that
+     * was only touched (or rewritten with identical content) keeps its rows.
+     *
+     * @return The snapshot to use (with a refreshed fingerprint if only metadata changed), or null if stale.
+     */
+    private static TransactionSnapshot revalidate(String filePath, TransactionSnapshot snapshot) {
+        Path path = Paths.get(filePath);
+        FileFingerprint current = FileFingerprint.stat(path);
+        if (current.sameStat(snapshot.getFingerprint())) {
+            return snapshot;
+        }
+        FileFingerprint full = FileFingerprint.of(path);
+        if (full.sameContent(snapshot.getFingerprint())) {
+            // Only metadata changed; remember the new mtime (unless a writer published something newer)
+            TransactionSnapshot touched = snapshot.withFingerprint(full);
+            transactionCache.asMap().replace(filePath, snapshot, touched);
+            return touched;
+        }
+        return null;
+    }
+
+    /**
+     * Publishes a new version of a file's transactions: the list is copied into an immutable snapshot
+     * with the next generation and atomically replaces the cached one.
      * This is useful after a write operation (add, delete, update) to refresh the cache.
+     * Must be called after the list has been written to the file, as the snapshot is tagged with the file's current fingerprint.
+     * Replaces unflushed rows published by {@link #putUnflushedTransactions} (the file holds them now).
      *
      * @param filePath The path to the user's transaction CSV file.
-     * @param transactions The updated list of transactions.
-     * @param transactionDao The TransactionDao instance (needed to get/create cache if not exists).
+     * @param transactions The updated list of transactions (not modified afterwards by the caller).
+     * @param transactionDao The TransactionDao instance (kept for API compatibility; the shared cache loads on demand).
+     * @return The published snapshot.
+     */
+    public static TransactionSnapshot putTransactions(String filePath, List<Transaction> transactions, TransactionDao transactionDao) {
+        String key = cacheKey(filePath);
+        FileFingerprint fingerprint = FileFingerprint.of(Paths.get(key));
+        TransactionSnapshot snapshot = newSnapshot(transactions, fingerprint);
+        transactionCache.put(key, snapshot);
+        unflushedSnapshots.remove(key);
+        if (snapshotStore != null) {
+            snapshotStore.writeAsync(key, fingerprint, snapshot); // Keep the next cold start fast too
+        }
+        System.out.println("CacheManager: Published generation " + snapshot.getGeneration() + " for file: " + filePath);
+        return snapshot;
+    }
+
+    /**
+     * Publishes rows that are not in the file yet (write-behind mode). They are held outside the evictable
+     * cache and served to every reader until {@link #putTransactions} publishes the flushed file; neither
+     * eviction nor {@link #invalidateTransactionCache} drops them. They are not written to the on-disk
+     * snapshot store (that must only hold what the CSV holds).
+     *
+     * @param filePath The path to the user's transaction CSV file.
+     * @param transactions The rows including unflushed edits (not modified afterwards by the caller).
+     * @return The published snapshot.
+     */
+    public static TransactionSnapshot putUnflushedTransactions(String filePath, List<Transaction> transactions) {
+        String key = cacheKey(filePath);
+        Path path = Paths.get(key);
+        TransactionSnapshot current = unflushedSnapshots.get(key);
+        if (current == null) {
+            current = transactionCache.asMap().get(key); // Not counted as a cache request
+        }
+        FileFingerprint fingerprint = (current != null && FileFingerprint.stat(path).sameStat(current.getFingerprint()))
+                ? current.getFingerprint() // File untouched since the last publish; skip the checksum read
+                : FileFingerprint.of(path);
+        TransactionSnapshot snapshot = newSnapshot(transactions, fingerprint);
+        unflushedSnapshots.put(key, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Starts watching the user data directory (recursively). Changed files get their cache entry
+     * revalidated right away instead of on the next access. Safe to call more than once.
+     *
+     * @param userDataBaseDir The base directory for user data files (ConfigConstants.USER_DATA_BASE_DIR).
      */
-    public static void putTransactions(String filePath, List<Transaction> transactions, TransactionDao transactionDao) {
-        LoadingCache<String, List<Transaction>> cache = getTransactionCache(filePath, transactionDao);
-        cache.put(CaffeineKeys.TRANSACTION_CAFFEINE_KEY, transactions);
-        System.out.println("CacheManager: Manually updated cache for file: " + filePath);
+    public static synchronized void startFileWatcher(String userDataBaseDir) {
+        if (fileWatcher != null) {
+            return;
+        }
+        try {
+            fileWatcher = new FileChangeWatcher(CacheManager::onFileChanged);
+            if (userDataBaseDir != null && !userDataBaseDir.trim().isEmpty()) {
+                fileWatcher.registerRecursive(Paths.get(userDataBaseDir));
+            }
+            // Files cached before the watcher started
+            for (String filePath : transactionCache.asMap().keySet()) {
+                watchParentDirectory(filePath);
+            }
+            System.out.println("CacheManager: File watcher started for " + userDataBaseDir);
+        } catch (IOException e) {
+            // Not fatal: entries are still revalidated on access
+            System.err.println("CacheManager: Failed to start file watcher, relying on access-time validation only.");
+            e.printStackTrace();
+        }
+    }
+
+    private static void watchParentDirectory(String filePath) {
+        FileChangeWatcher watcher = fileWatcher;
+        if (watcher != null) {
+            watcher.registerDirectory(Paths.get(filePath).toAbsolutePath().normalize().getParent());
+        }
+    }
+
+    /**
+     * Watcher callback. Invalidates entries whose file content no longer matches.
+     * Our own writes go through putTransactions (fingerprint already current) and are kept.
+     *
+     * @param changedFile The changed file, or null if the watcher lost events (check every entry).
+     */
+    private static void onFileChanged(Path changedFile) {
+        for (Map.Entry<String, TransactionSnapshot> cacheEntry : transactionCache.asMap().entrySet()) {
+            String filePath = cacheEntry.getKey(); // Keys are already absolute and normalized
+            if (changedFile != null && !Paths.get(filePath).equals(changedFile)) {
+                continue;
+            }
+            if (revalidate(filePath, cacheEntry.getValue()) == null) {
+                System.out.println("CacheManager: Detected external change, invalidating cache for file: " + filePath);
+                transactionCache.asMap().remove(filePath, cacheEntry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return Hit/miss/load/eviction counters of the shared transaction cache.
+     */
+    public static CacheStats getCacheStats() {
+        return transactionCache.stats();
+    }
+
+    /**
+     * @return Number of files whose transactions are currently cached.
+     */
+    public static long getCachedFileCount() {
+        return transactionCache.estimatedSize();
+    }
+
+    /**
+     * @return Current total weight of the cache (estimated bytes), or -1 if unavailable.
+     */
+    public static long getEstimatedWeightBytes() {
+        return transactionCache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(-1L))
+                .orElse(-1L);
     }
 
     /**
-     * Shutdown any resources if necessary (though Caffeine typically manages its threads).
+     * @return Configured weight budget in estimated bytes.
      */
-    public static void shutdown() {
-        // Caffeine cache doesn't require explicit shutdown in most cases
-        // If using custom executors, they might need shutdown.
+    public static long getMaximumWeightBytes() {
+        return DEFAULT_MAX_WEIGHT_BYTES;
+    }
+
+    /**
+     * @return Total number of transactions held across all cached files.
+     */
+    public static long getCachedRowCount() {
+        long rows = 0;
+        for (TransactionSnapshot snapshot : transactionCache.asMap().values()) {
+            rows += snapshot.size();
+        }
+        return rows;
+    }
+
+    /**
+     * JMX view of the shared cache (AiBill:type=TransactionCache).
+     */
+    private static final class TransactionCacheStats implements TransactionCacheMXBean {
+        @Override public long getHitCount() { return getCacheStats().hitCount(); }
+        @Override public long getMissCount() { return getCacheStats().missCount(); }
+        @Override public double getHitRate() { return getCacheStats().hitRate(); }
+        @Override public long getLoadCount() { return getCacheStats().loadCount(); }
+        @Override public long getLoadFailureCount() { return getCacheStats().loadFailureCount(); }
+        @Override public double getAverageLoadPenaltyMillis() { return getCacheStats().averageLoadPenalty() / 1_000_000.0; }
+        @Override public long getEvictionCount() { return getCacheStats().evictionCount(); }
+        @Override public long getEvictionWeight() { return getCacheStats().evictionWeight(); }
+        @Override public long getCachedFileCount() { return CacheManager.getCachedFileCount(); }
+        @Override public long getCachedRowCount() { return CacheManager.getCachedRowCount(); }
+        @Override public long getEstimatedWeightBytes() { return CacheManager.getEstimatedWeightBytes(); }
+        @Override public long getMaximumWeightBytes() { return CacheManager.getMaximumWeightBytes(); }
+    }
+
+    /**
+     * Drops the in-memory tier only, as after a restart (snapshots stay on disk).
+     */
+    static void invalidateMemoryTier() {
+        transactionCache.invalidateAll();
+    }
+
+    /**
+     * Waits for queued snapshot writes.
+     */
+    static void flushSnapshots() throws InterruptedException {
+        if (snapshotStore != null) {
+            snapshotStore.flush();
+        }
+    }
+
+    /**
+     * Stops the file watcher and finishes pending snapshot writes.
+     */
+    public static synchronized void shutdown() {
+        if (fileWatcher != null) {
+            fileWatcher.close();
+            fileWatcher = null;
+        }
+        if (snapshotStore != null) {
+            snapshotStore.shutdown();
+        }
         System.out.println("CacheManager: Shutdown completed.");
     }
 }
\ No newline at end of file
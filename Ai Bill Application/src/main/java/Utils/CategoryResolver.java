@@ -0,0 +1,367 @@
+package Utils;
+
+import Constants.ConfigConstants;
+import Constants.StandardCategories;
+import model.Transaction;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.input.BOMInputStream;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves raw transaction data to standard categories (see {@link StandardCategories}).
+ * Resolution order:
+ * 1. Hash lookup of the normalized transaction type against the standard category names.
+ * 2. Hash lookup against the alias table (built-in aliases + user-editable rules file).
+ * 3. Single-pass keyword scan (Aho-Corasick) over counterparty and commodity, e.g. "美团" -> Dining.
+ * Results are memoized per distinct raw value, so repeated aggregation over the same data is a map hit.
+ *
+ * The rules file is a CSV with headers rule_type,pattern,standard_category where rule_type is
+ * "alias" (exact match on the transaction type) or "keyword" (substring of counterparty/commodity).
+ * User rules override the built-in ones.
+ */
+public final class CategoryResolver {
+
+    public static final String RULE_ALIAS = "alias";
+    public static final String RULE_KEYWORD = "keyword";
+    private static final String[] RULE_HEADERS = {"rule_type", "pattern", "standard_category"};
+
+    // Memo marker for "looked up, nothing found" (ConcurrentHashMap does not accept null values)
+    private static final String MISS = "";
+    // Keeps the memo from growing without bound on large imports with many unique counterparties
+    private static final int MAX_MEMO_ENTRIES = 50_000;
+
+    private static volatile CategoryResolver sharedInstance;
+
+    private final String rulesFilePath; // May be null: built-in rules only
+    private volatile CompiledRules rules;
+    private final ConcurrentHashMap<String, String> typeMemo = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> keywordMemo = new ConcurrentHashMap<>();
+
+    /**
+     * Immutable lookup tables. Replaced as a whole on reload so readers never see a half-built table.
+     */
+    private static final class CompiledRules {
+        final Map<String, String> canonical = new HashMap<>(); // normalized standard name -> standard name
+        final Map<String, String> aliases = new HashMap<>(); // normalized alias -> standard name
+        final KeywordMatcher<String> keywords = new KeywordMatcher<>();
+    }
+
+    /**
+     * Shared resolver backed by the rules file configured as category.rules_path.
+     */
+    public static CategoryResolver getInstance() {
+        CategoryResolver instance = sharedInstance;
+        if (instance == null) {
+            synchronized (CategoryResolver.class) {
+                instance = sharedInstance;
+                if (instance == null) {
+                    instance = new CategoryResolver(ConfigConstants.CATEGORY_RULES_PATH);
+                    sharedInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param rulesFilePath Path of the user-editable rules CSV, or null to use the built-in rules only.
+     */
+    public CategoryResolver(String rulesFilePath) {
+        this.rulesFilePath = rulesFilePath;
+        reload();
+    }
+
+    /**
+     * Re-reads the rules file, recompiles the tables and clears the memo.
+     */
+    public synchronized void reload() {
+        CompiledRules compiled = new CompiledRules();
+        for (String category : StandardCategories.ALL_KNOWN_TYPES) {
+            compiled.canonical.put(normalize(category), category);
+        }
+        Map<String, String> keywordTable = new LinkedHashMap<>();
+        builtInAliases().forEach((alias, category) -> compiled.aliases.put(normalize(alias), category));
+        builtInKeywords().forEach((keyword, category) -> keywordTable.put(normalize(keyword), category));
+
+        if (rulesFilePath != null && !rulesFilePath.trim().isEmpty()) {
+            int loaded = loadUserRules(compiled.aliases, keywordTable);
+            System.out.println("CategoryResolver: Loaded " + loaded + " user rules from " + rulesFilePath);
+        }
+        keywordTable.forEach(compiled.keywords::add);
+        compiled.keywords.compile();
+
+        this.rules = compiled;
+        typeMemo.clear();
+        keywordMemo.clear();
+        System.out.println("CategoryResolver: " + compiled.aliases.size() + " aliases, " + compiled.keywords.size() + " keywords compiled.");
+    }
+
+    private int loadUserRules(Map<String, String> aliases, Map<String, String> keywordTable) {
+        File file = new File(rulesFilePath);
+        if (!file.exists()) {
+            return 0;
+        }
+        int loaded = 0;
+        try (Reader reader = new InputStreamReader(new BOMInputStream(new FileInputStream(file)), StandardCharsets.UTF_8);
+             CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT
+                     .withFirstRecordAsHeader()
+                     .withIgnoreHeaderCase(true)
+                     .withTrim(true))) {
+            for (CSVRecord record : csvParser) {
+                String ruleType = record.get("rule_type");
+                String pattern = record.get("pattern");
+                String category = toStandardName(record.get("standard_category"));
+                if (pattern == null || pattern.trim().isEmpty() || category == null) {
+                    System.err.println("CategoryResolver: Skipping invalid rule at line " + record.getRecordNumber() + ": " + record);
+                    continue;
+                }
+                if (RULE_ALIAS.equalsIgnoreCase(ruleType)) {
+                    aliases.put(normalize(pattern), category);
+                } else if (RULE_KEYWORD.equalsIgnoreCase(ruleType)) {
+                    keywordTable.put(normalize(pattern), category);
+                } else {
+                    System.err.println("CategoryResolver: Unknown rule type '" + ruleType + "' at line " + record.getRecordNumber());
+                    continue;
+                }
+                loaded++;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // A broken rules file must not break aggregation; fall back to the built-in rules.
+            System.err.println("CategoryResolver: Failed to read rules file " + rulesFilePath + ", using built-in rules only.");
+            e.printStackTrace();
+        }
+        return loaded;
+    }
+
+    /**
+     * Appends a rule to the user rules file and recompiles.
+     *
+     * @param ruleType {@link #RULE_ALIAS} or {@link #RULE_KEYWORD}.
+     * @param pattern The alias or keyword text.
+     * @param standardCategory One of {@link StandardCategories#ALL_KNOWN_TYPES}.
+     * @throws IOException If the rules file cannot be written.
+     */
+    public synchronized void addRule(String ruleType, String pattern, String standardCategory) throws IOException {
+        if (rulesFilePath == null || rulesFilePath.trim().isEmpty()) {
+            throw new IllegalStateException("No category rules file configured (category.rules_path).");
+        }
+        if (!RULE_ALIAS.equalsIgnoreCase(ruleType) && !RULE_KEYWORD.equalsIgnoreCase(ruleType)) {
+            throw new IllegalArgumentException("Unknown rule type: " + ruleType);
+        }
+        String category = toStandardName(standardCategory);
+        if (pattern == null || pattern.trim().isEmpty() || category == null) {
+            throw new IllegalArgumentException("Rule needs a pattern and a standard category: " + pattern + " -> " + standardCategory);
+        }
+
+        Path path = Paths.get(rulesFilePath);
+        boolean writeHeader = !Files.exists(path) || Files.size(path) == 0;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+             CSVPrinter printer = new CSVPrinter(writer, writeHeader
+                     ? CSVFormat.DEFAULT.withHeader(RULE_HEADERS)
+                     : CSVFormat.DEFAULT)) {
+            printer.printRecord(ruleType.toLowerCase(Locale.ROOT), pattern.trim(), category);
+        }
+        System.out.println("CategoryResolver: Added " + ruleType + " rule '" + pattern.trim() + "' -> " + category);
+        reload();
+    }
+
+    /**
+     * Resolves a raw transaction type string via exact name or alias.
+     *
+     * @return The standard category, or null if the type is empty or unknown.
+     */
+    public String resolveType(String rawType) {
+        if (rawType == null || rawType.trim().isEmpty()) {
+            return null;
+        }
+        String cached = typeMemo.get(rawType);
+        if (cached == null) {
+            String key = normalize(rawType);
+            CompiledRules current = rules;
+            String resolved = current.canonical.get(key);
+            if (resolved == null) resolved = current.aliases.get(key);
+            cached = (resolved == null) ? MISS : resolved;
+            memoize(typeMemo, rawType, cached);
+        }
+        return cached.isEmpty() ? null : cached;
+    }
+
+    /**
+     * Scans counterparty and commodity for known keywords.
+     *
+     * @return The standard category of the best keyword match, or null if none matched.
+     */
+    public String matchKeywords(String counterparty, String commodity) {
+        String cp = counterparty == null ? "" : counterparty;
+        String cm = commodity == null ? "" : commodity;
+        if (cp.trim().isEmpty() && cm.trim().isEmpty()) {
+            return null;
+        }
+        String memoKey = cp + '\u001F' + cm;
+        String cached = keywordMemo.get(memoKey);
+        if (cached == null) {
+            String resolved = rules.keywords.findBest(normalize(cp + " " + cm));
+            cached = (resolved == null) ? MISS : resolved;
+            memoize(keywordMemo, memoKey, cached);
+        }
+        return cached.isEmpty() ? null : cached;
+    }
+
+    /**
+     * Resolves a whole transaction: type first, then keywords over counterparty/commodity.
+     * Keyword hits that contradict the In/Out direction (e.g. an expense category on an income row) are ignored.
+     *
+     * @return The standard category, or null if nothing could be determined locally.
+     */
+    public String resolve(Transaction transaction) {
+        if (transaction == null) return null;
+        String byType = resolveType(transaction.getTransactionType());
+        if (byType != null) {
+            return byType;
+        }
+        return resolveByKeywords(transaction);
+    }
+
+    /**
+     * Keyword part of {@link #resolve}: ignores the row's transaction type, so it can suggest a category for a
+     * row that already has one (recognition). Keyword hits that contradict the In/Out direction are ignored.
+     *
+     * @return The standard category, or null if no keyword matched.
+     */
+    public String resolveByKeywords(Transaction transaction) {
+        if (transaction == null) return null;
+        String byKeyword = matchKeywords(transaction.getCounterparty(), transaction.getCommodity());
+        if (byKeyword == null) {
+            return null;
+        }
+        boolean income = isIncome(transaction.getInOut());
+        boolean expense = isExpense(transaction.getInOut());
+        if ((income && StandardCategories.isStandardExpenseCategory(byKeyword))
+                || (expense && StandardCategories.isStandardIncomeCategory(byKeyword))) {
+            return null;
+        }
+        return byKeyword;
+    }
+
+    /**
+     * Category under which an expense row is aggregated in summaries.
+     * Known non-expense types (e.g. "Transfer") keep their previous behaviour and count as "Other Expenses";
+     * unknown types fall back to the keyword scan before defaulting to "Other Expenses".
+     */
+    public String resolveExpenseCategory(Transaction transaction) {
+        String otherExpenses = StandardCategories.EXPENSE_CATEGORIES.get(StandardCategories.EXPENSE_CATEGORIES.size() - 1);
+        if (transaction == null) return otherExpenses;
+        String byType = resolveType(transaction.getTransactionType());
+        if (byType != null) {
+            return StandardCategories.isStandardExpenseCategory(byType) ? byType : otherExpenses;
+        }
+        String byKeyword = matchKeywords(transaction.getCounterparty(), transaction.getCommodity());
+        return (byKeyword != null && StandardCategories.isStandardExpenseCategory(byKeyword)) ? byKeyword : otherExpenses;
+    }
+
+    /**
+     * Normalizes text for lookups: NFKC (full-width -> half-width), lower case, collapsed whitespace.
+     */
+    static String normalize(String text) {
+        if (text == null) return "";
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        return normalized.trim().replaceAll("\\s+", " ");
+    }
+
+    private String toStandardName(String category) {
+        if (category == null) return null;
+        // Rules files are hand-edited, so accept any capitalization of a standard name
+        for (String known : StandardCategories.ALL_KNOWN_TYPES) {
+            if (known.equalsIgnoreCase(category.trim())) return known;
+        }
+        return null;
+    }
+
+    private static void memoize(ConcurrentHashMap<String, String> memo, String key, String value) {
+        if (memo.size() >= MAX_MEMO_ENTRIES) {
+            memo.clear();
+        }
+        memo.put(key, value);
+    }
+
+    private static boolean isIncome(String inOut) {
+        return inOut != null && (inOut.trim().equalsIgnoreCase("Income") || inOut.trim().equalsIgnoreCase("In"));
+    }
+
+    private static boolean isExpense(String inOut) {
+        return inOut != null && (inOut.trim().equalsIgnoreCase("Expense") || inOut.trim().equalsIgnoreCase("Out"));
+    }
+
+    /**
+     * Common spellings of transaction types (Alipay/WeChat category names, English variants).
+     */
+    private static Map<String, String> builtInAliases() {
+        Map<String, String> aliases = new LinkedHashMap<>();
+        for (String alias : List.of("餐饮", "餐饮美食", "美食", "外卖", "food", "restaurant", "meal")) aliases.put(alias, "Dining");
+        for (String alias : List.of("超市", "生鲜", "买菜", "grocery", "supermarket")) aliases.put(alias, "Groceries");
+        for (String alias : List.of("服饰", "服饰装扮", "服装", "衣服", "clothes", "apparel")) aliases.put(alias, "Clothing");
+        for (String alias : List.of("日用", "日用百货", "生活日用", "daily", "necessities")) aliases.put(alias, "Daily Necessities");
+        for (String alias : List.of("交通", "交通出行", "出行", "交通费", "transport", "travel")) aliases.put(alias, "Transportation");
+        for (String alias : List.of("娱乐", "休闲娱乐", "文化休闲", "entertainment")) aliases.put(alias, "Entertainment");
+        for (String alias : List.of("住房", "住房物业", "房租", "rent", "housing")) aliases.put(alias, "Housing");
+        for (String alias : List.of("通讯", "话费", "充值缴费", "phone", "telecom")) aliases.put(alias, "Communication");
+        for (String alias : List.of("教育", "教育培训", "学费", "tuition")) aliases.put(alias, "Education");
+        for (String alias : List.of("医疗", "医疗健康", "medical care", "health")) aliases.put(alias, "Medical");
+        for (String alias : List.of("金融", "理财", "投资理财", "信用借还", "finance")) aliases.put(alias, "Financial Services");
+        for (String alias : List.of("其他", "其他支出", "other", "others")) aliases.put(alias, "Other Expenses");
+        for (String alias : List.of("工资", "薪资", "wage", "wages", "payroll")) aliases.put(alias, "Salary");
+        for (String alias : List.of("兼职", "兼职收入", "part-time", "part time")) aliases.put(alias, "Part-time Income");
+        for (String alias : List.of("投资收益", "理财收益", "dividend", "interest")) aliases.put(alias, "Investment Income");
+        aliases.put("其他收入", "Other Income");
+        for (String alias : List.of("转账", "转账红包")) aliases.put(alias, "Transfer");
+        for (String alias : List.of("红包", "微信红包", "hongbao")) aliases.put(alias, "Red Packet");
+        return aliases;
+    }
+
+    /**
+     * Well-known merchants and words that identify a category from counterparty/commodity text.
+     */
+    private static Map<String, String> builtInKeywords() {
+        Map<String, String> keywords = new LinkedHashMap<>();
+        for (String k : List.of("美团", "饿了么", "肯德基", "kfc", "麦当劳", "mcdonald", "星巴克", "starbucks",
+                "瑞幸", "食堂", "餐厅", "饭店", "外卖", "奶茶", "咖啡", "lunch", "dinner", "breakfast", "restaurant")) {
+            keywords.put(k, "Dining");
+        }
+        for (String k : List.of("盒马", "超市", "永辉", "沃尔玛", "家乐福", "生鲜", "菜市场", "supermarket", "groceries")) {
+            keywords.put(k, "Groceries");
+        }
+        for (String k : List.of("优衣库", "uniqlo", "zara", "h&m", "服装", "鞋")) keywords.put(k, "Clothing");
+        for (String k : List.of("日用品", "洗衣液", "纸巾", "牙膏", "名创优品")) keywords.put(k, "Daily Necessities");
+        for (String k : List.of("滴滴", "地铁", "公交", "12306", "铁路", "航空", "机票", "加油", "哈啰", "出租车",
+                "高德打车", "metro", "subway", "taxi", "uber")) {
+            keywords.put(k, "Transportation");
+        }
+        for (String k : List.of("电影", "猫眼", "淘票票", "网易云", "腾讯视频", "爱奇艺", "优酷", "bilibili", "steam",
+                "游戏", "ktv", "netflix", "spotify")) {
+            keywords.put(k, "Entertainment");
+        }
+        for (String k : List.of("房租", "物业", "自如", "链家", "水费", "电费", "燃气")) keywords.put(k, "Housing");
+        for (String k : List.of("中国移动", "中国联通", "中国电信", "话费", "流量", "宽带")) keywords.put(k, "Communication");
+        for (String k : List.of("学费", "培训", "教材", "书店", "课程", "考试", "textbook", "course")) keywords.put(k, "Education");
+        for (String k : List.of("医院", "药店", "药房", "大药房", "诊所", "体检", "pharmacy", "hospital")) keywords.put(k, "Medical");
+        for (String k : List.of("保险", "手续费", "基金", "还款", "花呗", "白条")) keywords.put(k, "Financial Services");
+        for (String k : List.of("工资", "salary", "payroll")) keywords.put(k, "Salary");
+        return keywords;
+    }
+}
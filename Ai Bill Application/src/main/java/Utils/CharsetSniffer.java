@@ -0,0 +1,95 @@
+package Utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.*;
+
+/**
+ * Guesses the encoding of a text file from its first few KB and opens a decoding reader over it.
+ *
+ * Order of checks: byte order mark (UTF-8, UTF-16 LE/BE), then "is the sample valid UTF-8", and if not
+ * GB18030, a superset of GBK/GB2312 used by Alipay and WeChat Pay exports on Chinese Windows. Plain ASCII
+ * counts as UTF-8. The bytes are decoded as they are read; nothing is converted up front.
+ */
+public final class CharsetSniffer {
+
+    public static final Charset GB18030 = Charset.forName("GB18030");
+    static final int SAMPLE_SIZE = 8 * 1024;
+
+    private CharsetSniffer() {
+    }
+
+    /**
+     * Result of sniffing: the charset and the length of the byte order mark to skip.
+     */
+    public static final class Detection {
+        private final Charset charset;
+        private final int bomLength;
+
+        Detection(Charset charset, int bomLength) {
+            this.charset = charset;
+            this.bomLength = bomLength;
+        }
+
+        public Charset getCharset() {
+            return charset;
+        }
+
+        public int getBomLength() {
+            return bomLength;
+        }
+    }
+
+    /**
+     * @param sample The first bytes of the file.
+     * @param length How many bytes of the sample are valid.
+     */
+    public static Detection detect(byte[] sample, int length) {
+        if (length >= 3 && (sample[0] & 0xff) == 0xEF && (sample[1] & 0xff) == 0xBB && (sample[2] & 0xff) == 0xBF) {
+            return new Detection(StandardCharsets.UTF_8, 3);
+        }
+        if (length >= 2 && (sample[0] & 0xff) == 0xFF && (sample[1] & 0xff) == 0xFE) {
+            return new Detection(StandardCharsets.UTF_16LE, 2);
+        }
+        if (length >= 2 && (sample[0] & 0xff) == 0xFE && (sample[1] & 0xff) == 0xFF) {
+            return new Detection(StandardCharsets.UTF_16BE, 2);
+        }
+        return new Detection(isUtf8(sample, length) ? StandardCharsets.UTF_8 : GB18030, 0);
+    }
+
+    /**
+     * Sniffs the stream and returns a reader that decodes it, positioned after any byte order mark.
+     * Malformed bytes are replaced rather than failing the whole file.
+     *
+     * @param in The raw stream; it is wrapped (and closed with the reader).
+     */
+    public static Reader newReader(InputStream in) throws IOException {
+        BufferedInputStream buffered = in instanceof BufferedInputStream
+                ? (BufferedInputStream) in
+                : new BufferedInputStream(in, 64 * 1024);
+        buffered.mark(SAMPLE_SIZE);
+        byte[] sample = buffered.readNBytes(SAMPLE_SIZE);
+        buffered.reset();
+        Detection detection = detect(sample, sample.length);
+        buffered.skipNBytes(detection.getBomLength());
+        CharsetDecoder decoder = detection.getCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return new InputStreamReader(buffered, decoder);
+    }
+
+    /**
+     * Strict UTF-8 check of the sample. A multi-byte sequence cut off by the end of the sample is fine.
+     */
+    private static boolean isUtf8(byte[] sample, int length) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer bytes = ByteBuffer.wrap(sample, 0, length);
+        CharBuffer chars = CharBuffer.allocate(length + 1);
+        // endOfInput=false: an incomplete sequence at the end is left in the buffer instead of reported
+        CoderResult result = decoder.decode(bytes, chars, false);
+        return !result.isError() && bytes.remaining() < 4;
+    }
+}
@@ -0,0 +1,114 @@
+package Utils;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calling a dependency that keeps failing. After {@code failureThreshold} consecutive failures the
+ * breaker opens and callers are turned away at once; after {@code openMillis} one trial call is let
+ * through (half-open): its success closes the breaker, its failure opens it again.
+ *
+ * Callers ask {@link #tryAcquire()} before the call and report the outcome with {@link #onSuccess()},
+ * {@link #onFailure()} or, if the call ended without telling anything about the dependency (cancelled),
+ * {@link #onIgnored()}.
+ */
+public final class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+    private State state = State.CLOSED; // Guarded by this
+    private int consecutiveFailures; // Guarded by this
+    private long openedAt; // Guarded by this
+    private boolean trialInFlight; // Guarded by this
+    private long openCount; // Guarded by this
+    private long rejectedCount; // Guarded by this
+
+    /**
+     * @param failureThreshold Consecutive failures that open the breaker (at least 1).
+     * @param openMillis How long calls are turned away before a trial call.
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this(failureThreshold, openMillis, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(int failureThreshold, long openMillis, LongSupplier clock) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @return True if the call may go ahead (its outcome must then be reported).
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.getAsLong() - openedAt >= openMillis) {
+                    state = State.HALF_OPEN;
+                    trialInFlight = true;
+                    return true;
+                }
+                break;
+            case HALF_OPEN:
+                if (!trialInFlight) {
+                    trialInFlight = true;
+                    return true;
+                }
+                break;
+        }
+        rejectedCount++;
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+            openCount++;
+        }
+    }
+
+    /**
+     * The call ended without an outcome; a half-open breaker lets the next call be the trial.
+     */
+    public synchronized void onIgnored() {
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return Milliseconds until an open breaker lets a trial call through (0 if not open).
+     */
+    public synchronized long getRemainingOpenMillis() {
+        return state == State.OPEN ? Math.max(0, openedAt + openMillis - clock.getAsLong()) : 0;
+    }
+
+    /**
+     * @return How many times the breaker opened.
+     */
+    public synchronized long getOpenCount() {
+        return openCount;
+    }
+
+    /**
+     * @return Calls turned away because the breaker was open.
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+}
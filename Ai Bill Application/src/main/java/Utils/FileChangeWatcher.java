@@ -0,0 +1,127 @@
+package Utils;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches data directories with a {@link WatchService} and reports changed files to a listener.
+ * Runs on a single daemon thread. Subdirectories of a recursively registered root are registered
+ * as they appear. On an OVERFLOW event (events were dropped) the listener receives null,
+ * meaning "anything may have changed".
+ */
+public class FileChangeWatcher implements AutoCloseable {
+
+    private final WatchService watchService;
+    private final Consumer<Path> listener; // Receives absolute, normalized file paths (or null on overflow)
+    private final Set<Path> registeredDirectories = ConcurrentHashMap.newKeySet();
+    private final Set<Path> recursiveRoots = ConcurrentHashMap.newKeySet();
+    private final Thread watchThread;
+    private volatile boolean running = true;
+
+    public FileChangeWatcher(Consumer<Path> listener) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.listener = listener;
+        this.watchThread = new Thread(this::processEvents, "data-file-watcher");
+        this.watchThread.setDaemon(true); // Must never keep the application alive
+        this.watchThread.start();
+    }
+
+    /**
+     * Registers a directory and all its current and future subdirectories.
+     */
+    public void registerRecursive(Path root) throws IOException {
+        Path dir = root.toAbsolutePath().normalize();
+        if (!Files.isDirectory(dir)) {
+            System.err.println("FileChangeWatcher: Not a directory, not watching: " + dir);
+            return;
+        }
+        recursiveRoots.add(dir);
+        try (Stream<Path> dirs = Files.walk(dir)) {
+            for (Path d : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                registerDirectory(d);
+            }
+        }
+    }
+
+    /**
+     * Registers a single directory (no-op if already registered or missing).
+     */
+    public void registerDirectory(Path directory) {
+        if (directory == null) return;
+        Path dir = directory.toAbsolutePath().normalize();
+        if (!Files.isDirectory(dir) || !registeredDirectories.add(dir)) {
+            return;
+        }
+        try {
+            dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            System.out.println("FileChangeWatcher: Watching directory: " + dir);
+        } catch (IOException e) {
+            registeredDirectories.remove(dir);
+            System.err.println("FileChangeWatcher: Failed to watch directory: " + dir);
+            e.printStackTrace();
+        }
+    }
+
+    private void processEvents() {
+        while (running) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                WatchEvent.Kind<?> kind = event.kind();
+                if (kind == OVERFLOW) {
+                    notifyListener(null);
+                    continue;
+                }
+                Path changed = dir.resolve((Path) event.context()).normalize();
+                if (kind == ENTRY_CREATE && Files.isDirectory(changed) && isUnderRecursiveRoot(changed)) {
+                    registerDirectory(changed); // New user data subdirectory
+                }
+                notifyListener(changed);
+            }
+            if (!key.reset()) {
+                registeredDirectories.remove(dir); // Directory was deleted
+            }
+        }
+        System.out.println("FileChangeWatcher: Watch thread stopped.");
+    }
+
+    private boolean isUnderRecursiveRoot(Path path) {
+        for (Path root : recursiveRoots) {
+            if (path.startsWith(root)) return true;
+        }
+        return false;
+    }
+
+    private void notifyListener(Path changed) {
+        try {
+            listener.accept(changed);
+        } catch (RuntimeException e) {
+            // Keep watching even if one notification fails
+            System.err.println("FileChangeWatcher: Listener failed for " + changed);
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            System.err.println("FileChangeWatcher: Error closing watch service.");
+            e.printStackTrace();
+        }
+        watchThread.interrupt();
+    }
+}
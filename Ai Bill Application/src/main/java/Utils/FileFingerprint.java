@@ -0,0 +1,122 @@
+package Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Identity of a data file's content at a point in time: size, last-modified time and a CRC32 checksum.
+ * Size and mtime come from a single stat call and are used as the fast check on every cache access;
+ * the checksum is only computed when they differ, so that a touched-but-unchanged file is not reparsed.
+ */
+public final class FileFingerprint {
+
+    /** Fingerprint of a file that does not exist. */
+    public static final FileFingerprint MISSING = new FileFingerprint(-1L, -1L, 0L);
+
+    private static final long NO_CHECKSUM = -1L;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long size;
+    private final long lastModifiedMillis;
+    private final long checksum; // NO_CHECKSUM for stat-only fingerprints
+
+    private FileFingerprint(long size, long lastModifiedMillis, long checksum) {
+        this.size = size;
+        this.lastModifiedMillis = lastModifiedMillis;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Size and mtime only (one stat call, no read).
+     */
+    public static FileFingerprint stat(Path path) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileFingerprint(attrs.size(), attrs.lastModifiedTime().toMillis(), NO_CHECKSUM);
+        } catch (IOException e) {
+            return MISSING;
+        }
+    }
+
+    /**
+     * Size, mtime and CRC32 of the whole file.
+     */
+    public static FileFingerprint of(Path path) {
+        FileFingerprint stat = stat(path);
+        if (stat == MISSING) {
+            return MISSING;
+        }
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            return MISSING;
+        }
+        return new FileFingerprint(stat.size, stat.lastModifiedMillis, crc.getValue());
+    }
+
+    /**
+     * Rebuilds a fingerprint from previously stored values (e.g. a snapshot header).
+     */
+    static FileFingerprint restore(long size, long lastModifiedMillis, long checksum) {
+        return new FileFingerprint(size, lastModifiedMillis, checksum);
+    }
+
+    /**
+     * @return true if size and mtime are identical (the checksum is not compared).
+     */
+    public boolean sameStat(FileFingerprint other) {
+        return other != null && size == other.size && lastModifiedMillis == other.lastModifiedMillis;
+    }
+
+    /**
+     * @return true if both fingerprints carry checksums and size + checksum match (mtime is ignored).
+     */
+    public boolean sameContent(FileFingerprint other) {
+        return other != null && checksum != NO_CHECKSUM && other.checksum != NO_CHECKSUM
+                && size == other.size && checksum == other.checksum;
+    }
+
+    public boolean exists() {
+        return size >= 0;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModifiedMillis() {
+        return lastModifiedMillis;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FileFingerprint)) return false;
+        FileFingerprint that = (FileFingerprint) o;
+        return size == that.size && lastModifiedMillis == that.lastModifiedMillis && checksum == that.checksum;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(size, lastModifiedMillis, checksum);
+    }
+
+    @Override
+    public String toString() {
+        return "FileFingerprint{size=" + size + ", mtime=" + lastModifiedMillis + ", crc=" + Long.toHexString(checksum) + "}";
+    }
+}
@@ -0,0 +1,119 @@
+package Utils;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Multi-keyword matcher based on the Aho-Corasick automaton.
+ * All keywords are compiled once into a trie with failure links, so a text is scanned in a single
+ * pass regardless of how many keywords are registered (instead of one String.contains per keyword).
+ * When several keywords occur in the text, the longest one wins (ties go to the earliest occurrence).
+ *
+ * @param <V> The value attached to each keyword (e.g. a standard category name).
+ */
+public final class KeywordMatcher<V> {
+
+    private static final class Node<V> {
+        final Map<Character, Node<V>> children = new HashMap<>();
+        Node<V> fail; // Longest proper suffix that is also a trie path
+        Node<V> output; // Nearest node on the fail chain that ends a keyword
+        V value; // Non-null if a keyword ends here
+        int depth; // Keyword length if value != null
+    }
+
+    private final Node<V> root = new Node<>();
+    private boolean compiled = false;
+    private int size = 0;
+
+    /**
+     * Registers a keyword. Keywords must be added before the first call to {@link #findBest(String)}.
+     * Later registrations of the same keyword overwrite earlier ones.
+     */
+    public void add(String keyword, V value) {
+        if (compiled) {
+            throw new IllegalStateException("KeywordMatcher is already compiled, cannot add: " + keyword);
+        }
+        if (keyword == null || keyword.isEmpty() || value == null) {
+            return;
+        }
+        Node<V> node = root;
+        for (int i = 0; i < keyword.length(); i++) {
+            node = node.children.computeIfAbsent(keyword.charAt(i), c -> new Node<>());
+        }
+        if (node.value == null) size++;
+        node.value = value;
+        node.depth = keyword.length();
+    }
+
+    /**
+     * Builds the failure links (BFS over the trie). Called lazily by the first search.
+     */
+    public synchronized void compile() {
+        if (compiled) return;
+        Queue<Node<V>> queue = new ArrayDeque<>();
+        for (Node<V> child : root.children.values()) {
+            child.fail = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            Node<V> current = queue.poll();
+            for (Map.Entry<Character, Node<V>> entry : current.children.entrySet()) {
+                char c = entry.getKey();
+                Node<V> child = entry.getValue();
+                Node<V> f = current.fail;
+                while (f != null && !f.children.containsKey(c)) {
+                    f = f.fail;
+                }
+                child.fail = (f == null) ? root : f.children.get(c);
+                child.output = (child.fail.value != null) ? child.fail : child.fail.output;
+                queue.add(child);
+            }
+        }
+        compiled = true;
+    }
+
+    /**
+     * Scans the text once and returns the value of the best matching keyword.
+     *
+     * @param text The text to scan (already normalized by the caller).
+     * @return The value of the longest keyword found, or null if no keyword occurs in the text.
+     */
+    public V findBest(String text) {
+        if (text == null || text.isEmpty() || size == 0) {
+            return null;
+        }
+        if (!compiled) compile();
+
+        V best = null;
+        int bestLength = 0;
+        int bestStart = Integer.MAX_VALUE;
+        Node<V> node = root;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            while (node != root && !node.children.containsKey(c)) {
+                node = node.fail;
+            }
+            node = node.children.getOrDefault(c, root);
+
+            // Walk the output chain: every keyword ending at position i
+            for (Node<V> hit = (node.value != null) ? node : node.output; hit != null; hit = hit.output) {
+                int start = i - hit.depth + 1;
+                if (hit.depth > bestLength || (hit.depth == bestLength && start < bestStart)) {
+                    best = hit.value;
+                    bestLength = hit.depth;
+                    bestStart = start;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return Number of distinct keywords registered.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,156 @@
+package Utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets (16 sub-buckets per power of two,
+ * i.e. about 6% relative error), covering 1 ns up to ~18 minutes in a fixed 608-slot array.
+ * Recording is a couple of atomic increments, so it can sit on hot paths such as cache loads.
+ * Also published over JMX as {@link LatencyHistogramMXBean} (see {@link Metrics}).
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // 16
+    private static final int MAX_EXPONENT = 40; // 2^40 ns ~ 18 minutes; larger values go to the last bucket
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records one observation.
+     */
+    public void recordNanos(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        totalNanos.add(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Counts a failed operation (its duration is still recorded by the caller).
+     */
+    public void recordError() {
+        errorCount.increment();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Representative value (midpoint) of a bucket.
+     */
+    static long bucketValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lower + width / 2;
+    }
+
+    /**
+     * @param percentile Between 0 and 100.
+     * @return Approximate latency at the given percentile in nanoseconds (0 if nothing recorded).
+     */
+    public long percentileNanos(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketValue(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+        errorCount.reset();
+        maxNanos.set(0);
+    }
+
+    // --- LatencyHistogramMXBean (milliseconds for readability in JConsole/VisualVM) ---
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / (double) n / 1_000_000.0;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return percentileNanos(50) / 1_000_000.0;
+    }
+
+    @Override
+    public double getP90Millis() {
+        return percentileNanos(90) / 1_000_000.0;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return percentileNanos(99) / 1_000_000.0;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return maxNanos.get() / 1_000_000.0;
+    }
+}
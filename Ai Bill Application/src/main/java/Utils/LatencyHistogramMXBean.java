@@ -0,0 +1,24 @@
+package Utils;
+
+/**
+ * JMX view of one timed operation (registered as AiBill:type=Operation,name=...).
+ */
+public interface LatencyHistogramMXBean {
+    String getName();
+
+    long getCount();
+
+    long getErrorCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+
+    void reset();
+}
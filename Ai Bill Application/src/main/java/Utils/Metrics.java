@@ -0,0 +1,131 @@
+package Utils;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of operation timers.
+ * Every named timer is backed by a {@link LatencyHistogram} and published as a JMX MBean
+ * (AiBill:type=Operation,name=...), so it can be watched in JConsole/VisualVM as well as in the
+ * admin Diagnostics panel.
+ *
+ * Usage:
+ * <pre>
+ *     Metrics.Timer timer = Metrics.startTimer("dao.transactions.load");
+ *     try {
+ *         ...
+ *     } catch (IOException e) {
+ *         timer.failed();
+ *         throw e;
+ *     } finally {
+ *         timer.stop();
+ *     }
+ * </pre>
+ */
+public final class Metrics {
+
+    public static final String JMX_DOMAIN = "AiBill";
+
+    private static final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private Metrics() {} // Prevent instantiation
+
+    /**
+     * A running measurement. Not thread-safe; use one per operation.
+     */
+    public static final class Timer implements AutoCloseable {
+        private final LatencyHistogram histogram;
+        private final long startNanos = System.nanoTime();
+        private boolean stopped = false;
+
+        private Timer(LatencyHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        /**
+         * Marks the operation as failed; the duration is still recorded on stop.
+         */
+        public void failed() {
+            histogram.recordError();
+        }
+
+        /**
+         * Records the elapsed time (only the first call counts).
+         *
+         * @return Elapsed nanoseconds.
+         */
+        public long stop() {
+            long elapsed = System.nanoTime() - startNanos;
+            if (!stopped) {
+                stopped = true;
+                histogram.recordNanos(elapsed);
+            }
+            return elapsed;
+        }
+
+        @Override
+        public void close() {
+            stop();
+        }
+    }
+
+    /**
+     * Starts timing an operation.
+     *
+     * @param name Dotted operation name, e.g. "service.transactions.search".
+     */
+    public static Timer startTimer(String name) {
+        return new Timer(histogram(name));
+    }
+
+    /**
+     * Gets or creates (and registers over JMX) the histogram for an operation.
+     */
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> {
+            LatencyHistogram histogram = new LatencyHistogram(n);
+            registerMBean("type=Operation,name=" + ObjectName.quote(n), histogram);
+            return histogram;
+        });
+    }
+
+    /**
+     * @return All histograms, sorted by name.
+     */
+    public static List<LatencyHistogram> getHistograms() {
+        List<LatencyHistogram> list = new ArrayList<>(histograms.values());
+        list.sort(Comparator.comparing(LatencyHistogram::getName));
+        return list;
+    }
+
+    /**
+     * Clears all recorded values (histograms stay registered).
+     */
+    public static void resetAll() {
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+
+    /**
+     * Registers an MBean under the application's JMX domain. Failures are logged, never thrown:
+     * monitoring must not break the application.
+     *
+     * @param keyProperties e.g. "type=TransactionCache".
+     */
+    public static void registerMBean(String keyProperties, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(mbean, new ObjectName(JMX_DOMAIN + ":" + keyProperties));
+        } catch (InstanceAlreadyExistsException e) {
+            // Already registered (e.g. class reloaded in tests); keep the existing one
+        } catch (JMException | RuntimeException e) {
+            System.err.println("Metrics: Failed to register MBean " + keyProperties + ": " + e.getMessage());
+        }
+    }
+}
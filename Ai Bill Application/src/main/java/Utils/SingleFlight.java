@@ -0,0 +1,157 @@
+package Utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls for the same key into one: the first caller starts the work, callers that
+ * arrive while it is running wait for the same result instead of repeating it. Once the call completes
+ * the key is free again (results are not kept; put a cache in front for that).
+ *
+ * Every caller gets its own future. Cancelling it only stops that caller from waiting; the shared call is
+ * cancelled only when no caller is waiting for it anymore, and then the thread running it is interrupted.
+ *
+ * @param <K> Key type (equal keys share a call).
+ * @param <V> Result type.
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Call<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+
+    /**
+     * One running call and the callers waiting for it.
+     */
+    private static final class Call<V> {
+        final CompletableFuture<V> shared = new CompletableFuture<>();
+        int waiters; // Guarded by this
+        Thread runner; // Guarded by this; set while the work runs
+
+        synchronized boolean join() {
+            if (shared.isCancelled()) {
+                return false; // Abandoned by all its callers: a newcomer must start over
+            }
+            waiters++;
+            return true;
+        }
+
+        /**
+         * A caller stops waiting. The last one to leave an unfinished call cancels it.
+         */
+        synchronized void leave() {
+            if (shared.isDone()) {
+                return;
+            }
+            if (--waiters == 0) {
+                shared.cancel(false);
+                if (runner != null) {
+                    runner.interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts the work on the executor, or joins the identical call that is already running.
+     *
+     * @param key Identifies the call.
+     * @param work Computes the result.
+     * @param executor Runs the work if a new call is started.
+     * @return This caller's view of the result; cancelling it does not affect other callers.
+     */
+    public CompletableFuture<V> submit(K key, Supplier<V> work, Executor executor) {
+        while (true) {
+            Call<V> call = new Call<>();
+            call.waiters = 1;
+            Call<V> existing = inFlight.putIfAbsent(key, call);
+            if (existing == null) {
+                try {
+                    executor.execute(() -> run(key, call, work));
+                } catch (RuntimeException e) { // Rejected: nobody will ever complete the call
+                    inFlight.remove(key, call);
+                    call.shared.completeExceptionally(e);
+                }
+                return follow(call);
+            }
+            if (existing.join()) {
+                joined.incrementAndGet();
+                return follow(existing);
+            }
+            inFlight.remove(key, existing);
+        }
+    }
+
+    /**
+     * @return Calls that did the work.
+     */
+    public long getStartedCount() {
+        return started.get();
+    }
+
+    /**
+     * @return Callers that joined a call already running instead of starting their own.
+     */
+    public long getJoinedCount() {
+        return joined.get();
+    }
+
+    /**
+     * @return Number of keys with a call running right now.
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private void run(K key, Call<V> call, Supplier<V> work) {
+        synchronized (call) {
+            if (call.shared.isDone()) {
+                inFlight.remove(key, call); // Cancelled before it started
+                return;
+            }
+            call.runner = Thread.currentThread();
+        }
+        started.incrementAndGet();
+        V result = null;
+        Throwable failure = null;
+        try {
+            result = work.get();
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        } finally {
+            synchronized (call) {
+                call.runner = null;
+                if (call.shared.isCancelled()) {
+                    Thread.interrupted(); // Clear our own interrupt before the thread goes back to its pool
+                }
+            }
+            // Free the key first: a caller arriving after completion starts a new call instead of joining
+            inFlight.remove(key, call);
+        }
+        if (failure != null) {
+            call.shared.completeExceptionally(failure);
+        } else {
+            call.shared.complete(result);
+        }
+    }
+
+    private CompletableFuture<V> follow(Call<V> call) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        call.shared.whenComplete((value, error) -> {
+            if (error != null) {
+                mine.completeExceptionally(error);
+            } else {
+                mine.complete(value);
+            }
+        });
+        mine.whenComplete((value, error) -> {
+            if (mine.isCancelled()) {
+                call.leave();
+            }
+        });
+        return mine;
+    }
+}
@@ -0,0 +1,139 @@
+package Utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Reader that strips the wrapping of a raw payment-app statement so a CSV parser sees only the table.
+ *
+ * Alipay and WeChat Pay exports start with an account/period preamble, and Alipay ends with a summary block
+ * below a dashed line. This reader looks for the header row within the first {@link #MAX_PREAMBLE_LINES}
+ * lines (a line the given predicate accepts), drops what comes before it, and, when it dropped a preamble,
+ * stops at the dashed footer line. It works line by line on the decoded stream, so no converted copy of the
+ * file is made. Column names are left as they are; mapping them is up to the parser.
+ *
+ * Files whose first line is the header, and anything in which no header row is found, are passed through
+ * unchanged.
+ */
+public final class StatementReader extends Reader {
+
+    static final int MAX_PREAMBLE_LINES = 64;
+
+    private final BufferedReader in;
+    private final Predicate<List<String>> isHeader;
+    private String pending = ""; // Text to hand out before reading on
+    private int pendingPos;
+    private boolean started;
+    private boolean lineMode; // Statement export: copy line by line and stop at the footer
+    private boolean eof;
+
+    /**
+     * @param in The decoded statement.
+     * @param isHeader Tells whether a line's comma-separated cells are the header row.
+     */
+    public StatementReader(Reader in, Predicate<List<String>> isHeader) {
+        this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 64 * 1024);
+        this.isHeader = isHeader;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!started) {
+            start();
+        }
+        while (true) {
+            if (pendingPos < pending.length()) {
+                int n = Math.min(len, pending.length() - pendingPos);
+                pending.getChars(pendingPos, pendingPos + n, cbuf, off);
+                pendingPos += n;
+                return n;
+            }
+            if (eof) {
+                return -1;
+            }
+            if (!lineMode) {
+                return in.read(cbuf, off, len); // Plain CSV: no per-line work
+            }
+            String line = in.readLine();
+            if (line == null || isFooter(line)) {
+                eof = true;
+                return -1;
+            }
+            pending = line + "\n";
+            pendingPos = 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads up to the header row and decides how to handle the rest.
+     */
+    private void start() throws IOException {
+        started = true;
+        List<String> lookahead = new ArrayList<>();
+        for (int i = 0; i < MAX_PREAMBLE_LINES; i++) {
+            String line = in.readLine();
+            if (line == null) {
+                break;
+            }
+            if (isHeader.test(headerCells(line))) {
+                pending = line + "\n";
+                if (i > 0) {
+                    lineMode = true; // A statement export: watch for its footer
+                    System.out.println("StatementReader: Skipped " + i + " preamble lines before the header.");
+                }
+                return;
+            }
+            lookahead.add(line);
+        }
+        // No header row found: hand everything out as it was
+        StringBuilder sb = new StringBuilder();
+        for (String line : lookahead) {
+            sb.append(line).append('\n');
+        }
+        pending = sb.toString();
+    }
+
+    private static List<String> headerCells(String line) {
+        List<String> cells = new ArrayList<>();
+        for (String cell : line.split(",", -1)) {
+            String trimmed = cell.trim();
+            if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+                trimmed = trimmed.substring(1, trimmed.length() - 1).trim();
+            }
+            cells.add(trimmed);
+        }
+        // Exports often end every row with a comma; drop trailing empty cells
+        while (!cells.isEmpty() && cells.get(cells.size() - 1).isEmpty()) {
+            cells.remove(cells.size() - 1);
+        }
+        return cells;
+    }
+
+    /**
+     * A line of only dashes/equals signs (and separators) ends the data of an export.
+     */
+    static boolean isFooter(String line) {
+        int marks = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '-' || c == '=') {
+                marks++;
+            } else if (c != ',' && !Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return marks >= 5;
+    }
+}
@@ -0,0 +1,108 @@
+package Utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limiter: tokens are added at a steady rate up to a capacity (the allowed burst), and each
+ * operation takes one. When the bucket is empty a caller reserves the next token and waits for it, so
+ * waiting callers are served in arrival order at exactly the configured rate.
+ *
+ * The rate can be changed at run time (e.g. lowered when the server signals overload).
+ */
+public final class TokenBucket {
+
+    private final double capacity;
+    private final LongSupplier nanoClock;
+    private double ratePerSecond; // Guarded by this
+    private double tokens; // Guarded by this; negative when future tokens are reserved
+    private long lastRefillNanos; // Guarded by this
+
+    /**
+     * @param ratePerSecond Tokens added per second.
+     * @param capacity Max tokens stored (at least 1); the bucket starts full.
+     */
+    public TokenBucket(double ratePerSecond, double capacity) {
+        this(ratePerSecond, capacity, System::nanoTime);
+    }
+
+    TokenBucket(double ratePerSecond, double capacity, LongSupplier nanoClock) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + ratePerSecond);
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = Math.max(1, capacity);
+        this.nanoClock = nanoClock;
+        this.tokens = this.capacity;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes a token, waiting for it if necessary.
+     *
+     * @return False (and nothing taken) if the token would not be available within the timeout.
+     */
+    public boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long waitNanos = reserve(unit.toNanos(timeout));
+        if (waitNanos < 0) {
+            return false;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return true;
+    }
+
+    /**
+     * Takes a token if one is available right now.
+     */
+    public boolean tryAcquire() {
+        return reserve(0) == 0;
+    }
+
+    /**
+     * Reserves the next token.
+     *
+     * @return Nanoseconds until the reserved token is due (0 if available now), or -1 if that is longer
+     * than maxWaitNanos (then nothing is reserved).
+     */
+    synchronized long reserve(long maxWaitNanos) {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        long waitNanos = (long) Math.ceil((1 - tokens) / ratePerSecond * 1_000_000_000L);
+        if (waitNanos > maxWaitNanos) {
+            return -1;
+        }
+        tokens -= 1;
+        return waitNanos;
+    }
+
+    public synchronized void setRate(double ratePerSecond) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + ratePerSecond);
+        }
+        refill(); // Tokens earned so far count at the old rate
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    public synchronized double getRate() {
+        return ratePerSecond;
+    }
+
+    /**
+     * @return Tokens available now (negative if callers are waiting for reserved tokens).
+     */
+    public synchronized double getAvailableTokens() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1_000_000_000.0 * ratePerSecond);
+        lastRefillNanos = now;
+    }
+}
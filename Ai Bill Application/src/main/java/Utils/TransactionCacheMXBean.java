@@ -0,0 +1,30 @@
+package Utils;
+
+/**
+ * JMX view of the shared transaction cache in {@link CacheManager} (registered as AiBill:type=TransactionCache).
+ */
+public interface TransactionCacheMXBean {
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getLoadCount();
+
+    long getLoadFailureCount();
+
+    double getAverageLoadPenaltyMillis();
+
+    long getEvictionCount();
+
+    long getEvictionWeight();
+
+    long getCachedFileCount();
+
+    long getCachedRowCount();
+
+    long getEstimatedWeightBytes();
+
+    long getMaximumWeightBytes();
+}
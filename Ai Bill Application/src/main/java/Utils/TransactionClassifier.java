@@ -0,0 +1,475 @@
+package Utils;
+
+import Constants.StandardCategories;
+import DAO.Impl.CsvTransactionDao;
+import model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * On-device category classifier learned from the user's own categorised transactions: multinomial naive Bayes
+ * over tokens of counterparty, commodity and remarks. Used after the {@link CategoryResolver} rules and before
+ * asking the AI, so counterparties the user has categorised before are answered without a round trip.
+ *
+ * Tokens are the whole counterparty and commodity, their words (character pairs for Chinese text, which has
+ * no spaces) and the words of the remarks, each tagged with its field. The label of a row is its transaction
+ * type resolved to a standard category; rows whose type does not resolve are not learned from.
+ * Classes that contradict the row's In/Out direction are not considered. The confidence is the posterior
+ * probability of the best class, so callers can fall back to the AI below a threshold.
+ *
+ * Training is incremental: {@link #sync} learns the rows of a new snapshot that it has not seen and forgets
+ * the ones that are gone (snapshots share unchanged rows, see {@link TransactionSnapshot}), so an edit
+ * costs a few map updates instead of a full retrain.
+ */
+public final class TransactionClassifier {
+
+    private static final String NO_LABEL = ""; // Learned-row marker for rows without a usable category
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final CategoryResolver resolver;
+    private final Map<String, Integer> examplesByClass = new HashMap<>();
+    private final Map<String, Map<String, Integer>> tokenCountsByClass = new HashMap<>();
+    private final Map<String, Integer> tokenTotalByClass = new HashMap<>();
+    private final Map<String, Integer> vocabulary = new HashMap<>(); // Token -> occurrences in all classes
+    private final IdentityHashMap<Transaction, String> learned = new IdentityHashMap<>(); // Row -> label learned
+    private final Map<String, List<Transaction>> learnedByOrderNumber = new HashMap<>(); // Synced labelled rows, for reclassify
+    private List<Transaction> lastSynced; // Identity of the last history passed to sync
+    private int examples;
+
+    /**
+     * The best class for a transaction.
+     */
+    public static final class Prediction {
+        private final String category;
+        private final double confidence;
+
+        Prediction(String category, double confidence) {
+            this.category = category;
+            this.confidence = confidence;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        /**
+         * @return Posterior probability of the category (0 to 1).
+         */
+        public double getConfidence() {
+            return confidence;
+        }
+
+        @Override
+        public String toString() {
+            return category + String.format(" (%.3f)", confidence);
+        }
+    }
+
+    /**
+     * Result of {@link #evaluate}: how the classifier does on rows it was not trained on.
+     */
+    public static final class Evaluation {
+        private final int trainSize;
+        private final int testSize;
+        private final int answered; // Confident answers (no fallback)
+        private final int answeredCorrect;
+        private final int topCorrect; // Best class right, whatever the confidence
+        private final long classifyNanos; // Total time spent in classify
+
+        Evaluation(int trainSize, int testSize, int answered, int answeredCorrect, int topCorrect, long classifyNanos) {
+            this.trainSize = trainSize;
+            this.testSize = testSize;
+            this.answered = answered;
+            this.answeredCorrect = answeredCorrect;
+            this.topCorrect = topCorrect;
+            this.classifyNanos = classifyNanos;
+        }
+
+        public int getTrainSize() {
+            return trainSize;
+        }
+
+        public int getTestSize() {
+            return testSize;
+        }
+
+        /**
+         * @return Share of the confident answers that were right.
+         */
+        public double getAccuracy() {
+            return answered == 0 ? 0 : (double) answeredCorrect / answered;
+        }
+
+        /**
+         * @return Share of the held-out rows that would have gone to the AI.
+         */
+        public double getFallbackRate() {
+            return testSize == 0 ? 0 : (double) (testSize - answered) / testSize;
+        }
+
+        /**
+         * @return Share of the held-out rows whose best class was right, ignoring the threshold.
+         */
+        public double getTopAccuracy() {
+            return testSize == 0 ? 0 : (double) topCorrect / testSize;
+        }
+
+        /**
+         * @return Mean time of one classification in microseconds.
+         */
+        public double getMeanClassifyMicros() {
+            return testSize == 0 ? 0 : classifyNanos / 1000.0 / testSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("trained on %d, tested on %d: accuracy %.1f%% of %d confident answers, fallback rate %.1f%%, "
+                            + "best-class accuracy %.1f%%, %.1f us per classification", trainSize, testSize, getAccuracy() * 100,
+                    answered, getFallbackRate() * 100, getTopAccuracy() * 100, getMeanClassifyMicros());
+        }
+    }
+
+    /**
+     * Classifier labelling rows with the shared {@link CategoryResolver}.
+     */
+    public TransactionClassifier() {
+        this(CategoryResolver.getInstance());
+    }
+
+    /**
+     * @param resolver Maps the transaction types of the history to standard categories.
+     */
+    public TransactionClassifier(CategoryResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Brings the model up to date with the user's history: learns new rows, forgets removed ones.
+     * Cheap if the same snapshot is passed again.
+     *
+     * @param history All of the user's transactions (e.g. the current {@link TransactionSnapshot}).
+     */
+    public synchronized void sync(List<Transaction> history) {
+        if (history == lastSynced) {
+            return;
+        }
+        IdentityHashMap<Transaction, Boolean> current = new IdentityHashMap<>(history.size() * 2);
+        int added = 0;
+        for (Transaction transaction : history) {
+            if (transaction == null || current.put(transaction, Boolean.TRUE) != null) {
+                continue;
+            }
+            if (!learned.containsKey(transaction)) {
+                String label = label(transaction);
+                learned.put(transaction, label == null ? NO_LABEL : label);
+                if (label != null) {
+                    update(transaction, label, 1);
+                    indexOrderNumber(transaction, true);
+                    added++;
+                }
+            }
+        }
+        int removed = 0;
+        for (Iterator<Map.Entry<Transaction, String>> it = learned.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Transaction, String> entry = it.next();
+            if (!current.containsKey(entry.getKey())) {
+                if (!entry.getValue().isEmpty()) {
+                    update(entry.getKey(), entry.getValue(), -1);
+                    indexOrderNumber(entry.getKey(), false);
+                    removed++;
+                }
+                it.remove();
+            }
+        }
+        lastSynced = history;
+        if (added > 0 || removed > 0) {
+            System.out.println("TransactionClassifier: Learned " + added + " and forgot " + removed + " categorised rows ("
+                    + examples + " examples, " + vocabulary.size() + " tokens, " + examplesByClass.size() + " categories).");
+        }
+    }
+
+    /**
+     * Learns from one categorised row (ignored if its type is not a known category).
+     * Not tracked for {@link #sync}; use one or the other on a classifier.
+     *
+     * @return True if the row was learned from.
+     */
+    synchronized boolean learn(Transaction transaction) {
+        String label = label(transaction);
+        if (label == null) {
+            return false;
+        }
+        update(transaction, label, 1);
+        return true;
+    }
+
+    /**
+     * @return The most likely category of the transaction, or null if none of its tokens has been seen
+     *         (or no category fits its In/Out direction).
+     */
+    public synchronized Prediction classify(Transaction transaction) {
+        if (transaction == null || examples == 0) {
+            return null;
+        }
+        return predict(transaction);
+    }
+
+    /**
+     * Like {@link #classify}, for a row that may itself be in the synced history (e.g. one being edited):
+     * its own learned label is left out, so the answer comes from the other rows only. The row is matched
+     * by identity and by order number, since the row being edited is usually a copy.
+     */
+    public synchronized Prediction reclassify(Transaction transaction) {
+        if (transaction == null || examples == 0) {
+            return null;
+        }
+        List<Transaction> ownRows = new ArrayList<>(1);
+        if (!learned.getOrDefault(transaction, NO_LABEL).isEmpty()) {
+            ownRows.add(transaction);
+        }
+        String orderNumber = orderNumber(transaction);
+        if (orderNumber != null) {
+            for (Transaction row : learnedByOrderNumber.getOrDefault(orderNumber, List.of())) {
+                if (row != transaction) {
+                    ownRows.add(row);
+                }
+            }
+        }
+        for (Transaction row : ownRows) {
+            update(row, learned.get(row), -1);
+        }
+        try {
+            return examples == 0 ? null : predict(transaction);
+        } finally {
+            for (Transaction row : ownRows) {
+                update(row, learned.get(row), 1); // Put the counts back
+            }
+        }
+    }
+
+    private Prediction predict(Transaction transaction) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String token : tokens(transaction)) {
+            if (vocabulary.containsKey(token)) { // Unseen tokens say nothing about any class
+                counts.merge(token, 1, Integer::sum);
+            }
+        }
+        if (counts.isEmpty()) {
+            return null;
+        }
+        boolean income = isIncome(transaction.getInOut());
+        boolean expense = isExpense(transaction.getInOut());
+        int classCount = examplesByClass.size();
+        int vocabularySize = vocabulary.size();
+
+        List<String> classes = new ArrayList<>();
+        List<Double> scores = new ArrayList<>();
+        double best = Double.NEGATIVE_INFINITY;
+        for (Map.Entry<String, Integer> entry : examplesByClass.entrySet()) {
+            String category = entry.getKey();
+            if ((income && StandardCategories.isStandardExpenseCategory(category))
+                    || (expense && StandardCategories.isStandardIncomeCategory(category))) {
+                continue;
+            }
+            // Log prior plus log likelihood of each token, both with add-one smoothing
+            double score = Math.log((entry.getValue() + 1.0) / (examples + classCount));
+            Map<String, Integer> tokenCounts = tokenCountsByClass.get(category);
+            double denominator = Math.log(tokenTotalByClass.getOrDefault(category, 0) + vocabularySize);
+            for (Map.Entry<String, Integer> token : counts.entrySet()) {
+                score += token.getValue() * (Math.log(tokenCounts.getOrDefault(token.getKey(), 0) + 1.0) - denominator);
+            }
+            classes.add(category);
+            scores.add(score);
+            best = Math.max(best, score);
+        }
+        if (classes.isEmpty()) {
+            return null;
+        }
+        // Posterior of the best class: softmax of the scores, shifted by the maximum to avoid underflow
+        double sum = 0;
+        int bestIndex = 0;
+        for (int i = 0; i < scores.size(); i++) {
+            sum += Math.exp(scores.get(i) - best);
+            if (scores.get(i) == best) {
+                bestIndex = i;
+            }
+        }
+        return new Prediction(classes.get(bestIndex), 1.0 / sum);
+    }
+
+    /**
+     * @return Categorised rows learned from.
+     */
+    public synchronized int getExampleCount() {
+        return examples;
+    }
+
+    /**
+     * @return The standard category of the row's transaction type, or null if it has none.
+     */
+    String label(Transaction transaction) {
+        return transaction == null ? null : resolver.resolveType(transaction.getTransactionType());
+    }
+
+    private void indexOrderNumber(Transaction transaction, boolean add) {
+        String orderNumber = orderNumber(transaction);
+        if (orderNumber == null) {
+            return;
+        }
+        if (add) {
+            learnedByOrderNumber.computeIfAbsent(orderNumber, k -> new ArrayList<>(1)).add(transaction);
+            return;
+        }
+        List<Transaction> rows = learnedByOrderNumber.get(orderNumber);
+        if (rows != null) {
+            rows.removeIf(row -> row == transaction);
+            if (rows.isEmpty()) {
+                learnedByOrderNumber.remove(orderNumber);
+            }
+        }
+    }
+
+    /**
+     * @return The trimmed order number, or null if it is blank.
+     */
+    private static String orderNumber(Transaction transaction) {
+        String orderNumber = transaction.getOrderNumber();
+        return orderNumber == null || orderNumber.isBlank() ? null : orderNumber.trim();
+    }
+
+    private void update(Transaction transaction, String label, int delta) {
+        examples += delta;
+        add(examplesByClass, label, delta);
+        Map<String, Integer> tokenCounts = tokenCountsByClass.computeIfAbsent(label, k -> new HashMap<>());
+        for (String token : tokens(transaction)) {
+            add(tokenCounts, token, delta);
+            add(tokenTotalByClass, label, delta);
+            add(vocabulary, token, delta);
+        }
+        if (!examplesByClass.containsKey(label)) {
+            tokenCountsByClass.remove(label);
+            tokenTotalByClass.remove(label);
+        }
+    }
+
+    private static void add(Map<String, Integer> counts, String key, int delta) {
+        counts.merge(key, delta, (a, b) -> a + b == 0 ? null : a + b); // Drop keys that reach zero
+    }
+
+    /**
+     * @return The row's features, e.g. "cp=meituan", "cp:美团", "cm:lunch", "rm:weekly".
+     */
+    static List<String> tokens(Transaction transaction) {
+        List<String> tokens = new ArrayList<>();
+        addField(tokens, "cp", transaction.getCounterparty(), true);
+        addField(tokens, "cm", transaction.getCommodity(), true);
+        addField(tokens, "rm", transaction.getRemarks(), false);
+        return tokens;
+    }
+
+    private static void addField(List<String> tokens, String field, String text, boolean whole) {
+        String normalized = CategoryResolver.normalize(text);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        if (whole) {
+            tokens.add(field + "=" + normalized); // Exact counterparty/commodity is the strongest hint
+        }
+        for (String word : WORD_SEPARATOR.split(normalized)) {
+            if (word.isEmpty() || word.chars().allMatch(Character::isDigit)) {
+                continue; // Order numbers, amounts, dates
+            }
+            if (word.codePoints().anyMatch(c -> Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN)) {
+                int[] chars = word.codePoints().toArray();
+                if (chars.length == 1) {
+                    tokens.add(field + ":" + word);
+                }
+                for (int i = 0; i + 1 < chars.length; i++) {
+                    tokens.add(field + ":" + new String(chars, i, 2));
+                }
+            } else if (word.length() > 1) {
+                tokens.add(field + ":" + word);
+            }
+        }
+    }
+
+    private static boolean isIncome(String inOut) {
+        return inOut != null && (inOut.trim().equalsIgnoreCase("Income") || inOut.trim().equalsIgnoreCase("In"));
+    }
+
+    private static boolean isExpense(String inOut) {
+        return inOut != null && (inOut.trim().equalsIgnoreCase("Expense") || inOut.trim().equalsIgnoreCase("Out"));
+    }
+
+    /**
+     * Trains on part of the categorised rows and classifies the rest.
+     *
+     * @param transactions The history (rows without a usable category are skipped).
+     * @param testShare Share of the rows held out for testing (0 to 1), picked at random.
+     * @param minConfidence Confidence below which an answer counts as a fallback to the AI.
+     * @param seed Seed of the split.
+     * @param resolver Labels the rows.
+     */
+    public static Evaluation evaluate(List<Transaction> transactions, double testShare, double minConfidence, long seed,
+                                      CategoryResolver resolver) {
+        TransactionClassifier classifier = new TransactionClassifier(resolver);
+        List<Transaction> labelled = new ArrayList<>();
+        for (Transaction transaction : transactions) {
+            if (classifier.label(transaction) != null) {
+                labelled.add(transaction);
+            }
+        }
+        Collections.shuffle(labelled, new Random(seed));
+        int testSize = (int) Math.round(labelled.size() * testShare);
+        List<Transaction> test = labelled.subList(0, testSize);
+        List<Transaction> train = labelled.subList(testSize, labelled.size());
+        train.forEach(classifier::learn);
+
+        int answered = 0;
+        int answeredCorrect = 0;
+        int topCorrect = 0;
+        long classifyNanos = 0;
+        for (Transaction transaction : test) {
+            long start = System.nanoTime();
+            Prediction prediction = classifier.classify(transaction);
+            classifyNanos += System.nanoTime() - start;
+            boolean correct = prediction != null && prediction.getCategory().equals(classifier.label(transaction));
+            if (correct) {
+                topCorrect++;
+            }
+            if (prediction != null && prediction.getConfidence() >= minConfidence) {
+                answered++;
+                if (correct) {
+                    answeredCorrect++;
+                }
+            }
+        }
+        return new Evaluation(train.size(), test.size(), answered, answeredCorrect, topCorrect, classifyNanos);
+    }
+
+    /**
+     * Reports accuracy and fallback rate on a transaction file.
+     *
+     * @param args File path, optional held-out share (default 0.2) and confidence threshold (default 0.9).
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: TransactionClassifier <transactions.csv> [test share] [min confidence]");
+            return;
+        }
+        double testShare = args.length > 1 ? Double.parseDouble(args[1]) : 0.2;
+        double minConfidence = args.length > 2 ? Double.parseDouble(args[2]) : 0.9;
+        List<Transaction> transactions = new CsvTransactionDao().loadFromCSV(args[0]);
+        evaluate(transactions, testShare, minConfidence, 7, CategoryResolver.getInstance()); // Warm-up, so the timing is not JIT time
+        Evaluation evaluation = evaluate(transactions, testShare, minConfidence, 42, CategoryResolver.getInstance());
+        System.out.println("TransactionClassifier: " + args[0] + " at confidence " + minConfidence + ": " + evaluation);
+    }
+}
@@ -0,0 +1,68 @@
+package Utils;
+
+import model.Transaction;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Immutable, versioned view of one transaction file, as published by {@link CacheManager}.
+ *
+ * The rows live in an array that is never written after construction, so any number of threads can
+ * iterate a snapshot without locks or defensive copies. Writers never change a published snapshot; they
+ * build the next one (copying only the rows they edit, see {@link Transaction#Transaction(Transaction)})
+ * and publish it, and readers keep the version they already hold. The generation increases with every
+ * publication, so callers can tell whether the data changed since they last looked.
+ *
+ * All mutating List methods throw UnsupportedOperationException. The Transaction objects themselves
+ * are shared and must be treated as read-only.
+ */
+public final class TransactionSnapshot extends AbstractList<Transaction> implements RandomAccess {
+
+    private final Transaction[] rows;
+    private final long generation;
+    private final FileFingerprint fingerprint;
+
+    /**
+     * @param rows The rows (copied into the snapshot's own array).
+     * @param generation Publication number, increasing per published snapshot.
+     * @param fingerprint Fingerprint of the file content the rows correspond to.
+     */
+    public TransactionSnapshot(Collection<Transaction> rows, long generation, FileFingerprint fingerprint) {
+        this.rows = rows.toArray(new Transaction[0]);
+        this.generation = generation;
+        this.fingerprint = fingerprint;
+    }
+
+    @Override
+    public Transaction get(int index) {
+        return rows[index];
+    }
+
+    @Override
+    public int size() {
+        return rows.length;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public FileFingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Same rows and generation with an updated fingerprint (the file was only touched). Shares the row array.
+     */
+    TransactionSnapshot withFingerprint(FileFingerprint newFingerprint) {
+        return new TransactionSnapshot(rows, generation, newFingerprint);
+    }
+
+    private TransactionSnapshot(Transaction[] rows, long generation, FileFingerprint fingerprint) {
+        this.rows = rows;
+        this.generation = generation;
+        this.fingerprint = fingerprint;
+    }
+}
@@ -0,0 +1,379 @@
+package Utils;
+
+import model.Transaction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Second cache tier: a compact binary copy of each parsed transaction file on local disk.
+ * After a restart, {@link CacheManager} reads the snapshot instead of parsing the CSV again, as long as the
+ * CSV still has the size and mtime recorded in the snapshot.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *     int    MAGIC, int VERSION
+ *     long   CSV size, long CSV mtime, long CSV checksum
+ *     string CSV path (absolute, normalized)
+ *     int    row count
+ *     rows   10 strings + 1 double per transaction, in CSV column order
+ *     long   CRC32 of everything above
+ * </pre>
+ * Strings are an int byte length (-1 for null) followed by UTF-8 bytes.
+ *
+ * Snapshots are written on a single background thread (rewrites of the same file are coalesced) to a temp
+ * file and atomically moved into place, so readers only ever see complete snapshots. Any snapshot that
+ * does not check out (wrong version, different CSV, bad CRC, truncated) is treated as a miss.
+ */
+public class TransactionSnapshotStore {
+
+    private static final int MAGIC = 0x41425331; // "ABS1"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".snap";
+    // Small snapshots are read into the heap; mapping costs more than it saves below this size, and
+    // a mapped file cannot be replaced on Windows until the mapping is garbage collected
+    private static final long MAP_THRESHOLD_BYTES = 256 * 1024;
+
+    private final Path snapshotDir;
+    private final ExecutorService writer;
+    // Latest pending rows per CSV; queued writes for the same file collapse into the newest one
+    private final ConcurrentHashMap<String, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    // Bumped by every write request and delete; a write only publishes if it is still the latest
+    private final ConcurrentHashMap<String, Long> generations = new ConcurrentHashMap<>();
+    private final Object publishLock = new Object();
+
+    /**
+     * A snapshot read back from disk.
+     */
+    public static final class Snapshot {
+        private final List<Transaction> transactions;
+        private final FileFingerprint fingerprint;
+
+        Snapshot(List<Transaction> transactions, FileFingerprint fingerprint) {
+            this.transactions = transactions;
+            this.fingerprint = fingerprint;
+        }
+
+        public List<Transaction> getTransactions() {
+            return transactions;
+        }
+
+        /**
+         * @return Fingerprint (size, mtime, checksum) of the CSV the snapshot was taken from.
+         */
+        public FileFingerprint getFingerprint() {
+            return fingerprint;
+        }
+    }
+
+    private static final class PendingWrite {
+        final FileFingerprint fingerprint;
+        final List<Transaction> transactions;
+        final long generation;
+
+        PendingWrite(FileFingerprint fingerprint, List<Transaction> transactions, long generation) {
+            this.fingerprint = fingerprint;
+            this.transactions = transactions;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * @param snapshotDir Directory for the snapshot files (created on first write).
+     */
+    public TransactionSnapshotStore(Path snapshotDir) {
+        this.snapshotDir = snapshotDir.toAbsolutePath().normalize();
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "transaction-snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reads the snapshot of a CSV file if it matches the file's current size and mtime.
+     *
+     * @param csvPath Absolute, normalized path of the CSV file.
+     * @param current Current stat fingerprint of the CSV file.
+     * @return The snapshot, or null if there is none or it is stale or unreadable.
+     */
+    public Snapshot read(String csvPath, FileFingerprint current) {
+        if (!current.exists()) {
+            return null;
+        }
+        Path snapshotPath = snapshotPath(csvPath);
+        if (!Files.exists(snapshotPath)) {
+            return null;
+        }
+        Metrics.Timer timer = Metrics.startTimer("cache.snapshot.read");
+        try {
+            ByteBuffer buffer = readFully(snapshotPath);
+            Snapshot snapshot = decode(buffer, csvPath, current);
+            if (snapshot != null) {
+                System.out.println("TransactionSnapshotStore: Loaded " + snapshot.transactions.size() + " rows for " + csvPath + " from snapshot.");
+            }
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            timer.failed();
+            System.err.println("TransactionSnapshotStore: Ignoring unreadable snapshot " + snapshotPath + ": " + e);
+            return null;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Queues a snapshot write. Mutable lists are copied, so the caller may keep using its list.
+     *
+     * @param csvPath Absolute, normalized path of the CSV file.
+     * @param fingerprint Fingerprint of the CSV content the rows were parsed from (or just written to).
+     * @param transactions The rows.
+     */
+    public void writeAsync(String csvPath, FileFingerprint fingerprint, List<Transaction> transactions) {
+        if (!fingerprint.exists()) {
+            return;
+        }
+        long generation = generations.merge(csvPath, 1L, Long::sum);
+        // Published snapshots never change; anything else is copied before the caller can modify it
+        List<Transaction> rows = transactions instanceof TransactionSnapshot ? transactions : new ArrayList<>(transactions);
+        pendingWrites.put(csvPath, new PendingWrite(fingerprint, rows, generation));
+        try {
+            writer.execute(() -> writePending(csvPath));
+        } catch (RejectedExecutionException e) {
+            pendingWrites.remove(csvPath); // Shutting down; the CSV is still the source of truth
+        }
+    }
+
+    /**
+     * Drops the snapshot of a CSV file (and any queued write for it).
+     */
+    public void delete(String csvPath) {
+        synchronized (publishLock) {
+            generations.merge(csvPath, 1L, Long::sum); // Also stops a write that is already in progress
+            pendingWrites.remove(csvPath);
+            try {
+                Files.deleteIfExists(snapshotPath(csvPath));
+            } catch (IOException e) {
+                System.err.println("TransactionSnapshotStore: Failed to delete snapshot for " + csvPath + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Waits until all queued writes are on disk.
+     */
+    void flush() throws InterruptedException {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Finishes queued writes (up to a few seconds) and stops the writer thread.
+     */
+    public void shutdown() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                System.err.println("TransactionSnapshotStore: Writer did not finish in time; remaining snapshots are skipped.");
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    Path snapshotPath(String csvPath) {
+        // Name derived from the path; the path itself is stored inside and checked on read
+        String name = UUID.nameUUIDFromBytes(csvPath.getBytes(StandardCharsets.UTF_8)) + SUFFIX;
+        return snapshotDir.resolve(name);
+    }
+
+    private void writePending(String csvPath) {
+        PendingWrite pending = pendingWrites.remove(csvPath);
+        if (pending == null) {
+            return; // Coalesced into an earlier run, or deleted meanwhile
+        }
+        Metrics.Timer timer = Metrics.startTimer("cache.snapshot.write");
+        Path tempPath = null;
+        try {
+            byte[] bytes = encode(csvPath, pending.fingerprint, pending.transactions);
+            Files.createDirectories(snapshotDir);
+            tempPath = Files.createTempFile(snapshotDir, "snapshot_", ".tmp");
+            Files.write(tempPath, bytes);
+            synchronized (publishLock) {
+                if (generations.getOrDefault(csvPath, 0L) != pending.generation) {
+                    return; // Superseded by a newer write or a delete
+                }
+                Files.move(tempPath, snapshotPath(csvPath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                tempPath = null;
+            }
+        } catch (AtomicMoveNotSupportedException e) {
+            timer.failed();
+            System.err.println("TransactionSnapshotStore: Snapshot directory does not support atomic moves; snapshot skipped for " + csvPath);
+        } catch (IOException | RuntimeException e) {
+            timer.failed();
+            System.err.println("TransactionSnapshotStore: Failed to write snapshot for " + csvPath + ": " + e);
+        } finally {
+            timer.stop();
+            if (tempPath != null) {
+                try {
+                    Files.deleteIfExists(tempPath);
+                } catch (IOException ignored) {
+                    // Best effort
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(Path snapshotPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD_BYTES) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until full or EOF
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    static byte[] encode(String csvPath, FileFingerprint fingerprint, List<Transaction> transactions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + transactions.size() * 160);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(fingerprint.getSize());
+        out.writeLong(fingerprint.getLastModifiedMillis());
+        out.writeLong(fingerprint.getChecksum());
+        writeString(out, csvPath);
+        out.writeInt(transactions.size());
+        for (Transaction t : transactions) {
+            writeString(out, t.getTransactionTime());
+            writeString(out, t.getTransactionType());
+            writeString(out, t.getCounterparty());
+            writeString(out, t.getCommodity());
+            writeString(out, t.getInOut());
+            out.writeDouble(t.getPaymentAmount());
+            writeString(out, t.getPaymentMethod());
+            writeString(out, t.getCurrentStatus());
+            writeString(out, t.getOrderNumber());
+            writeString(out, t.getMerchantNumber());
+            writeString(out, t.getRemarks());
+        }
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return The decoded snapshot, or null if it belongs to another CSV or another version of it.
+     */
+    static Snapshot decode(ByteBuffer buffer, String csvPath, FileFingerprint current) {
+        try {
+            if (buffer.remaining() < Long.BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            long size = buffer.getLong();
+            long lastModified = buffer.getLong();
+            long checksum = buffer.getLong();
+            FileFingerprint stored = FileFingerprint.restore(size, lastModified, checksum);
+            if (!stored.sameStat(current) || !csvPath.equals(readString(buffer))) {
+                return null; // CSV changed since the snapshot, or a different file with the same hash
+            }
+
+            // Header checks out; verify the whole file before trusting the rows
+            int end = buffer.limit() - Long.BYTES;
+            ByteBuffer body = buffer.duplicate();
+            body.position(0).limit(end);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if (crc.getValue() != buffer.getLong(end)) {
+                throw new IllegalStateException("Checksum mismatch");
+            }
+
+            int rowCount = buffer.getInt();
+            List<Transaction> transactions = new ArrayList<>(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                String transactionTime = readString(buffer);
+                String transactionType = readString(buffer);
+                String counterparty = readString(buffer);
+                String commodity = readString(buffer);
+                String inOut = readString(buffer);
+                double paymentAmount = buffer.getDouble();
+                String paymentMethod = readString(buffer);
+                String currentStatus = readString(buffer);
+                String orderNumber = readString(buffer);
+                String merchantNumber = readString(buffer);
+                String remarks = readString(buffer);
+                transactions.add(new Transaction(transactionTime, transactionType, counterparty, commodity, inOut,
+                        paymentAmount, paymentMethod, currentStatus, orderNumber, merchantNumber, remarks));
+            }
+            if (buffer.position() != end) {
+                throw new IllegalStateException("Unexpected trailing bytes");
+            }
+            return new Snapshot(transactions, stored);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalStateException("Truncated snapshot", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IllegalStateException("String length " + length + " exceeds snapshot size");
+        }
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+}
@@ -13,10 +13,12 @@ import Interceptor.Login.LoginDialog;
 import Interceptor.Login.RegistrationDialog; // Import RegistrationDialog
 import Service.Impl.TransactionServiceImpl;
 import Service.Impl.SummaryStatisticService;
+import Service.Impl.TransactionWriteQueue;
 import Service.AIservice.AITransactionService;
 import Service.AIservice.CollegeStudentNeeds;
 import Service.TransactionService;
 import Service.User.UserService;
+import Utils.CacheManager;
 import com.formdev.flatlaf.FlatIntelliJLaf;
 import lombok.Getter;
 import model.User;
@@ -49,6 +51,16 @@ public class Main {
         System.out.println("ExecutorService initialized with a fixed thread pool size of 4.");
         // --- End ExecutorService Initialization ---
 
+        UserDao userDao = new CsvUserDao(usersCsvPath); // Pass the user CSV path
+
+        // Finish any transaction-file writes a crash interrupted, before anything reads those files:
+        // every registered user's file, wherever users.csv points, then anything left under the data directory
+        TransactionWriteQueue.recoverAll(userDao, new CsvTransactionDao());
+        TransactionWriteQueue.recoverAll(userDataBaseDir, new CsvTransactionDao());
+
+        // Watch user data files so external edits invalidate cached transaction lists immediately
+        CacheManager.startFileWatcher(userDataBaseDir);
+
 
         // --- Initialize FlatLaf Look and Feel ---
         try {
@@ -67,8 +79,7 @@ public class Main {
         // --- End FlatLaf Initialization ---
 
 
-        // Initialize DAOs
-        UserDao userDao = new CsvUserDao(usersCsvPath); // Pass the user CSV path
+        // Initialize DAOs (userDao was created above for journal recovery)
         TransactionDao transactionDao = new CsvTransactionDao(); // Instance needed for Service injection & CacheManager
         SummaryStatisticDao summaryStatisticDao = new CsvSummaryStatisticDao(); // Instance needed for Service injection
 
@@ -115,6 +126,8 @@ public class Main {
 
                 // --- Add a shutdown hook to gracefully close the ExecutorService on application exit ---
                 Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    TransactionWriteQueue.flushAll(5000); // Write-behind: unflushed edits go to the CSVs
+                    CacheManager.shutdown(); // Stop the file watcher, finish snapshot writes
                     System.out.println("Shutting down ExecutorService...");
                     executorService.shutdown(); // Initiate an orderly shutdown
                     try {
@@ -0,0 +1,53 @@
+package model;
+
+import java.util.Collections;
+import java.util.List;
+
+// Outcome of one bulk import, reported once when the import is done (instead of one message per row)
+public class ImportResult {
+    private final int rowsRead; // Well-formed rows read from the import file
+    private final int importedCount; // Rows appended to the user's file
+    private final int duplicateCount; // Rows skipped because their order number already exists
+    private final int generatedOrderNumbers; // Rows that had no order number and got a generated one
+    private final List<String> duplicateSamples; // First few skipped order numbers, for the summary message
+
+    public ImportResult(int rowsRead, int importedCount, int duplicateCount, int generatedOrderNumbers,
+                        List<String> duplicateSamples) {
+        this.rowsRead = rowsRead;
+        this.importedCount = importedCount;
+        this.duplicateCount = duplicateCount;
+        this.generatedOrderNumbers = generatedOrderNumbers;
+        this.duplicateSamples = Collections.unmodifiableList(duplicateSamples);
+    }
+
+    // Getters
+    public int getRowsRead() {
+        return rowsRead;
+    }
+
+    public int getImportedCount() {
+        return importedCount;
+    }
+
+    public int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    public int getGeneratedOrderNumbers() {
+        return generatedOrderNumbers;
+    }
+
+    public List<String> getDuplicateSamples() {
+        return duplicateSamples;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult{" +
+                "rowsRead=" + rowsRead +
+                ", importedCount=" + importedCount +
+                ", duplicateCount=" + duplicateCount +
+                ", generatedOrderNumbers=" + generatedOrderNumbers +
+                '}';
+    }
+}
@@ -32,6 +32,16 @@ public class Transaction {
         this.remarks = remarks;
     }
 
+    /**
+     * Copy constructor. Cached transactions are shared between threads and must not be modified;
+     * copy one first to build an edited version.
+     */
+    public Transaction(Transaction other) {
+        this(other.transactionTime, other.transactionType, other.counterparty, other.commodity, other.inOut,
+                other.paymentAmount, other.paymentMethod, other.currentStatus, other.orderNumber,
+                other.merchantNumber, other.remarks);
+    }
+
     public String getInOut() {
         return inOut;
     }
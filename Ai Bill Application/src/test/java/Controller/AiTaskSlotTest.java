@@ -0,0 +1,59 @@
+package Controller;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AiTaskSlotTest {
+
+    @Test
+    void testStartingAnotherTaskCancelsTheFirst() throws Exception {
+        AiTaskSlot slot = new AiTaskSlot();
+        List<String> delivered = new ArrayList<>(); // EDT only
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+
+        SwingUtilities.invokeAndWait(() -> {
+            slot.start(first, (result, error) -> delivered.add(result));
+            slot.start(second, (result, error) -> delivered.add(result));
+        });
+        first.complete("stale");
+        second.complete("fresh");
+        SwingUtilities.invokeAndWait(() -> { }); // Let the handlers run
+        SwingUtilities.invokeAndWait(() -> { });
+
+        assertTrue(first.isCancelled());
+        boolean[] running = new boolean[1];
+        SwingUtilities.invokeAndWait(() -> running[0] = slot.isRunning());
+        assertEquals(List.of("fresh"), delivered);
+        assertFalse(running[0]);
+    }
+
+    @Test
+    void testCancelledTaskDeliversNothingAndFailuresAreUnwrapped() throws Exception {
+        AiTaskSlot slot = new AiTaskSlot();
+        List<Object> delivered = new ArrayList<>();
+        CompletableFuture<String> cancelled = new CompletableFuture<>();
+        CompletableFuture<String> failing = new CompletableFuture<>();
+        boolean[] wasRunning = new boolean[1];
+
+        SwingUtilities.invokeAndWait(() -> {
+            slot.start(cancelled, (result, error) -> delivered.add("cancelled task"));
+            wasRunning[0] = slot.cancel();
+        });
+        SwingUtilities.invokeAndWait(() -> slot.start(failing.thenApply(s -> s), (result, error) -> delivered.add(error)));
+        failing.completeExceptionally(new IllegalStateException("endpoint down"));
+        SwingUtilities.invokeAndWait(() -> { });
+        SwingUtilities.invokeAndWait(() -> { });
+
+        assertTrue(wasRunning[0]);
+        assertEquals(1, delivered.size());
+        assertTrue(delivered.get(0) instanceof IllegalStateException, "Not a " + CompletionException.class.getSimpleName());
+    }
+}
@@ -0,0 +1,86 @@
+package Controller;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TextAreaStreamAppenderTest {
+
+    @Test
+    void testChunksAreBatchedIntoFewUpdates() throws Exception {
+        JTextArea area = new JTextArea("Heading\n\n");
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        TextAreaStreamAppender appender = new TextAreaStreamAppender(area, e -> {
+            error.set(e);
+            finished.countDown();
+        });
+
+        StringBuilder expected = new StringBuilder("Heading\n\n");
+        int chunks = 200;
+        for (int i = 0; i < chunks; i++) {
+            String chunk = "tok" + i + " ";
+            expected.append(chunk);
+            appender.onChunk(chunk);
+            if (i % 20 == 0) {
+                Thread.sleep(10); // Arrive over ~100 ms, like a model generating
+            }
+        }
+        appender.onComplete(expected.substring("Heading\n\n".length()));
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertNull(error.get());
+        String[] text = new String[1];
+        int[] updates = new int[1];
+        SwingUtilities.invokeAndWait(() -> {
+            text[0] = area.getText();
+            updates[0] = appender.getUpdateCount();
+        });
+        assertEquals(expected.toString(), text[0], "All chunks appended in order after the heading");
+        assertTrue(updates[0] >= 1 && updates[0] < chunks / 4, "Updates are batched, got " + updates[0]);
+    }
+
+    @Test
+    void testErrorIsReportedAfterTheTextSoFar() throws Exception {
+        JTextArea area = new JTextArea();
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicReference<String> textAtFinish = new AtomicReference<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        TextAreaStreamAppender appender = new TextAreaStreamAppender(area, e -> {
+            textAtFinish.set(area.getText());
+            error.set(e);
+            finished.countDown();
+        });
+
+        appender.onChunk("partial ");
+        appender.onChunk("answer");
+        appender.onError(new IllegalStateException("connection reset"));
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals("partial answer", textAtFinish.get());
+        assertEquals("connection reset", error.get().getMessage());
+    }
+
+    @Test
+    void testStopShowsTextSoFarAndIgnoresLaterChunks() throws Exception {
+        JTextArea area = new JTextArea();
+        CountDownLatch finished = new CountDownLatch(1);
+        TextAreaStreamAppender appender = new TextAreaStreamAppender(area, e -> finished.countDown());
+
+        appender.onChunk("before stop");
+        SwingUtilities.invokeAndWait(appender::stop);
+        appender.onChunk(" after stop");
+        appender.onComplete("before stop after stop");
+
+        assertFalse(finished.await(200, TimeUnit.MILLISECONDS), "No completion callback after stop");
+        String[] text = new String[1];
+        SwingUtilities.invokeAndWait(() -> text[0] = area.getText());
+        assertEquals("before stop", text[0]);
+    }
+}
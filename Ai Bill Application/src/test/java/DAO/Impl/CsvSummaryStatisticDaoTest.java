@@ -15,9 +15,13 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.*;
+
 public class CsvSummaryStatisticDaoTest {
 
     private SummaryStatisticDao summaryDao;
@@ -94,4 +98,55 @@ public class CsvSummaryStatisticDaoTest {
         }
         System.out.println("CsvSummaryStatisticDaoTest (writeAll): testWriteAllStatistics finished.");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testUpsert_AppendsChangedWeekAndRangeReadSeesLatest() throws Exception {
+        String file = tempSummaryFilePath.toString();
+        List<SummaryStatistic> history = new ArrayList<>();
+        for (int week = 10; week <= 20; week++) {
+            history.add(new SummaryStatistic("2024-W" + week, 100 * week, 50 * week, "餐饮", 20, 3, "2024-05-01 10:00:00"));
+        }
+        summaryDao.writeAllStatistics(file, history);
+        String before = Files.readString(tempSummaryFilePath, StandardCharsets.UTF_8);
+
+        summaryDao.upsertStatistics(file, List.of(
+                new SummaryStatistic("2024-W15", 9999, 1, "交通, 公交", 1, 4, "2024-05-02 10:00:00"),
+                new SummaryStatistic("2024-W21", 2100, 1050, "Food", 30, 5, "2024-05-02 10:00:00")));
+
+        String after = Files.readString(tempSummaryFilePath, StandardCharsets.UTF_8);
+        assertTrue(after.startsWith(before), "History must not be rewritten");
+
+        List<SummaryStatistic> window = summaryDao.loadStatisticsBetween(file, "2024-W14", "2024-W16");
+        assertEquals(List.of("2024-W14", "2024-W15", "2024-W16"), window.stream().map(SummaryStatistic::getWeekIdentifier).toList());
+        assertEquals(9999, window.get(1).getTotalIncomeAllUsers());
+        assertEquals("交通, 公交", window.get(1).getTopExpenseCategory());
+        assertEquals(12, summaryDao.loadStatisticsBetween(file, null, null).size());
+
+        // The full load agrees: the later row for a week wins
+        List<SummaryStatistic> all = summaryDao.loadAllStatistics(file);
+        assertEquals(12, all.size());
+        assertEquals(9999, all.stream().filter(st -> st.getWeekIdentifier().equals("2024-W15")).findFirst().orElseThrow().getTotalIncomeAllUsers());
+    }
+
+    @Test
+    void testUpsert_CompactsWhenMostRowsAreSuperseded() throws Exception {
+        String file = tempSummaryFilePath.toString();
+        summaryDao.writeAllStatistics(file, List.of(new SummaryStatistic("2024-W01", 1, 1, "Food", 1, 1, "t0")));
+        for (int i = 0; i < 20; i++) {
+            summaryDao.upsertStatistics(file, List.of(new SummaryStatistic("2024-W01", i, 1, "Food", 1, 1, "t" + i)));
+        }
+        long rows = Files.readAllLines(tempSummaryFilePath).stream().filter(line -> !line.isBlank()).count();
+        assertTrue(rows < 20, "Superseded rows should have been compacted away, file has " + rows + " lines");
+        assertEquals(19, summaryDao.loadStatisticsBetween(file, "2024-W01", "2024-W01").get(0).getTotalIncomeAllUsers());
+    }
+
+    @Test
+    void testRangeRead_NoticesExternalEdits() throws Exception {
+        String file = tempSummaryFilePath.toString();
+        summaryDao.writeAllStatistics(file, List.of(new SummaryStatistic("2024-W01", 1, 1, "Food", 1, 1, "t0")));
+        assertEquals(1, summaryDao.loadStatisticsBetween(file, null, null).size());
+
+        Files.writeString(tempSummaryFilePath, "2024-W02,2.0,2.0,Food,2.0,2,t1\r\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        assertEquals(2, summaryDao.loadStatisticsBetween(file, null, null).size());
+    }
+}
@@ -8,7 +8,6 @@ import model.Transaction;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-// It's good practice to import static assertions if used, e.g., import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -19,6 +18,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.*;
+
 // Test class for CsvTransactionDao
 public class CsvTransactionDaoTest {
 
@@ -254,4 +255,127 @@ public class CsvTransactionDaoTest {
         }
         System.out.println("CsvTransactionDaoTest (writeAll): testWriteTransactionsToCSV finished.");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testLoadFromCSV_GbkWeChatExportWithPreamble() throws IOException {
+        Path export = Files.createTempFile("test_wechat_export_", ".csv");
+        try {
+            String content = "微信支付账单明细,,,,,,,,\r\n" +
+                    "微信昵称：[测试],,,,,,,,\r\n" +
+                    "起始时间：[2025-03-01 00:00:00] 终止时间：[2025-03-31 23:59:59],,,,,,,,\r\n" +
+                    "----------------------微信支付账单明细列表--------------------,,,,,,,,\r\n" +
+                    "交易时间,交易类型,交易对方,商品,收/支,金额(元),支付方式,当前状态,交易单号,商户单号,备注\r\n" +
+                    "2025-03-02 12:30:00,商户消费,蜜雪冰城,柠檬水,支出,￥4.00,零钱,支付成功,WX0001\t,M0001\t,/\r\n" +
+                    "2025-03-03 08:00:00,转账,张三,/,收入,￥100.00,/,已存入零钱,WX0002\t,/,/\r\n";
+            Files.write(export, content.getBytes(java.nio.charset.Charset.forName("GBK")));
+
+            List<Transaction> transactions = transactionDao.loadFromCSV(export.toString());
+
+            assertEquals(2, transactions.size());
+            Transaction first = transactions.get(0);
+            assertEquals("蜜雪冰城", first.getCounterparty());
+            assertEquals("柠檬水", first.getCommodity());
+            assertEquals(4.00, first.getPaymentAmount(), 0.001);
+            assertEquals("WX0001", first.getOrderNumber());
+            assertEquals("零钱", first.getPaymentMethod());
+            assertEquals("Expense", first.getInOut());
+            assertEquals("2025/03/02 12:30:00", first.getTransactionTime());
+            assertEquals("", first.getRemarks()); // "/" means no value
+            assertEquals("Income", transactions.get(1).getInOut());
+        } finally {
+            Files.deleteIfExists(export);
+        }
+    }
+
+    @Test
+    void testLoadFromCSV_AlipayExportStopsAtFooter() throws IOException {
+        Path export = Files.createTempFile("test_alipay_export_", ".csv");
+        try {
+            String content = "支付宝交易记录明细查询\r\n" +
+                    "账号:[test@example.com]\r\n" +
+                    "起始日期:[2025-03-01 00:00:00]    终止日期:[2025-04-01 00:00:00]\r\n" +
+                    "---------------------------------交易记录明细列表------------------------------------\r\n" +
+                    "交易号                  ,商家订单号               ,交易创建时间              ,付款时间                ,最近修改时间              ,交易来源地     ,类型              ,交易对方            ,商品名称                ,金额（元）   ,收/支     ,交易状态    ,服务费（元）   ,成功退款（元）  ,备注                  ,资金状态     ,\r\n" +
+                    "2025030122001 ,T200P001 ,2025-03-01 10:00:00 ,2025-03-01 10:00:01 ,2025-03-01 10:00:01 ,其他（包括阿里巴巴和外部商家）,即时到账交易 ,超市          ,日用品 ,35.50   ,支出 ,交易成功 ,0.00 ,0.00 , ,已支出 ,\r\n" +
+                    "------------------------------------------------------------------------------------\r\n" +
+                    "共1笔记录\r\n" +
+                    "已收入:0笔,0.00元\r\n";
+            Files.write(export, content.getBytes(java.nio.charset.Charset.forName("GB18030")));
+
+            List<Transaction> transactions = transactionDao.loadFromCSV(export.toString());
+
+            assertEquals(1, transactions.size());
+            Transaction tx = transactions.get(0);
+            assertEquals("2025030122001", tx.getOrderNumber());
+            assertEquals("T200P001", tx.getMerchantNumber());
+            assertEquals("日用品", tx.getCommodity());
+            assertEquals(35.50, tx.getPaymentAmount(), 0.001);
+            assertEquals("Alipay", tx.getPaymentMethod()); // Not in this export
+            assertEquals("即时到账交易", tx.getTransactionType());
+        } finally {
+            Files.deleteIfExists(export);
+        }
+    }
+
+    @Test
+    void testLoadFromCSV_BankStatementDerivesDirection() throws IOException {
+        Path signed = Files.createTempFile("test_bank_signed_", ".csv");
+        Path debitCredit = Files.createTempFile("test_bank_debit_credit_", ".csv");
+        try {
+            Files.writeString(signed, "交易日期,摘要,对方户名,交易金额,余额,流水号\n" +
+                    "2025-03-04,工资,某公司,\"8,000.00\",9000.00,B001\n" +
+                    "2025-03-05,消费,超市,-120.50,8879.50,B002\n", java.nio.charset.StandardCharsets.UTF_8);
+            Files.writeString(debitCredit, "Date,Description,Debit,Credit,Balance,Reference\n" +
+                    "2025-03-06,Coffee,4.50,,100.00,R1\n" +
+                    "2025-03-07,Refund,,10.00,110.00,R2\n", java.nio.charset.StandardCharsets.UTF_8);
+
+            List<Transaction> bank = transactionDao.loadFromCSV(signed.toString());
+            assertEquals(2, bank.size());
+            assertEquals("Income", bank.get(0).getInOut());
+            assertEquals(8000.00, bank.get(0).getPaymentAmount(), 0.001);
+            assertEquals("Expense", bank.get(1).getInOut());
+            assertEquals(120.50, bank.get(1).getPaymentAmount(), 0.001);
+            assertEquals("2025/03/05", bank.get(1).getTransactionTime());
+            assertEquals("Bank Card", bank.get(1).getPaymentMethod());
+            assertEquals("B002", bank.get(1).getOrderNumber());
+
+            List<Transaction> english = transactionDao.loadFromCSV(debitCredit.toString());
+            assertEquals("Expense", english.get(0).getInOut());
+            assertEquals(4.50, english.get(0).getPaymentAmount(), 0.001);
+            assertEquals("Income", english.get(1).getInOut());
+            assertEquals(10.00, english.get(1).getPaymentAmount(), 0.001);
+            assertEquals("Coffee", english.get(0).getCommodity());
+        } finally {
+            Files.deleteIfExists(signed);
+            Files.deleteIfExists(debitCredit);
+        }
+    }
+
+    @Test
+    void testLoadFromCSV_UnknownHeaderIsRejected() throws IOException {
+        Path unknown = Files.createTempFile("test_unknown_", ".csv");
+        try {
+            Files.writeString(unknown, "a,b,c\n1,2,3\n", java.nio.charset.StandardCharsets.UTF_8);
+            assertThrows(IOException.class, () -> transactionDao.loadFromCSV(unknown.toString()));
+        } finally {
+            Files.deleteIfExists(unknown);
+        }
+    }
+
+    @Test
+    void testLoadFromCSV_TornRecordIsSkipped() throws IOException {
+        Path torn = Files.createTempFile("test_torn_", ".csv");
+        try {
+            Files.writeString(torn, String.join(",", StatementFormats.NATIVE_HEADERS) + "\n" +
+                    "2025/05/01 12:00:00,Dining,Canteen,Lunch,Expense,¥10.00,Cash,Completed,TORN_1,,\n" +
+                    "2025/05/01 13:00:00,Dining,Can\n", java.nio.charset.StandardCharsets.UTF_8); // Crash mid-append
+
+            List<Transaction> transactions = transactionDao.loadFromCSV(torn.toString());
+
+            assertEquals(1, transactions.size(), "The torn row is not loaded as a row of empty fields");
+            assertEquals("TORN_1", transactions.get(0).getOrderNumber());
+        } finally {
+            Files.deleteIfExists(torn);
+        }
+    }
+}
@@ -6,8 +6,16 @@ import model.User;
 import Constants.ConfigConstants; // For USERS_CSV_PATH
 
 import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.*;
+
 public class CsvUserDaoTest {
 
     @Test
@@ -28,4 +36,115 @@ public class CsvUserDaoTest {
         }
         System.out.println("CsvUserDaoTest: testGetAllUsers finished successfully.");
     }
-}
\ No newline at end of file
+
+    private static Path newUsersFile() throws IOException {
+        Path file = Files.createTempFile("users_test_", ".csv");
+        Files.writeString(file, "username,password,role,transaction_csv_path,summary_csv_path\r\n"
+                + "Alice,pw1,user,tx_alice.csv,sum_alice.csv\r\n", StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static User newUser(String username) {
+        return new User(username, "secret", "user", "tx_" + username + ".csv", "sum_" + username + ".csv");
+    }
+
+    @Test
+    void testChanges_AreLoggedAndLookupsIgnoreCase() throws Exception {
+        Path file = newUsersFile();
+        Path log = Path.of(file + ".log");
+        try {
+            String originalContent = Files.readString(file);
+            CsvUserDao dao = new CsvUserDao(file.toString(), 1000);
+
+            dao.addUser(newUser("bob"));
+            assertThrows(IllegalArgumentException.class, () -> dao.addUser(newUser("BOB")), "Usernames are unique ignoring case");
+            User update = new User();
+            update.setUsername("ALICE");
+            update.setRole("admin");
+            assertTrue(dao.updateUser(update));
+            assertTrue(dao.deleteUser("Bob"));
+
+            assertEquals(originalContent, Files.readString(file), "Changes go to the log, not the users file");
+            assertTrue(Files.exists(log));
+            assertEquals("admin", dao.getUserByUsername("alice").getRole());
+            assertEquals("sum_alice.csv", dao.getUserByUsername("alice").getSummaryFilePath());
+            assertNull(dao.getUserByUsername("bob"));
+
+            // Another instance sees the same users by replaying the log
+            List<User> reloaded = new CsvUserDao(file.toString(), 1000).getAllUsers();
+            assertEquals(1, reloaded.size());
+            assertEquals("admin", reloaded.get(0).getRole());
+        } finally {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testCompaction_FoldsLogIntoUsersFile() throws Exception {
+        Path file = newUsersFile();
+        Path log = Path.of(file + ".log");
+        try {
+            CsvUserDao dao = new CsvUserDao(file.toString(), 3);
+            dao.addUser(newUser("u1"));
+            dao.addUser(newUser("u2"));
+            assertTrue(Files.exists(log));
+            dao.addUser(newUser("u3")); // Third record reaches the threshold
+
+            assertFalse(Files.exists(log));
+            List<User> users = new CsvUserDao(file.toString(), 3).getAllUsers();
+            assertEquals(List.of("Alice", "u1", "u2", "u3"), users.stream().map(User::getUsername).toList());
+        } finally {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testExternalChangesAndTornLogRecords() throws Exception {
+        Path file = newUsersFile();
+        Path log = Path.of(file + ".log");
+        try {
+            CsvUserDao dao = new CsvUserDao(file.toString(), 1000);
+            dao.addUser(newUser("u1"));
+            assertNotNull(dao.getUserByUsername("u1"));
+
+            // Edited by hand: picked up through the file fingerprint
+            Files.writeString(file, "Carol,pw,user,tx_carol.csv,sum_carol.csv\r\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            assertNotNull(dao.getUserByUsername("carol"));
+
+            // A crash mid-append leaves a partial record; it and anything after it are ignored
+            Files.writeString(log, "PUT,u2,secret,user,tx_u2.c", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            CsvUserDao reopened = new CsvUserDao(file.toString(), 1000);
+            assertNotNull(reopened.getUserByUsername("u1"));
+            assertNull(reopened.getUserByUsername("u2"));
+        } finally {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testTornLogRecord_ChangesAfterItSurviveARestart() throws Exception {
+        Path file = newUsersFile();
+        Path log = Path.of(file + ".log");
+        try {
+            CsvUserDao dao = new CsvUserDao(file.toString(), 1000);
+            dao.addUser(newUser("u1"));
+            dao.addUser(newUser("u2"));
+            // Crash in the middle of the next append
+            Files.writeString(log, "PUT,u3,secret,user,tx_u3.c", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+            CsvUserDao restarted = new CsvUserDao(file.toString(), 1000);
+            restarted.addUser(newUser("u4"));
+
+            CsvUserDao reopened = new CsvUserDao(file.toString(), 1000);
+            assertNotNull(reopened.getUserByUsername("u2"));
+            assertNull(reopened.getUserByUsername("u3"));
+            assertNotNull(reopened.getUserByUsername("u4"), "A change made after the torn record must not be lost");
+        } finally {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(file);
+        }
+    }
+}
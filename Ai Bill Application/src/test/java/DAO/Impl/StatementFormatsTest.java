@@ -0,0 +1,63 @@
+package DAO.Impl;
+
+import model.Transaction;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatementFormatsTest {
+
+    @Test
+    void testPicksFormatByHeader() {
+        assertSame(StatementFormats.NATIVE, StatementFormats.forHeader(StatementFormats.NATIVE_HEADERS).getFormat());
+        assertSame(StatementFormats.NATIVE, StatementFormats.forHeader(List.of("transaction time", "TRANSACTION TYPE", "Counterparty",
+                "Commodity", "In/Out", "Amount(CNY)", "Payment Method", "Current Status", "Order Number",
+                "Merchant Number", "Remarks")).getFormat());
+        assertSame(StatementFormats.WECHAT_PAY, StatementFormats.forHeader(List.of("交易时间", "交易类型", "交易对方", "商品",
+                "收/支", "金额(元)", "支付方式", "当前状态", "交易单号", "商户单号", "备注")).getFormat());
+        assertSame(StatementFormats.ALIPAY, StatementFormats.forHeader(List.of("交易时间", "交易分类", "交易对方", "对方账号",
+                "商品说明", "收/支", "金额", "收/付款方式", "交易状态", "交易订单号", "商家订单号", "备注", "")).getFormat());
+        assertNull(StatementFormats.forHeader(List.of("微信昵称：[测试]", "", "")));
+        assertNull(StatementFormats.forHeader(List.of("Date", "Note")), "Too few known columns for a header");
+    }
+
+    @Test
+    void testCompiledMapperIsCachedPerHeader() {
+        List<String> header = List.of("交易日期", "摘要", "交易金额", "流水号");
+        StatementFormats.Compiled first = StatementFormats.forHeader(header);
+        StatementFormats.Compiled second = StatementFormats.forHeader(List.of(" 交易日期 ", "摘要", "交易金额", "流水号", ""));
+        assertSame(first, second);
+    }
+
+    @Test
+    void testRegisteredFormatWinsTies() throws IOException {
+        ColumnMappedFormat custom = ColumnMappedFormat.builder("Custom")
+                .requiredColumn(ColumnMappedFormat.Field.TIME, "When")
+                .requiredColumn(ColumnMappedFormat.Field.AMOUNT, "How Much")
+                .column(ColumnMappedFormat.Field.COMMODITY, "What")
+                .defaultValue(ColumnMappedFormat.Field.IN_OUT, "Expense")
+                .build();
+        StatementFormats.register(custom);
+        List<String> header = List.of("When", "What", "How Much");
+        StatementFormats.Compiled compiled = StatementFormats.forHeader(header);
+        assertSame(custom, compiled.getFormat());
+
+        try (CSVParser parser = new CSVParser(new StringReader("2025/01/01 10:00:00,Tea,¥1,234.50\n"), CSVFormat.DEFAULT)) {
+            Iterator<CSVRecord> records = parser.iterator();
+            Transaction tx = compiled.getMapper().map(records.next());
+            assertEquals("Tea", tx.getCommodity());
+            // Only three cells: the amount column holds "¥1", the rest went to an extra cell
+            assertEquals(1.0, tx.getPaymentAmount(), 0.001);
+            assertEquals("Expense", tx.getInOut());
+            assertEquals("", tx.getOrderNumber());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package DAO.Impl;
+
+import model.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionJournalTest {
+
+    private Path csvFile;
+    private TransactionJournal journal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        csvFile = Files.createTempFile("journal_test_", ".csv");
+        journal = new TransactionJournal(csvFile.toString());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        journal.delete();
+        Files.deleteIfExists(csvFile);
+    }
+
+    private static TransactionJournal.Record put(String orderNumber, String remarks) {
+        return new TransactionJournal.Record(TransactionJournal.Op.PUT, new Transaction("2025/05/01 12:00:00", "餐饮",
+                "食堂", "午饭", "支出", 12.5, "微信", "已完成", orderNumber, null, remarks));
+    }
+
+    @Test
+    void testAppendAndRead_RoundTripsFrames() throws Exception {
+        journal.append(TransactionJournal.Kind.APPEND, 42, List.of(put("J1", "备注, with comma"), put("J2", null)));
+        journal.append(TransactionJournal.Kind.REWRITE, 99, List.of(
+                new TransactionJournal.Record(TransactionJournal.Op.DELETE, put("J1", null).getTransaction())));
+
+        List<TransactionJournal.Frame> frames = journal.readFrames();
+        assertEquals(2, frames.size());
+        assertEquals(TransactionJournal.Kind.APPEND, frames.get(0).getKind());
+        assertEquals(42, frames.get(0).getCsvLengthBefore());
+        Transaction first = frames.get(0).getRecords().get(0).getTransaction();
+        assertEquals("餐饮", first.getTransactionType());
+        assertEquals(12.5, first.getPaymentAmount());
+        assertEquals("备注, with comma", first.getRemarks());
+        assertNull(frames.get(0).getRecords().get(1).getTransaction().getRemarks());
+        assertEquals(TransactionJournal.Op.DELETE, frames.get(1).getRecords().get(0).getOp());
+    }
+
+    @Test
+    void testReadFrames_StopsAtTornOrCorruptFrame() throws Exception {
+        journal.append(TransactionJournal.Kind.DEFERRED, -1, List.of(put("J1", "a")));
+        long intactSize = Files.size(journal.getPath());
+        journal.append(TransactionJournal.Kind.DEFERRED, -1, List.of(put("J2", "b"), put("J3", "c")));
+        byte[] bytes = Files.readAllBytes(journal.getPath());
+
+        // Crash halfway through the second frame: the whole batch is dropped, not part of it
+        Files.write(journal.getPath(), Arrays.copyOf(bytes, bytes.length - 10));
+        List<TransactionJournal.Record> records = journal.readAll();
+        assertEquals(1, records.size());
+        assertEquals("J1", records.get(0).getTransaction().getOrderNumber());
+
+        // Flipped bits inside the second frame fail its checksum
+        bytes[(int) intactSize + 20] ^= 0x5A;
+        Files.write(journal.getPath(), bytes);
+        assertEquals(1, journal.readAll().size());
+    }
+
+    @Test
+    void testReplay_IsIdempotent() {
+        List<Transaction> rows = new ArrayList<>(List.of(put("J1", "old").getTransaction(), put("J2", "keep").getTransaction()));
+        List<TransactionJournal.Record> records = List.of(put("J1", "new"), put("J3", "added"), put("", "no key"),
+                new TransactionJournal.Record(TransactionJournal.Op.DELETE, put("J2", null).getTransaction()));
+
+        List<Transaction> once = TransactionJournal.replay(rows, records);
+        List<Transaction> twice = TransactionJournal.replay(once, records);
+
+        assertEquals(3, once.size());
+        assertEquals("new", once.get(0).getRemarks());
+        assertEquals("J3", once.get(1).getOrderNumber());
+        assertEquals(once, twice);
+    }
+}
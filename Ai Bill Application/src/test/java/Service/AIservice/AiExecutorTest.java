@@ -0,0 +1,102 @@
+package Service.AIservice;
+
+import Utils.CircuitBreaker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AiExecutorTest {
+
+    private final ExecutorService single = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        single.shutdownNow();
+    }
+
+    @Test
+    void testSupply_CompletesWithTheResultOrTheFailure() throws Exception {
+        assertEquals("answer", AiExecutor.supply(() -> "answer").get(5, TimeUnit.SECONDS));
+
+        CompletableFuture<String> failing = AiExecutor.supply(() -> {
+            throw new IllegalStateException("boom");
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void testCancel_InterruptsTheRunningTask() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<String> task = AiExecutor.supply(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000); // Stands in for a blocking HTTP call
+                return "too late";
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(task.cancel(true));
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "Cancelling the future reaches the worker");
+        assertTrue(task.isCancelled());
+    }
+
+    @Test
+    void testCancel_DropsATaskThatHasNotStarted() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<String> blocker = AiExecutor.supply(() -> {
+            release.await();
+            return "first";
+        }, single);
+        CompletableFuture<String> queued = AiExecutor.supply(() -> {
+            ran.set(true);
+            return "second";
+        }, single);
+
+        queued.cancel(true);
+        release.countDown();
+
+        assertEquals("first", blocker.get(5, TimeUnit.SECONDS));
+        single.shutdown();
+        assertTrue(single.awaitTermination(5, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void testAsyncService_CancelStopsTheModelCall() throws Exception {
+        FakeLlmClient fake = new FakeLlmClient().setLatency(10_000);
+        AiGateway gateway = new AiGateway(1, 1000, 1000, 3, 1, 1, new CircuitBreaker(1, 60_000));
+        AITransactionService service = new AITransactionService(null, fake, gateway);
+
+        CompletableFuture<String> answer = service.askAiAsync("Cancel me " + System.nanoTime());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (fake.getCallCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        answer.cancel(true);
+        deadline = System.currentTimeMillis() + 5000;
+        while (gateway.getInFlight() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(0, gateway.getInFlight(), "The slot is given back right away");
+        assertEquals(1, fake.getCallCount(), "Not retried");
+        assertEquals("CLOSED", gateway.getCircuitState(), "A cancel is not an endpoint failure");
+    }
+}
@@ -0,0 +1,163 @@
+package Service.AIservice;
+
+import Utils.CircuitBreaker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AiGatewayTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(6);
+    private final List<Long> sleeps = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private AiGateway gateway(int maxInFlight, int maxAttempts, CircuitBreaker breaker) {
+        return new AiGateway(maxInFlight, 1000, 2000, maxAttempts, 100, 1000, breaker, sleeps::add, () -> 0.5);
+    }
+
+    private static RuntimeException timeout() {
+        return new UncheckedIOException(new SocketTimeoutException("timeout"));
+    }
+
+    @Test
+    void testCall_RetriesRetryableFailuresWithGrowingBackoff() {
+        AiGateway gateway = gateway(2, 4, new CircuitBreaker(10, 1000));
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = gateway.call(() -> {
+            if (attempts.incrementAndGet() < 4) {
+                throw timeout();
+            }
+            return "answer";
+        });
+
+        assertEquals("answer", result);
+        assertEquals(List.of(75L, 150L, 300L), sleeps, "Base 100 ms doubled per retry, half of it jittered");
+        assertEquals(3, gateway.getRetryCount());
+        assertEquals(0, gateway.getInFlight(), "Every slot given back");
+    }
+
+    @Test
+    void testCall_DoesNotRetryOtherErrors() {
+        AiGateway gateway = gateway(2, 4, new CircuitBreaker(10, 1000));
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(IllegalArgumentException.class, () -> gateway.call(() -> {
+            attempts.incrementAndGet();
+            throw new IllegalArgumentException("400 Bad Request: invalid model");
+        }));
+        assertEquals(1, attempts.get());
+        assertTrue(sleeps.isEmpty());
+    }
+
+    @Test
+    void testCall_CapsRequestsInFlight() throws Exception {
+        AiGateway gateway = gateway(2, 1, new CircuitBreaker(10, 1000));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            results.add(executor.submit(() -> gateway.call(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(30);
+                } catch (InterruptedException e) {
+                    throw new CancellationException();
+                }
+                running.decrementAndGet();
+                return "ok";
+            })));
+        }
+        for (Future<String> result : results) {
+            assertEquals("ok", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, maxRunning.get(), "Never more than the cap at once");
+    }
+
+    @Test
+    void testAdmit_RejectsWhenNoSlotFreesUpInTime() {
+        AiGateway gateway = new AiGateway(1, 1000, 50, 1, 100, 1000, new CircuitBreaker(10, 1000), sleeps::add, () -> 0.5);
+        AiGateway.Permit held = gateway.admit();
+
+        assertThrows(AiGateway.RejectedException.class, gateway::admit);
+        assertEquals(1, gateway.getRejectedCount());
+
+        held.release(null);
+        gateway.admit().release(null);
+    }
+
+    @Test
+    void testCircuitOpensAndFailsFast() {
+        AiGateway gateway = gateway(2, 1, new CircuitBreaker(2, 60_000));
+        AtomicInteger attempts = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(UncheckedIOException.class, () -> gateway.call(() -> {
+                attempts.incrementAndGet();
+                throw timeout();
+            }));
+        }
+        assertEquals("OPEN", gateway.getCircuitState());
+        assertThrows(AiGateway.RejectedException.class, () -> gateway.call(() -> {
+            attempts.incrementAndGet();
+            return "not sent";
+        }));
+        assertEquals(2, attempts.get(), "No request sent while the circuit is open");
+    }
+
+    @Test
+    void testThrottlingLowersTheRateAndSuccessRaisesIt() {
+        AiGateway gateway = gateway(2, 1, new CircuitBreaker(10, 1000));
+
+        assertThrows(RuntimeException.class, () -> gateway.call(() -> {
+            throw new RuntimeException("HTTP 429 Too Many Requests");
+        }));
+        assertEquals(500.0, gateway.getRatePerSecond(), 1e-9);
+
+        gateway.call(() -> "ok");
+        assertEquals(600.0, gateway.getRatePerSecond(), 1e-9, "Additive increase of a tenth of the configured rate");
+    }
+
+    @Test
+    void testIsRetryable_ClassifiesFailures() {
+        assertTrue(AiGateway.isRetryable(timeout()));
+        assertTrue(AiGateway.isRetryable(new RuntimeException("503 Service Unavailable")));
+        assertTrue(AiGateway.isRetryable(new RuntimeException("wrapped", new RuntimeException("RateLimitExceeded"))));
+        assertFalse(AiGateway.isRetryable(new RuntimeException("401 Unauthorized")));
+        assertFalse(AiGateway.isRetryable(new NullPointerException()));
+    }
+
+    @Test
+    void testCall_InterruptedRequestIsACancellationNotAFailure() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 60_000);
+        AiGateway gateway = gateway(2, 4, breaker);
+        AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            assertThrows(CancellationException.class, () -> gateway.call(() -> {
+                attempts.incrementAndGet();
+                throw new RuntimeException(new InterruptedException()); // How the SDK reports an interrupted call
+            }));
+            assertTrue(Thread.currentThread().isInterrupted(), "The interrupt is kept for the caller");
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertEquals(1, attempts.get(), "Not retried");
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, gateway.getInFlight());
+    }
+}
@@ -0,0 +1,140 @@
+package Service.AIservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AiResponseCacheTest {
+
+    private static final long TTL_MILLIS = 60_000;
+
+    private Path cacheDir;
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        cacheDir = Files.createTempDirectory("ai_cache_test_");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private AiResponseCache newCache(long maxDiskBytes) {
+        return new AiResponseCache(cacheDir, TTL_MILLIS, maxDiskBytes, now::get);
+    }
+
+    private long fileCount() throws IOException {
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            return files.filter(p -> p.toString().endsWith(".ai")).count();
+        }
+    }
+
+    @Test
+    void testKey_IgnoresWhitespaceButNotModelOrDataVersion() {
+        String key = AiResponseCache.key("model", "Summarize\n  Total:  5 CNY\n", "v1");
+        assertEquals(key, AiResponseCache.key("model", "  Summarize \r\nTotal: 5\tCNY\n\n", "v1"));
+        assertNotEquals(key, AiResponseCache.key("other-model", "Summarize\nTotal: 5 CNY", "v1"));
+        assertNotEquals(key, AiResponseCache.key("model", "Summarize\nTotal: 5 CNY", "v2"), "Edited data gets a new key");
+        assertNotEquals(key, AiResponseCache.key("model", "Summarize Total: 5 CNY", "v1"), "Line breaks are kept");
+        assertEquals(64, key.length());
+    }
+
+    @Test
+    void testGet_MissThenHit() {
+        AiResponseCache cache = newCache(1024 * 1024);
+        String key = AiResponseCache.key("model", "prompt", "v1");
+
+        assertNull(cache.get(key));
+        cache.put(key, "answer 答案");
+        assertEquals("answer 答案", cache.get(key));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void testGet_SurvivesRestartFromDisk() {
+        String key = AiResponseCache.key("model", "prompt", "v1");
+        newCache(1024 * 1024).put(key, "persisted answer");
+
+        AiResponseCache restarted = newCache(1024 * 1024);
+        assertEquals("persisted answer", restarted.get(key));
+        assertEquals(1, restarted.getDiskHitCount());
+        assertTrue(restarted.getDiskBytes() > 0, "Existing files are counted against the budget");
+    }
+
+    @Test
+    void testGet_ExpiredAnswerIsAMissAndRemoved() throws IOException {
+        AiResponseCache cache = newCache(1024 * 1024);
+        String key = AiResponseCache.key("model", "prompt", "v1");
+        cache.put(key, "old answer");
+
+        now.addAndGet(TTL_MILLIS);
+        assertNull(cache.get(key));
+        assertEquals(1, cache.getExpiredCount());
+        assertEquals(0, fileCount(), "Expired file is deleted");
+        assertNull(newCache(1024 * 1024).get(key), "Not served after a restart either");
+    }
+
+    @Test
+    void testPut_EvictsLeastRecentlyUsedBeyondBudget() throws IOException {
+        String answer = "x".repeat(1000);
+        AiResponseCache cache = newCache(3500); // Room for three ~1 KB files
+        String[] keys = new String[4];
+        for (int i = 0; i < 3; i++) {
+            keys[i] = AiResponseCache.key("model", "prompt " + i, "v1");
+            cache.put(keys[i], answer);
+            Files.setLastModifiedTime(cacheDir.resolve(keys[i] + ".ai"), FileTime.fromMillis(1_000_000L + i * 1000));
+        }
+        // Reading key 0 from disk makes it the most recently used
+        AiResponseCache restarted = newCache(3500);
+        now.addAndGet(5000);
+        assertNotNull(restarted.get(keys[0]));
+
+        keys[3] = AiResponseCache.key("model", "prompt 3", "v1");
+        restarted.put(keys[3], answer);
+
+        assertTrue(restarted.getDiskBytes() <= 3500);
+        assertEquals(1, restarted.getEvictionCount());
+        assertFalse(Files.exists(cacheDir.resolve(keys[1] + ".ai")), "Oldest untouched entry is evicted");
+        assertTrue(Files.exists(cacheDir.resolve(keys[0] + ".ai")), "Recently read entry is kept");
+        assertTrue(Files.exists(cacheDir.resolve(keys[3] + ".ai")));
+    }
+
+    @Test
+    void testGet_CorruptFileIsAMiss() throws IOException {
+        String key = AiResponseCache.key("model", "prompt", "v1");
+        Files.write(cacheDir.resolve(key + ".ai"), "garbage".getBytes(StandardCharsets.UTF_8));
+
+        AiResponseCache cache = newCache(1024 * 1024);
+        assertNull(cache.get(key));
+        assertEquals(0, fileCount(), "Unreadable file is removed");
+    }
+
+    @Test
+    void testInvalidate_RemovesMemoryAndDiskCopies() throws IOException {
+        AiResponseCache cache = newCache(1024 * 1024);
+        String key = AiResponseCache.key("model", "prompt", "v1");
+        cache.put(key, "answer");
+
+        cache.invalidate(key);
+        assertNull(cache.get(key));
+        assertEquals(0, fileCount());
+        assertEquals(0, cache.getDiskBytes());
+    }
+}
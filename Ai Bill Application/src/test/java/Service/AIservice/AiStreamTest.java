@@ -0,0 +1,107 @@
+package Service.AIservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the Ark client's streaming call against the local stub server.
+ */
+public class AiStreamTest {
+
+    private StubChatServer server;
+    private ArkLlmClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new StubChatServer(0);
+        client = new ArkLlmClient(server.getBaseUrl(), "test-key", "stub-model", Duration.ofSeconds(30));
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.shutdown();
+        server.close();
+    }
+
+    /**
+     * Collects what a stream delivers.
+     */
+    private static class Recorder implements AiStreamListener {
+        final List<String> chunks = new CopyOnWriteArrayList<>();
+        final AtomicReference<String> fullText = new AtomicReference<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch firstChunk = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void onChunk(String text) {
+            chunks.add(text);
+            firstChunk.countDown();
+        }
+
+        @Override
+        public void onComplete(String text) {
+            fullText.set(text);
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            error.set(e);
+            done.countDown();
+        }
+    }
+
+    @Test
+    void testStart_DeliversChunksThenFullText() throws Exception {
+        String answer = "Your biggest expense category is Dining, about 40% of the total.";
+        server.setResponder(prompt -> answer).setChunking(5, 5);
+        Recorder recorder = new Recorder();
+
+        AiStream stream = client.stream("Summarize my spending", recorder);
+
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+        assertNull(recorder.error.get());
+        assertEquals(answer, recorder.fullText.get());
+        assertEquals(answer, String.join("", recorder.chunks));
+        assertTrue(recorder.chunks.size() > 1, "Answer arrives in pieces");
+        assertTrue(stream.isDone());
+        assertFalse(stream.isCancelled());
+    }
+
+    @Test
+    void testCancel_StopsDeliveryBeforeTheEnd() throws Exception {
+        server.setResponder(prompt -> "x".repeat(400)).setChunking(1, 20); // ~8 s if read to the end
+        Recorder recorder = new Recorder();
+
+        AiStream stream = client.stream("Long answer please", recorder);
+        assertTrue(recorder.firstChunk.await(10, TimeUnit.SECONDS));
+        stream.cancel();
+        int chunksAtCancel = recorder.chunks.size();
+        Thread.sleep(200);
+
+        assertTrue(stream.isCancelled());
+        assertTrue(stream.await(1, TimeUnit.SECONDS));
+        assertTrue(recorder.chunks.size() <= chunksAtCancel + 1, "At most a chunk already in delivery follows the cancel");
+        assertEquals(1, recorder.done.getCount(), "Neither completion nor error after cancel");
+    }
+
+    @Test
+    void testComplete_ServerErrorCarriesStatusForRetries() {
+        server.setErrorRate(1.0, 1);
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> client.complete("Anything"));
+
+        assertTrue(AiGateway.isRetryable(e), "5xx and 429 answers are retried by the gateway: " + e.getMessage());
+    }
+}
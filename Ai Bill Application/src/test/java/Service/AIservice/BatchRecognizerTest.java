@@ -0,0 +1,149 @@
+package Service.AIservice;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchRecognizerTest {
+
+    private static final Pattern ROW = Pattern.compile("^(\\d+)\\. (.*)$", Pattern.MULTILINE);
+
+    /**
+     * Fake model: answers "n. <category>" for each numbered row, where the row text is "row:<category>".
+     */
+    private static class FakeModel implements BiFunction<String, Boolean, String> {
+        final List<String> prompts = new ArrayList<>();
+        final List<Boolean> retries = new ArrayList<>();
+        int maxAnswerLines = Integer.MAX_VALUE;
+        String failOnceFor; // Row text answered with garbage the first time
+
+        @Override
+        public String apply(String prompt, Boolean retry) {
+            prompts.add(prompt);
+            retries.add(retry);
+            StringBuilder answer = new StringBuilder();
+            Matcher m = ROW.matcher(prompt);
+            int lines = 0;
+            while (m.find() && lines < maxAnswerLines) {
+                String row = m.group(2);
+                String category = row.substring(row.indexOf(':') + 1);
+                if (row.equals(failOnceFor)) {
+                    failOnceFor = null;
+                    category = "I am not sure";
+                }
+                answer.append(m.group(1)).append(". ").append(category).append('\n');
+                lines++;
+            }
+            return answer.toString();
+        }
+    }
+
+    private static List<String> rows(int n) {
+        String[] categories = {"Dining", "Transportation", "Salary", "Groceries"};
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            rows.add("row" + i + ":" + categories[i % categories.length]);
+        }
+        return rows;
+    }
+
+    @Test
+    void testRecognize_PacksRowsIntoFewCallsAndKeepsOrder() {
+        FakeModel model = new FakeModel();
+        BatchRecognizer recognizer = new BatchRecognizer(model, "Classify:", 100_000);
+
+        List<String> result = recognizer.recognize(rows(30));
+
+        assertEquals(1, recognizer.getCallCount(), "30 short rows fit one request");
+        assertEquals("Dining", result.get(0));
+        assertEquals("Transportation", result.get(1));
+        assertEquals("Salary", result.get(2));
+        assertEquals("Groceries", result.get(27));
+        assertFalse(result.contains(null));
+    }
+
+    @Test
+    void testRecognize_SplitsBatchesByTokenBudget() {
+        FakeModel model = new FakeModel();
+        int budget = 200;
+        BatchRecognizer recognizer = new BatchRecognizer(model, "Classify:", budget);
+
+        List<String> result = recognizer.recognize(rows(60));
+
+        assertTrue(recognizer.getCallCount() > 1);
+        for (String prompt : model.prompts) {
+            int lines = (int) ROW.matcher(prompt).results().count();
+            assertTrue(TokenEstimator.estimate(prompt) + lines * BatchRecognizer.ANSWER_TOKENS_PER_ROW <= budget,
+                    "Prompt plus expected answer stays within the budget");
+        }
+        assertFalse(result.contains(null));
+    }
+
+    @Test
+    void testRecognize_RetriesOnlyFailedRowsBypassingCache() {
+        FakeModel model = new FakeModel();
+        model.failOnceFor = "row2:Salary";
+        BatchRecognizer recognizer = new BatchRecognizer(model, "Classify:", 100_000);
+
+        List<String> result = recognizer.recognize(rows(5));
+
+        assertEquals(2, model.prompts.size());
+        assertEquals(List.of(false, true), model.retries);
+        assertEquals(1, ROW.matcher(model.prompts.get(1)).results().count(), "Retry holds only the failed row");
+        assertTrue(model.prompts.get(1).contains("row2:Salary"));
+        assertEquals("Salary", result.get(2));
+    }
+
+    @Test
+    void testRecognize_TruncatedAnswerShrinksLaterBatches() {
+        FakeModel model = new FakeModel();
+        model.maxAnswerLines = 10;
+        BatchRecognizer recognizer = new BatchRecognizer(model, "Classify:", 100_000);
+
+        List<String> result = recognizer.recognize(rows(25));
+
+        assertEquals(10, recognizer.getRowCap());
+        assertFalse(result.contains(null), "Cut-off rows are recognized in the retries");
+    }
+
+    @Test
+    void testRecognize_GivesUpWhenNothingUsableComesBack() {
+        List<String> prompts = new ArrayList<>();
+        BatchRecognizer recognizer = new BatchRecognizer((prompt, retry) -> {
+            prompts.add(prompt);
+            return "AI request failed: connection refused";
+        }, "Classify:", 100_000);
+
+        List<String> result = recognizer.recognize(rows(5));
+
+        assertEquals(1, prompts.size(), "No retries while the endpoint fails");
+        assertTrue(result.stream().allMatch(r -> r == null));
+    }
+
+    @Test
+    void testParse_AcceptsCommonNumberingAndMapsCategories() {
+        Map<Integer, String> answers = BatchRecognizer.parse(
+                "Here you go:\n1. Dining\n2) \"Transportation\".\n3、Salary\n[4] Unknown thing\n5: Groceries\n9. Dining\n1. Housing", 5);
+
+        assertEquals("Dining", answers.get(1), "First answer for a number wins");
+        assertEquals("Transportation", answers.get(2));
+        assertEquals("Salary", answers.get(3));
+        assertNull(answers.get(4), "Not a known category");
+        assertEquals("Groceries", answers.get(5));
+        assertEquals(4, answers.size(), "Numbers outside the batch are ignored");
+    }
+
+    @Test
+    void testTokenEstimator_CountsCjkPerCharacter() {
+        assertEquals(0, TokenEstimator.estimate(""));
+        assertEquals(2, TokenEstimator.estimate("abcdefgh"));
+        assertEquals(4, TokenEstimator.estimate("午饭食堂"));
+    }
+}
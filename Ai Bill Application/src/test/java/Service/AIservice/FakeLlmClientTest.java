@@ -0,0 +1,226 @@
+package Service.AIservice;
+
+import Service.Impl.TransactionServiceImpl;
+import Utils.CircuitBreaker;
+import model.Transaction;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the AI service against the in-process fake model.
+ */
+public class FakeLlmClientTest {
+
+    private static AiGateway gateway() {
+        // No waiting in tests: high rate, one attempt, short backoff
+        return new AiGateway(4, 1000, 1000, 1, 1, 1, new CircuitBreaker(100, 1000));
+    }
+
+    @Test
+    void testAskAi_AnswersThroughTheInjectedModel() {
+        FakeLlmClient fake = new FakeLlmClient().setResponder(prompt -> "Answer to " + prompt);
+        AITransactionService service = new AITransactionService(null, fake, gateway());
+
+        assertEquals("Answer to hello", service.askAi("hello", null, false));
+        assertEquals(1, fake.getCallCount());
+    }
+
+    @Test
+    void testAskAi_FailureIsReportedAsText() {
+        FakeLlmClient fake = new FakeLlmClient().setErrorRate(1.0, 1);
+        AITransactionService service = new AITransactionService(null, fake, gateway());
+
+        String answer = service.askAi("hello", null, false);
+
+        assertTrue(answer.startsWith("AI request failed"), answer);
+        assertTrue(answer.contains("503"));
+    }
+
+    @Test
+    void testErrorRate_SameSeedFailsTheSameRequests() {
+        List<Boolean> first = failures(new FakeLlmClient().setErrorRate(0.3, 11), 50);
+        List<Boolean> second = failures(new FakeLlmClient().setErrorRate(0.3, 11), 50);
+
+        assertEquals(first, second);
+        assertTrue(first.contains(true));
+        assertTrue(first.contains(false));
+    }
+
+    private static List<Boolean> failures(FakeLlmClient fake, int n) {
+        List<Boolean> failed = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            try {
+                fake.complete("p" + i);
+                failed.add(false);
+            } catch (IllegalStateException e) {
+                failed.add(true);
+            }
+        }
+        return failed;
+    }
+
+    @Test
+    void testStream_DeliversTheAnswerInChunks() throws Exception {
+        FakeLlmClient fake = new FakeLlmClient().setResponder(prompt -> "A fairly long fake answer.");
+        StringBuilder chunks = new StringBuilder();
+        AtomicReference<String> fullText = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        AiStream stream = fake.stream("hi", new AiStreamListener() {
+            @Override
+            public void onChunk(String text) {
+                chunks.append(text);
+            }
+
+            @Override
+            public void onComplete(String text) {
+                fullText.set(text);
+                done.countDown();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("A fairly long fake answer.", fullText.get());
+        assertEquals(fullText.get(), chunks.toString());
+        assertTrue(stream.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testDefaultAnswer_ParsesAsBudget() {
+        CollegeStudentNeeds needs = new CollegeStudentNeeds(null, new AITransactionService(null, new FakeLlmClient(), gateway()));
+
+        double[] budget = needs.parseDoubleArrayFromString(new FakeLlmClient().complete("budget"));
+
+        assertEquals(300.0, budget[0], 0.001);
+        assertEquals(450.0, budget[1], 0.001);
+    }
+
+    @Test
+    void testAskAi_CancellingTheFirstCallerDoesNotFailTheOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        FakeLlmClient fake = new FakeLlmClient().setResponder(prompt -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("Shared call interrupted");
+            }
+            return "Shared answer";
+        });
+        AITransactionService service = new AITransactionService(null, fake, gateway());
+        String prompt = "Shared prompt " + System.nanoTime(); // Not answered from the disk cache of earlier runs
+        long joinedBefore = AITransactionService.getInFlightRequests().getJoinedCount();
+
+        CompletableFuture<String> first = service.askAiAsync(prompt);
+        waitUntil(() -> fake.getCallCount() == 1);
+        CompletableFuture<String> second = service.askAiAsync(prompt);
+        waitUntil(() -> AITransactionService.getInFlightRequests().getJoinedCount() == joinedBefore + 1);
+
+        first.cancel(true); // Interrupts the first caller's thread
+        Thread.sleep(50);
+        release.countDown();
+
+        assertEquals("Shared answer", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, fake.getCallCount());
+        assertTrue(first.isCancelled());
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the condition");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void testRecognizeTransaction_LearnedCounterpartySkipsTheModel() throws Exception {
+        Path file = Files.createTempFile("test_classifier_history_", ".csv");
+        try {
+            StringBuilder csv = new StringBuilder("Transaction Time,Transaction Type,Counterparty,Commodity,In/Out,Amount(CNY),"
+                    + "Payment Method,Current Status,Order Number,Merchant Number,Remarks\n");
+            for (int i = 0; i < 25; i++) {
+                csv.append("2025/03/").append(String.format("%02d", i + 1)).append(" 12:00:00,Education,Northside Copy Shop,Printing,"
+                        + "Expense,¥3.50,WeChat Pay,Completed,PRINT_").append(i).append(",,Course notes\n");
+            }
+            Files.writeString(file, csv.toString(), StandardCharsets.UTF_8);
+            FakeLlmClient fake = new FakeLlmClient().setResponder(prompt -> "Other Expenses");
+            CollegeStudentNeeds needs = new CollegeStudentNeeds(new TransactionServiceImpl(file.toString()),
+                    new AITransactionService(null, fake, gateway()));
+
+            String learned = needs.RecognizeTransaction(new Transaction("2025/04/01 12:00:00", "", "Northside Copy Shop",
+                    "Printing", "Expense", 3.5, "WeChat Pay", "Completed", "PRINT_X", "", ""));
+            assertEquals("Education", learned);
+            assertEquals(0, fake.getCallCount());
+
+            // Unique per run, so no answer cached on disk by an earlier run stands in for the model
+            String unknown = needs.RecognizeTransaction(new Transaction("2025/04/01 13:00:00", "", "Somewhere New " + System.nanoTime(),
+                    "Something", "Expense", 9.0, "WeChat Pay", "Completed", "NEW_X", "", ""));
+            assertEquals("Other Expenses", unknown);
+            assertEquals(1, fake.getCallCount());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testRecognizeTransaction_RowWithTypeSetIsStillRecognised() {
+        FakeLlmClient fake = new FakeLlmClient().setResponder(prompt -> "Entertainment");
+        CollegeStudentNeeds needs = new CollegeStudentNeeds(null, new AITransactionService(null, fake, gateway()));
+
+        // The merchant keyword answers, not the type already in the row
+        assertEquals("Transportation", needs.RecognizeTransaction(new Transaction("2025/04/01 08:00:00", "Dining", "滴滴出行",
+                "快车", "Expense", 15.0, "WeChat Pay", "Completed", "TYPED_1", "", "")));
+        assertEquals(0, fake.getCallCount());
+
+        // Nothing local: the model is asked even though the row has a type (unique per run, see above)
+        assertEquals("Entertainment", needs.RecognizeTransaction(new Transaction("2025/04/01 20:00:00", "Dining",
+                "Riverside Cinema " + System.nanoTime(), "Ticket", "Expense", 40.0, "WeChat Pay", "Completed", "TYPED_2", "", "")));
+        assertEquals(1, fake.getCallCount());
+    }
+
+    @Test
+    void testRecognizeTransaction_RowBeingEditedIsNotItsOwnExample() throws Exception {
+        Path file = Files.createTempFile("test_classifier_edit_", ".csv");
+        try {
+            StringBuilder csv = new StringBuilder("Transaction Time,Transaction Type,Counterparty,Commodity,In/Out,Amount(CNY),"
+                    + "Payment Method,Current Status,Order Number,Merchant Number,Remarks\n");
+            for (int i = 0; i < 25; i++) {
+                csv.append("2025/03/").append(String.format("%02d", i + 1)).append(" 12:00:00,Education,Northside Copy Shop,Printing,"
+                        + "Expense,¥3.50,WeChat Pay,Completed,PRINT_").append(i).append(",,Course notes\n");
+            }
+            // The one row for this counterparty, categorised wrongly; unique per run so no cached answer stands in
+            String gym = "Riverside Gym " + System.nanoTime();
+            csv.append("2025/03/28 18:00:00,Education,").append(gym).append(",Membership,Expense,¥99.00,WeChat Pay,Completed,GYM_1,,\n");
+            Files.writeString(file, csv.toString(), StandardCharsets.UTF_8);
+            FakeLlmClient fake = new FakeLlmClient().setResponder(prompt -> "Entertainment");
+            CollegeStudentNeeds needs = new CollegeStudentNeeds(new TransactionServiceImpl(file.toString()),
+                    new AITransactionService(null, fake, gateway()));
+
+            // The edit dialog recognises a copy of the stored row, type field filled in
+            String category = needs.RecognizeTransaction(new Transaction("2025/03/28 18:00:00", "Education", gym,
+                    "Membership", "Expense", 99.0, "WeChat Pay", "Completed", "GYM_1", "", ""));
+
+            assertEquals("Entertainment", category);
+            assertEquals(1, fake.getCallCount());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
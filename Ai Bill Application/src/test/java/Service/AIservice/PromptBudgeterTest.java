@@ -0,0 +1,93 @@
+package Service.AIservice;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PromptBudgeterTest {
+
+    private static final String FIXED = "Analyze my spending.\n";
+
+    /**
+     * Counterparties with net amounts 1..n (the larger the index, the more important).
+     */
+    private static PromptBudgeter.Section<Integer> counterparties(int n) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            items.add(i);
+        }
+        return new PromptBudgeter.Section<>(null, items, Comparator.reverseOrder(),
+                i -> "Counterparty: shop" + i + ", Net Total Expense: " + i + ".00 CNY, Transaction Count: 1",
+                rest -> "Others (" + rest.size() + " more counterparties): Net Total Expense: "
+                        + rest.stream().mapToInt(Integer::intValue).sum() + ".00 CNY");
+    }
+
+    private static PromptBudgeter.Section<String> months(int n) {
+        List<String> items = new ArrayList<>();
+        for (int m = 1; m <= n; m++) {
+            items.add(String.format("2024-%02d", m));
+        }
+        return new PromptBudgeter.Section<>("Monthly data:", items, Comparator.<String>reverseOrder(),
+                m -> "--- " + m + " --- Total Expense: 1000.00 CNY",
+                rest -> "Earlier months (" + rest.size() + ")");
+    }
+
+    @Test
+    void testBuild_UnchangedWhenWithinBudget() {
+        String prompt = new PromptBudgeter(10_000).build("test", FIXED, List.of(counterparties(5)));
+
+        assertTrue(prompt.startsWith(FIXED));
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(prompt.contains("shop" + i + ","));
+        }
+        assertFalse(prompt.contains("Others"));
+    }
+
+    @Test
+    void testBuild_KeepsLargestItemsAndSummarizesTheRest() {
+        int budget = 300;
+        String prompt = new PromptBudgeter(budget).build("test", FIXED, List.of(counterparties(200)));
+
+        assertTrue(TokenEstimator.estimate(prompt) <= budget, "Prompt within budget");
+        assertTrue(prompt.startsWith(FIXED), "Fixed text always in full");
+        assertTrue(prompt.contains("shop200,"), "Largest counterparty kept");
+        assertTrue(prompt.contains("shop199,"));
+        assertFalse(prompt.contains("shop1,"), "Smallest counterparty dropped");
+        int kept = prompt.split("Counterparty: ", -1).length - 1;
+        int dropped = 200 - kept;
+        assertTrue(prompt.contains("Others (" + dropped + " more counterparties)"), "Dropped items summarized in one line");
+        int droppedTotal = dropped * (dropped + 1) / 2; // They are exactly shop1..shop<dropped>
+        assertTrue(prompt.contains("Net Total Expense: " + droppedTotal + ".00 CNY"));
+    }
+
+    @Test
+    void testBuild_SharesBudgetAndKeepsRecentMonthsInCalendarOrder() {
+        int budget = 250;
+        String prompt = new PromptBudgeter(budget).build("test", FIXED, List.of(counterparties(100), months(12)));
+
+        assertTrue(TokenEstimator.estimate(prompt) <= budget);
+        assertTrue(prompt.contains("shop100,"), "First section got its share");
+        assertTrue(prompt.contains("--- 2024-12 ---"), "Most recent month kept");
+        assertFalse(prompt.contains("--- 2024-01 ---"), "Oldest month dropped");
+        assertTrue(prompt.contains("Earlier months ("));
+        int nov = prompt.indexOf("--- 2024-11 ---");
+        int dec = prompt.indexOf("--- 2024-12 ---");
+        assertTrue(nov >= 0 && nov < dec, "Kept months stay in calendar order");
+    }
+
+    @Test
+    void testBuild_UnusedShareGoesToLaterSections() {
+        int budget = 400;
+        String prompt = new PromptBudgeter(budget).build("test", FIXED, List.of(counterparties(2), months(60)));
+
+        assertTrue(prompt.contains("shop1,") && prompt.contains("shop2,"), "Small section kept in full");
+        int monthsKept = prompt.split("--- 20", -1).length - 1;
+        String onlyMonths = new PromptBudgeter(budget).build("test", FIXED, List.of(months(60)));
+        assertTrue(monthsKept >= (onlyMonths.split("--- 20", -1).length - 1) - 3,
+                "Months get nearly the whole budget when counterparties need little");
+    }
+}
@@ -0,0 +1,149 @@
+package Service.AIservice;
+
+import DAO.Impl.CsvTransactionDao;
+import Service.Impl.TransactionServiceImpl;
+import Service.TransactionService;
+import Utils.CacheManager;
+import Utils.CircuitBreaker;
+import model.MonthlySummary;
+import model.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PromptContextTest {
+
+    private Path tempFile;
+    private TransactionService transactionService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempFile = Files.createTempFile("test_prompt_context_", ".csv");
+        Files.copy(Paths.get("src/test/resources/CSVForm/transactions/user1_transactions.csv"), tempFile,
+                StandardCopyOption.REPLACE_EXISTING);
+        transactionService = new TransactionServiceImpl(tempFile.toString());
+        PromptContext.clear();
+        // Answers cached by earlier runs would keep prompts from reaching the fake model (test cache dir only)
+        AiResponseCache responseCache = AITransactionService.getResponseCache();
+        if (responseCache != null) {
+            responseCache.clear();
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        PromptContext.clear();
+        Files.deleteIfExists(tempFile);
+    }
+
+    @Test
+    void testOf_SameDataReusesTheContext() throws Exception {
+        PromptContext first = PromptContext.of(tempFile.toString(), transactionService);
+        long reusesBefore = PromptContext.getReuseCount();
+
+        PromptContext second = PromptContext.of(tempFile.toString(), transactionService);
+
+        assertSame(first, second);
+        assertSame(first.monthlyDataPrompt(), second.monthlyDataPrompt()); // Rendered once
+        assertEquals(reusesBefore + 1, PromptContext.getReuseCount());
+    }
+
+    @Test
+    void testOf_ChangedDataBuildsANewContext() throws Exception {
+        PromptContext before = PromptContext.of(tempFile.toString(), transactionService);
+
+        transactionService.addTransaction(new Transaction("2025/04/02 12:00:00", "Food", "Canteen", "Lunch", "Expense",
+                18.0, "Campus Card", "Completed", "PC_ORDER_1", "PC_MERCHANT_1", ""));
+        PromptContext after = PromptContext.of(tempFile.toString(), transactionService);
+
+        assertNotSame(before, after);
+        assertEquals(before.getTransactions().size() + 1, after.getTransactions().size());
+        assertTrue(after.getMonthlySummaries().containsKey("2025-04"), after.getMonthlySummaries().keySet().toString());
+    }
+
+    @Test
+    void testDataVersion_IsThatOfTheSnapshotTheContextWasBuiltFrom() throws Exception {
+        PromptContext before = PromptContext.of(tempFile.toString(), transactionService);
+        String builtFrom = AITransactionService.dataVersion(
+                CacheManager.getSnapshot(tempFile.toString(), new CsvTransactionDao()).getFingerprint());
+
+        transactionService.addTransaction(new Transaction("2025/04/03 12:00:00", "Food", "Canteen", "Dinner", "Expense",
+                21.0, "Campus Card", "Completed", "PC_ORDER_2", "PC_MERCHANT_2", ""));
+        PromptContext after = PromptContext.of(tempFile.toString(), transactionService);
+
+        assertEquals(builtFrom, before.getDataVersion()); // Not re-read after the write
+        assertNotEquals(before.getDataVersion(), after.getDataVersion());
+    }
+
+    @Test
+    void testFeatures_PromptsStartWithTheSameMonthlyData() throws Exception {
+        List<String> prompts = Collections.synchronizedList(new ArrayList<>());
+        FakeLlmClient fake = new FakeLlmClient().setResponder(prompt -> {
+            prompts.add(prompt);
+            return "[300.00, 450.00] Answer.";
+        });
+        AITransactionService aiService = new AITransactionService(transactionService, fake,
+                new AiGateway(4, 1000, 1000, 1, 1, 1, new CircuitBreaker(100, 1000)));
+        CollegeStudentNeeds studentNeeds = new CollegeStudentNeeds(transactionService, aiService);
+
+        aiService.generatePersonalSummary(tempFile.toString(), true);
+        studentNeeds.generateTipsForSaving(tempFile.toString());
+        String monthlyData = PromptContext.of(tempFile.toString(), transactionService).monthlyDataPrompt();
+
+        assertEquals(2, prompts.size());
+        assertTrue(monthlyData.startsWith(PromptContext.MONTHLY_DATA_HEADING));
+        for (String prompt : prompts) {
+            assertTrue(prompt.startsWith(monthlyData), prompt);
+            assertTrue(prompt.length() > monthlyData.length()); // Instructions follow the data
+        }
+    }
+
+    @Test
+    void testFragment_ComputedOncePerContext() {
+        PromptContext context = new PromptContext("v1", List.of(), Map.of());
+        AtomicInteger computed = new AtomicInteger();
+
+        String first = context.fragment("weeks", () -> "weeks " + computed.incrementAndGet());
+        String second = context.fragment("weeks", () -> "weeks " + computed.incrementAndGet());
+
+        assertEquals("weeks 1", first);
+        assertEquals("weeks 1", second);
+        assertEquals(1, computed.get());
+    }
+
+    @Test
+    void testMonth_CalendarOrderAndLargestCategoryFirst() {
+        MonthlySummary march = new MonthlySummary("2025-03");
+        march.addIncome(1000);
+        march.addExpense(20, "Transport");
+        march.addExpense(300, "Food");
+        MonthlySummary february = new MonthlySummary("2025-02");
+        Map<String, MonthlySummary> summaries = new LinkedHashMap<>();
+        summaries.put("2025-03", march);
+        summaries.put("2025-02", february);
+
+        PromptContext context = new PromptContext("v1", List.of(), summaries);
+        String text = context.monthlyDataPrompt();
+
+        assertEquals(List.of("2025-02", "2025-03"), new ArrayList<>(context.getMonthlySummaries().keySet()));
+        assertTrue(text.indexOf("--- 2025-02 ---") < text.indexOf("--- 2025-03 ---"));
+        assertTrue(text.contains("    (No expenses)\n"));
+        assertTrue(text.indexOf("Food: 300.00") < text.indexOf("Transport: 20.00"));
+        assertTrue(text.contains("  Net (Income - Expense): 680.00 CNY\n"));
+        assertSame(context.month(march), context.month(march));
+    }
+}
@@ -0,0 +1,129 @@
+package Service.AIservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StubChatServerTest {
+
+    private static final Pattern DELTA_CONTENT = Pattern.compile("\"delta\":\\{\"role\":\"assistant\",\"content\":\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    private StubChatServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new StubChatServer(0).setChunking(3, 0);
+        server.setResponder(prompt -> "Echo: " + prompt);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private HttpRequest chatRequest(String body) {
+        return HttpRequest.newBuilder(URI.create(server.getBaseUrl() + "/chat/completions"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    @Test
+    void testStreamingRequest_SendsSseChunksEndingWithDone() throws Exception {
+        String body = "{\"model\":\"m\",\"stream\":true,\"messages\":[{\"role\":\"user\",\"content\":\"How much on \\\"food\\\"?\\n午饭\"}]}";
+
+        HttpResponse<java.io.InputStream> response = client.send(chatRequest(body), HttpResponse.BodyHandlers.ofInputStream());
+
+        assertEquals(200, response.statusCode());
+        assertEquals("text/event-stream", response.headers().firstValue("Content-Type").orElse(""));
+        List<String> events = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("data: ")) {
+                    events.add(line.substring("data: ".length()));
+                }
+            }
+        }
+        assertEquals("[DONE]", events.get(events.size() - 1));
+        StringBuilder text = new StringBuilder();
+        for (String event : events) {
+            Matcher m = DELTA_CONTENT.matcher(event);
+            if (m.find()) {
+                assertTrue(event.contains("\"object\":\"chat.completion.chunk\""));
+                text.append(m.group(1));
+            }
+        }
+        assertTrue(events.size() > 5, "Answer is split into several chunks");
+        assertEquals(StubChatServer.quote("Echo: How much on \"food\"?\n午饭"), "\"" + text + "\"",
+                "Chunks join up to the (escaped) answer to the prompt");
+    }
+
+    @Test
+    void testPlainRequest_ReturnsOneCompletion() throws Exception {
+        String body = "{\"model\":\"m\",\"messages\":[{\"role\":\"system\",\"content\":\"be brief\"},{\"role\":\"user\",\"content\":\"hi\"}]}";
+
+        HttpResponse<String> response = client.send(chatRequest(body), HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"object\":\"chat.completion\""));
+        assertTrue(response.body().contains("\"content\":\"Echo: hi\""), "Answers the last message");
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void testOtherPaths_AreNotFound() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(server.getBaseUrl() + "/models")).GET().build();
+
+        assertEquals(404, client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    void testErrorRate_FailsTheSameRequestsForTheSameSeed() throws Exception {
+        String body = "{\"model\":\"m\",\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}";
+        List<Integer> first = new ArrayList<>();
+        List<Integer> second = new ArrayList<>();
+
+        server.setErrorRate(0.5, 7);
+        for (int i = 0; i < 20; i++) {
+            first.add(client.send(chatRequest(body), HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+        server.setErrorRate(0.5, 7);
+        for (int i = 0; i < 20; i++) {
+            second.add(client.send(chatRequest(body), HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+
+        assertEquals(first, second);
+        assertTrue(first.contains(200));
+        assertTrue(first.stream().anyMatch(status -> status == 503 || status == 429));
+        assertTrue(first.stream().allMatch(status -> status == 200 || status == 503 || status == 429));
+    }
+
+    @Test
+    void testLatency_DelaysTheResponse() throws Exception {
+        server.setLatency(150, 0);
+        String body = "{\"model\":\"m\",\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}";
+
+        long start = System.nanoTime();
+        HttpResponse<String> response = client.send(chatRequest(body), HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertTrue((System.nanoTime() - start) / 1_000_000 >= 150);
+    }
+}
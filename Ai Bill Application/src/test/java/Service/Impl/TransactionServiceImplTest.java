@@ -4,8 +4,11 @@ import DAO.Impl.CsvSummaryStatisticDao;
 import DAO.Impl.CsvTransactionDao; // For direct use in creating temp files if needed
 import DAO.Impl.CsvUserDao;
 import DAO.UserDao;
+import Service.ExportFormat;
+import Service.ExportProgressListener;
 import Service.TransactionService;
 import Service.User.UserService;
+import model.ImportResult;
 import model.MonthlySummary;
 import model.Transaction;
 import model.User;
@@ -16,6 +19,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 // It's good practice to import static assertions from JUnit 5:
 // import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
 
 
 import java.io.IOException;
@@ -299,4 +303,143 @@ public class TransactionServiceImplTest {
         }
         System.out.println("TransactionServiceImplTest: testImportTransactionsFromCsv finished.");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testImportTransactions_SkipsDuplicatesAndReportsThemOnce() throws Exception {
+        System.out.println("TransactionServiceImplTest: Running testImportTransactions_SkipsDuplicatesAndReportsThemOnce...");
+        Path importFile = Files.createTempFile("test_import_", ".csv");
+        try {
+            String newOrder = "IMPORT_NEW_" + UUID.randomUUID();
+            Files.writeString(importFile,
+                    "Transaction Time,Transaction Type,Counterparty,Commodity,In/Out,Amount(CNY),Payment Method,Current Status,Order Number,Merchant Number,Remarks\n" +
+                    "2025/03/05 14:30:00,Groceries,Supermarket B,Groceries,Expense,250.50,Alipay,Completed,SHOP_B_001,ALIPAY_12345,Already in user1's file\n" +
+                    "2025/04/01 10:00:00,Dining,Cafe,Coffee,Expense,18.00,WeChat Pay,Completed," + newOrder + ",M1,New\n" +
+                    "2025/04/01 10:00:00,Dining,Cafe,Coffee,Expense,18.00,WeChat Pay,Completed, " + newOrder + " ,M1,Repeated in the import file\n" +
+                    "2025/04/02 11:00:00,Dining,Cafe,Tea,Expense,9.00,WeChat Pay,Completed,,M1,No order number\n",
+                    java.nio.charset.StandardCharsets.UTF_8);
+            int initialCount = transactionService.getAllTransactions().size();
+
+            List<int[]> progress = new java.util.ArrayList<>();
+            ImportResult result = transactionService.importTransactions(testUser.getTransactionFilePath(), importFile.toString(),
+                    (rowsRead, importedCount, duplicateCount) -> progress.add(new int[]{rowsRead, importedCount, duplicateCount}));
+
+            assertEquals(4, result.getRowsRead());
+            assertEquals(2, result.getImportedCount());
+            assertEquals(2, result.getDuplicateCount());
+            assertEquals(1, result.getGeneratedOrderNumbers());
+            assertEquals(List.of("SHOP_B_001", newOrder), result.getDuplicateSamples());
+            assertFalse(progress.isEmpty(), "Progress should be reported");
+            assertEquals(2, progress.get(progress.size() - 1)[1]);
+
+            // Rows are on disk (not only in the cache)
+            List<Transaction> onDisk = new CsvTransactionDao().loadFromCSV(testUser.getTransactionFilePath());
+            assertEquals(initialCount + 2, onDisk.size());
+            assertEquals(1, onDisk.stream().filter(t -> t.getOrderNumber().equals(newOrder)).count());
+            assertEquals(1, onDisk.stream().filter(t -> t.getOrderNumber().startsWith("IMPORT_") && t.getCommodity().equals("Tea")).count());
+        } finally {
+            Files.deleteIfExists(importFile);
+        }
+        System.out.println("TransactionServiceImplTest: testImportTransactions_SkipsDuplicatesAndReportsThemOnce finished.");
+    }
+
+    @Test
+    void testImporter_AppendsInBatchesAndReportsProgressPerBatch() throws Exception {
+        Path importFile = Files.createTempFile("test_import_batches_", ".csv");
+        try {
+            StringBuilder csv = new StringBuilder("Transaction Time,Transaction Type,Counterparty,Commodity,In/Out,Amount(CNY),Payment Method,Current Status,Order Number,Merchant Number,Remarks\n");
+            for (int i = 0; i < 25; i++) {
+                csv.append("2025/05/01 08:00:00,Transport,Metro,Ticket,Expense,3.00,Card,Completed,BATCH_").append(i).append(",M,\n");
+            }
+            Files.writeString(importFile, csv.toString(), java.nio.charset.StandardCharsets.UTF_8);
+
+            CsvTransactionDao dao = new CsvTransactionDao();
+            List<Transaction> existing = dao.loadFromCSV(testUser.getTransactionFilePath());
+            TransactionImporter importer = new TransactionImporter(dao,
+                    TransactionWriteQueue.forFile(testUser.getTransactionFilePath(), dao), 10);
+            List<Integer> importedSoFar = new java.util.ArrayList<>();
+            ImportResult result = importer.run(importFile.toString(), existing,
+                    (rowsRead, importedCount, duplicateCount) -> importedSoFar.add(importedCount));
+
+            assertEquals(25, result.getImportedCount());
+            assertEquals(List.of(10, 20, 25), importedSoFar);
+            assertEquals(existing.size() + 25, dao.loadFromCSV(testUser.getTransactionFilePath()).size());
+        } finally {
+            Files.deleteIfExists(importFile);
+        }
+    }
+
+    @Test
+    void testExportTransactions_CsvRoundTripsThroughImportFormat() throws Exception {
+        Path target = Files.createTempFile("test_export_", ".csv");
+        try {
+            List<Transaction> all = transactionService.getAllTransactions();
+            int written = transactionService.exportTransactions(null, target.toString(), ExportFormat.CSV, null);
+
+            assertEquals(all.size(), written);
+            List<Transaction> reread = new CsvTransactionDao().loadFromCSV(target.toString());
+            assertEquals(all.size(), reread.size());
+            assertEquals(all.get(0).getOrderNumber(), reread.get(0).getOrderNumber());
+            assertEquals(all.get(0).getPaymentAmount(), reread.get(0).getPaymentAmount(), 0.001);
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    @Test
+    void testExportTransactions_FilteredCompressedJsonLines() throws Exception {
+        Path target = Files.createTempFile("test_export_", ".jsonl.gz");
+        try {
+            Transaction criteria = new Transaction("", "", "", "", "Expense", 0, "", "", "", "", "");
+            long expected = transactionService.searchTransaction(criteria).size();
+
+            List<int[]> progress = new java.util.ArrayList<>();
+            int written = transactionService.exportTransactions(criteria, target.toString(), ExportFormat.JSON_LINES_GZIP,
+                    (rowsScanned, totalRows, rowsWritten) -> progress.add(new int[]{rowsScanned, totalRows, rowsWritten}));
+
+            assertEquals(expected, written);
+            List<String> lines;
+            try (java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader(
+                    new java.util.zip.GZIPInputStream(Files.newInputStream(target)), java.nio.charset.StandardCharsets.UTF_8))) {
+                lines = reader.lines().collect(java.util.stream.Collectors.toList());
+            }
+            assertEquals(written, lines.size());
+            for (String line : lines) {
+                assertTrue(line.startsWith("{\"transactionTime\":") && line.endsWith("}"), line);
+                assertTrue(line.contains("\"paymentAmount\":"), line);
+            }
+            int[] last = progress.get(progress.size() - 1);
+            assertEquals(last[1], last[0], "Final progress should cover all rows");
+            assertEquals(written, last[2]);
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    @Test
+    void testExportTransactions_CancelLeavesExistingFileUntouched() throws Exception {
+        Path target = Files.createTempFile("test_export_", ".csv");
+        try {
+            Files.writeString(target, "previous export");
+            ExportProgressListener cancelled = new ExportProgressListener() {
+                @Override
+                public void onProgress(int rowsScanned, int totalRows, int rowsWritten) {
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return true;
+                }
+            };
+
+            assertThrows(java.util.concurrent.CancellationException.class,
+                    () -> transactionService.exportTransactions(null, target.toString(), ExportFormat.CSV, cancelled));
+            assertEquals("previous export", Files.readString(target));
+            try (java.util.stream.Stream<Path> siblings = Files.list(target.getParent())) {
+                assertFalse(siblings.anyMatch(p -> p.getFileName().toString().startsWith(target.getFileName().toString())
+                        && p.getFileName().toString().endsWith(".tmp")), "Temporary export file should be removed");
+            }
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+}
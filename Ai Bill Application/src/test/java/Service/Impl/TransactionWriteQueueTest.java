@@ -0,0 +1,357 @@
+package Service.Impl;
+
+import DAO.Impl.CsvTransactionDao;
+import DAO.Impl.CsvUserDao;
+import DAO.Impl.TransactionJournal;
+import Utils.CacheManager;
+import model.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionWriteQueueTest {
+
+    private final String sampleTransactionFilePath = "src/test/resources/CSVForm/transactions/user1_transactions.csv";
+    private Path tempFilePath;
+    private CountingDao dao;
+
+    /**
+     * Counts the physical writes, so batching can be checked.
+     */
+    private static class CountingDao extends CsvTransactionDao {
+        final AtomicInteger appends = new AtomicInteger();
+        final AtomicInteger rewrites = new AtomicInteger();
+
+        @Override
+        public void appendTransactions(String filePath, List<Transaction> transactions) throws IOException {
+            appends.incrementAndGet();
+            super.appendTransactions(filePath, transactions);
+        }
+
+        @Override
+        public void writeTransactionsToCSV(String filePath, List<Transaction> transactions) throws IOException {
+            rewrites.incrementAndGet();
+            super.writeTransactionsToCSV(filePath, transactions);
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempFilePath = Files.createTempFile("write_queue_test_", ".csv");
+        Files.copy(Paths.get(sampleTransactionFilePath), tempFilePath, StandardCopyOption.REPLACE_EXISTING);
+        dao = new CountingDao();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        CacheManager.invalidateTransactionCache(tempFilePath.toString());
+        Files.deleteIfExists(tempFilePath);
+        Files.deleteIfExists(Paths.get(tempFilePath + TransactionJournal.SUFFIX));
+    }
+
+    private static Transaction newTransaction(String orderNumber) {
+        return new Transaction("2025/05/01 12:00:00", "Dining", "Canteen", "Lunch", "Expense", 10.0,
+                "Cash", "Completed", orderNumber, "", "");
+    }
+
+    @Test
+    void testConcurrentAppends_AreAllWrittenInFewBatches() throws Exception {
+        TransactionWriteQueue queue = TransactionWriteQueue.forFile(tempFilePath.toString(), dao);
+        int initialCount = new CsvTransactionDao().loadFromCSV(tempFilePath.toString()).size();
+
+        int writers = 40;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            String orderNumber = "QUEUE_APPEND_" + i;
+            futures.add(executor.submit(() -> queue.append(List.of(newTransaction(orderNumber))).get()));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        List<Transaction> onDisk = new CsvTransactionDao().loadFromCSV(tempFilePath.toString());
+        assertEquals(initialCount + writers, onDisk.size(), "No append may be lost");
+        assertEquals(0, dao.rewrites.get(), "Pure appends must not rewrite the file");
+        assertTrue(dao.appends.get() < writers, "Appends should be grouped, got " + dao.appends.get() + " writes");
+        assertEquals(onDisk.size(), CacheManager.getTransactions(tempFilePath.toString(), dao).size());
+    }
+
+    @Test
+    void testConcurrentChanges_NoLostUpdates() throws Exception {
+        TransactionServiceImpl service = new TransactionServiceImpl(tempFilePath.toString());
+        List<Transaction> rows = service.getAllTransactions();
+        assertTrue(rows.size() >= 2, "Sample file needs at least two rows");
+
+        // Two services editing different rows of the same file at the same time: both edits must survive
+        TransactionServiceImpl otherService = new TransactionServiceImpl(tempFilePath.toString());
+        Transaction firstEdit = new Transaction();
+        firstEdit.setOrderNumber(rows.get(0).getOrderNumber());
+        firstEdit.setRemarks("edit one");
+        Transaction secondEdit = new Transaction();
+        secondEdit.setOrderNumber(rows.get(1).getOrderNumber());
+        secondEdit.setRemarks("edit two");
+
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> change(service, firstEdit));
+        CompletableFuture<Void> second = CompletableFuture.runAsync(() -> change(otherService, secondEdit));
+        CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+
+        List<Transaction> onDisk = new CsvTransactionDao().loadFromCSV(tempFilePath.toString());
+        assertEquals(rows.size(), onDisk.size());
+        assertEquals("edit one", onDisk.get(0).getRemarks());
+        assertEquals("edit two", onDisk.get(1).getRemarks());
+        // The rows handed out before the edit were not modified in place
+        assertNotEquals("edit one", rows.get(0).getRemarks());
+    }
+
+    @Test
+    void testFailedMutation_OnlyFailsItself() throws Exception {
+        TransactionWriteQueue queue = TransactionWriteQueue.forFile(tempFilePath.toString(), dao);
+        int initialCount = CacheManager.getTransactions(tempFilePath.toString(), dao).size();
+
+        CompletableFuture<Object> failing = queue.submit(rows -> {
+            rows.clear(); // Must be rolled back
+            throw new IllegalArgumentException("rejected");
+        });
+        CompletableFuture<Void> appended = queue.append(List.of(newTransaction("QUEUE_AFTER_FAILURE")));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failing.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+        appended.get(10, TimeUnit.SECONDS);
+
+        List<Transaction> onDisk = new CsvTransactionDao().loadFromCSV(tempFilePath.toString());
+        assertEquals(initialCount + 1, onDisk.size());
+    }
+
+    @Test
+    void testDeleteOfMissingRow_WritesNothing() throws Exception {
+        String file = tempFilePath.toString();
+        String originalContent = Files.readString(tempFilePath);
+        TransactionWriteQueue queue = new TransactionWriteQueue(file, dao, false, 60_000, 1000);
+
+        boolean deleted = queue.submit(rows -> rows.removeIf(t -> t.getOrderNumber().equals("NO_SUCH_ORDER"))).get(10, TimeUnit.SECONDS);
+
+        assertFalse(deleted);
+        assertEquals(originalContent, Files.readString(tempFilePath));
+        assertEquals(0, dao.appends.get() + dao.rewrites.get());
+        assertFalse(new TransactionJournal(file).exists());
+
+        // Batched with an add, it does not turn the append into a rewrite
+        CompletableFuture<Boolean> missing = queue.submit(rows -> rows.removeIf(t -> t.getOrderNumber().equals("NO_SUCH_ORDER")));
+        CompletableFuture<Void> appended = queue.append(List.of(newTransaction("AFTER_MISSING_DELETE")));
+        assertFalse(missing.get(10, TimeUnit.SECONDS));
+        appended.get(10, TimeUnit.SECONDS);
+        assertEquals(1, dao.appends.get());
+        assertEquals(0, dao.rewrites.get());
+    }
+
+    @Test
+    void testWriteBehind_EditsVisibleBeforeFlushAndFlushedTogether() throws Exception {
+        String file = tempFilePath.toString();
+        String originalContent = Files.readString(tempFilePath);
+        TransactionWriteQueue queue = new TransactionWriteQueue(file, dao, true, 60_000, 1000);
+        int initialCount = CacheManager.getTransactions(file, dao).size();
+
+        queue.append(List.of(newTransaction("WB_1"))).get(10, TimeUnit.SECONDS);
+        queue.submit(rows -> rows.add(newTransaction("WB_2"))).get(10, TimeUnit.SECONDS);
+
+        // Readers see the edits, the CSV is untouched, the journal holds them
+        assertEquals(initialCount + 2, CacheManager.getTransactions(file, dao).size());
+        assertEquals(originalContent, Files.readString(tempFilePath));
+        assertEquals(0, dao.appends.get() + dao.rewrites.get());
+        assertEquals(2, new TransactionJournal(file).readAll().size());
+
+        queue.flush().get(10, TimeUnit.SECONDS);
+        assertEquals(1, dao.rewrites.get(), "All unflushed edits go to the CSV in one rewrite");
+        assertEquals(initialCount + 2, new CsvTransactionDao().loadFromCSV(file).size());
+        assertFalse(new TransactionJournal(file).exists(), "Journal is dropped after the flush");
+    }
+
+    @Test
+    void testWriteBehind_UnflushedEditsSurviveCacheInvalidation() throws Exception {
+        String file = tempFilePath.toString();
+        TransactionWriteQueue queue = new TransactionWriteQueue(file, dao, true, 60_000, 1000);
+        int initialCount = CacheManager.getTransactions(file, dao).size();
+
+        queue.append(List.of(newTransaction("WB_PINNED"))).get(10, TimeUnit.SECONDS);
+        // As if the entry had been evicted (e.g. summaries loading every user's file)
+        CacheManager.invalidateTransactionCache(file);
+
+        List<Transaction> visible = CacheManager.getTransactions(file, dao);
+        assertEquals(initialCount + 1, visible.size(), "Unflushed edits do not depend on the cache entry");
+        assertEquals("WB_PINNED", visible.get(visible.size() - 1).getOrderNumber());
+
+        queue.flush().get(10, TimeUnit.SECONDS);
+        CacheManager.invalidateTransactionCache(file);
+        assertEquals(initialCount + 1, CacheManager.getTransactions(file, dao).size()); // From the file now
+    }
+
+    @Test
+    void testWriteBehind_FlushesWhenTooManyEditsPending() throws Exception {
+        String file = tempFilePath.toString();
+        TransactionWriteQueue queue = new TransactionWriteQueue(file, dao, true, 60_000, 2);
+        int initialCount = CacheManager.getTransactions(file, dao).size();
+
+        queue.append(List.of(newTransaction("WB_A"))).get(10, TimeUnit.SECONDS);
+        queue.append(List.of(newTransaction("WB_B"))).get(10, TimeUnit.SECONDS);
+
+        // The flush runs on the writer right after the second edit completes
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (new TransactionJournal(file).exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, dao.rewrites.get());
+        assertEquals(initialCount + 2, new CsvTransactionDao().loadFromCSV(file).size());
+    }
+
+    @Test
+    void testLeftoverJournal_RowsWithoutOrderNumberRecoverAsEdited() throws Exception {
+        String file = tempFilePath.toString();
+        Transaction first = newTransaction("");
+        first.setRemarks("blank one");
+        Transaction second = newTransaction("");
+        second.setRemarks("blank two");
+        new CsvTransactionDao().appendTransactions(file, List.of(first, second)); // As the add dialog allows
+        List<Transaction> before = new CsvTransactionDao().loadFromCSV(file);
+
+        // Delete the first blank row, edit the second; the run dies before the CSV is rewritten
+        List<Transaction> after = new ArrayList<>();
+        for (Transaction t : before) {
+            if ("blank one".equals(t.getRemarks())) {
+                continue;
+            }
+            if ("blank two".equals(t.getRemarks())) {
+                Transaction edited = new Transaction(t);
+                edited.setRemarks("blank two edited");
+                after.add(edited);
+            } else {
+                after.add(t);
+            }
+        }
+        new TransactionJournal(file).append(TransactionJournal.Kind.DEFERRED, -1, TransactionJournal.diff(before, after));
+
+        new TransactionWriteQueue(file, dao, false, 60_000, 1000); // Creating the writer replays the journal
+
+        List<Transaction> onDisk = new CsvTransactionDao().loadFromCSV(file);
+        assertEquals(before.size() - 1, onDisk.size());
+        assertTrue(onDisk.stream().noneMatch(t -> "blank one".equals(t.getRemarks())), "Deleted row stays deleted");
+        assertTrue(onDisk.stream().noneMatch(t -> "blank two".equals(t.getRemarks())), "Edited row is not duplicated");
+        assertEquals(1, onDisk.stream().filter(t -> "blank two edited".equals(t.getRemarks())).count());
+        assertFalse(new TransactionJournal(file).exists());
+    }
+
+    @Test
+    void testLeftoverJournal_IsReplayedOnStartup() throws Exception {
+        String file = tempFilePath.toString();
+        List<Transaction> rows = new CsvTransactionDao().loadFromCSV(file);
+        Transaction edited = new Transaction(rows.get(0));
+        edited.setRemarks("recovered edit");
+
+        // What a run that died before flushing leaves behind
+        TransactionJournal journal = new TransactionJournal(file);
+        journal.append(TransactionJournal.Kind.DEFERRED, -1, List.of(
+                new TransactionJournal.Record(TransactionJournal.Op.PUT, edited),
+                new TransactionJournal.Record(TransactionJournal.Op.PUT, newTransaction("WB_RECOVERED")),
+                new TransactionJournal.Record(TransactionJournal.Op.DELETE, rows.get(1))));
+
+        new TransactionWriteQueue(file, dao, true, 60_000, 1000);
+
+        List<Transaction> onDisk = new CsvTransactionDao().loadFromCSV(file);
+        assertEquals(rows.size(), onDisk.size()); // One added, one deleted
+        assertEquals("recovered edit", onDisk.get(0).getRemarks());
+        assertEquals("WB_RECOVERED", onDisk.get(onDisk.size() - 1).getOrderNumber());
+        assertTrue(onDisk.stream().noneMatch(t -> t.getOrderNumber().equals(rows.get(1).getOrderNumber())));
+        assertFalse(journal.exists());
+
+        // Replaying again (crash during recovery) changes nothing
+        List<Transaction> records = new ArrayList<>(onDisk);
+        assertEquals(onDisk.size(), TransactionJournal.replay(records, List.of(
+                new TransactionJournal.Record(TransactionJournal.Op.PUT, newTransaction("WB_RECOVERED")),
+                new TransactionJournal.Record(TransactionJournal.Op.DELETE, rows.get(1)))).size());
+    }
+
+    @Test
+    void testInterruptedAppend_IsRepairedFromJournalAtStartup() throws Exception {
+        String file = tempFilePath.toString();
+        List<Transaction> rows = new CsvTransactionDao().loadFromCSV(file);
+        long sizeBefore = Files.size(tempFilePath);
+
+        // Crash after the journal was forced but halfway through the CSV append
+        new TransactionJournal(file).append(TransactionJournal.Kind.APPEND, sizeBefore,
+                List.of(newTransaction("WAL_1"), newTransaction("WAL_2")).stream()
+                        .map(t -> new TransactionJournal.Record(TransactionJournal.Op.PUT, t)).toList());
+        Files.writeString(tempFilePath, "2025/05/01 12:00:00,Dining,Can", StandardOpenOption.APPEND);
+
+        assertEquals(1, TransactionWriteQueue.recoverAll(tempFilePath.getParent().toString(), dao));
+
+        List<Transaction> onDisk = new CsvTransactionDao().loadFromCSV(file);
+        assertEquals(rows.size() + 2, onDisk.size(), "Torn row is gone, both journaled rows are there once");
+        assertEquals("WAL_1", onDisk.get(rows.size()).getOrderNumber());
+        assertEquals("WAL_2", onDisk.get(rows.size() + 1).getOrderNumber());
+        assertEquals(0, dao.rewrites.get(), "An interrupted append is redone without rewriting the file");
+        assertFalse(new TransactionJournal(file).exists());
+    }
+
+    @Test
+    void testRecoverAll_FindsJournalsThroughTheUserStore() throws Exception {
+        String file = tempFilePath.toString();
+        List<Transaction> rows = new CsvTransactionDao().loadFromCSV(file);
+        new TransactionJournal(file).append(TransactionJournal.Kind.APPEND, Files.size(tempFilePath),
+                List.of(new TransactionJournal.Record(TransactionJournal.Op.PUT, newTransaction("WAL_USER"))));
+
+        // users.csv can point anywhere, not only under the user data directory
+        Path usersFile = Files.createTempFile("write_queue_users_", ".csv");
+        try {
+            Files.writeString(usersFile, "username,password,role,transaction_csv_path,summary_csv_path\r\n"
+                    + "alice,pw,user," + file + ",\r\n"
+                    + "bob,pw,user," + tempFilePath.resolveSibling("no_such_transactions.csv") + ",\r\n",
+                    StandardCharsets.UTF_8);
+
+            assertEquals(1, TransactionWriteQueue.recoverAll(new CsvUserDao(usersFile.toString()), dao));
+        } finally {
+            Files.deleteIfExists(usersFile);
+        }
+
+        List<Transaction> onDisk = new CsvTransactionDao().loadFromCSV(file);
+        assertEquals(rows.size() + 1, onDisk.size());
+        assertEquals("WAL_USER", onDisk.get(rows.size()).getOrderNumber());
+        assertFalse(new TransactionJournal(file).exists());
+    }
+
+    @Test
+    void testSyncCommit_LeavesNoJournalBehind() throws Exception {
+        String file = tempFilePath.toString();
+        TransactionWriteQueue queue = new TransactionWriteQueue(file, dao, false, 60_000, 1000);
+        queue.append(List.of(newTransaction("WAL_SYNC"))).get(10, TimeUnit.SECONDS);
+        queue.submit(rows -> rows.removeIf(t -> "WAL_SYNC".equals(t.getOrderNumber()))).get(10, TimeUnit.SECONDS);
+        assertFalse(new TransactionJournal(file).exists());
+    }
+
+    private static void change(TransactionServiceImpl service, Transaction edit) {
+        try {
+            service.changeTransaction(edit);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BloomFilterTest {
+
+    @Test
+    void testNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("ORDER_" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("ORDER_" + i), "Added value must always be reported: ORDER_" + i);
+        }
+    }
+
+    @Test
+    void testFalsePositiveRateStaysNearTarget() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("ORDER_" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("OTHER_" + i)) {
+                falsePositives++;
+            }
+        }
+        // Sized for 1%; allow generous slack so the test is not flaky
+        assertTrue(falsePositives < 300, "Too many false positives: " + falsePositives);
+    }
+
+    @Test
+    void testNonAsciiValues() {
+        BloomFilter filter = new BloomFilter(100, 0.01);
+        filter.put("订单-001");
+        assertTrue(filter.mightContain("订单-001"));
+        assertFalse(filter.mightContain("订单-002") && filter.mightContain("订单-003") && filter.mightContain("订单-004"));
+    }
+
+    @Test
+    void testRejectsInvalidRate() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 0));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 1));
+    }
+}
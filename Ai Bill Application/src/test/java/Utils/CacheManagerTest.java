@@ -11,13 +11,18 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.*;
+
 public class CacheManagerTest {
 
     private TransactionDao transactionDao;
@@ -116,4 +121,109 @@ public class CacheManagerTest {
         }
         System.out.println("CacheManagerTest: testPutAndInvalidateTransactions finished.");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetTransactions_ReloadsAfterExternalChange() throws Exception {
+        System.out.println("CacheManagerTest: Running testGetTransactions_ReloadsAfterExternalChange...");
+        String path = tempFilePath.toString();
+        List<Transaction> before = CacheManager.getTransactions(path, transactionDao);
+
+        // Simulate an edit made outside the app (e.g. in a spreadsheet); the sample file has no trailing newline
+        Files.writeString(tempFilePath, "\n2025/04/01 10:00:00,Dining,External,Edit,Expense,¥1.00,Cash,Completed,EXTERNAL_001,,\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        List<Transaction> after = CacheManager.getTransactions(path, transactionDao);
+        assertEquals(before.size() + 1, after.size(), "External change should be visible on the next access");
+        assertTrue(after.stream().anyMatch(t -> "EXTERNAL_001".equals(t.getOrderNumber())));
+        System.out.println("CacheManagerTest: testGetTransactions_ReloadsAfterExternalChange finished.");
+    }
+
+    @Test
+    void testGetTransactions_KeepsEntryWhenOnlyTouched() throws Exception {
+        System.out.println("CacheManagerTest: Running testGetTransactions_KeepsEntryWhenOnlyTouched...");
+        String path = tempFilePath.toString();
+        TransactionSnapshot first = CacheManager.getSnapshot(path, transactionDao);
+
+        // New mtime, same content: the checksum matches, so the cached rows are reused
+        Files.setLastModifiedTime(tempFilePath, FileTime.fromMillis(System.currentTimeMillis() + 5_000));
+        TransactionSnapshot second = CacheManager.getSnapshot(path, transactionDao);
+        assertEquals(first.getGeneration(), second.getGeneration(), "Touching the file must not trigger a reparse");
+        assertSame(first.get(0), second.get(0), "Touching the file must not trigger a reparse");
+        System.out.println("CacheManagerTest: testGetTransactions_KeepsEntryWhenOnlyTouched finished.");
+    }
+
+    @Test
+    void testSharedCache_ExposesWeightAndStats() throws Exception {
+        System.out.println("CacheManagerTest: Running testSharedCache_ExposesWeightAndStats...");
+        long requestsBefore = CacheManager.getCacheStats().requestCount();
+
+        List<Transaction> transactions = CacheManager.getTransactions(tempFilePath.toString(), transactionDao);
+        CacheManager.getTransactions(tempFilePath.toString(), transactionDao);
+
+        assertTrue(CacheManager.getCachedFileCount() >= 1);
+        assertTrue(CacheManager.getEstimatedWeightBytes() >= (long) transactions.size() * CacheManager.ESTIMATED_BYTES_PER_ROW,
+                "Weight should be estimated from the row count");
+        assertTrue(CacheManager.getEstimatedWeightBytes() <= CacheManager.getMaximumWeightBytes());
+        assertTrue(CacheManager.getCacheStats().requestCount() >= requestsBefore + 2, "Stats should be recorded");
+        System.out.println("CacheManagerTest: Stats after two reads: " + CacheManager.getCacheStats());
+    }
+
+    @Test
+    void testGetTransactions_ColdStartUsesSnapshot() throws Exception {
+        System.out.println("CacheManagerTest: Running testGetTransactions_ColdStartUsesSnapshot...");
+        String path = tempFilePath.toString();
+        List<Transaction> parsed = CacheManager.getTransactions(path, transactionDao);
+        CacheManager.flushSnapshots();
+
+        // Simulate a restart: memory is empty, the snapshot is still on disk
+        CacheManager.invalidateMemoryTier();
+        TransactionDao failingDao = new CsvTransactionDao() {
+            @Override
+            public List<Transaction> loadFromCSV(String filePath) throws IOException {
+                throw new IOException("CSV should not be parsed when a valid snapshot exists");
+            }
+        };
+        List<Transaction> restored = CacheManager.getTransactions(path, failingDao);
+        assertEquals(parsed.size(), restored.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            assertEquals(parsed.get(i).getOrderNumber(), restored.get(i).getOrderNumber());
+            assertEquals(parsed.get(i).getPaymentAmount(), restored.get(i).getPaymentAmount());
+        }
+
+        // A changed CSV makes the snapshot stale, so the file is parsed again
+        CacheManager.invalidateMemoryTier();
+        Files.writeString(tempFilePath, "\n2025/04/01 10:00:00,Dining,External,Edit,Expense,¥1.00,Cash,Completed,EXTERNAL_002,,\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        assertEquals(parsed.size() + 1, CacheManager.getTransactions(path, transactionDao).size());
+        System.out.println("CacheManagerTest: testGetTransactions_ColdStartUsesSnapshot finished.");
+    }
+
+    @Test
+    void testPublishedSnapshots_AreImmutableAndVersioned() throws Exception {
+        System.out.println("CacheManagerTest: Running testPublishedSnapshots_AreImmutableAndVersioned...");
+        String path = tempFilePath.toString();
+        TransactionSnapshot before = CacheManager.getSnapshot(path, transactionDao);
+        int sizeBefore = before.size();
+        assertThrows(UnsupportedOperationException.class, () -> before.add(new Transaction()));
+        assertThrows(UnsupportedOperationException.class, () -> before.remove(0));
+
+        // Writer: copy, edit, write, publish
+        List<Transaction> next = new ArrayList<>(before);
+        Transaction edited = new Transaction(next.get(0));
+        edited.setRemarks("Edited copy");
+        next.set(0, edited);
+        transactionDao.writeTransactionsToCSV(path, next);
+        TransactionSnapshot published = CacheManager.putTransactions(path, next, transactionDao);
+
+        assertTrue(published.getGeneration() > before.getGeneration());
+        assertSame(published, CacheManager.getSnapshot(path, transactionDao));
+        assertEquals("Edited copy", published.get(0).getRemarks());
+        // A reader holding the old snapshot still sees the old version
+        assertEquals(sizeBefore, before.size());
+        assertNotEquals("Edited copy", before.get(0).getRemarks());
+
+        // Changing the caller's list after publishing does not leak into the snapshot
+        next.clear();
+        assertEquals(sizeBefore, published.size());
+    }
+}
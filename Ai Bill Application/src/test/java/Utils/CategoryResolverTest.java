@@ -0,0 +1,115 @@
+package Utils;
+
+import model.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CategoryResolverTest {
+
+    private Path rulesFile;
+    private CategoryResolver resolver;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        rulesFile = Files.createTempFile("category_rules_test_", ".csv");
+        Files.writeString(rulesFile, "rule_type,pattern,standard_category\n" +
+                "alias,伙食费,Dining\n" +
+                "keyword,蜜雪冰城,Dining\n" +
+                "keyword,invalid rule,Not A Category\n", StandardCharsets.UTF_8);
+        resolver = new CategoryResolver(rulesFile.toString());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(rulesFile);
+    }
+
+    private Transaction tx(String type, String counterparty, String commodity, String inOut) {
+        return new Transaction("2025/03/01 12:00:00", type, counterparty, commodity, inOut, 20.0,
+                "WeChat Pay", "Completed", "ORDER_1", "", "");
+    }
+
+    @Test
+    void testResolveType_NormalizesAndUsesAliases() {
+        assertEquals("Dining", resolver.resolveType("Dining"));
+        assertEquals("Dining", resolver.resolveType("  dining "));
+        assertEquals("Dining", resolver.resolveType("ＤＩＮＩＮＧ")); // Full-width input
+        assertEquals("Dining", resolver.resolveType("餐饮美食")); // Built-in alias
+        assertEquals("Dining", resolver.resolveType("伙食费")); // User alias from the rules file
+        assertEquals("Transportation", resolver.resolveType("交通出行"));
+        assertNull(resolver.resolveType("Something Unknown"));
+        assertNull(resolver.resolveType(""));
+        assertNull(resolver.resolveType(null));
+    }
+
+    @Test
+    void testMatchKeywords_PrefersLongestMatch() {
+        assertEquals("Dining", resolver.matchKeywords("美团外卖", "午餐"));
+        assertEquals("Dining", resolver.matchKeywords("蜜雪冰城(大学城店)", "")); // User keyword
+        assertEquals("Transportation", resolver.matchKeywords("滴滴出行", "快车"));
+        // "大药房" (Medical) is longer than "超市" (Groceries)
+        assertEquals("Medical", resolver.matchKeywords("超市旁大药房", null));
+        assertNull(resolver.matchKeywords("Someone", "Something"));
+        assertNull(resolver.matchKeywords(null, null));
+    }
+
+    @Test
+    void testResolveExpenseCategory() {
+        assertEquals("Dining", resolver.resolveExpenseCategory(tx("Dining", "Restaurant C", "Lunch", "Expense")));
+        // Unknown type falls back to keywords
+        assertEquals("Dining", resolver.resolveExpenseCategory(tx("商户消费", "美团", "外卖订单", "Expense")));
+        // Known non-expense type keeps counting as "Other Expenses"
+        assertEquals("Other Expenses", resolver.resolveExpenseCategory(tx("Transfer", "美团", "", "Expense")));
+        // Nothing matches at all
+        assertEquals("Other Expenses", resolver.resolveExpenseCategory(tx("商户消费", "Someone", "Something", "Expense")));
+    }
+
+    @Test
+    void testResolve_IgnoresKeywordAgainstDirection() {
+        assertEquals("Dining", resolver.resolve(tx("", "饿了么", "", "Expense")));
+        // An expense keyword on an income row is not trusted
+        assertNull(resolver.resolve(tx("", "饿了么", "退款", "Income")));
+        // The type always wins
+        assertEquals("Salary", resolver.resolve(tx("工资", "饿了么", "", "Income")));
+    }
+
+    @Test
+    void testResolveByKeywords_IgnoresTheType() {
+        assertEquals("Transportation", resolver.resolveByKeywords(tx("Dining", "滴滴出行", "快车", "Expense")));
+        assertNull(resolver.resolveByKeywords(tx("Dining", "Someone", "Something", "Expense")));
+        assertNull(resolver.resolveByKeywords(tx("工资", "饿了么", "", "Income"))); // Against the direction
+    }
+
+    @Test
+    void testAddRule_PersistsAndRecompiles() throws IOException {
+        assertNull(resolver.matchKeywords("校园打印店", ""));
+        resolver.addRule(CategoryResolver.RULE_KEYWORD, "打印店", "Education");
+        assertEquals("Education", resolver.matchKeywords("校园打印店", ""));
+
+        // A fresh resolver reading the same file sees the rule
+        CategoryResolver reloaded = new CategoryResolver(rulesFile.toString());
+        assertEquals("Education", reloaded.matchKeywords("校园打印店", ""));
+
+        assertThrows(IllegalArgumentException.class, () -> resolver.addRule(CategoryResolver.RULE_ALIAS, "x", "Not A Category"));
+    }
+
+    @Test
+    void testKeywordMatcher_OverlappingKeywords() {
+        KeywordMatcher<String> matcher = new KeywordMatcher<>();
+        matcher.add("he", "A");
+        matcher.add("she", "B");
+        matcher.add("hers", "C");
+        assertEquals("C", matcher.findBest("ushers")); // "hers" is found through a failure link
+        assertEquals("B", matcher.findBest("ushe"));
+        assertNull(matcher.findBest("xyz"));
+        assertThrows(IllegalStateException.class, () -> matcher.add("late", "D"));
+    }
+}
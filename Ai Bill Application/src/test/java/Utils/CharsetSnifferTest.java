@@ -0,0 +1,49 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CharsetSnifferTest {
+
+    private static Charset detect(byte[] bytes) {
+        return CharsetSniffer.detect(bytes, bytes.length).getCharset();
+    }
+
+    @Test
+    void testDetectsUtf8AndAscii() {
+        assertEquals(StandardCharsets.UTF_8, detect("Order Number,Remarks\n".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(StandardCharsets.UTF_8, detect("交易时间,备注\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testDetectsGbk() {
+        assertEquals(CharsetSniffer.GB18030, detect("交易时间,交易对方,备注\n".getBytes(Charset.forName("GBK"))));
+    }
+
+    @Test
+    void testUtf8SequenceCutAtSampleEndStillUtf8() {
+        byte[] full = "交易".getBytes(StandardCharsets.UTF_8); // 6 bytes
+        assertEquals(StandardCharsets.UTF_8, CharsetSniffer.detect(full, 4).getCharset());
+    }
+
+    @Test
+    void testNewReaderSkipsBomAndDecodes() throws IOException {
+        byte[] utf8Bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a', ','};
+        try (Reader reader = CharsetSniffer.newReader(new ByteArrayInputStream(utf8Bom))) {
+            assertEquals('a', reader.read());
+        }
+        byte[] gbk = "收/支".getBytes(Charset.forName("GBK"));
+        try (Reader reader = CharsetSniffer.newReader(new ByteArrayInputStream(gbk))) {
+            char[] buf = new char[8];
+            int n = reader.read(buf);
+            assertEquals("收/支", new String(buf, 0, n));
+        }
+    }
+}
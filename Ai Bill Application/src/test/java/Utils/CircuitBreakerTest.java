@@ -0,0 +1,66 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+
+    @Test
+    void testOpensAfterConsecutiveFailures() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, now::get);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess(); // Resets the streak
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(), "Fails fast while open");
+        assertEquals(1, breaker.getRejectedCount());
+        assertEquals(1000, breaker.getRemainingOpenMillis());
+    }
+
+    @Test
+    void testHalfOpenLetsOneTrialThrough() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, now::get);
+        breaker.onFailure();
+
+        now.addAndGet(1000);
+        assertTrue(breaker.tryAcquire(), "Trial call after the open period");
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(), "Only one trial at a time");
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(), "Failed trial opens it again");
+        assertEquals(2, breaker.getOpenCount());
+
+        now.addAndGet(1000);
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void testIgnoredTrialFreesTheSlot() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, now::get);
+        breaker.onFailure();
+        now.addAndGet(1000);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onIgnored(); // e.g. cancelled before an answer
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire(), "Next call becomes the trial");
+    }
+}
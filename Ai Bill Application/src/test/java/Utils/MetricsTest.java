@@ -0,0 +1,66 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    @Test
+    void testHistogramPercentiles_WithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram("test.percentiles");
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordNanos(i * 1_000_000L); // 1..1000 ms
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMeanMillis(), 0.001);
+        // Log-linear buckets: about 6% relative error
+        assertEquals(500.0, histogram.getP50Millis(), 500.0 * 0.07);
+        assertEquals(990.0, histogram.getP99Millis(), 990.0 * 0.07);
+        assertEquals(1000.0, histogram.getMaxMillis(), 0.001);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getP99Millis());
+    }
+
+    @Test
+    void testBucketIndex_IsMonotonic() {
+        int previous = -1;
+        for (long value = 0; value < 1_000_000; value += 997) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(index >= previous, "Bucket index must not decrease at " + value);
+            previous = index;
+        }
+        // Values beyond the covered range land in the last bucket instead of overflowing
+        assertEquals(LatencyHistogram.bucketIndex(Long.MAX_VALUE), LatencyHistogram.bucketIndex(Long.MAX_VALUE - 1));
+    }
+
+    @Test
+    void testTimer_RecordsDurationAndErrors() throws Exception {
+        Metrics.Timer timer = Metrics.startTimer("test.timer");
+        Thread.sleep(5);
+        timer.failed();
+        long elapsed = timer.stop();
+        timer.stop(); // Second stop must not record again
+
+        LatencyHistogram histogram = Metrics.histogram("test.timer");
+        assertEquals(1, histogram.getCount());
+        assertEquals(1, histogram.getErrorCount());
+        assertTrue(elapsed >= 5_000_000L);
+        assertTrue(Metrics.getHistograms().contains(histogram));
+    }
+
+    @Test
+    void testHistogram_IsPublishedOverJmx() throws Exception {
+        Metrics.histogram("test.jmx").recordNanos(2_000_000L);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.JMX_DOMAIN + ":type=Operation,name=" + ObjectName.quote("test.jmx"));
+        assertTrue(server.isRegistered(name));
+        assertEquals(1L, server.getAttribute(name, "Count"));
+    }
+}
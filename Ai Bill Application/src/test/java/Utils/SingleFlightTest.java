@@ -0,0 +1,157 @@
+package Utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testSubmit_ConcurrentCallersShareOneCall() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<String> work = () -> {
+            calls.incrementAndGet();
+            release.await();
+            return "answer";
+        };
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(flight.submit("prompt", () -> call(work), executor));
+        }
+        waitUntil(() -> flight.getStartedCount() + flight.getJoinedCount() == 5);
+        release.countDown();
+
+        for (CompletableFuture<String> result : results) {
+            assertEquals("answer", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get(), "Only the first caller does the work");
+        assertEquals(4, flight.getJoinedCount());
+        waitUntil(() -> flight.getInFlightCount() == 0);
+    }
+
+    @Test
+    void testSubmit_DifferentKeysAndLaterCallsRunSeparately() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals(Integer.valueOf(1), flight.submit("a", calls::incrementAndGet, Runnable::run).get());
+        assertEquals(Integer.valueOf(2), flight.submit("a", calls::incrementAndGet, Runnable::run).get(),
+                "Results are not kept after completion");
+        assertEquals(Integer.valueOf(3), flight.submit("b", calls::incrementAndGet, Runnable::run).get());
+        assertEquals(0, flight.getJoinedCount());
+        assertEquals(0, flight.getInFlightCount(), "Key is free once the call completed");
+    }
+
+    @Test
+    void testSubmit_FailureReachesEveryCaller() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = flight.submit("k", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new CancellationException();
+            }
+            throw new IllegalStateException("endpoint down");
+        }, executor);
+        waitUntil(() -> flight.getStartedCount() == 1);
+        CompletableFuture<String> follower = flight.submit("k", () -> "not called", executor);
+        assertEquals(1, flight.getJoinedCount());
+        release.countDown();
+
+        for (CompletableFuture<String> result : List.of(leader, follower)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    void testSubmit_CancellingOneCallerKeepsTheSharedCall() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Callable<String> work = () -> {
+            calls.incrementAndGet();
+            release.await();
+            return "answer";
+        };
+
+        CompletableFuture<String> first = flight.submit("k", () -> call(work), executor);
+        CompletableFuture<String> second = flight.submit("k", () -> call(work), executor);
+        waitUntil(() -> calls.get() == 1);
+
+        assertTrue(first.cancel(true));
+        release.countDown();
+
+        assertEquals("answer", second.get(5, TimeUnit.SECONDS), "The other caller still gets the result");
+        assertTrue(first.isCancelled());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testSubmit_LastCallerCancellingInterruptsTheWork() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Callable<String> work = () -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await(); // Never released
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return "unreachable";
+        };
+
+        CompletableFuture<String> first = flight.submit("k", () -> call(work), executor);
+        CompletableFuture<String> second = flight.submit("k", () -> call(work), executor);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        first.cancel(true);
+        assertEquals(1, interrupted.getCount(), "Still one caller waiting");
+        second.cancel(true);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "No caller left: the work is interrupted");
+
+        waitUntil(() -> flight.getInFlightCount() == 0);
+        assertEquals("fresh", flight.submit("k", () -> "fresh", executor).get(5, TimeUnit.SECONDS),
+                "A cancelled call is not joined by later callers");
+    }
+
+    private static String call(Callable<String> work) {
+        try {
+            return work.call();
+        } catch (InterruptedException e) {
+            throw new CancellationException("interrupted");
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not reached in time");
+            }
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void testBurstThenSteadyRate() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(2, 3, now::get); // 2 per second, burst of 3
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire(), "Burst used up");
+
+        now.addAndGet(SECOND / 2);
+        assertTrue(bucket.tryAcquire(), "One token after half a second at 2/s");
+        assertFalse(bucket.tryAcquire());
+
+        now.addAndGet(10 * SECOND);
+        assertEquals(3.0, bucket.getAvailableTokens(), 1e-9, "Never more than the capacity");
+    }
+
+    @Test
+    void testReserveQueuesCallersInOrder() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(1, 1, now::get);
+
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(SECOND, bucket.reserve(5 * SECOND), "Next token is due in one second");
+        assertEquals(2 * SECOND, bucket.reserve(5 * SECOND), "The one after waits behind it");
+        assertEquals(-1, bucket.reserve(SECOND), "Too long a wait: nothing reserved");
+        assertEquals(-2.0, bucket.getAvailableTokens(), 1e-9);
+    }
+
+    @Test
+    void testSetRateChangesRefillSpeed() throws Exception {
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(1, 1, now::get);
+        assertTrue(bucket.tryAcquire());
+
+        bucket.setRate(4);
+        now.addAndGet(SECOND / 4);
+
+        assertTrue(bucket.acquire(0, TimeUnit.MILLISECONDS));
+        assertEquals(4.0, bucket.getRate(), 1e-9);
+    }
+}
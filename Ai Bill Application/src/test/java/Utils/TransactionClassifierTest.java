@@ -0,0 +1,133 @@
+package Utils;
+
+import model.Transaction;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionClassifierTest {
+
+    private final CategoryResolver resolver = new CategoryResolver(null); // Built-in rules only
+
+    private static Transaction tx(String type, String counterparty, String commodity, String inOut, String remarks) {
+        return new Transaction("2025/03/01 12:00:00", type, counterparty, commodity, inOut, 20.0,
+                "WeChat Pay", "Completed", "ORDER_1", "", remarks);
+    }
+
+    private static List<Transaction> history() {
+        List<Transaction> history = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            history.add(tx("Dining", "Campus Noodle Bar", "Beef noodles", "Expense", ""));
+            history.add(tx("Transportation", "City Bus Card", "Top-up " + (i + 1), "Expense", "Monthly commute"));
+            history.add(tx("Education", "Northside Copy Shop", "Printing", "Expense", "Course notes"));
+            history.add(tx("Part-time Income", "Library Desk", "Shift pay", "Income", ""));
+        }
+        history.add(tx("Not a category", "Campus Noodle Bar", "Beef noodles", "Expense", "")); // Not learned from
+        return history;
+    }
+
+    @Test
+    void testClassify_KnownCounterpartyIsConfident() {
+        TransactionClassifier classifier = new TransactionClassifier(resolver);
+        classifier.sync(history());
+
+        TransactionClassifier.Prediction prediction = classifier.classify(tx("", "Campus Noodle Bar", "Dumplings", "Expense", ""));
+
+        assertEquals(20, classifier.getExampleCount());
+        assertEquals("Dining", prediction.getCategory());
+        assertTrue(prediction.getConfidence() > 0.9, prediction.toString());
+    }
+
+    @Test
+    void testClassify_ChineseTextUsesCharacterPairs() {
+        TransactionClassifier classifier = new TransactionClassifier(resolver);
+        List<Transaction> history = new ArrayList<>(history());
+        for (int i = 0; i < 3; i++) {
+            history.add(tx("Daily Necessities", "校园便利店", "文具", "Expense", ""));
+        }
+        classifier.sync(history);
+
+        TransactionClassifier.Prediction prediction = classifier.classify(tx("", "东门校园便利店", "", "Expense", ""));
+
+        assertTrue(TransactionClassifier.tokens(tx("", "校园便利店", "", "Expense", "")).contains("cp:便利"));
+        assertEquals("Daily Necessities", prediction.getCategory());
+    }
+
+    @Test
+    void testClassify_UnseenTokensOrWrongDirectionGiveNoAnswer() {
+        TransactionClassifier classifier = new TransactionClassifier(resolver);
+        classifier.sync(history());
+
+        assertNull(classifier.classify(tx("", "Somewhere New", "Something else", "Expense", "")));
+        // Only income has been learned for the library, and only expenses for the noodle bar
+        TransactionClassifier.Prediction income = classifier.classify(tx("", "Campus Noodle Bar", "Beef noodles", "Income", ""));
+        assertEquals("Part-time Income", income.getCategory());
+    }
+
+    @Test
+    void testSync_LearnsAddedRowsAndForgetsRemovedOnes() {
+        TransactionClassifier classifier = new TransactionClassifier(resolver);
+        List<Transaction> history = history();
+        classifier.sync(history);
+
+        // Recategorise the copy shop: the old rows are replaced by new objects, as an edit does
+        List<Transaction> edited = new ArrayList<>();
+        for (Transaction transaction : history) {
+            if ("Northside Copy Shop".equals(transaction.getCounterparty())) {
+                edited.add(tx("Daily Necessities", "Northside Copy Shop", "Printing", "Expense", "Course notes"));
+            } else {
+                edited.add(transaction);
+            }
+        }
+        classifier.sync(edited);
+
+        assertEquals(20, classifier.getExampleCount());
+        assertEquals("Daily Necessities", classifier.classify(tx("", "Northside Copy Shop", "Printing", "Expense", "")).getCategory());
+
+        classifier.sync(edited.subList(0, 8)); // Rows deleted
+        assertEquals(8, classifier.getExampleCount());
+    }
+
+    @Test
+    void testReclassify_LeavesTheRowItselfOut() {
+        TransactionClassifier classifier = new TransactionClassifier(resolver);
+        List<Transaction> history = history();
+        // Categorised wrongly once; the only row for this counterparty
+        Transaction gym = new Transaction("2025/03/02 18:00:00", "Education", "Riverside Gym", "Membership", "Expense", 99.0,
+                "WeChat Pay", "Completed", "GYM_1", "", "");
+        history.add(gym);
+        classifier.sync(history);
+        Transaction editedCopy = new Transaction(gym.getTransactionTime(), "", gym.getCounterparty(), gym.getCommodity(),
+                gym.getInOut(), gym.getPaymentAmount(), gym.getPaymentMethod(), gym.getCurrentStatus(), " GYM_1 ", "", "");
+
+        assertEquals("Education", classifier.classify(editedCopy).getCategory()); // Its own old label
+        assertNull(classifier.reclassify(gym)); // Same object
+        assertNull(classifier.reclassify(editedCopy)); // Same order number
+        assertEquals(21, classifier.getExampleCount()); // Counts restored
+        assertEquals("Education", classifier.classify(editedCopy).getCategory());
+        assertEquals("Dining", classifier.reclassify(new Transaction("2025/03/03 12:00:00", "", "Campus Noodle Bar", "Dumplings",
+                "Expense", 15.0, "WeChat Pay", "Completed", "NOODLE_X", "", "")).getCategory());
+    }
+
+    @Test
+    void testEvaluate_ReportsAccuracyAndFallbackOnHeldOutRows() {
+        List<Transaction> history = history();
+        for (int i = 0; i < 5; i++) {
+            history.add(tx("Entertainment", "Unique Venue " + i, "Ticket", "Expense", "")); // Never seen twice
+        }
+
+        TransactionClassifier.Evaluation evaluation = TransactionClassifier.evaluate(history, 0.4, 0.9, 7, resolver);
+        TransactionClassifier.Evaluation again = TransactionClassifier.evaluate(history, 0.4, 0.9, 7, resolver);
+
+        assertEquals(10, evaluation.getTestSize());
+        assertEquals(15, evaluation.getTrainSize());
+        // Same seed, same split
+        assertEquals(evaluation.getAccuracy(), again.getAccuracy());
+        assertEquals(evaluation.getFallbackRate(), again.getFallbackRate());
+        assertTrue(evaluation.getFallbackRate() < 1.0, evaluation.toString());
+        assertTrue(evaluation.getAccuracy() >= 0.9, evaluation.toString());
+    }
+}
@@ -0,0 +1,106 @@
+package Utils;
+
+import model.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionSnapshotStoreTest {
+
+    private Path snapshotDir;
+    private Path csvFile;
+    private String csvKey;
+    private TransactionSnapshotStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        snapshotDir = Files.createTempDirectory("snapshot_store_test_");
+        csvFile = Files.createTempFile("snapshot_store_test_", ".csv");
+        Files.writeString(csvFile, "header\nrow\n", StandardCharsets.UTF_8);
+        csvKey = csvFile.toAbsolutePath().normalize().toString();
+        store = new TransactionSnapshotStore(snapshotDir);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.shutdown();
+        Files.deleteIfExists(csvFile);
+        try (Stream<Path> files = Files.walk(snapshotDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static List<Transaction> sampleTransactions() {
+        List<Transaction> transactions = new ArrayList<>();
+        transactions.add(new Transaction("2025/04/01 10:00:00", "餐饮", "食堂", "午饭", "支出", 12.5, "微信", "已完成", "ORD001", "M001", null));
+        transactions.add(new Transaction("2025/04/02 09:30:00", "Salary", "Company", "", "Income", 3000.0, "Bank", "Completed", "ORD002", null, "备注, with comma"));
+        return transactions;
+    }
+
+    @Test
+    void testWriteAndRead_RoundTripsAllFields() throws Exception {
+        FileFingerprint fingerprint = FileFingerprint.of(csvFile);
+        store.writeAsync(csvKey, fingerprint, sampleTransactions());
+        store.flush();
+
+        TransactionSnapshotStore.Snapshot snapshot = store.read(csvKey, FileFingerprint.stat(csvFile));
+        assertNotNull(snapshot, "Snapshot should match the unchanged CSV");
+        assertEquals(fingerprint, snapshot.getFingerprint(), "Checksum is restored from the snapshot");
+
+        List<Transaction> read = snapshot.getTransactions();
+        assertEquals(2, read.size());
+        Transaction first = read.get(0);
+        assertEquals("餐饮", first.getTransactionType());
+        assertEquals(12.5, first.getPaymentAmount());
+        assertNull(first.getRemarks());
+        Transaction second = read.get(1);
+        assertEquals("", second.getCommodity());
+        assertNull(second.getMerchantNumber());
+        assertEquals("备注, with comma", second.getRemarks());
+    }
+
+    @Test
+    void testRead_IgnoresSnapshotOfChangedCsv() throws Exception {
+        store.writeAsync(csvKey, FileFingerprint.of(csvFile), sampleTransactions());
+        store.flush();
+
+        Files.writeString(csvFile, "another row\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        assertNull(store.read(csvKey, FileFingerprint.stat(csvFile)), "Size changed, snapshot must not be used");
+    }
+
+    @Test
+    void testRead_TreatsCorruptSnapshotAsMiss() throws Exception {
+        store.writeAsync(csvKey, FileFingerprint.of(csvFile), sampleTransactions());
+        store.flush();
+
+        Path snapshotPath = store.snapshotPath(csvKey);
+        byte[] bytes = Files.readAllBytes(snapshotPath);
+        bytes[bytes.length - 20] ^= 0x5A; // Flip bits inside the row data
+        Files.write(snapshotPath, bytes);
+        assertNull(store.read(csvKey, FileFingerprint.stat(csvFile)));
+
+        Files.write(snapshotPath, new byte[]{1, 2, 3}); // Truncated
+        assertNull(store.read(csvKey, FileFingerprint.stat(csvFile)));
+    }
+
+    @Test
+    void testDelete_RemovesSnapshotAndQueuedWrite() throws Exception {
+        store.writeAsync(csvKey, FileFingerprint.of(csvFile), sampleTransactions());
+        store.delete(csvKey);
+        store.flush();
+        assertFalse(Files.exists(store.snapshotPath(csvKey)));
+        assertNull(store.read(csvKey, FileFingerprint.stat(csvFile)));
+    }
+}